@@ -0,0 +1,80 @@
+package biz.rightshift.commons.doclet;
+
+import com.sun.javadoc.ClassDoc;
+import com.sun.javadoc.LanguageVersion;
+import com.sun.javadoc.RootDoc;
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A doclet that keeps hold of the javadoc model, so the phases of
+ * {@link SpringWebServicesRestApiDoclet} can be benchmarked on it after
+ * javadoc has finished.
+ */
+public final class CorpusDoclet {
+
+    private static RootDoc root;
+
+    /**
+     * Don't instantiate directly.
+     */
+    private CorpusDoclet() {
+    }
+
+    /**
+     * Parses sources with javadoc.
+     *
+     * Every controller is resolved before javadoc finishes, so the model can
+     * still be read afterwards.
+     *
+     * @param sources The source files.
+     * @return The javadoc model.
+     */
+    public static synchronized RootDoc load(final List<File> sources) {
+        List<String> args = new ArrayList<>();
+        args.add("-quiet");
+        for (File source : sources) {
+            args.add(source.getPath());
+        }
+        StringWriter errors = new StringWriter();
+        PrintWriter errorWriter = new PrintWriter(errors);
+        PrintWriter ignored = new PrintWriter(new StringWriter());
+        int result = com.sun.tools.javadoc.Main.execute(
+                "benchmark", errorWriter, ignored, ignored,
+                CorpusDoclet.class.getName(), CorpusDoclet.class.getClassLoader(),
+                args.toArray(new String[args.size()]));
+        errorWriter.flush();
+        if (result != 0 || root == null) {
+            throw new IllegalStateException("javadoc failed: " + errors);
+        }
+        RootDoc loaded = root;
+        root = null;
+        return loaded;
+    }
+
+    /**
+     * Starting point.
+     *
+     * @param rootDoc The <code>RootDoc</code>.
+     * @return <code>true</code> if the doclet succeeded.
+     */
+    public static boolean start(final RootDoc rootDoc) {
+        for (ClassDoc classDoc : rootDoc.classes()) {
+            if (SpringWebServicesRestApiDoclet.isController(classDoc)) {
+                SpringWebServicesRestApiDoclet.resolve(classDoc);
+            }
+        }
+        root = rootDoc;
+        return true;
+    }
+
+    /**
+     * @return The language version this doclet works with.
+     */
+    public static LanguageVersion languageVersion() {
+        return LanguageVersion.JAVA_1_5;
+    }
+}
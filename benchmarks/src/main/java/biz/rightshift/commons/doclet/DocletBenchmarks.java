@@ -0,0 +1,229 @@
+package biz.rightshift.commons.doclet;
+
+import com.sun.javadoc.ClassDoc;
+import com.sun.javadoc.MethodDoc;
+import com.sun.javadoc.ParamTag;
+import com.sun.javadoc.Parameter;
+import com.sun.javadoc.RootDoc;
+import com.sun.javadoc.Type;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks each phase of {@link SpringWebServicesRestApiDoclet} on its
+ * own, over a {@link SyntheticCorpus}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DocletBenchmarks {
+
+    @Param({"20", "200"})
+    private int controllers;
+
+    @Param({"10"})
+    private int endpointsPerController;
+
+    @Param({"3"})
+    private int parametersPerEndpoint;
+
+    @Param({"3"})
+    private int dtoDepth;
+
+    @Param({"3"})
+    private int dtoFanOut;
+
+    @Param({"true"})
+    private boolean recursive;
+
+    private RootDoc root;
+    private List<ClassDoc> controllerDocs;
+    private List<Type> requestBodyTypes;
+    private List<String> comments;
+    private List<String> commentContexts;
+    private LinkTargets links;
+    private List<RestApiDetails> restCalls;
+    private TemplateRenderer renderer;
+    private TemplateRenderer velocityRenderer;
+
+    /**
+     * Generates the corpus, parses it with javadoc and prepares the input of
+     * each phase.
+     *
+     * @throws IOException If the corpus cannot be written.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        File directory = Files.createTempDirectory("restApiDoclet-corpus").toFile();
+        SyntheticCorpus corpus = new SyntheticCorpus(controllers, endpointsPerController,
+                parametersPerEndpoint, dtoDepth, dtoFanOut, recursive);
+        root = CorpusDoclet.load(corpus.write(directory));
+        Description.reset();
+
+        controllerDocs = new ArrayList<>();
+        requestBodyTypes = new ArrayList<>();
+        comments = new ArrayList<>();
+        commentContexts = new ArrayList<>();
+        for (ClassDoc classDoc : root.classes()) {
+            if (SpringWebServicesRestApiDoclet.isController(classDoc)) {
+                controllerDocs.add(classDoc);
+                for (MethodDoc method : classDoc.methods()) {
+                    comments.add(method.commentText());
+                    commentContexts.add(classDoc.qualifiedName());
+                    for (ParamTag tag : method.paramTags()) {
+                        comments.add(tag.parameterComment());
+                        commentContexts.add(classDoc.qualifiedName());
+                    }
+                    for (Parameter parameter : method.parameters()) {
+                        if (JavadocAnnotationIndex.of(parameter.annotations()).isAnnotatedWith("RequestBody")) {
+                            requestBodyTypes.add(parameter.type());
+                        }
+                    }
+                }
+            }
+        }
+
+        links = SpringWebServicesRestApiDoclet.getLinkTargets(controllerDocs);
+        restCalls = new ArrayList<>();
+        for (ClassDoc controller : controllerDocs) {
+            restCalls.addAll(SpringWebServicesRestApiDoclet.getRestCallsFor(controller, links));
+        }
+        renderer = new TemplateRenderer();
+        velocityRenderer = new TemplateRenderer(false);
+    }
+
+    /**
+     * Finding the controllers among all classes.
+     *
+     * @return The number of controllers.
+     */
+    @Benchmark
+    public int discovery() {
+        int found = 0;
+        for (ClassDoc classDoc : root.classes()) {
+            if (SpringWebServicesRestApiDoclet.isController(classDoc)) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Extracting the rest calls of every controller, from an empty
+     * description cache.
+     *
+     * @param blackhole Consumes the rest calls.
+     */
+    @Benchmark
+    public void extraction(final Blackhole blackhole) {
+        Description.reset();
+        for (ClassDoc controller : controllerDocs) {
+            blackhole.consume(SpringWebServicesRestApiDoclet.getRestCallsFor(controller, links));
+        }
+    }
+
+    /**
+     * Describing every request body type, from an empty description cache.
+     *
+     * @param blackhole Consumes the descriptions.
+     */
+    @Benchmark
+    public void describeType(final Blackhole blackhole) {
+        Description.reset();
+        for (Type type : requestBodyTypes) {
+            blackhole.consume(Description.describeType(type));
+        }
+    }
+
+    /**
+     * Sanitizing every endpoint and parameter comment, rendering their
+     * inline tags and links.
+     *
+     * @param blackhole Consumes the sanitized comments.
+     */
+    @Benchmark
+    public void sanitizeComment(final Blackhole blackhole) {
+        for (int i = 0; i < comments.size(); i++) {
+            blackhole.consume(SpringWebServicesRestApiDoclet.sanitizeComment(
+                    comments.get(i), links, commentContexts.get(i)));
+        }
+    }
+
+    /**
+     * Rendering every rest call with the default template, compiled if the
+     * doclet was built with compiled templates.
+     *
+     * @param blackhole Consumes the rendered output.
+     * @throws IOException If rendering fails.
+     */
+    @Benchmark
+    public void render(final Blackhole blackhole) throws IOException {
+        render(renderer, blackhole);
+    }
+
+    /**
+     * Rendering every rest call with the default template, merged by
+     * Velocity.
+     *
+     * @param blackhole Consumes the rendered output.
+     * @throws IOException If rendering fails.
+     */
+    @Benchmark
+    public void renderVelocity(final Blackhole blackhole) throws IOException {
+        render(velocityRenderer, blackhole);
+    }
+
+    private void render(final TemplateRenderer templateRenderer, final Blackhole blackhole) throws IOException {
+        Map<String, Object> values = new HashMap<>();
+        values.put("restCalls", Collections.unmodifiableList(restCalls));
+        values.put("headTitle", "Benchmark");
+        CountingWriter output = new CountingWriter();
+        templateRenderer.render("rest_api_template.vm", values, output);
+        blackhole.consume(output.count);
+    }
+
+    /**
+     * A writer that only counts what is written to it.
+     */
+    private static final class CountingWriter extends Writer {
+
+        private long count;
+
+        @Override
+        public void write(final char[] buffer, final int offset, final int length) {
+            count += length;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package biz.rightshift.commons.doclet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates the sources of a synthetic Spring MVC application to document.
+ *
+ * The generated controllers use stand-in Spring annotations, generated
+ * alongside them, so the corpus needs nothing but a JDK to document.
+ *
+ * Request bodies are drawn from families of DTOs. Each family has
+ * {@code dtoDepth} levels of {@code dtoFanOut} types, and each type refers
+ * to every type on the level below it. In recursive families the deepest
+ * level refers back to the top, as a tree node would.
+ */
+public final class SyntheticCorpus {
+
+    private static final String ENCODING = "UTF-8";
+    private static final String API_PACKAGE = "bench.api";
+    private static final String DTO_PACKAGE = "bench.dto";
+    private static final String SERVICE_PACKAGE = "bench.service";
+    private static final String[] HTTP_METHODS = {"GET", "POST", "PUT", "DELETE"};
+    private static final String[] SCALAR_TYPES = {"String", "int", "long", "boolean", "java.util.Date"};
+
+    private final int controllers;
+    private final int endpointsPerController;
+    private final int parametersPerEndpoint;
+    private final int dtoDepth;
+    private final int dtoFanOut;
+    private final boolean recursive;
+    private final int dtoFamilies;
+
+    /**
+     * @param controllers The number of controllers.
+     * @param endpointsPerController The number of endpoints on each controller.
+     * @param parametersPerEndpoint The number of path variables and request
+     *          params on each endpoint.
+     * @param dtoDepth The number of levels of DTOs below each request body.
+     * @param dtoFanOut The number of DTOs on each level, each referred to by
+     *          every DTO on the level above.
+     * @param recursive Whether the deepest DTOs refer back to the top.
+     */
+    public SyntheticCorpus(
+            final int controllers,
+            final int endpointsPerController,
+            final int parametersPerEndpoint,
+            final int dtoDepth,
+            final int dtoFanOut,
+            final boolean recursive) {
+        this.controllers = controllers;
+        this.endpointsPerController = endpointsPerController;
+        this.parametersPerEndpoint = parametersPerEndpoint;
+        this.dtoDepth = dtoDepth;
+        this.dtoFanOut = dtoFanOut;
+        this.recursive = recursive;
+        this.dtoFamilies = Math.max(1, controllers / 2);
+    }
+
+    /**
+     * Writes the corpus.
+     *
+     * @param directory The source directory to write to.
+     * @return The source files written.
+     * @throws IOException If a file cannot be written.
+     */
+    public List<File> write(final File directory) throws IOException {
+        List<File> files = new ArrayList<>();
+        writeSpringAnnotations(directory, files);
+        write(directory, DTO_PACKAGE, "Status", "public enum Status { ACTIVE, SUSPENDED, CLOSED }\n", files);
+        for (int family = 0; family < dtoFamilies; family++) {
+            writeDtoFamily(directory, family, files);
+        }
+        for (int controller = 0; controller < controllers; controller++) {
+            writeController(directory, controller, files);
+            write(directory, SERVICE_PACKAGE, "Service" + controller,
+                    "public class Service" + controller + " {\n"
+                    + "    public String find(final long id) { return String.valueOf(id); }\n"
+                    + "}\n", files);
+        }
+        return files;
+    }
+
+    private void writeSpringAnnotations(final File directory, final List<File> files) throws IOException {
+        write(directory, "org.springframework.stereotype", "Controller",
+                "public @interface Controller { String value() default \"\"; }\n", files);
+        String annotations = "org.springframework.web.bind.annotation";
+        write(directory, annotations, "RequestMethod",
+                "public enum RequestMethod { GET, HEAD, POST, PUT, PATCH, DELETE, OPTIONS, TRACE }\n", files);
+        write(directory, annotations, "RequestMapping",
+                "public @interface RequestMapping {\n"
+                + "    String[] value() default {};\n"
+                + "    RequestMethod[] method() default {};\n"
+                + "    String[] consumes() default {};\n"
+                + "    String[] produces() default {};\n"
+                + "}\n", files);
+        write(directory, annotations, "PathVariable",
+                "public @interface PathVariable { String value() default \"\"; }\n", files);
+        write(directory, annotations, "RequestParam",
+                "public @interface RequestParam { String value() default \"\"; }\n", files);
+        write(directory, annotations, "RequestBody", "public @interface RequestBody { }\n", files);
+    }
+
+    private void writeDtoFamily(final File directory, final int family, final List<File> files) throws IOException {
+        for (int level = 0; level <= dtoDepth; level++) {
+            for (int index = 0; index < (level == 0 ? 1 : dtoFanOut); index++) {
+                String name = getDtoName(family, level, index);
+                StringBuilder source = new StringBuilder();
+                source.append("import java.util.List;\n\n");
+                source.append("/** A synthetic DTO. */\n");
+                source.append("public class ").append(name).append(" {\n");
+                for (int field = 0; field < SCALAR_TYPES.length; field++) {
+                    getter(source, SCALAR_TYPES[field], "Field" + field);
+                }
+                getter(source, "Status", "Status");
+                getter(source, "List<String>", "Tags");
+                if (level < dtoDepth) {
+                    for (int child = 0; child < dtoFanOut; child++) {
+                        String childName = getDtoName(family, level + 1, child);
+                        getter(source, childName, "Child" + child);
+                        getter(source, "List<" + childName + ">", "Children" + child);
+                    }
+                } else if (recursive) {
+                    getter(source, getDtoName(family, 0, 0), "Root");
+                    getter(source, "List<" + name + ">", "Siblings");
+                }
+                source.append("}\n");
+                write(directory, DTO_PACKAGE, name, source.toString(), files);
+            }
+        }
+    }
+
+    private void writeController(final File directory, final int controller, final List<File> files)
+            throws IOException {
+        String name = "Controller" + controller;
+        StringBuilder source = new StringBuilder();
+        source.append("import ").append(DTO_PACKAGE).append(".*;\n");
+        source.append("import org.springframework.stereotype.Controller;\n");
+        source.append("import org.springframework.web.bind.annotation.*;\n\n");
+        source.append("/** A synthetic controller. */\n");
+        source.append("@Controller\n");
+        source.append("@RequestMapping(\"/controller").append(controller).append("\")\n");
+        source.append("public class ").append(name).append(" {\n");
+        for (int endpoint = 0; endpoint < endpointsPerController; endpoint++) {
+            String method = HTTP_METHODS[endpoint % HTTP_METHODS.length];
+            boolean hasBody = "POST".equals(method) || "PUT".equals(method);
+            String body = getDtoName((controller + endpoint) % dtoFamilies, 0, 0);
+
+            source.append("\n    /**\n");
+            source.append("     * Endpoint ").append(endpoint).append(" of {@link ").append(name)
+                    .append("}, which {@code ").append(method).append("}s a resource.\n");
+            source.append("     * <p>\n");
+            source.append("     * The resource is identified by {@code id} and is described by\n");
+            source.append("     * {@link ").append(DTO_PACKAGE).append('.').append(body)
+                    .append("}. It may contain {@literal <markup>} to be escaped.\n");
+            source.append("     * <p>\n");
+            source.append("     * See {@link #endpoint").append((endpoint + 1) % endpointsPerController)
+                    .append("} for a related endpoint.\n");
+            source.append("     *\n");
+            source.append("     * @param id The {@code id} of the resource.\n");
+            for (int parameter = 1; parameter < parametersPerEndpoint; parameter++) {
+                source.append("     * @param param").append(parameter).append(" Request param ")
+                        .append(parameter).append(", see {@link ").append(body).append("}.\n");
+            }
+            if (hasBody) {
+                source.append("     * @param body The {@literal body}.\n");
+            }
+            source.append("     */\n");
+            source.append("    @RequestMapping(value = \"/endpoint").append(endpoint)
+                    .append("/{id}\", method = RequestMethod.").append(method)
+                    .append(", produces = \"application/json\")\n");
+            source.append("    public String endpoint").append(endpoint).append("(\n");
+            source.append("            @PathVariable(\"id\") final long id");
+            for (int parameter = 1; parameter < parametersPerEndpoint; parameter++) {
+                source.append(",\n            @RequestParam(\"param").append(parameter)
+                        .append("\") final String param").append(parameter);
+            }
+            if (hasBody) {
+                source.append(",\n            @RequestBody final ").append(body).append(" body");
+            }
+            source.append(") {\n        return null;\n    }\n");
+        }
+        source.append("}\n");
+        write(directory, API_PACKAGE, name, source.toString(), files);
+    }
+
+    private static void getter(final StringBuilder source, final String type, final String name) {
+        source.append("    public ").append(type).append(" get").append(name)
+                .append("() { return null; }\n");
+    }
+
+    private static String getDtoName(final int family, final int level, final int index) {
+        return "Dto" + family + "Level" + level + "Type" + index;
+    }
+
+    private static void write(
+            final File directory,
+            final String packageName,
+            final String className,
+            final String body,
+            final List<File> files) throws IOException {
+        File packageDirectory = new File(directory, packageName.replace('.', File.separatorChar));
+        if (!packageDirectory.isDirectory() && !packageDirectory.mkdirs()) {
+            throw new IOException("Failed to create " + packageDirectory);
+        }
+        File file = new File(packageDirectory, className + ".java");
+        try (Writer output = new OutputStreamWriter(new FileOutputStream(file), ENCODING)) {
+            output.write("package " + packageName + ";\n\n");
+            output.write(body);
+        }
+        files.add(file);
+    }
+
+    /**
+     * Writes a corpus from the command line.
+     *
+     * @param args The directory, then optionally the number of controllers,
+     *          endpoints per controller, parameters per endpoint, DTO depth,
+     *          DTO fan out and whether DTOs are recursive.
+     * @throws IOException If a file cannot be written.
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: SyntheticCorpus <directory> [controllers] [endpoints] [parameters]"
+                    + " [dtoDepth] [dtoFanOut] [recursive]");
+            System.exit(1);
+        }
+        SyntheticCorpus corpus = new SyntheticCorpus(
+                args.length > 1 ? Integer.parseInt(args[1]) : 100,
+                args.length > 2 ? Integer.parseInt(args[2]) : 10,
+                args.length > 3 ? Integer.parseInt(args[3]) : 3,
+                args.length > 4 ? Integer.parseInt(args[4]) : 3,
+                args.length > 5 ? Integer.parseInt(args[5]) : 3,
+                args.length > 6 && Boolean.parseBoolean(args[6]));
+        List<File> files = corpus.write(new File(args[0]));
+        System.out.println("Wrote " + files.size() + " source files to " + args[0]);
+    }
+}
@@ -0,0 +1,146 @@
+package biz.rightshift.commons.doclet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
+
+/**
+ * The annotations on a class, method or parameter, indexed by annotation
+ * name, with their element values already parsed into lists of strings.
+ *
+ * Built in a single pass over the annotations so that repeated lookups do
+ * not have to scan, or re-parse, them again. The index is the same whether
+ * it is built from the javadoc model, see {@link JavadocAnnotationIndex},
+ * or from {@code javax.lang.model} elements.
+ */
+final class AnnotationIndex {
+
+    private static final String SEPARATOR = ", ";
+
+    private final Map<String, Map<String, List<String>>> annotations;
+
+    /**
+     * @param annotations The parsed annotations, keyed by annotation name and
+     *          then element name.
+     */
+    AnnotationIndex(final Map<String, Map<String, List<String>>> annotations) {
+        this.annotations = annotations;
+    }
+
+    /**
+     * Indexes annotations.
+     *
+     * @param annotations The annotations, as found on an element.
+     * @return The index.
+     */
+    static AnnotationIndex of(final List<? extends AnnotationMirror> annotations) {
+        Map<String, Map<String, List<String>>> index = new HashMap<>();
+        for (AnnotationMirror annotation : annotations) {
+            Map<String, List<String>> elements = new HashMap<>();
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> pair
+                    : annotation.getElementValues().entrySet()) {
+                List<String> values = new ArrayList<>();
+                addValues(pair.getValue(), values);
+                elements.put(pair.getKey().getSimpleName().toString(), values);
+            }
+            String name = annotation.getAnnotationType().asElement().getSimpleName().toString();
+            if (!index.containsKey(name)) {
+                index.put(name, elements);
+            }
+        }
+        return new AnnotationIndex(index);
+    }
+
+    /**
+     * @param annotationName The annotation name.
+     * @return {@code true} if the annotation exists.
+     */
+    boolean isAnnotatedWith(final String annotationName) {
+        return annotations.containsKey(annotationName);
+    }
+
+    /**
+     * Gets the values of an annotation element.
+     *
+     * @param annotationName The annotation name.
+     * @param element The element name.
+     * @return The values, or an empty list if the annotation or element
+     *          does not exist.
+     */
+    List<String> getValues(final String annotationName, final String element) {
+        Map<String, List<String>> elements = annotations.get(annotationName);
+        if (elements == null) {
+            return Collections.emptyList();
+        }
+        List<String> values = elements.get(element);
+        if (values == null) {
+            return Collections.emptyList();
+        }
+        return values;
+    }
+
+    /**
+     * Gets the first value of an annotation element.
+     *
+     * @param annotationName The annotation name.
+     * @param element The element name.
+     * @return The value, or an empty string if not found.
+     */
+    String getFirstValue(final String annotationName, final String element) {
+        List<String> values = getValues(annotationName, element);
+        return values.isEmpty() ? "" : values.get(0);
+    }
+
+    /**
+     * Gets the values of an annotation element as a single string.
+     *
+     * @param annotationName The annotation name.
+     * @param element The element name.
+     * @return The comma separated values, or an empty string if not found.
+     */
+    String getValue(final String annotationName, final String element) {
+        List<String> values = getValues(annotationName, element);
+        if (values.size() == 1) {
+            return values.get(0);
+        }
+        StringBuilder value = new StringBuilder();
+        String sep = "";
+        for (String option : values) {
+            value.append(sep).append(option);
+            sep = SEPARATOR;
+        }
+        return value.toString();
+    }
+
+    /**
+     * Parses an annotation value, flattening arrays.
+     *
+     * @param value The annotation value.
+     * @param values The list to add the parsed values to.
+     */
+    private static void addValues(final AnnotationValue value, final List<String> values) {
+        if (value == null) {
+            return;
+        }
+        Object raw = value.getValue();
+        if (raw instanceof List) {
+            for (Object element : (List<?>) raw) {
+                addValues((AnnotationValue) element, values);
+            }
+        } else if (raw instanceof VariableElement) {
+            /* enum constants, such as RequestMethod.GET */
+            values.add(((VariableElement) raw).getSimpleName().toString());
+        } else if (raw instanceof TypeMirror) {
+            values.add(raw.toString());
+        } else {
+            values.add(String.valueOf(raw));
+        }
+    }
+}
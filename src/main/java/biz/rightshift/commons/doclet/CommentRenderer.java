@@ -0,0 +1,256 @@
+package biz.rightshift.commons.doclet;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Renders the inline tags of a javadoc comment as HTML, in a single pass
+ * over the comment.
+ *
+ * {@code {@code}} becomes escaped code, {@code {@literal}} escaped text and
+ * {@code {@link}} and {@code {@linkplain}} anchors to documented endpoints
+ * and request body types. Any other inline tag is replaced by its text.
+ * The rest of the comment is already HTML and is copied as it is.
+ *
+ * Links are rendered to anchors on the same page. When the output is split
+ * into pages, each page is rewritten once rendered, so that links to
+ * anchors on other pages name the page.
+ */
+final class CommentRenderer {
+
+    /** The start of a link to an anchor on the same page. */
+    private static final String LINK_START = "<a href=\"#";
+
+    private static final String TAG_START = "{@";
+    private static final int INITIAL_CAPACITY = 256;
+
+    /** Each thread renders into a buffer of its own, reused between comments. */
+    private static final ThreadLocal<StringBuilder> BUFFERS = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(INITIAL_CAPACITY);
+        }
+    };
+
+    private CommentRenderer() {
+        // Prevent Instantiation.
+    }
+
+    /**
+     * Renders a comment.
+     *
+     * @param comment The comment, as javadoc's raw text.
+     * @param links The targets of {@code {@link}} tags.
+     * @param context The qualified name of the class the comment belongs to.
+     * @return The comment as HTML.
+     */
+    static String render(final String comment, final LinkTargets links, final String context) {
+        int tag = comment.indexOf(TAG_START);
+        if (tag < 0) {
+            return comment;
+        }
+        StringBuilder output = BUFFERS.get();
+        output.setLength(0);
+        int copied = 0;
+        while (tag >= 0) {
+            int nameEnd = tag + TAG_START.length();
+            while (nameEnd < comment.length() && Character.isJavaIdentifierPart(comment.charAt(nameEnd))) {
+                nameEnd++;
+            }
+            if (nameEnd == tag + TAG_START.length()) {
+                /* not a tag after all */
+                tag = comment.indexOf(TAG_START, tag + 1);
+                continue;
+            }
+            int end = findClosingBrace(comment, nameEnd);
+            if (end < 0) {
+                /* never closed, leave the rest of the comment as it is */
+                break;
+            }
+            output.append(comment, copied, tag);
+            int textStart = skipWhitespace(comment, nameEnd, end);
+            int textEnd = end;
+            while (textEnd > textStart && Character.isWhitespace(comment.charAt(textEnd - 1))) {
+                textEnd--;
+            }
+            renderTag(comment.substring(tag + TAG_START.length(), nameEnd),
+                    comment, textStart, textEnd, links, context, output);
+            copied = end + 1;
+            tag = comment.indexOf(TAG_START, copied);
+        }
+        output.append(comment, copied, comment.length());
+        return output.toString();
+    }
+
+    /**
+     * Rewrites the links of a page to anchors that are on other pages.
+     *
+     * @param html The page, as rendered.
+     * @param pages The page each anchor is on.
+     * @param anchors The anchors on this page, which links keep pointing
+     *          at, even if another page has them too.
+     * @param via The page to link to, which forwards to the page the anchor
+     *          is on, or {@code null} to link to that page directly.
+     * @return The page, linking to other pages where it needs to.
+     */
+    static String linkToPages(
+            final String html,
+            final Map<String, String> pages,
+            final Set<String> anchors,
+            final String via) {
+        int link = html.indexOf(LINK_START);
+        if (link < 0) {
+            return html;
+        }
+        StringBuilder output = new StringBuilder(html.length() + INITIAL_CAPACITY);
+        int copied = 0;
+        while (link >= 0) {
+            int start = link + LINK_START.length();
+            int end = html.indexOf('"', start);
+            if (end < 0) {
+                break;
+            }
+            String anchor = html.substring(start, end);
+            String page = pages.get(anchor);
+            if (page != null && !anchors.contains(anchor)) {
+                output.append(html, copied, start - 1).append(via == null ? page : via);
+                copied = start - 1;
+            }
+            link = html.indexOf(LINK_START, end);
+        }
+        output.append(html, copied, html.length());
+        return output.toString();
+    }
+
+    private static void renderTag(
+            final String name,
+            final String comment,
+            final int start,
+            final int end,
+            final LinkTargets links,
+            final String context,
+            final StringBuilder output) {
+        switch (name) {
+            case "code":
+                output.append("<code>");
+                escape(comment, start, end, output);
+                output.append("</code>");
+                break;
+            case "literal":
+                escape(comment, start, end, output);
+                break;
+            case "link":
+            case "linkplain":
+                renderLink(comment, start, end, "link".equals(name), links, context, output);
+                break;
+            default:
+                output.append(comment, start, end);
+                break;
+        }
+    }
+
+    /**
+     * Renders a {@code {@link}} tag, as an anchor if its reference resolves.
+     * The label, if given, is HTML already, otherwise the reference is shown.
+     */
+    private static void renderLink(
+            final String comment,
+            final int start,
+            final int end,
+            final boolean code,
+            final LinkTargets links,
+            final String context,
+            final StringBuilder output) {
+        int referenceEnd = start;
+        int parentheses = 0;
+        while (referenceEnd < end) {
+            char c = comment.charAt(referenceEnd);
+            if (c == '(') {
+                parentheses++;
+            } else if (c == ')') {
+                parentheses--;
+            } else if (parentheses == 0 && Character.isWhitespace(c)) {
+                break;
+            }
+            referenceEnd++;
+        }
+        String reference = comment.substring(start, referenceEnd);
+        int labelStart = skipWhitespace(comment, referenceEnd, end);
+
+        String anchor = links == null ? null : links.resolve(reference, context);
+        if (anchor != null) {
+            output.append(LINK_START);
+            escape(anchor, 0, anchor.length(), output);
+            output.append("\">");
+        }
+        if (code) {
+            output.append("<code>");
+        }
+        if (labelStart < end) {
+            output.append(comment, labelStart, end);
+        } else {
+            int member = reference.indexOf('#');
+            if (member > 0) {
+                escape(reference, 0, member, output);
+                output.append('.');
+            }
+            escape(reference, member + 1, reference.length(), output);
+        }
+        if (code) {
+            output.append("</code>");
+        }
+        if (anchor != null) {
+            output.append("</a>");
+        }
+    }
+
+    /**
+     * @param comment The comment.
+     * @param from Where the tag's text starts.
+     * @return The index of the brace closing the tag, allowing for balanced
+     *          braces within it, or -1 if it is not closed.
+     */
+    private static int findClosingBrace(final String comment, final int from) {
+        int depth = 1;
+        for (int i = from; i < comment.length(); i++) {
+            char c = comment.charAt(i);
+            if (c == '{') {
+                depth++;
+            } else if (c == '}' && --depth == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipWhitespace(final String text, final int from, final int end) {
+        int index = from;
+        while (index < end && Character.isWhitespace(text.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+
+    private static void escape(final String text, final int start, final int end, final StringBuilder output) {
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<':
+                    output.append("&lt;");
+                    break;
+                case '>':
+                    output.append("&gt;");
+                    break;
+                case '&':
+                    output.append("&amp;");
+                    break;
+                case '"':
+                    output.append("&quot;");
+                    break;
+                default:
+                    output.append(c);
+                    break;
+            }
+        }
+    }
+}
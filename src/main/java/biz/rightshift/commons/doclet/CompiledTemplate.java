@@ -0,0 +1,37 @@
+package biz.rightshift.commons.doclet;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * A Velocity template compiled into Java by {@link TemplateCompiler}, which
+ * renders what the template would without parsing it or looking up its
+ * references by reflection.
+ *
+ * Compiled templates are found with {@link java.util.ServiceLoader}, and
+ * are only used while the template they were compiled from is unchanged.
+ */
+public interface CompiledTemplate {
+
+    /**
+     * @return The name of the template on the class path.
+     */
+    String getTemplateName();
+
+    /**
+     * @return A digest of the template, as it was compiled.
+     */
+    String getTemplateDigest();
+
+    /**
+     * Renders the template.
+     *
+     * @param values The values to make available to the template, which are
+     *          looked up as they are referred to, and may be added to while
+     *          the template renders.
+     * @param output The writer to render to.
+     * @throws IOException If the output cannot be written.
+     */
+    void render(Map<String, Object> values, Writer output) throws IOException;
+}
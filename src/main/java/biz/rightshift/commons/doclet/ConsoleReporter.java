@@ -0,0 +1,22 @@
+package biz.rightshift.commons.doclet;
+
+/**
+ * Reports messages on the console, for the tools that run outside javadoc.
+ */
+final class ConsoleReporter implements DocletReporter {
+
+    @Override
+    public void printError(final String message) {
+        System.err.println("error: " + message);
+    }
+
+    @Override
+    public void printWarning(final String message) {
+        System.err.println("warning: " + message);
+    }
+
+    @Override
+    public void printNotice(final String message) {
+        System.out.println(message);
+    }
+}
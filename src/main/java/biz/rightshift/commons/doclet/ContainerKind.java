@@ -0,0 +1,18 @@
+package biz.rightshift.commons.doclet;
+
+/**
+ * The kinds of container a type description looks through, to describe
+ * what the container holds.
+ */
+enum ContainerKind {
+    /** Not a container. */
+    NONE,
+    /** An array, containing its component type. */
+    ARRAY,
+    /** A {@code java.util.Collection}, containing its element type. */
+    COLLECTION,
+    /** A {@code java.util.Map}, containing its key type then its value type. */
+    MAP,
+    /** An {@code Optional}, containing its value type. */
+    OPTIONAL
+}
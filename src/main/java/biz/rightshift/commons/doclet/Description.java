@@ -2,16 +2,23 @@ package biz.rightshift.commons.doclet;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.sun.javadoc.ClassDoc;
 import com.sun.javadoc.FieldDoc;
 import com.sun.javadoc.MethodDoc;
 import com.sun.javadoc.Type;
+import com.sun.javadoc.TypeVariable;
+import com.sun.javadoc.WildcardType;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Descriptions customizer for SpringWebServicesRestApiDoclet.
@@ -20,17 +27,85 @@ public final class Description {
 
     private static volatile List<String> describableTypes = new ArrayList<>();
 
+    private static volatile DescriptionOptions options = DescriptionOptions.DEFAULT;
+
+    /** How a value of a type that cannot be determined is described. */
+    private static final String UNKNOWN_TYPE = "Object";
+    private static final String ARRAY_DIMENSION = "[]";
+
+    /** Shared, immutable (and therefore thread-safe) JSON writer. */
+    private static final ObjectWriter WRITER = new ObjectMapper().writerWithDefaultPrettyPrinter();
+
+    /** Type descriptions already built during this run, keyed by qualified type name. */
+    private static final Map<String, CachedDescription> DESCRIPTIONS = new ConcurrentHashMap<>();
+
+    /** Serialized type descriptions already built during this run, keyed by qualified type name. */
+    private static final Map<String, String> SERIALIZED_DESCRIPTIONS = new ConcurrentHashMap<>();
+
+    /** Types described as components during this run, keyed by qualified type name. */
+    private static final Map<String, Component> COMPONENTS = new ConcurrentHashMap<>();
+
+    /** Types already resolved during this run, by qualified type name. */
+    private static final Set<String> RESOLVED =
+        Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /** The types each thread is currently describing. */
+    private static final ThreadLocal<DescriptionStack> IN_PROGRESS = new ThreadLocal<DescriptionStack>() {
+        @Override
+        protected DescriptionStack initialValue() {
+            return new DescriptionStack();
+        }
+    };
+
     private Description() {
         // Prevent Instantiation.
     }
 
+    /**
+     * Discards all descriptions built so far. Should be called at
+     * the start of each run.
+     */
+    public static void reset() {
+        DESCRIPTIONS.clear();
+        SERIALIZED_DESCRIPTIONS.clear();
+        COMPONENTS.clear();
+        RESOLVED.clear();
+        IN_PROGRESS.remove();
+        TypeHierarchy.reset();
+    }
+
+    /**
+     * @return The number of type descriptions built so far in this run, not
+     *          counting types only referred to by name.
+     */
+    public static int getDescribedTypeCount() {
+        return DESCRIPTIONS.size() + COMPONENTS.size();
+    }
+
+    /**
+     * Sets how types are described, including which types to describe.
+     *
+     * @param descriptionOptions The options.
+     */
+    static void setOptions(final DescriptionOptions descriptionOptions) {
+        setDescribeTypes(descriptionOptions.getDescribeTypes());
+        Description.options = descriptionOptions;
+    }
+
+    /**
+     * @return How types are described.
+     */
+    static DescriptionOptions getOptions() {
+        return options;
+    }
+
     /**
      * Mutator for the list of Types to describe.
      * @param describeTypes  List of String of describable types.
      */
     public static void setDescribeTypes(final List<String> describeTypes) {
         if (Description.describableTypes != null) {
-            Description.describableTypes = describeTypes;
+            Description.describableTypes = Collections.unmodifiableList(new ArrayList<>(describeTypes));
         }
     }
 
@@ -41,12 +116,64 @@ public final class Description {
      * @return A JSON representation of the type.
      */
     public static String describeType(final Type type) {
+        String key = type.toString();
+
+        String serialized = SERIALIZED_DESCRIPTIONS.get(key);
+        if (serialized != null) {
+            return serialized;
+        }
+
+        serialized = serialize(describeValue(type));
+        if (serialized != null) {
+            SERIALIZED_DESCRIPTIONS.put(key, serialized);
+        }
+        return serialized;
+    }
+
+    /**
+     * Gets the components that the description of a type refers to,
+     * directly or through other components.
+     *
+     * @param type A type that has been described during this run.
+     * @return The components' descriptions as JSON strings, by qualified
+     *          type name, in name order.
+     */
+    static Map<String, String> getComponents(final Type type) {
+        if (!options.isComponents()) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> components = new TreeMap<>();
+        for (String name : getReachableTypes(type)) {
+            Component component = COMPONENTS.get(name);
+            if (component != null) {
+                components.put(name, component.description);
+            }
+        }
+        return components;
+    }
+
+    /**
+     * @param type A request body type.
+     * @return {@code true} if the type is described as a component, rather
+     *          than as a container, an enum or by name.
+     */
+    static boolean isComponent(final Type type) {
+        if (!options.isComponents() || type.isPrimitive() || type.asTypeVariable() != null
+                || TypeHierarchy.getContainer(type).getKind() != ContainerKind.NONE) {
+            return false;
+        }
         ClassDoc classDoc = type.asClassDoc();
+        return classDoc != null && shouldDescribe(classDoc) && !classDoc.isEnum();
+    }
 
-        Object typeDescription = describeType(classDoc);
+    /**
+     * @param description A description.
+     * @return The description as a JSON string, or {@code null} if it cannot
+     *          be written.
+     */
+    private static String serialize(final Object description) {
         try {
-            ObjectMapper mapper = new ObjectMapper();
-            return mapper.writerWithDefaultPrettyPrinter().writeValueAsString(typeDescription);
+            return WRITER.writeValueAsString(description);
         } catch (JsonProcessingException e) {
             System.err.println("Failed to parse type " + e.getMessage());
         }
@@ -66,29 +193,49 @@ public final class Description {
         if (shouldDescribe(type)) {
             if (type.isEnum()) {
                 /* handle enums */
+                IN_PROGRESS.get().reached(Collections.singleton(type.qualifiedTypeName()));
                 return describeEnum(type.enumConstants());
+            } else if (options.isComponents()) {
+                return describeComponent(type);
             } else {
                 /* otherwise its a type */
-                Map<String, Object> description = new HashMap<>();
-                for (MethodDoc method : type.methods()) {
-                    Type returnType = method.returnType();
-                    if (!"void".equals(returnType.typeName())) {
-                        if (method.name().startsWith("get") || method.name().startsWith("is")) {
-                            String name = asFieldName(method);
-                            Object fieldDescription;
-                            if (returnType.isPrimitive()) {
-                                fieldDescription = returnType.typeName();
-                            } else if (returnType.asParameterizedType() != null && isTypeOf(Collection.class, returnType)) {
-                                Object typeParameterDesc =
-                                    describeType(returnType.asParameterizedType().typeArguments()[0].asClassDoc());
-                                fieldDescription = Arrays.asList(typeParameterDesc);
-                            } else {
-                                fieldDescription = describeType(returnType.asClassDoc());
-                            }
-                            description.put(name, fieldDescription);
-                        }
-                    }
+                String key = type.qualifiedTypeName();
+                DescriptionStack inProgress = IN_PROGRESS.get();
+                if (inProgress.isDescribing(key)) {
+                    /* a cycle, refer to the type by name rather than recursing */
+                    inProgress.reached(Collections.singleton(key));
+                    return type.simpleTypeName();
                 }
+                if (inProgress.depth() >= options.getMaxDepth()) {
+                    /* too deep, refer to the type by name */
+                    return type.simpleTypeName();
+                }
+
+                String cacheKey = getCacheKey(key, inProgress.depth());
+                CachedDescription cached = DESCRIPTIONS.get(cacheKey);
+                if (cached != null && !inProgress.isDescribingAny(cached.reachable)) {
+                    inProgress.reached(cached.reachable);
+                    return cached.description;
+                }
+
+                inProgress.push(key);
+                Object description;
+                Set<String> reachable;
+                try {
+                    description = describeFields(type);
+                } finally {
+                    reachable = inProgress.pop();
+                }
+
+                /*
+                 * only keep descriptions that do not lead back to a type
+                 * further up the stack, as these depend on how the type was
+                 * reached.
+                 */
+                if (!inProgress.isDescribingAny(reachable)) {
+                    DESCRIPTIONS.put(cacheKey, new CachedDescription(description, reachable));
+                }
+                inProgress.reached(reachable);
                 return description;
             }
         } else {
@@ -96,6 +243,269 @@ public final class Description {
         }
     }
 
+    /**
+     * Describes a type once, as a component, and refers to it.
+     *
+     * Components refer to each other rather than nesting, so a component's
+     * description is the same however it was reached, and cycles need no
+     * special handling.
+     *
+     * @param type The type to describe.
+     * @return A reference to the type's component.
+     */
+    private static Object describeComponent(final ClassDoc type) {
+        String key = type.qualifiedTypeName();
+        DescriptionStack inProgress = IN_PROGRESS.get();
+        inProgress.reached(Collections.singleton(key));
+        if (!inProgress.isDescribing(key) && !COMPONENTS.containsKey(key)) {
+            inProgress.push(key);
+            Object description;
+            Set<String> reachable;
+            try {
+                description = describeFields(type);
+            } finally {
+                reachable = inProgress.pop();
+            }
+            COMPONENTS.put(key, new Component(serialize(description), reachable));
+        }
+        return Collections.singletonMap(RestApiRequestBody.REFERENCE, key);
+    }
+
+    /**
+     * @param type The qualified type name.
+     * @param depth How many types deep the type is being described.
+     * @return The key to cache the type's description by, which includes
+     *          the depth if descriptions are cut off at some depth.
+     */
+    private static String getCacheKey(final String type, final int depth) {
+        return options.getMaxDepth() == DescriptionOptions.UNLIMITED ? type : type + "@" + depth;
+    }
+
+    /**
+     * Describes a value of a type. Arrays and collections are described as a
+     * list of their element, maps as an object with a single field named
+     * after the key type in braces, and optional values as their content.
+     *
+     * @param type The type of the value.
+     * @return A representation of the value.
+     */
+    private static Object describeValue(final Type type) {
+        Type valueType = getValueType(type);
+        if (valueType == null) {
+            return UNKNOWN_TYPE;
+        }
+        TypeHierarchy.Container container = TypeHierarchy.getContainer(valueType);
+        switch (container.getKind()) {
+            case ARRAY:
+                return describeArray(valueType, container.getContent(0));
+            case COLLECTION:
+                return Arrays.asList(describeValue(container.getContent(0)));
+            case MAP:
+                return Collections.singletonMap(
+                        describeMapKey(container.getContent(0)), describeValue(container.getContent(1)));
+            case OPTIONAL:
+                return describeValue(container.getContent(0));
+            default:
+                if (valueType.isPrimitive()) {
+                    return valueType.typeName();
+                }
+                return describeType(valueType.asClassDoc());
+        }
+    }
+
+    /**
+     * Describes an array as a list of its element, nested for each of its
+     * dimensions.
+     *
+     * @param type The array type.
+     * @param element The innermost element type, or {@code null} if it is
+     *          primitive.
+     * @return A representation of the array.
+     */
+    private static Object describeArray(final Type type, final Type element) {
+        Object description = element == null ? type.typeName() : describeValue(element);
+        for (int i = 0; i < type.dimension().length(); i += ARRAY_DIMENSION.length()) {
+            description = Arrays.asList(description);
+        }
+        return description;
+    }
+
+    /**
+     * @param type The key type of a map.
+     * @return The name of the field that describes the map's entries.
+     */
+    private static String describeMapKey(final Type type) {
+        Type keyType = getValueType(type);
+        return "{" + (keyType == null ? UNKNOWN_TYPE : keyType.simpleTypeName()) + "}";
+    }
+
+    /**
+     * Gets the type a value will actually have, the upper bound of a
+     * wildcard or type variable. An array of a type variable is left as it
+     * is, as the array answers for its element.
+     *
+     * @param type The declared type, or {@code null} if not known.
+     * @return The type, or {@code null} if it cannot be determined.
+     */
+    private static Type getValueType(final Type type) {
+        if (type == null || !type.dimension().isEmpty()) {
+            return type;
+        }
+        WildcardType wildcard = type.asWildcardType();
+        if (wildcard != null) {
+            Type[] bounds = wildcard.extendsBounds();
+            return bounds.length == 0 ? null : getValueType(bounds[0]);
+        }
+        TypeVariable variable = type.asTypeVariable();
+        if (variable != null) {
+            Type[] bounds = variable.bounds();
+            return bounds.length == 0 ? null : getValueType(bounds[0]);
+        }
+        return type;
+    }
+
+    /**
+     * Gets the types that the description of a type reaches, including the
+     * type itself, or the types it contains. Types described by name only
+     * are not included.
+     *
+     * @param type A type that has been described during this run.
+     * @return The qualified names of the types.
+     */
+    public static Set<String> getReachableTypes(final Type type) {
+        Type valueType = getValueType(type);
+        if (valueType == null || valueType.isPrimitive() && valueType.dimension().isEmpty()) {
+            return Collections.emptySet();
+        }
+        TypeHierarchy.Container container = TypeHierarchy.getContainer(valueType);
+        switch (container.getKind()) {
+            case ARRAY:
+            case COLLECTION:
+            case OPTIONAL:
+                return getReachableTypes(container.getContent(0));
+            case MAP:
+                Set<String> reachable = new HashSet<>(getReachableTypes(container.getContent(0)));
+                reachable.addAll(getReachableTypes(container.getContent(1)));
+                return reachable;
+            default:
+                ClassDoc classDoc = valueType.asClassDoc();
+                if (classDoc == null || !shouldDescribe(classDoc)) {
+                    return Collections.emptySet();
+                }
+                String key = classDoc.qualifiedTypeName();
+                if (options.isComponents()) {
+                    return getReachableComponents(key);
+                }
+                CachedDescription cached = DESCRIPTIONS.get(getCacheKey(key, 0));
+                return cached == null ? Collections.singleton(key) : cached.reachable;
+        }
+    }
+
+    /**
+     * @param type The qualified name of a type described as a component.
+     * @return The qualified names of the type and the types its component
+     *          refers to, directly or through other components.
+     */
+    private static Set<String> getReachableComponents(final String type) {
+        Set<String> reachable = new HashSet<>();
+        List<String> pending = new ArrayList<>();
+        pending.add(type);
+        while (!pending.isEmpty()) {
+            String name = pending.remove(pending.size() - 1);
+            if (reachable.add(name)) {
+                Component component = COMPONENTS.get(name);
+                if (component != null) {
+                    pending.addAll(component.reachable);
+                }
+            }
+        }
+        return reachable;
+    }
+
+    /**
+     * Walks the types that describing a type would reach, without describing
+     * them, so that javadoc resolves them up front.
+     *
+     * The javadoc model resolves types lazily and is not safe for concurrent
+     * use while it does so. Once resolved, types may be described concurrently.
+     *
+     * @param type The type to resolve.
+     */
+    public static void resolve(final Type type) {
+        Type valueType = getValueType(type);
+        if (valueType == null) {
+            return;
+        }
+        TypeHierarchy.Container container = TypeHierarchy.getContainer(valueType);
+        switch (container.getKind()) {
+            case ARRAY:
+            case COLLECTION:
+            case OPTIONAL:
+                resolve(container.getContent(0));
+                break;
+            case MAP:
+                describeMapKey(container.getContent(0));
+                resolve(container.getContent(0));
+                resolve(container.getContent(1));
+                break;
+            default:
+                valueType.typeName();
+                if (!valueType.isPrimitive()) {
+                    resolveClass(valueType.asClassDoc());
+                }
+                break;
+        }
+    }
+
+    /**
+     * @param type The class to resolve.
+     */
+    private static void resolveClass(final ClassDoc type) {
+        if (type == null || !shouldDescribe(type) || !RESOLVED.add(type.qualifiedTypeName())) {
+            return;
+        }
+        type.simpleTypeName();
+        if (type.isEnum()) {
+            for (FieldDoc option : type.enumConstants()) {
+                option.name();
+            }
+        } else {
+            for (MethodDoc method : type.methods()) {
+                method.name();
+                resolve(method.returnType());
+            }
+        }
+    }
+
+    /**
+     * Describes the fields of a type, as exposed by its getters.
+     *
+     * @param type The type to describe.
+     * @return A map of field names to their descriptions.
+     */
+    private static Map<String, Object> describeFields(final ClassDoc type) {
+        Map<String, Object> description = new HashMap<>();
+        Set<String> omitted = new HashSet<>();
+        int maxFields = options.getMaxFields();
+        for (MethodDoc method : type.methods()) {
+            Type returnType = method.returnType();
+            if (!"void".equals(returnType.typeName())) {
+                if (method.name().startsWith("get") || method.name().startsWith("is")) {
+                    String name = asFieldName(method);
+                    if (description.size() < maxFields || description.containsKey(name)) {
+                        description.put(name, describeValue(returnType));
+                    } else {
+                        omitted.add(name);
+                    }
+                }
+            }
+        }
+        if (!omitted.isEmpty()) {
+            description.put(RestApiRequestBody.MORE_FIELDS, omitted.size() + " more fields");
+        }
+        return description;
+    }
+
     /**
      * Indicates whether a type is to be described.
      * Typically, the type needs to not be a java String,
@@ -119,29 +529,6 @@ public final class Description {
         return false;
     }
 
-    /**
-     * @param type The type to check against.
-     * @param candidate The type to check.
-     * @return {@code true} if the provided class is of the given type.
-     */
-    private static boolean isTypeOf(final Class<?> type, final Type candidate) {
-        if (candidate == null) {
-            return false;
-        }
-        if (candidate.qualifiedTypeName().equals(type.getName())) {
-            return true;
-        }
-        if (isTypeOf(type, candidate.asClassDoc().superclassType())) {
-            return true;
-        }
-        for (Type interfaceType : candidate.asClassDoc().interfaceTypes()) {
-            if (interfaceType.qualifiedTypeName().equals(type.getName())) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     /**
      * Describes an enum as a BNF set of options.
      *
@@ -187,4 +574,116 @@ public final class Description {
         return fieldName.toString();
     }
 
+    /**
+     * A type described as a component, along with the types it refers to.
+     */
+    private static final class Component {
+
+        private final String description;
+        private final Set<String> reachable;
+
+        /**
+         * @param description The component's description, as a JSON string.
+         * @param reachable The types the description refers to, including itself.
+         */
+        Component(final String description, final Set<String> reachable) {
+            this.description = description;
+            this.reachable = reachable;
+        }
+    }
+
+    /**
+     * A type description along with the types it reaches.
+     */
+    private static final class CachedDescription {
+
+        private final Object description;
+        private final Set<String> reachable;
+
+        /**
+         * @param description The type description.
+         * @param reachable The types reached while describing the type, including itself.
+         */
+        CachedDescription(final Object description, final Set<String> reachable) {
+            this.description = description;
+            this.reachable = reachable;
+        }
+    }
+
+    /**
+     * The types a thread is currently describing.
+     *
+     * A description depends only on the type and the types being described
+     * around it, so descriptions come out the same regardless of which
+     * descriptions other threads have already cached.
+     */
+    private static final class DescriptionStack {
+
+        /** The types being described, outermost first. */
+        private final List<String> types = new ArrayList<>();
+
+        /** The types reached so far by each of the types being described. */
+        private final List<Set<String>> reached = new ArrayList<>();
+
+        /**
+         * @param type The qualified type name.
+         * @return {@code true} if the type is being described.
+         */
+        boolean isDescribing(final String type) {
+            return types.contains(type);
+        }
+
+        /**
+         * @param candidates The qualified type names.
+         * @return {@code true} if any of the types are being described.
+         */
+        boolean isDescribingAny(final Set<String> candidates) {
+            for (String type : types) {
+                if (candidates.contains(type)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return How many types are being described.
+         */
+        int depth() {
+            return types.size();
+        }
+
+        /**
+         * Starts describing a type.
+         *
+         * @param type The qualified type name.
+         */
+        void push(final String type) {
+            types.add(type);
+            reached.add(new HashSet<String>());
+        }
+
+        /**
+         * Finishes describing the innermost type.
+         *
+         * @return The types reached while describing it, including itself.
+         */
+        Set<String> pop() {
+            String type = types.remove(types.size() - 1);
+            Set<String> reachable = reached.remove(reached.size() - 1);
+            reachable.add(type);
+            return reachable;
+        }
+
+        /**
+         * Records types reached by the innermost type being described.
+         *
+         * @param types The qualified type names.
+         */
+        void reached(final Set<String> types) {
+            if (!reached.isEmpty()) {
+                reached.get(reached.size() - 1).addAll(types);
+            }
+        }
+    }
 }
@@ -0,0 +1,160 @@
+package biz.rightshift.commons.doclet;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * How request body types are described: which types, whether each is
+ * described once as a component, and how much of each is described. Also
+ * how many elements collections are assumed to have when the size of a
+ * body is estimated, and the size beyond which a body is over budget.
+ */
+final class DescriptionOptions {
+
+    /** A limit that does not limit. */
+    static final int UNLIMITED = Integer.MAX_VALUE;
+
+    /** The number of elements a collection is assumed to have, typically. */
+    static final int DEFAULT_TYPICAL_CARDINALITY = 10;
+
+    /** The number of elements a collection is assumed to have, at most. */
+    static final int DEFAULT_MAX_CARDINALITY = 1000;
+
+    /** Describes every type, inline, in full. */
+    static final DescriptionOptions DEFAULT =
+            new DescriptionOptions(Collections.<String>emptyList(), false, UNLIMITED, UNLIMITED);
+
+    private static final String CARDINALITY_SEPARATOR = ",";
+
+    private final List<String> describeTypes;
+    private final boolean components;
+    private final int maxDepth;
+    private final int maxFields;
+    private final int typicalCardinality;
+    private final int maxCardinality;
+    private final long sizeBudget;
+
+    /**
+     * @param describeTypes The package prefixes of the types to describe, or
+     *          an empty list to describe all types.
+     * @param components Whether to describe each type once, as a component
+     *          that descriptions refer to, rather than inline.
+     * @param maxDepth How many types deep to describe inline, beyond which
+     *          types are referred to by name.
+     * @param maxFields How many fields of a type to describe.
+     */
+    DescriptionOptions(
+            final List<String> describeTypes,
+            final boolean components,
+            final int maxDepth,
+            final int maxFields) {
+        this(describeTypes, components, maxDepth, maxFields,
+                DEFAULT_TYPICAL_CARDINALITY, DEFAULT_MAX_CARDINALITY, UNLIMITED);
+    }
+
+    /**
+     * @param describeTypes The package prefixes of the types to describe, or
+     *          an empty list to describe all types.
+     * @param components Whether to describe each type once, as a component
+     *          that descriptions refer to, rather than inline.
+     * @param maxDepth How many types deep to describe inline, beyond which
+     *          types are referred to by name.
+     * @param maxFields How many fields of a type to describe.
+     * @param typicalCardinality How many elements a collection is assumed to
+     *          have, typically.
+     * @param maxCardinality How many elements a collection is assumed to
+     *          have, at most.
+     * @param sizeBudget The typical size in bytes beyond which a body is
+     *          over budget.
+     */
+    DescriptionOptions(
+            final List<String> describeTypes,
+            final boolean components,
+            final int maxDepth,
+            final int maxFields,
+            final int typicalCardinality,
+            final int maxCardinality,
+            final long sizeBudget) {
+        this.describeTypes = describeTypes;
+        this.components = components;
+        this.maxDepth = maxDepth;
+        this.maxFields = maxFields;
+        this.typicalCardinality = typicalCardinality;
+        this.maxCardinality = maxCardinality;
+        this.sizeBudget = sizeBudget;
+    }
+
+    /**
+     * Reads the typical and maximum number of elements collections are
+     * assumed to have, as given by an option.
+     *
+     * @param cardinality The typical and maximum cardinality, separated by a
+     *          comma, such as {@code 10,1000}.
+     * @return The typical and maximum cardinality, or {@code null} if they
+     *          aren't two numbers, the first no more than the second.
+     */
+    static int[] parseCardinality(final String cardinality) {
+        String[] values = cardinality.split(CARDINALITY_SEPARATOR);
+        if (values.length != 2) {
+            return null;
+        }
+        try {
+            int typical = Integer.parseInt(values[0].trim());
+            int max = Integer.parseInt(values[1].trim());
+            return typical < 0 || max < typical ? null : new int[] {typical, max};
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * @return The package prefixes of the types to describe, or an empty
+     *          list to describe all types.
+     */
+    List<String> getDescribeTypes() {
+        return describeTypes;
+    }
+
+    /**
+     * @return Whether to describe each type once, as a component.
+     */
+    boolean isComponents() {
+        return components;
+    }
+
+    /**
+     * @return How many types deep to describe inline.
+     */
+    int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @return How many fields of a type to describe.
+     */
+    int getMaxFields() {
+        return maxFields;
+    }
+
+    /**
+     * @return How many elements a collection is assumed to have, typically.
+     */
+    int getTypicalCardinality() {
+        return typicalCardinality;
+    }
+
+    /**
+     * @return How many elements a collection is assumed to have, at most.
+     */
+    int getMaxCardinality() {
+        return maxCardinality;
+    }
+
+    /**
+     * @return The typical size in bytes beyond which a body is over budget,
+     *          or {@link #UNLIMITED} if there is no budget.
+     */
+    long getSizeBudget() {
+        return sizeBudget;
+    }
+}
@@ -0,0 +1,22 @@
+package biz.rightshift.commons.doclet;
+
+/**
+ * Reports messages to the javadoc tool, whichever doclet API it runs.
+ */
+interface DocletReporter {
+
+    /**
+     * @param message An error.
+     */
+    void printError(String message);
+
+    /**
+     * @param message A warning.
+     */
+    void printWarning(String message);
+
+    /**
+     * @param message An informational message.
+     */
+    void printNotice(String message);
+}
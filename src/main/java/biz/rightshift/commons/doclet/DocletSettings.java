@@ -0,0 +1,625 @@
+package biz.rightshift.commons.doclet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The custom options of the doclet, as given to the javadoc tool.
+ */
+final class DocletSettings {
+
+    static final String FORMAT_HTML = "html";
+    static final String FORMAT_JSON = "json";
+    static final String FORMAT_OPENAPI = "openapi";
+    static final String FORMAT_MODEL = "model";
+    static final String FORMAT_SEARCH = "search";
+    static final String FORMAT_ROUTES = "routes";
+    static final String FORMAT_LOADTEST = "loadtest";
+    static final String SHARD_BY_CONTROLLER = "controller";
+    static final String SHARD_BY_PREFIX = "prefix";
+
+    /** The most threads that can be used, the most a {@code ForkJoinPool} allows. */
+    static final int MAX_THREADS = 32767;
+
+    private static final String DEFAULT_OUTPUT_FILE = "index.html";
+    private static final String DEFAULT_JSON_OUTPUT_FILE = "api.json";
+    private static final String DEFAULT_OPENAPI_OUTPUT_FILE = "openapi.json";
+    private static final String DEFAULT_MODEL_OUTPUT_FILE = "model.json";
+    private static final String DEFAULT_SEARCH_OUTPUT_FILE = "search.html";
+    private static final String DEFAULT_ROUTES_OUTPUT_FILE = "routes.bin";
+    private static final String DEFAULT_LOADTEST_OUTPUT_FILE = "loadtest.json";
+    private static final String DEFAULT_TEMPLATE_NAME = "rest_api_template.vm";
+    private static final String DEFAULT_HEADING = "JavaDoc API";
+    private static final String TEMPLATE_SUFFIX = ".vm";
+    private static final String FORMAT_SEPARATOR = ",";
+    private static final String OUTPUT_SEPARATOR = "=";
+
+    private static final String OPTION_PARAM_HEADING = "-heading";
+    private static final String OPTION_PARAM_TYPES = "-types";
+    private static final String OPTION_PARAM_OUTPUT = "-output";
+    private static final String OPTION_PARAM_TEMPLATE = "-template";
+    private static final String OPTION_PARAM_THREADS = "-threads";
+    private static final String OPTION_PARAM_CACHE = "-cache";
+    private static final String OPTION_PARAM_SHARD = "-shard";
+    private static final String OPTION_PARAM_CDN = "-cdn";
+    private static final String OPTION_PARAM_PIPELINE = "-pipeline";
+    private static final String OPTION_PARAM_FORMAT = "-format";
+    private static final String OPTION_PARAM_FORMATS = "-formats";
+    private static final String OPTION_PARAM_STATS = "-stats";
+    private static final String OPTION_PARAM_STATS_JSON = "-statsjson";
+    private static final String OPTION_PARAM_PERFORMANCE_REPORT = "-perfreport";
+    private static final String OPTION_PARAM_COMPONENTS = "-components";
+    private static final String OPTION_PARAM_MAX_DEPTH = "-maxdepth";
+    private static final String OPTION_PARAM_MAX_FIELDS = "-maxfields";
+    private static final String OPTION_PARAM_CARDINALITY = "-cardinality";
+    private static final String OPTION_PARAM_SIZE_BUDGET = "-sizebudget";
+
+    /** Each option's name, the name of its argument or {@code null} if it has none, and its description. */
+    private static final String[][] OPTIONS = {
+        {OPTION_PARAM_HEADING, "<heading>", "The page heading"},
+        {OPTION_PARAM_FORMAT, "<html|json|openapi|model|search|routes|loadtest>", "The output format"},
+        {OPTION_PARAM_OUTPUT, "<file>", "The output file"},
+        {OPTION_PARAM_FORMATS, "<format[=file],...>", "Write several formats, or templates, from one extraction"},
+        {OPTION_PARAM_TEMPLATE, "<template>", "The Velocity template on the class path to render HTML with"},
+        {OPTION_PARAM_TYPES, "<packages>", "Comma separated package prefixes of the types to describe"},
+        {OPTION_PARAM_COMPONENTS, null, "Describe each type once, and refer to it wherever it is used"},
+        {OPTION_PARAM_MAX_DEPTH, "<depth>", "How many types deep to describe request bodies"},
+        {OPTION_PARAM_MAX_FIELDS, "<fields>", "The most fields of a type to describe"},
+        {OPTION_PARAM_CARDINALITY, "<typical,max>", "How many elements collections are assumed to have"},
+        {OPTION_PARAM_SIZE_BUDGET, "<bytes>", "Warn of bodies whose typical size is over this budget"},
+        {OPTION_PARAM_THREADS, "<threads>", "The number of threads to use"},
+        {OPTION_PARAM_CACHE, "<directory>", "A directory to cache the rest calls of each controller in"},
+        {OPTION_PARAM_SHARD, "<controller|prefix>", "Split HTML output into a page per controller or URL prefix"},
+        {OPTION_PARAM_CDN, null, "Also write gzip copies, hashed page names and a manifest of ETags"},
+        {OPTION_PARAM_PIPELINE, "<controllers>", "Render controllers as they are extracted, this many at most waiting"},
+        {OPTION_PARAM_STATS, null, "Print timing and allocation statistics"},
+        {OPTION_PARAM_STATS_JSON, "<file>", "Write timing and allocation statistics as JSON"},
+        {OPTION_PARAM_PERFORMANCE_REPORT, "<file>", "Also write a report of each endpoint's performance contract"},
+    };
+
+    private String heading;
+    private String templateName;
+    private String format;
+    private String outputFile;
+    private String types;
+    private boolean components;
+    private int maxDepth = DescriptionOptions.UNLIMITED;
+    private int maxFields = DescriptionOptions.UNLIMITED;
+    private int typicalCardinality = DescriptionOptions.DEFAULT_TYPICAL_CARDINALITY;
+    private int maxCardinality = DescriptionOptions.DEFAULT_MAX_CARDINALITY;
+    private long sizeBudget = DescriptionOptions.UNLIMITED;
+    private int threads = 1;
+    private String shard;
+    private boolean cdn;
+    private int pipeline;
+    private File cacheDirectory;
+    private boolean printStats;
+    private String statsJsonFile;
+    private String performanceReportFile;
+    private List<DocletSettings> outputs;
+
+    private DocletSettings() {
+        // Use parse.
+    }
+
+    /**
+     * Returns an options length, the number of tokens including its name.
+     *
+     * @param option The option name.
+     * @return the number of tokens in the option, or 0 if it is not an
+     *          option of this doclet.
+     */
+    static int optionLength(final String option) {
+        for (String[] known : OPTIONS) {
+            if (known[0].equals(option)) {
+                return known[1] == null ? 1 : 2;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return The names of the options.
+     */
+    static List<String> getOptionNames() {
+        List<String> names = new ArrayList<>();
+        for (String[] known : OPTIONS) {
+            names.add(known[0]);
+        }
+        return Collections.unmodifiableList(names);
+    }
+
+    /**
+     * @param option The option name.
+     * @return The name of the option's argument, or {@code null} if it has none.
+     */
+    static String getOptionParameter(final String option) {
+        for (String[] known : OPTIONS) {
+            if (known[0].equals(option)) {
+                return known[1];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param option The option name.
+     * @return The option's description.
+     */
+    static String getOptionDescription(final String option) {
+        for (String[] known : OPTIONS) {
+            if (known[0].equals(option)) {
+                return known[2];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads the options.
+     *
+     * @param options The options, each its name followed by its argument.
+     * @param reporter Where to report invalid options.
+     * @return The settings, or {@code null} if an option is invalid.
+     */
+    static DocletSettings parse(final String[][] options, final DocletReporter reporter) {
+        DocletSettings settings = new DocletSettings();
+
+        String headingOption = getOptionValue(options, OPTION_PARAM_HEADING);
+        settings.heading = headingOption == null ? DEFAULT_HEADING : headingOption;
+
+        String templateOption = getOptionValue(options, OPTION_PARAM_TEMPLATE);
+        settings.templateName = templateOption == null ? DEFAULT_TEMPLATE_NAME : templateOption;
+
+        String formatOption = getOptionValue(options, OPTION_PARAM_FORMAT);
+        String outputFileOption = getOptionValue(options, OPTION_PARAM_OUTPUT);
+        String formatsOption = getOptionValue(options, OPTION_PARAM_FORMATS);
+        if (formatsOption != null && (formatOption != null || outputFileOption != null)) {
+            reporter.printWarning("Each of " + OPTION_PARAM_FORMATS + " names its own output, ignoring "
+                    + OPTION_PARAM_FORMAT + " and " + OPTION_PARAM_OUTPUT);
+            formatOption = null;
+            outputFileOption = null;
+        }
+        settings.format = formatOption == null ? FORMAT_HTML : formatOption;
+        String defaultOutputFile = getDefaultOutputFile(settings.format);
+        if (defaultOutputFile == null) {
+            reporter.printError(getInvalidFormatMessage(settings.format));
+            return null;
+        }
+        settings.outputFile = outputFileOption == null ? defaultOutputFile : outputFileOption;
+
+        settings.types = getOptionValue(options, OPTION_PARAM_TYPES);
+
+        settings.components = hasOption(options, OPTION_PARAM_COMPONENTS);
+        String maxDepthOption = getOptionValue(options, OPTION_PARAM_MAX_DEPTH);
+        if (maxDepthOption != null) {
+            settings.maxDepth = parseLimit(maxDepthOption);
+            if (settings.maxDepth < 1) {
+                reporter.printError("Invalid maximum depth: " + maxDepthOption);
+                return null;
+            }
+        }
+        String maxFieldsOption = getOptionValue(options, OPTION_PARAM_MAX_FIELDS);
+        if (maxFieldsOption != null) {
+            settings.maxFields = parseLimit(maxFieldsOption);
+            if (settings.maxFields < 1) {
+                reporter.printError("Invalid maximum number of fields: " + maxFieldsOption);
+                return null;
+            }
+        }
+        String cardinalityOption = getOptionValue(options, OPTION_PARAM_CARDINALITY);
+        if (cardinalityOption != null) {
+            int[] cardinality = DescriptionOptions.parseCardinality(cardinalityOption);
+            if (cardinality == null) {
+                reporter.printError("Invalid cardinality, expected <typical,max>: " + cardinalityOption);
+                return null;
+            }
+            settings.typicalCardinality = cardinality[0];
+            settings.maxCardinality = cardinality[1];
+        }
+        String sizeBudgetOption = getOptionValue(options, OPTION_PARAM_SIZE_BUDGET);
+        if (sizeBudgetOption != null) {
+            try {
+                settings.sizeBudget = Long.parseLong(sizeBudgetOption);
+            } catch (NumberFormatException ex) {
+                settings.sizeBudget = -1;
+            }
+            if (settings.sizeBudget < 0) {
+                reporter.printError("Invalid size budget: " + sizeBudgetOption);
+                return null;
+            }
+        }
+
+        String threadsOption = getOptionValue(options, OPTION_PARAM_THREADS);
+        if (threadsOption != null) {
+            settings.threads = parseLimit(threadsOption);
+            if (settings.threads < 1 || settings.threads > MAX_THREADS) {
+                reporter.printError("Invalid number of threads, expected 1 to " + MAX_THREADS + ": " + threadsOption);
+                return null;
+            }
+        }
+
+        settings.shard = getOptionValue(options, OPTION_PARAM_SHARD);
+        if (settings.shard != null
+                && !SHARD_BY_CONTROLLER.equals(settings.shard)
+                && !SHARD_BY_PREFIX.equals(settings.shard)) {
+            reporter.printError("Invalid shard option, expected " + SHARD_BY_CONTROLLER
+                    + " or " + SHARD_BY_PREFIX + ": " + settings.shard);
+            return null;
+        }
+        if (settings.shard != null && !FORMAT_HTML.equals(settings.format)) {
+            reporter.printWarning("Only " + FORMAT_HTML + " output is sharded, ignoring " + OPTION_PARAM_SHARD);
+            settings.shard = null;
+        }
+
+        settings.cdn = hasOption(options, OPTION_PARAM_CDN);
+
+        String pipelineOption = getOptionValue(options, OPTION_PARAM_PIPELINE);
+        if (pipelineOption != null) {
+            settings.pipeline = parseLimit(pipelineOption);
+            if (settings.pipeline < 1) {
+                reporter.printError("Invalid number of controllers to pipeline: " + pipelineOption);
+                return null;
+            }
+            if (!settings.isPipelinable()) {
+                warnNotPipelined(reporter);
+                settings.pipeline = 0;
+            }
+        }
+
+        String cacheOption = getOptionValue(options, OPTION_PARAM_CACHE);
+        settings.cacheDirectory = cacheOption == null ? null : new File(cacheOption);
+
+        settings.printStats = hasOption(options, OPTION_PARAM_STATS);
+        settings.statsJsonFile = getOptionValue(options, OPTION_PARAM_STATS_JSON);
+        settings.performanceReportFile = getOptionValue(options, OPTION_PARAM_PERFORMANCE_REPORT);
+
+        if (formatsOption != null) {
+            settings.outputs = settings.parseOutputs(formatsOption, reporter);
+            if (settings.outputs == null) {
+                return null;
+            }
+        }
+        return settings;
+    }
+
+    /**
+     * Reads the outputs that -formats asks for, each a format or a template
+     * name, optionally followed by the output file. Templates are rendered
+     * as html is, to the template's name without its suffix unless a file
+     * is given. With -shard, only one of them may be html or a template.
+     *
+     * @param formats The formats, comma separated, such as
+     *          {@code html,json=api.json,wiki.md.vm}.
+     * @param reporter Where to report invalid formats.
+     * @return The settings of each output, or {@code null} if a format is
+     *          invalid.
+     */
+    private List<DocletSettings> parseOutputs(final String formats, final DocletReporter reporter) {
+        List<DocletSettings> parsed = new ArrayList<>();
+        int sharded = 0;
+        boolean pipelinable = true;
+        for (String entry : formats.split(FORMAT_SEPARATOR)) {
+            if (entry.trim().isEmpty()) {
+                continue;
+            }
+            int separator = entry.indexOf(OUTPUT_SEPARATOR);
+            String outputFormat = (separator < 0 ? entry : entry.substring(0, separator)).trim();
+            String outputFileName = separator < 0 ? null : entry.substring(separator + 1).trim();
+            String outputTemplate = templateName;
+            String defaultOutputFileName;
+            if (outputFormat.endsWith(TEMPLATE_SUFFIX)) {
+                outputTemplate = outputFormat;
+                defaultOutputFileName = new File(outputFormat.substring(
+                        0, outputFormat.length() - TEMPLATE_SUFFIX.length())).getName();
+                outputFormat = FORMAT_HTML;
+            } else {
+                defaultOutputFileName = getDefaultOutputFile(outputFormat);
+            }
+            if (defaultOutputFileName == null) {
+                reporter.printError(getInvalidFormatMessage(outputFormat) + ", or a " + TEMPLATE_SUFFIX + " template");
+                return null;
+            }
+            DocletSettings output = copy(outputFormat,
+                    outputFileName == null || outputFileName.isEmpty() ? defaultOutputFileName : outputFileName,
+                    outputTemplate);
+            sharded += output.shard != null ? 1 : 0;
+            pipelinable &= output.isPipelinable();
+            parsed.add(output);
+        }
+        if (parsed.isEmpty()) {
+            reporter.printError("No formats given to " + OPTION_PARAM_FORMATS);
+            return null;
+        }
+        if (sharded > 1) {
+            /* the pages of each would take the same names, in the same directory */
+            reporter.printError("Only one " + FORMAT_HTML + " or template output can be sharded, "
+                    + OPTION_PARAM_FORMATS + " lists " + sharded);
+            return null;
+        }
+        if (shard != null && sharded == 0) {
+            reporter.printWarning("Only " + FORMAT_HTML + " output is sharded, ignoring " + OPTION_PARAM_SHARD);
+        }
+        if (pipeline > 0 && !pipelinable) {
+            warnNotPipelined(reporter);
+            pipeline = 0;
+            for (DocletSettings output : parsed) {
+                output.pipeline = 0;
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * @param outputFormat The format of an output.
+     * @param outputFileName The output file.
+     * @param outputTemplate The template to render html with.
+     * @return These settings, for a single output of the given format.
+     */
+    private DocletSettings copy(final String outputFormat, final String outputFileName, final String outputTemplate) {
+        DocletSettings copy = new DocletSettings();
+        copy.heading = heading;
+        copy.templateName = outputTemplate;
+        copy.format = outputFormat;
+        copy.outputFile = outputFileName;
+        copy.types = types;
+        copy.components = components;
+        copy.maxDepth = maxDepth;
+        copy.maxFields = maxFields;
+        copy.typicalCardinality = typicalCardinality;
+        copy.maxCardinality = maxCardinality;
+        copy.sizeBudget = sizeBudget;
+        copy.threads = threads;
+        copy.shard = FORMAT_HTML.equals(outputFormat) ? shard : null;
+        copy.cdn = cdn;
+        copy.pipeline = pipeline;
+        copy.cacheDirectory = cacheDirectory;
+        copy.printStats = printStats;
+        copy.statsJsonFile = statsJsonFile;
+        copy.performanceReportFile = performanceReportFile;
+        return copy;
+    }
+
+    /**
+     * @return Whether the output can be written as controllers are
+     *          extracted, as unsharded html, json and model output can.
+     *          Html is only pipelined with the default template, as the rest
+     *          calls a pipelined template is given can only be walked once,
+     *          which a custom template may not expect.
+     */
+    private boolean isPipelinable() {
+        return shard == null
+                && (FORMAT_HTML.equals(format) && DEFAULT_TEMPLATE_NAME.equals(templateName)
+                        || FORMAT_JSON.equals(format) || FORMAT_MODEL.equals(format));
+    }
+
+    private static void warnNotPipelined(final DocletReporter reporter) {
+        reporter.printWarning("Only unsharded " + FORMAT_HTML + ", with the default template, " + FORMAT_JSON + " and "
+                + FORMAT_MODEL + " output is pipelined, ignoring " + OPTION_PARAM_PIPELINE);
+    }
+
+    /**
+     * @param outputFormat An output format.
+     * @return The output file the format is written to by default, or
+     *          {@code null} if the format is invalid.
+     */
+    private static String getDefaultOutputFile(final String outputFormat) {
+        if (FORMAT_HTML.equals(outputFormat)) {
+            return DEFAULT_OUTPUT_FILE;
+        } else if (FORMAT_JSON.equals(outputFormat)) {
+            return DEFAULT_JSON_OUTPUT_FILE;
+        } else if (FORMAT_OPENAPI.equals(outputFormat)) {
+            return DEFAULT_OPENAPI_OUTPUT_FILE;
+        } else if (FORMAT_MODEL.equals(outputFormat)) {
+            return DEFAULT_MODEL_OUTPUT_FILE;
+        } else if (FORMAT_SEARCH.equals(outputFormat)) {
+            return DEFAULT_SEARCH_OUTPUT_FILE;
+        } else if (FORMAT_ROUTES.equals(outputFormat)) {
+            return DEFAULT_ROUTES_OUTPUT_FILE;
+        } else if (FORMAT_LOADTEST.equals(outputFormat)) {
+            return DEFAULT_LOADTEST_OUTPUT_FILE;
+        }
+        return null;
+    }
+
+    private static String getInvalidFormatMessage(final String outputFormat) {
+        return "Invalid format, expected " + FORMAT_HTML + ", " + FORMAT_JSON + ", "
+                + FORMAT_OPENAPI + ", " + FORMAT_MODEL + ", " + FORMAT_SEARCH + ", " + FORMAT_ROUTES
+                + " or " + FORMAT_LOADTEST + ": " + outputFormat;
+    }
+
+    /**
+     * @param limit A limit, as given.
+     * @return The limit, or -1 if it is not a number.
+     */
+    private static int parseLimit(final String limit) {
+        try {
+            return Integer.parseInt(limit);
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    private static String getOptionValue(final String[][] options, final String option) {
+        String optionValue = null;
+        for (String[] opt : options) {
+            if (opt[0].equals(option)) {
+                optionValue = opt[1];
+            }
+        }
+        return optionValue;
+    }
+
+    private static boolean hasOption(final String[][] options, final String option) {
+        for (String[] opt : options) {
+            if (opt[0].equals(option)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The page heading.
+     */
+    String getHeading() {
+        return heading;
+    }
+
+    /**
+     * @return The template to render HTML with.
+     */
+    String getTemplateName() {
+        return templateName;
+    }
+
+    /**
+     * @return The output format.
+     */
+    String getFormat() {
+        return format;
+    }
+
+    /**
+     * @return The output file.
+     */
+    String getOutputFile() {
+        return outputFile;
+    }
+
+    /**
+     * @return The output file of each output, comma separated, for messages.
+     */
+    String getOutputFileNames() {
+        StringBuilder names = new StringBuilder();
+        for (DocletSettings output : getOutputs()) {
+            names.append(names.length() == 0 ? "" : ", ").append(output.outputFile);
+        }
+        return names.toString();
+    }
+
+    /**
+     * @return The settings of each output to write from the same rest
+     *          calls, each with its own format, output file and template,
+     *          or just these settings if -formats isn't given.
+     */
+    List<DocletSettings> getOutputs() {
+        return outputs == null ? Collections.singletonList(this) : outputs;
+    }
+
+    /**
+     * @return The package prefixes of the types to describe, or an empty
+     *          list to describe all types.
+     */
+    List<String> getDescribeTypes() {
+        return types == null ? Collections.<String>emptyList() : Arrays.asList(types.split(","));
+    }
+
+    /**
+     * @return How to describe request body types.
+     */
+    DescriptionOptions getDescriptionOptions() {
+        return new DescriptionOptions(getDescribeTypes(), components, maxDepth, maxFields,
+                typicalCardinality, maxCardinality, sizeBudget);
+    }
+
+    /**
+     * @return The options that change what is extracted from a controller,
+     *          for keying the cache.
+     */
+    String getExtractionOptions() {
+        StringBuilder extractionOptions = new StringBuilder(types == null ? "" : types);
+        if (components) {
+            extractionOptions.append(' ').append(OPTION_PARAM_COMPONENTS);
+        }
+        if (maxDepth != DescriptionOptions.UNLIMITED) {
+            extractionOptions.append(' ').append(OPTION_PARAM_MAX_DEPTH).append(' ').append(maxDepth);
+        }
+        if (maxFields != DescriptionOptions.UNLIMITED) {
+            extractionOptions.append(' ').append(OPTION_PARAM_MAX_FIELDS).append(' ').append(maxFields);
+        }
+        if (typicalCardinality != DescriptionOptions.DEFAULT_TYPICAL_CARDINALITY
+                || maxCardinality != DescriptionOptions.DEFAULT_MAX_CARDINALITY) {
+            extractionOptions.append(' ').append(OPTION_PARAM_CARDINALITY).append(' ')
+                    .append(typicalCardinality).append(',').append(maxCardinality);
+        }
+        if (sizeBudget != DescriptionOptions.UNLIMITED) {
+            extractionOptions.append(' ').append(OPTION_PARAM_SIZE_BUDGET).append(' ').append(sizeBudget);
+        }
+        return extractionOptions.toString();
+    }
+
+    /**
+     * @return The number of threads to use.
+     */
+    int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @return How to shard HTML output, or {@code null} to write a single page.
+     */
+    String getShard() {
+        return shard;
+    }
+
+    /**
+     * @return Whether to write the output for serving from a CDN.
+     */
+    boolean isCdn() {
+        return cdn;
+    }
+
+    /**
+     * @return How many extracted controllers may wait to be rendered, or 0
+     *          to extract every controller before rendering.
+     */
+    int getPipeline() {
+        return pipeline;
+    }
+
+    /**
+     * @return The cache directory, or {@code null} if not caching.
+     */
+    File getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    /**
+     * @return Statistics, kept only if they are to be reported.
+     */
+    DocletStats createStats() {
+        return printStats || statsJsonFile != null ? new DocletStats(true) : DocletStats.DISABLED;
+    }
+
+    /**
+     * @return Whether to print statistics.
+     */
+    boolean isPrintStats() {
+        return printStats;
+    }
+
+    /**
+     * @return The file to write statistics to, or {@code null}.
+     */
+    String getStatsJsonFile() {
+        return statsJsonFile;
+    }
+
+    /**
+     * @return A performance report, kept only if it is to be written.
+     */
+    PerformanceReport createPerformanceReport() {
+        return performanceReportFile != null ? new PerformanceReport(true) : PerformanceReport.DISABLED;
+    }
+
+    /**
+     * @return The file to write the performance report to, or {@code null}.
+     */
+    String getPerformanceReportFile() {
+        return performanceReportFile;
+    }
+}
@@ -0,0 +1,398 @@
+package biz.rightshift.commons.doclet;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timing and allocation statistics for a run of the doclet.
+ *
+ * Phases run on the calling thread are timed by wall clock. Controllers may
+ * be processed on several threads, so the bytes allocated by extraction,
+ * and both the time and bytes of type description, are summed over the
+ * threads that did the work. Type description happens during extraction
+ * and is included in it.
+ *
+ * Where the JVM supports Flight Recorder, and the jar was built with the
+ * jdk.javadoc doclet, each phase, controller and type description is also
+ * recorded as an event.
+ */
+final class DocletStats {
+
+    /**
+     * The phases of a run.
+     */
+    enum Phase {
+        /** Finding the controllers. */
+        DISCOVERY("discovery"),
+        /** Extracting the rest calls of each controller. */
+        EXTRACTION("extraction"),
+        /** Describing request body types. */
+        TYPE_DESCRIPTION("type description"),
+        /** Initialising the template engine and loading the template. */
+        TEMPLATE_INIT("template init"),
+        /** Writing the output. */
+        RENDER("render");
+
+        private final String label;
+
+        Phase(final String label) {
+            this.label = label;
+        }
+
+        /**
+         * @return The phase's name in reports.
+         */
+        String getLabel() {
+            return label;
+        }
+    }
+
+    /** Statistics that are not kept. */
+    static final DocletStats DISABLED = new DocletStats(false);
+
+    private static final int TOP_COUNT = 10;
+    private static final double NANOS_PER_MILLI = 1000000.0;
+    private static final long BYTES_PER_KILOBYTE = 1024;
+    private static final String EVENT_RECORDER = "biz.rightshift.commons.doclet.DocletPhaseEvent$Recorder";
+    private static final EventRecorder EVENTS = findEventRecorder();
+
+    private static final Comparator<Sample> BY_VALUE_DESCENDING = new Comparator<Sample>() {
+        @Override
+        public int compare(final Sample first, final Sample second) {
+            return first.value < second.value ? 1 : (first.value > second.value ? -1 : 0);
+        }
+    };
+
+    private final boolean enabled;
+    private final AtomicLong[] nanos = new AtomicLong[Phase.values().length];
+    private final AtomicLong[] bytes = new AtomicLong[Phase.values().length];
+    private final AtomicInteger controllers = new AtomicInteger();
+    private final AtomicInteger endpoints = new AtomicInteger();
+    private final AtomicInteger parameters = new AtomicInteger();
+    private final AtomicInteger describedTypes = new AtomicInteger();
+    private final AtomicInteger cacheHits = new AtomicInteger();
+    private final Queue<Sample> controllerTimes = new ConcurrentLinkedQueue<>();
+    private final Queue<Sample> typeDescriptionSizes = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param enabled Whether statistics are kept.
+     */
+    DocletStats(final boolean enabled) {
+        this.enabled = enabled;
+        for (int i = 0; i < nanos.length; i++) {
+            nanos[i] = new AtomicLong();
+            bytes[i] = new AtomicLong();
+        }
+    }
+
+    /**
+     * Starts measuring, on the current thread.
+     *
+     * @param name What is being measured, for Flight Recorder.
+     * @return The measurement, or {@code null} if statistics are not kept.
+     */
+    Measurement start(final String name) {
+        if (!enabled) {
+            return null;
+        }
+        return new Measurement(name);
+    }
+
+    /**
+     * Records a phase.
+     *
+     * @param phase The phase.
+     * @param measurement The measurement started at the beginning of the phase.
+     */
+    void recordPhase(final Phase phase, final Measurement measurement) {
+        if (measurement != null) {
+            measurement.stop(phase.getLabel());
+            nanos[phase.ordinal()].addAndGet(measurement.nanos);
+            if (phase != Phase.EXTRACTION) {
+                /* extraction allocation is summed over the controllers instead */
+                bytes[phase.ordinal()].addAndGet(measurement.bytes);
+            }
+        }
+    }
+
+    /**
+     * Records the extraction of a controller's rest calls.
+     *
+     * @param controller The controller's qualified name.
+     * @param measurement The measurement started before extraction.
+     */
+    void recordController(final String controller, final Measurement measurement) {
+        if (measurement != null) {
+            measurement.stop(Phase.EXTRACTION.getLabel());
+            bytes[Phase.EXTRACTION.ordinal()].addAndGet(measurement.bytes);
+            controllerTimes.add(new Sample(controller, measurement.nanos));
+        }
+    }
+
+    /**
+     * Records the description of a request body type.
+     *
+     * @param type The type's name.
+     * @param size The length of the description.
+     * @param measurement The measurement started before the description.
+     */
+    void recordTypeDescription(final String type, final int size, final Measurement measurement) {
+        if (measurement != null) {
+            measurement.stop(Phase.TYPE_DESCRIPTION.getLabel());
+            nanos[Phase.TYPE_DESCRIPTION.ordinal()].addAndGet(measurement.nanos);
+            bytes[Phase.TYPE_DESCRIPTION.ordinal()].addAndGet(measurement.bytes);
+            typeDescriptionSizes.add(new Sample(type, size));
+        }
+    }
+
+    /**
+     * Records the rest calls that were documented.
+     *
+     * @param controllerCount The number of controllers.
+     * @param restCalls The rest calls.
+     * @param describedTypeCount The number of types described.
+     */
+    void recordCounts(
+            final int controllerCount,
+            final List<RestApiDetails> restCalls,
+            final int describedTypeCount) {
+        controllers.set(controllerCount);
+        endpoints.set(restCalls.size());
+        parameters.set(countParameters(restCalls));
+        describedTypes.set(describedTypeCount);
+    }
+
+    /**
+     * Adds a controller to the rest calls that were documented, for when
+     * they are documented a controller at a time rather than kept.
+     *
+     * @param restCalls The controller's rest calls.
+     */
+    void addControllerCounts(final List<RestApiDetails> restCalls) {
+        controllers.incrementAndGet();
+        endpoints.addAndGet(restCalls.size());
+        parameters.addAndGet(countParameters(restCalls));
+    }
+
+    /**
+     * Records the number of types described, for when rest calls are
+     * documented a controller at a time.
+     *
+     * @param describedTypeCount The number of types described.
+     */
+    void recordDescribedTypeCount(final int describedTypeCount) {
+        describedTypes.set(describedTypeCount);
+    }
+
+    /**
+     * @param restCalls Some rest calls.
+     * @return The number of parameters, including request bodies, they take.
+     */
+    private static int countParameters(final List<RestApiDetails> restCalls) {
+        int parameterCount = 0;
+        for (RestApiDetails restCall : restCalls) {
+            parameterCount += restCall.getPathVariables().size() + restCall.getRequestParams().size();
+            if (restCall.getRequestBody() != null) {
+                parameterCount++;
+            }
+        }
+        return parameterCount;
+    }
+
+    /**
+     * Records that a controller's rest calls were loaded from the cache.
+     */
+    void recordCacheHit() {
+        cacheHits.incrementAndGet();
+    }
+
+    /**
+     * @return The report, as lines of text.
+     */
+    List<String> getReport() {
+        List<String> report = new ArrayList<>();
+        report.add(String.format(Locale.ENGLISH, "%-20s %12s %16s", "Phase", "Time (ms)", "Allocated (KB)"));
+        for (Phase phase : Phase.values()) {
+            report.add(String.format(Locale.ENGLISH, "%-20s %12.1f %16d",
+                    phase.getLabel(),
+                    nanos[phase.ordinal()].get() / NANOS_PER_MILLI,
+                    bytes[phase.ordinal()].get() / BYTES_PER_KILOBYTE));
+        }
+        report.add(String.format(Locale.ENGLISH,
+                "Controllers: %d, endpoints: %d, parameters: %d, described types: %d, cache hits: %d",
+                controllers.get(), endpoints.get(), parameters.get(), describedTypes.get(), cacheHits.get()));
+        report.add("Slowest controllers:");
+        for (Sample sample : getTop(controllerTimes)) {
+            report.add(String.format(Locale.ENGLISH, "  %-60s %10.1f ms", sample.name, sample.value / NANOS_PER_MILLI));
+        }
+        report.add("Largest type descriptions:");
+        for (Sample sample : getTop(typeDescriptionSizes)) {
+            report.add(String.format(Locale.ENGLISH, "  %-60s %10d chars", sample.name, sample.value));
+        }
+        return report;
+    }
+
+    /**
+     * Writes the report as JSON.
+     *
+     * @param outputFile The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    void writeJson(final File outputFile) throws IOException {
+        try (JsonGenerator generator = new JsonFactory().createGenerator(outputFile, JsonEncoding.UTF8)) {
+            generator.useDefaultPrettyPrinter();
+            generator.writeStartObject();
+            generator.writeObjectFieldStart("phases");
+            for (Phase phase : Phase.values()) {
+                generator.writeObjectFieldStart(phase.getLabel());
+                generator.writeNumberField("nanos", nanos[phase.ordinal()].get());
+                generator.writeNumberField("allocatedBytes", bytes[phase.ordinal()].get());
+                generator.writeEndObject();
+            }
+            generator.writeEndObject();
+            generator.writeNumberField("controllers", controllers.get());
+            generator.writeNumberField("endpoints", endpoints.get());
+            generator.writeNumberField("parameters", parameters.get());
+            generator.writeNumberField("describedTypes", describedTypes.get());
+            generator.writeNumberField("cacheHits", cacheHits.get());
+            generator.writeObjectFieldStart("slowestControllers");
+            for (Sample sample : getTop(controllerTimes)) {
+                generator.writeNumberField(sample.name, sample.value);
+            }
+            generator.writeEndObject();
+            generator.writeObjectFieldStart("largestTypeDescriptions");
+            for (Sample sample : getTop(typeDescriptionSizes)) {
+                generator.writeNumberField(sample.name, sample.value);
+            }
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * @param samples The samples.
+     * @return The samples with the largest values, once per name, largest first.
+     */
+    private static List<Sample> getTop(final Queue<Sample> samples) {
+        List<Sample> sorted = new ArrayList<>(samples);
+        Collections.sort(sorted, BY_VALUE_DESCENDING);
+        List<Sample> top = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        for (Sample sample : sorted) {
+            if (top.size() >= TOP_COUNT) {
+                break;
+            }
+            if (!names.contains(sample.name)) {
+                names.add(sample.name);
+                top.add(sample);
+            }
+        }
+        return top;
+    }
+
+    /**
+     * @return The bytes allocated so far by the current thread, or 0 if the
+     *          JVM does not say.
+     */
+    private static long getAllocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+            if (allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled()) {
+                return allocations.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return The recorder of Flight Recorder events, or {@code null} if the
+     *          JVM has no Flight Recorder, or the jar was built without it.
+     */
+    private static EventRecorder findEventRecorder() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return Class.forName(EVENT_RECORDER).asSubclass(EventRecorder.class).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Records measurements as Flight Recorder events.
+     */
+    interface EventRecorder {
+
+        /**
+         * Starts an event.
+         *
+         * @param subject What is being measured.
+         * @return The event.
+         */
+        Object begin(String subject);
+
+        /**
+         * Ends and commits an event.
+         *
+         * @param started The event, as returned by {@link #begin(String)}.
+         * @param phase The phase.
+         * @param allocated The bytes allocated.
+         */
+        void commit(Object started, String phase, long allocated);
+    }
+
+    /**
+     * A measurement of time and allocation on a single thread.
+     */
+    static final class Measurement {
+
+        private final long startNanos = System.nanoTime();
+        private final long startBytes = getAllocatedBytes();
+        private final Object event;
+        private long nanos;
+        private long bytes;
+
+        /**
+         * @param name What is being measured.
+         */
+        private Measurement(final String name) {
+            event = EVENTS == null ? null : EVENTS.begin(name);
+        }
+
+        private void stop(final String phase) {
+            nanos = System.nanoTime() - startNanos;
+            bytes = getAllocatedBytes() - startBytes;
+            if (event != null) {
+                EVENTS.commit(event, phase, bytes);
+            }
+        }
+    }
+
+    /**
+     * A named value.
+     */
+    private static final class Sample {
+
+        private final String name;
+        private final long value;
+
+        private Sample(final String name, final long value) {
+            this.name = name;
+            this.value = value;
+        }
+    }
+}
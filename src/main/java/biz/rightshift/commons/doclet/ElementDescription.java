@@ -0,0 +1,667 @@
+package biz.rightshift.commons.doclet;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.IntersectionType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.TypeVariable;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+
+/**
+ * Describes types from {@code javax.lang.model} elements, as
+ * {@link Description} does from the javadoc model, so that both doclets
+ * describe a type the same way.
+ *
+ * The element model is not safe for concurrent use, so a description is
+ * used by one thread only, for a single run.
+ */
+final class ElementDescription {
+
+    /** How a value of a type that cannot be determined is described. */
+    private static final String UNKNOWN_TYPE = "Object";
+
+    private static final String OPTIONAL = "java.util.Optional";
+
+    /** Shared, immutable (and therefore thread-safe) JSON writer. */
+    private static final ObjectWriter WRITER = new ObjectMapper().writerWithDefaultPrettyPrinter();
+
+    private final Elements elements;
+    private final Types types;
+    private final List<String> describableTypes;
+    private final DescriptionOptions options;
+    private final TypeMirror collectionType;
+    private final TypeMirror mapType;
+    private final TypeMirror optionalType;
+
+    /** Type descriptions already built, keyed by qualified type name. */
+    private final Map<String, CachedDescription> descriptions = new HashMap<>();
+
+    /** Serialized type descriptions already built, keyed by full type name. */
+    private final Map<String, String> serializedDescriptions = new HashMap<>();
+
+    /** Types described as components, keyed by qualified type name. */
+    private final Map<String, Component> components = new HashMap<>();
+
+    /** The types being described, outermost first. */
+    private final List<String> inProgress = new ArrayList<>();
+
+    /** The types reached so far by each of the types being described. */
+    private final List<Set<String>> reached = new ArrayList<>();
+
+    /**
+     * @param elements The element utilities.
+     * @param types The type utilities.
+     * @param options How to describe types, including which types to
+     *          describe.
+     */
+    ElementDescription(final Elements elements, final Types types, final DescriptionOptions options) {
+        this.elements = elements;
+        this.types = types;
+        this.describableTypes = options.getDescribeTypes();
+        this.options = options;
+        this.collectionType = getErasure(Collection.class.getName());
+        this.mapType = getErasure(Map.class.getName());
+        this.optionalType = getErasure(OPTIONAL);
+    }
+
+    /**
+     * @return The number of type descriptions built so far, not counting
+     *          types only referred to by name.
+     */
+    int getDescribedTypeCount() {
+        return descriptions.size() + components.size();
+    }
+
+    /**
+     * Describes a type as a JSON string.
+     *
+     * @param type The type to describe.
+     * @return A JSON representation of the type.
+     */
+    String describeType(final TypeMirror type) {
+        String key = type.toString();
+
+        String serialized = serializedDescriptions.get(key);
+        if (serialized != null) {
+            return serialized;
+        }
+
+        serialized = serialize(describeValue(type));
+        if (serialized != null) {
+            serializedDescriptions.put(key, serialized);
+        }
+        return serialized;
+    }
+
+    /**
+     * Gets the components that the description of a type refers to,
+     * directly or through other components.
+     *
+     * @param type A type that has been described.
+     * @return The components' descriptions as JSON strings, by qualified
+     *          type name, in name order.
+     */
+    Map<String, String> getComponents(final TypeMirror type) {
+        if (!options.isComponents()) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> reached = new TreeMap<>();
+        for (String name : getReachableTypes(type)) {
+            Component component = components.get(name);
+            if (component != null) {
+                reached.put(name, component.description);
+            }
+        }
+        return reached;
+    }
+
+    /**
+     * @param type A request body type.
+     * @return {@code true} if the type is described as a component, rather
+     *          than as a container, an enum or by name.
+     */
+    boolean isComponent(final TypeMirror type) {
+        if (!options.isComponents() || type.getKind() != TypeKind.DECLARED
+                || getContainer(type, new TypeMirror[2]) != ContainerKind.NONE) {
+            return false;
+        }
+        TypeElement element = asTypeElement(type);
+        return element != null && shouldDescribe(element) && element.getKind() != ElementKind.ENUM;
+    }
+
+    /**
+     * @param description A description.
+     * @return The description as a JSON string, or {@code null} if it cannot
+     *          be written.
+     */
+    private static String serialize(final Object description) {
+        try {
+            return WRITER.writeValueAsString(description);
+        } catch (JsonProcessingException e) {
+            System.err.println("Failed to parse type " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Gets the types that the description of a type reaches, including the
+     * type itself, or the types it contains. Types described by name only
+     * are not included.
+     *
+     * @param type A type that has been described.
+     * @return The qualified names of the types.
+     */
+    Set<String> getReachableTypes(final TypeMirror type) {
+        TypeMirror valueType = getValueType(type);
+        if (valueType == null || valueType.getKind().isPrimitive()) {
+            return Collections.emptySet();
+        }
+        TypeMirror[] contents = new TypeMirror[2];
+        switch (getContainer(valueType, contents)) {
+            case ARRAY:
+            case COLLECTION:
+            case OPTIONAL:
+                return getReachableTypes(contents[0]);
+            case MAP:
+                Set<String> reachable = new HashSet<>(getReachableTypes(contents[0]));
+                reachable.addAll(getReachableTypes(contents[1]));
+                return reachable;
+            default:
+                TypeElement element = asTypeElement(valueType);
+                if (element == null || !shouldDescribe(element)) {
+                    return Collections.emptySet();
+                }
+                String key = element.getQualifiedName().toString();
+                if (options.isComponents()) {
+                    return getReachableComponents(key);
+                }
+                CachedDescription cached = descriptions.get(getCacheKey(key, 0));
+                return cached == null ? Collections.singleton(key) : cached.reachable;
+        }
+    }
+
+    /**
+     * @param type The qualified name of a type described as a component.
+     * @return The qualified names of the type and the types its component
+     *          refers to, directly or through other components.
+     */
+    private Set<String> getReachableComponents(final String type) {
+        Set<String> reachable = new HashSet<>();
+        List<String> pending = new ArrayList<>();
+        pending.add(type);
+        while (!pending.isEmpty()) {
+            String name = pending.remove(pending.size() - 1);
+            if (reachable.add(name)) {
+                Component component = components.get(name);
+                if (component != null) {
+                    pending.addAll(component.reachable);
+                }
+            }
+        }
+        return reachable;
+    }
+
+    /**
+     * Describes a value of a type. Arrays and collections are described as a
+     * list of their element, maps as an object with a single field named
+     * after the key type in braces, and optional values as their content.
+     *
+     * @param type The type of the value.
+     * @return A representation of the value.
+     */
+    private Object describeValue(final TypeMirror type) {
+        TypeMirror valueType = getValueType(type);
+        if (valueType == null) {
+            return UNKNOWN_TYPE;
+        }
+        TypeMirror[] contents = new TypeMirror[2];
+        switch (getContainer(valueType, contents)) {
+            case ARRAY:
+            case COLLECTION:
+                return Arrays.asList(describeValue(contents[0]));
+            case MAP:
+                return Collections.singletonMap(describeMapKey(contents[0]), describeValue(contents[1]));
+            case OPTIONAL:
+                return describeValue(contents[0]);
+            default:
+                if (valueType.getKind().isPrimitive()) {
+                    return valueType.toString();
+                }
+                return describeClass(asTypeElement(valueType));
+        }
+    }
+
+    /**
+     * Describes a class, referring to it by name if it is not to be
+     * described or is already being described further up.
+     *
+     * @param type The class to describe.
+     * @return A representation of the class.
+     */
+    private Object describeClass(final TypeElement type) {
+        if (type == null) {
+            return "";
+        }
+        if (!shouldDescribe(type)) {
+            return getSimpleTypeName(type);
+        }
+        if (type.getKind() == ElementKind.ENUM) {
+            reached(Collections.singleton(type.getQualifiedName().toString()));
+            return describeEnum(type);
+        }
+
+        if (options.isComponents()) {
+            return describeComponent(type);
+        }
+
+        String key = type.getQualifiedName().toString();
+        if (inProgress.contains(key)) {
+            /* a cycle, refer to the type by name rather than recursing */
+            reached(Collections.singleton(key));
+            return getSimpleTypeName(type);
+        }
+        if (inProgress.size() >= options.getMaxDepth()) {
+            /* too deep, refer to the type by name */
+            return getSimpleTypeName(type);
+        }
+
+        String cacheKey = getCacheKey(key, inProgress.size());
+        CachedDescription cached = descriptions.get(cacheKey);
+        if (cached != null && !isDescribingAny(cached.reachable)) {
+            reached(cached.reachable);
+            return cached.description;
+        }
+
+        inProgress.add(key);
+        reached.add(new HashSet<String>());
+        Object description;
+        Set<String> reachable;
+        try {
+            description = describeFields(type);
+        } finally {
+            inProgress.remove(inProgress.size() - 1);
+            reachable = reached.remove(reached.size() - 1);
+            reachable.add(key);
+        }
+
+        /*
+         * only keep descriptions that do not lead back to a type further up
+         * the stack, as these depend on how the type was reached.
+         */
+        if (!isDescribingAny(reachable)) {
+            descriptions.put(cacheKey, new CachedDescription(description, reachable));
+        }
+        reached(reachable);
+        return description;
+    }
+
+    /**
+     * Describes a class once, as a component, and refers to it.
+     *
+     * Components refer to each other rather than nesting, so a component's
+     * description is the same however it was reached, and cycles need no
+     * special handling.
+     *
+     * @param type The class to describe.
+     * @return A reference to the class's component.
+     */
+    private Object describeComponent(final TypeElement type) {
+        String key = type.getQualifiedName().toString();
+        reached(Collections.singleton(key));
+        if (!inProgress.contains(key) && !components.containsKey(key)) {
+            inProgress.add(key);
+            reached.add(new HashSet<String>());
+            Object description;
+            Set<String> reachable;
+            try {
+                description = describeFields(type);
+            } finally {
+                inProgress.remove(inProgress.size() - 1);
+                reachable = reached.remove(reached.size() - 1);
+                reachable.add(key);
+            }
+            components.put(key, new Component(serialize(description), reachable));
+        }
+        return Collections.singletonMap(RestApiRequestBody.REFERENCE, key);
+    }
+
+    /**
+     * @param type The qualified type name.
+     * @param depth How many types deep the type is being described.
+     * @return The key to cache the type's description by, which includes
+     *          the depth if descriptions are cut off at some depth.
+     */
+    private String getCacheKey(final String type, final int depth) {
+        return options.getMaxDepth() == DescriptionOptions.UNLIMITED ? type : type + "@" + depth;
+    }
+
+    /**
+     * Describes the fields of a type, as exposed by the getters it declares.
+     *
+     * @param type The type to describe.
+     * @return A map of field names to their descriptions.
+     */
+    private Map<String, Object> describeFields(final TypeElement type) {
+        Map<String, Object> description = new HashMap<>();
+        Set<String> omitted = new HashSet<>();
+        int maxFields = options.getMaxFields();
+        for (Element member : type.getEnclosedElements()) {
+            if (member.getKind() != ElementKind.METHOD || !isDocumented(member)) {
+                continue;
+            }
+            ExecutableElement method = (ExecutableElement) member;
+            String name = method.getSimpleName().toString();
+            if (method.getReturnType().getKind() != TypeKind.VOID
+                    && (name.startsWith("get") || name.startsWith("is"))) {
+                String fieldName = asFieldName(name);
+                if (description.size() < maxFields || description.containsKey(fieldName)) {
+                    description.put(fieldName, describeValue(method.getReturnType()));
+                } else {
+                    omitted.add(fieldName);
+                }
+            }
+        }
+        if (!omitted.isEmpty()) {
+            description.put(RestApiRequestBody.MORE_FIELDS, omitted.size() + " more fields");
+        }
+        return description;
+    }
+
+    /**
+     * @param member A member of a type.
+     * @return {@code true} if javadoc documents the member by default, that
+     *          is if it is public or protected.
+     */
+    private static boolean isDocumented(final Element member) {
+        Set<Modifier> modifiers = member.getModifiers();
+        return modifiers.contains(Modifier.PUBLIC) || modifiers.contains(Modifier.PROTECTED);
+    }
+
+    /**
+     * @param type The key type of a map.
+     * @return The name of the field that describes the map's entries.
+     */
+    private String describeMapKey(final TypeMirror type) {
+        TypeMirror keyType = getValueType(type);
+        if (keyType == null) {
+            return "{" + UNKNOWN_TYPE + "}";
+        }
+        TypeElement element = asTypeElement(keyType);
+        return "{" + (element == null ? keyType.toString() : getSimpleTypeName(element)) + "}";
+    }
+
+    /**
+     * Works out what a type contains.
+     *
+     * @param type The type.
+     * @param contents Set to the contained types, any of which may be
+     *          {@code null} if not known, as in a raw {@code List}.
+     * @return The kind of container.
+     */
+    private ContainerKind getContainer(final TypeMirror type, final TypeMirror[] contents) {
+        if (type.getKind() == TypeKind.ARRAY) {
+            contents[0] = ((ArrayType) type).getComponentType();
+            return ContainerKind.ARRAY;
+        }
+        if (type.getKind() != TypeKind.DECLARED) {
+            return ContainerKind.NONE;
+        }
+        TypeMirror erasure = types.erasure(type);
+        if (collectionType != null && types.isSubtype(erasure, collectionType)) {
+            findTypeArguments(type, collectionType, contents);
+            return ContainerKind.COLLECTION;
+        } else if (mapType != null && types.isSubtype(erasure, mapType)) {
+            findTypeArguments(type, mapType, contents);
+            return ContainerKind.MAP;
+        } else if (optionalType != null && types.isSubtype(erasure, optionalType)) {
+            findTypeArguments(type, optionalType, contents);
+            return ContainerKind.OPTIONAL;
+        }
+        return ContainerKind.NONE;
+    }
+
+    /**
+     * Walks up the hierarchy to a supertype, whose type arguments the
+     * direct supertypes of each type on the way have already bound.
+     *
+     * @param type The type.
+     * @param target The erasure of the supertype.
+     * @param contents Set to the supertype's type arguments.
+     * @return {@code true} if the supertype was reached.
+     */
+    private boolean findTypeArguments(final TypeMirror type, final TypeMirror target, final TypeMirror[] contents) {
+        if (type.getKind() != TypeKind.DECLARED || !types.isSubtype(types.erasure(type), target)) {
+            return false;
+        }
+        if (types.isSameType(types.erasure(type), target)) {
+            List<? extends TypeMirror> arguments = ((DeclaredType) type).getTypeArguments();
+            for (int i = 0; i < Math.min(contents.length, arguments.size()); i++) {
+                contents[i] = arguments.get(i);
+            }
+            return true;
+        }
+        for (TypeMirror supertype : types.directSupertypes(type)) {
+            if (findTypeArguments(supertype, target, contents)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the type a value will actually have, the upper bound of a
+     * wildcard or type variable.
+     *
+     * @param type The declared type, or {@code null} if not known.
+     * @return The type, or {@code null} if it cannot be determined.
+     */
+    private TypeMirror getValueType(final TypeMirror type) {
+        if (type == null) {
+            return null;
+        }
+        switch (type.getKind()) {
+            case WILDCARD:
+                return getValueType(((WildcardType) type).getExtendsBound());
+            case TYPEVAR:
+                return getBound(((TypeVariable) type).getUpperBound());
+            default:
+                return type;
+        }
+    }
+
+    /**
+     * @param bound The upper bound of a type variable.
+     * @return The first bound, or {@code null} if the variable is unbounded.
+     */
+    private TypeMirror getBound(final TypeMirror bound) {
+        TypeMirror first = bound;
+        if (bound.getKind() == TypeKind.INTERSECTION) {
+            first = ((IntersectionType) bound).getBounds().get(0);
+        }
+        TypeElement element = asTypeElement(first);
+        if (element != null && Object.class.getName().contentEquals(element.getQualifiedName())) {
+            return null;
+        }
+        return getValueType(first);
+    }
+
+    /**
+     * Indicates whether a type is to be described, that is if it falls in
+     * one of the packages to describe, or no packages were given.
+     *
+     * @param type The type to check.
+     * @return <code>true</code> if the type is worth describing.
+     */
+    private boolean shouldDescribe(final TypeElement type) {
+        if (describableTypes.isEmpty()) {
+            return true;
+        }
+        String name = type.getQualifiedName().toString();
+        for (String describeType : describableTypes) {
+            if (name.startsWith(describeType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Describes an enum as a BNF set of options.
+     *
+     * @param type The enum.
+     * @return A BNF string of options.
+     */
+    private static String describeEnum(final TypeElement type) {
+        StringBuilder options = new StringBuilder();
+        String sep = "";
+        for (Element member : type.getEnclosedElements()) {
+            if (member.getKind() == ElementKind.ENUM_CONSTANT) {
+                options.append(sep).append(member.getSimpleName());
+                sep = "|";
+            }
+        }
+        return options.toString();
+    }
+
+    /**
+     * Derives a field name for a method.
+     *
+     * This simply strips leading lower case letters and inverts
+     * the remaining first letter.
+     *
+     * @param methodName The name of the method to convert to a field name.
+     * @return The surmised field name.
+     */
+    private static String asFieldName(final String methodName) {
+        int index = 0;
+        char[] charArray = methodName.toCharArray();
+        /* find the first upper case character */
+        while (Character.isLowerCase(charArray[index])) {
+            index++;
+            if (index >= charArray.length) {
+                return methodName;
+            }
+        }
+        /* and keep the result of lower casing it */
+        StringBuilder fieldName = new StringBuilder();
+        fieldName.append(Character.toLowerCase(charArray[index++]));
+        /* and then keep the rest */
+        for ( ; index < charArray.length; index++) {
+            fieldName.append(charArray[index]);
+        }
+        return fieldName.toString();
+    }
+
+    /**
+     * @param type A class.
+     * @return The name of the class without its package, including the
+     *          names of any classes it is nested in, as javadoc names it.
+     */
+    String getSimpleTypeName(final TypeElement type) {
+        String name = type.getQualifiedName().toString();
+        String packageName = elements.getPackageOf(type).getQualifiedName().toString();
+        return packageName.isEmpty() ? name : name.substring(packageName.length() + 1);
+    }
+
+    /**
+     * @param type A type.
+     * @return The class of the type, or {@code null} if it is not a class.
+     */
+    static TypeElement asTypeElement(final TypeMirror type) {
+        if (type == null || type.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        return (TypeElement) ((DeclaredType) type).asElement();
+    }
+
+    /**
+     * @param name A qualified class name.
+     * @return The class's erasure, or {@code null} if it is not on the class
+     *          path.
+     */
+    private TypeMirror getErasure(final String name) {
+        TypeElement element = elements.getTypeElement(name);
+        return element == null ? null : types.erasure(element.asType());
+    }
+
+    /**
+     * @param candidates The qualified type names.
+     * @return {@code true} if any of the types are being described.
+     */
+    private boolean isDescribingAny(final Set<String> candidates) {
+        for (String type : inProgress) {
+            if (candidates.contains(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Records types reached by the innermost type being described.
+     *
+     * @param reachedTypes The qualified type names.
+     */
+    private void reached(final Set<String> reachedTypes) {
+        if (!reached.isEmpty()) {
+            reached.get(reached.size() - 1).addAll(reachedTypes);
+        }
+    }
+
+    /**
+     * A type described as a component, along with the types it refers to.
+     */
+    private static final class Component {
+
+        private final String description;
+        private final Set<String> reachable;
+
+        /**
+         * @param description The component's description, as a JSON string.
+         * @param reachable The types the description refers to, including itself.
+         */
+        Component(final String description, final Set<String> reachable) {
+            this.description = description;
+            this.reachable = reachable;
+        }
+    }
+
+    /**
+     * A type description along with the types it reaches.
+     */
+    private static final class CachedDescription {
+
+        private final Object description;
+        private final Set<String> reachable;
+
+        /**
+         * @param description The type description.
+         * @param reachable The types reached while describing the type, including itself.
+         */
+        CachedDescription(final Object description, final Set<String> reachable) {
+            this.description = description;
+            this.reachable = reachable;
+        }
+    }
+}
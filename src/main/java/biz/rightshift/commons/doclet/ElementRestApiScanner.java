@@ -0,0 +1,630 @@
+package biz.rightshift.commons.doclet;
+
+import com.sun.source.doctree.DocCommentTree;
+import com.sun.source.doctree.DocTree;
+import com.sun.source.doctree.ParamTree;
+import com.sun.source.doctree.UnknownBlockTagTree;
+import com.sun.source.util.DocTrees;
+import com.sun.source.util.TreePath;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.TypeVariable;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+
+/**
+ * Extracts the rest calls of Spring MVC controllers from
+ * {@code javax.lang.model} elements, reading comments through
+ * {@link DocTrees}, into the same model as
+ * {@link SpringWebServicesRestApiDoclet} extracts from the javadoc model.
+ *
+ * Comments are only parsed for the endpoints of controllers. Like the
+ * element model it reads, a scanner is used by one thread only.
+ */
+final class ElementRestApiScanner {
+
+    private static final String ANNOTATION_CONTROLLER = "Controller";
+    private static final String ANNOTATION_REQUEST_PARAM = "RequestMapping";
+    private static final String ANNOTATION_PARAM_PATH_VARIABLE = "PathVariable";
+    private static final String ANNOTATION_PARAM_REQUEST_PARAM = "RequestParam";
+    private static final String ANNOTATION_PARAM_REQUEST_BODY = "RequestBody";
+    private static final String ANNOTATION_RESPONSE_BODY = "ResponseBody";
+    private static final String ANNOTATION_REST_CONTROLLER = "RestController";
+    private static final String VOID = "java.lang.Void";
+
+    private final DocTrees trees;
+    private final Elements elements;
+    private final ElementDescription description;
+    private final DescriptionOptions descriptionOptions;
+    private final DocletStats stats;
+
+    /**
+     * @param trees The comment trees.
+     * @param elements The element utilities.
+     * @param types The type utilities.
+     * @param descriptionOptions How to describe request body types.
+     * @param stats The statistics to record extraction in.
+     */
+    ElementRestApiScanner(
+            final DocTrees trees,
+            final Elements elements,
+            final Types types,
+            final DescriptionOptions descriptionOptions,
+            final DocletStats stats) {
+        this.trees = trees;
+        this.elements = elements;
+        this.description = new ElementDescription(elements, types, descriptionOptions);
+        this.descriptionOptions = descriptionOptions;
+        this.stats = stats;
+    }
+
+    /**
+     * @return The number of request body types described so far.
+     */
+    int getDescribedTypeCount() {
+        return description.getDescribedTypeCount();
+    }
+
+    /**
+     * Determines whether or not a class is a Spring MVC controller.
+     *
+     * @param type The class.
+     * @return {@code true} if the class is a Controller.
+     */
+    static boolean isController(final TypeElement type) {
+        return AnnotationIndex.of(type.getAnnotationMirrors()).isAnnotatedWith(ANNOTATION_CONTROLLER);
+    }
+
+    /**
+     * Process controllers for rest end points, reusing the cached rest calls
+     * of any controller whose sources have not changed.
+     *
+     * @param controllers The controllers.
+     * @param cache The cache, or {@code null} if not caching.
+     * @param reporter Where to report cache failures.
+     * @return the <code>RestApiDetails</code> of each controller.
+     */
+    List<List<RestApiDetails>> getRestCallsFor(
+            final List<TypeElement> controllers, final EndpointCache cache, final DocletReporter reporter) {
+        LinkTargets links = getLinkTargets(controllers);
+        List<List<RestApiDetails>> restCalls = new ArrayList<>();
+        for (TypeElement controller : controllers) {
+            restCalls.add(getRestCallsFor(controller, links, cache, reporter));
+        }
+        return restCalls;
+    }
+
+    /**
+     * Process a controller for rest end points, reusing its cached rest
+     * calls if its sources have not changed.
+     *
+     * @param controller The controller.
+     * @param links The targets of links in comments.
+     * @param cache The cache, or {@code null} if not caching.
+     * @param reporter Where to report cache failures.
+     * @return the <code>RestApiDetails</code> of the controller.
+     */
+    List<RestApiDetails> getRestCallsFor(
+            final TypeElement controller,
+            final LinkTargets links,
+            final EndpointCache cache,
+            final DocletReporter reporter) {
+        String name = controller.getQualifiedName().toString();
+        List<RestApiDetails> controllerCalls = null;
+        if (cache != null) {
+            try {
+                controllerCalls = cache.load(name, links);
+            } catch (IOException ex) {
+                reporter.printWarning("Failed to read cached rest calls for " + name + ": " + ex.getMessage());
+            }
+        }
+        if (controllerCalls != null) {
+            stats.recordCacheHit();
+        } else {
+            DocletStats.Measurement measurement = stats.start(name);
+            controllerCalls = getRestCallsFor(controller, links);
+            stats.recordController(name, measurement);
+            if (cache != null) {
+                try {
+                    cache.store(name, getSourceFiles(controller), links, controllerCalls);
+                } catch (IOException ex) {
+                    reporter.printWarning("Failed to cache rest calls for " + name + ": " + ex.getMessage());
+                }
+            }
+        }
+        return controllerCalls;
+    }
+
+    /**
+     * Collects the anchors of every endpoint, and of the request body types
+     * they take, for links in comments to point to.
+     *
+     * @param controllers The controllers.
+     * @return The link targets.
+     */
+    LinkTargets getLinkTargets(final List<TypeElement> controllers) {
+        LinkTargets links = new LinkTargets();
+        for (TypeElement controller : controllers) {
+            addLinkTargets(controller, links);
+        }
+        return links;
+    }
+
+    /**
+     * Adds the anchors of a controller's endpoints, and of the request body
+     * types they take.
+     *
+     * @param controller The controller.
+     * @param links The link targets to add to.
+     */
+    void addLinkTargets(final TypeElement controller, final LinkTargets links) {
+        String controllerName = controller.getQualifiedName().toString();
+        Map<String, Integer> occurrences = new HashMap<>();
+        for (ExecutableElement method : getMethods(controller)) {
+            if (isEndpoint(AnnotationIndex.of(method.getAnnotationMirrors()))) {
+                String anchor = getAnchor(controllerName, method, occurrences);
+                links.addEndpoint(controllerName, method.getSimpleName().toString(), anchor);
+                for (VariableElement parameter : method.getParameters()) {
+                    if (AnnotationIndex.of(parameter.getAnnotationMirrors())
+                            .isAnnotatedWith(ANNOTATION_PARAM_REQUEST_BODY)) {
+                        links.addType(getQualifiedTypeName(parameter.asType()), anchor,
+                                description.isComponent(parameter.asType()));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Process class for rest end points.
+     *
+     * @param type The controller.
+     * @param links The targets of links in comments.
+     * @return the list of <code>RestApiDetails</code>
+     */
+    List<RestApiDetails> getRestCallsFor(final TypeElement type, final LinkTargets links) {
+        List<RestApiDetails> restCalls = new ArrayList<>();
+        AnnotationIndex classAnnotations = AnnotationIndex.of(type.getAnnotationMirrors());
+        String context = type.getQualifiedName().toString();
+        Map<String, Integer> occurrences = new HashMap<>();
+
+        for (ExecutableElement method : getMethods(type)) {
+            AnnotationIndex methodAnnotations = AnnotationIndex.of(method.getAnnotationMirrors());
+            if (isEndpoint(methodAnnotations)) {
+                List<? extends VariableElement> parameters = method.getParameters();
+                AnnotationIndex[] parameterAnnotations = new AnnotationIndex[parameters.size()];
+                for (int i = 0; i < parameters.size(); i++) {
+                    parameterAnnotations[i] = AnnotationIndex.of(parameters.get(i).getAnnotationMirrors());
+                }
+                DocCommentTree comment = getComment(method);
+
+                List<RestApiParameter> pathVariables = getVariables(
+                        comment, parameters, parameterAnnotations, ANNOTATION_PARAM_PATH_VARIABLE, links, context);
+
+                List<RestApiParameter> requestParams = getVariables(
+                        comment, parameters, parameterAnnotations, ANNOTATION_PARAM_REQUEST_PARAM, links, context);
+
+                RestApiRequestBody body = getRequestBody(comment, parameters, parameterAnnotations, links, context);
+
+                String url = getContextFor(classAnnotations, methodAnnotations);
+
+                String httpVerb = methodAnnotations.getValue(ANNOTATION_REQUEST_PARAM, "method");
+                String consumes = methodAnnotations.getValue(ANNOTATION_REQUEST_PARAM, "consumes");
+                String produces = methodAnnotations.getValue(ANNOTATION_REQUEST_PARAM, "produces");
+
+                RestApiDetails endpoint = new RestApiDetails(
+                        url,
+                        httpVerb,
+                        produces,
+                        consumes,
+                        pathVariables,
+                        requestParams,
+                        body,
+                        CommentRenderer.render(getBody(comment), links, context),
+                        getAnchor(context, method, occurrences));
+                if (body != null) {
+                    endpoint.setRequestSize(PayloadSizes.estimate(
+                            body.getStructure(), body.getComponents(), descriptionOptions));
+                }
+                if (isResponseBody(classAnnotations, methodAnnotations)) {
+                    setResponseBody(endpoint, method);
+                }
+                endpoint.setPerformance(PerformanceContracts.of(classAnnotations, methodAnnotations,
+                        getSimpleTypeName(method.getReturnType()), getPerformanceTags(comment)));
+
+                restCalls.add(endpoint);
+            }
+        }
+        return restCalls;
+    }
+
+    /**
+     * Gets the variables for an endpoint.
+     *
+     * @param comment The method's comment, or {@code null} if it has none.
+     * @param parameters The method's parameters.
+     * @param parameterAnnotations The annotations of each parameter.
+     * @param annotationType The annotation type denoting the type of variable.
+     * @param links The targets of links in comments.
+     * @param context The qualified name of the controller.
+     * @return The path variables.
+     */
+    private List<RestApiParameter> getVariables(
+            final DocCommentTree comment,
+            final List<? extends VariableElement> parameters,
+            final AnnotationIndex[] parameterAnnotations,
+            final String annotationType,
+            final LinkTargets links,
+            final String context) {
+        List<RestApiParameter> variables = new ArrayList<>();
+        for (int i = 0; i < parameters.size(); i++) {
+            if (parameterAnnotations[i].isAnnotatedWith(annotationType)) {
+                VariableElement parameter = parameters.get(i);
+                String name = parameter.getSimpleName().toString();
+                String annotationValue = parameterAnnotations[i].getFirstValue(annotationType, "value");
+                RestApiParameter apiParameter = new RestApiParameter(
+                        annotationValue.isEmpty() ? name : annotationValue,
+                        getTypeName(parameter.asType()),
+                        getParamTag(comment, name, links, context));
+                variables.add(apiParameter);
+            }
+        }
+        return variables;
+    }
+
+    /**
+     * Gets the param javadoc description.
+     *
+     * @param comment The method's comment, or {@code null} if it has none.
+     * @param name The parameter name.
+     * @param links The targets of links in comments.
+     * @param context The qualified name of the controller.
+     * @return The parameter description, or an empty string if there is no
+     *          tag.
+     */
+    private static String getParamTag(
+            final DocCommentTree comment, final String name, final LinkTargets links, final String context) {
+        if (comment == null) {
+            return "";
+        }
+        for (DocTree tag : comment.getBlockTags()) {
+            if (tag.getKind() == DocTree.Kind.PARAM) {
+                ParamTree param = (ParamTree) tag;
+                if (!param.isTypeParameter() && name.contentEquals(param.getName().getName())) {
+                    return CommentRenderer.render(toText(param.getDescription()), links, context);
+                }
+            }
+        }
+        return "";
+    }
+
+    /**
+     * Gets the request body description, if available, for a method.
+     *
+     * @param comment The method's comment, or {@code null} if it has none.
+     * @param parameters The method's parameters.
+     * @param parameterAnnotations The annotations of each parameter.
+     * @param links The targets of links in comments.
+     * @param context The qualified name of the controller.
+     * @return The method body description, or {@code null} if this
+     *          endpoint does not require a body.
+     */
+    private RestApiRequestBody getRequestBody(
+            final DocCommentTree comment,
+            final List<? extends VariableElement> parameters,
+            final AnnotationIndex[] parameterAnnotations,
+            final LinkTargets links,
+            final String context) {
+        RestApiRequestBody bodyDescription = null;
+
+        for (int i = 0; i < parameters.size(); i++) {
+            VariableElement parameter = parameters.get(i);
+            if (parameterAnnotations[i].isAnnotatedWith(ANNOTATION_PARAM_REQUEST_BODY)) {
+                /* this parameter is a @RequestBody */
+                TypeMirror type = parameter.asType();
+                String name = parameter.getSimpleName().toString();
+                DocletStats.Measurement measurement = stats.start(getQualifiedTypeName(type));
+                String typeDescription = description.describeType(type);
+                stats.recordTypeDescription(getQualifiedTypeName(type),
+                        typeDescription == null ? 0 : typeDescription.length(), measurement);
+                bodyDescription = new RestApiRequestBody(
+                        name,
+                        type.toString(),
+                        getParamTag(comment, name, links, context),
+                        typeDescription);
+                bodyDescription.setComponents(description.getComponents(type));
+            }
+        }
+        return bodyDescription;
+    }
+
+    /**
+     * Determines whether an endpoint returns a response body, rather than a
+     * view, as it does when it or its controller is annotated with
+     * {@code @ResponseBody}, or its controller is a {@code @RestController}.
+     *
+     * @param classAnnotations The annotations on the controller.
+     * @param methodAnnotations The annotations on the endpoint.
+     * @return {@code true} if the endpoint returns a response body.
+     */
+    private static boolean isResponseBody(
+            final AnnotationIndex classAnnotations, final AnnotationIndex methodAnnotations) {
+        return methodAnnotations.isAnnotatedWith(ANNOTATION_RESPONSE_BODY)
+                || classAnnotations.isAnnotatedWith(ANNOTATION_RESPONSE_BODY)
+                || classAnnotations.isAnnotatedWith(ANNOTATION_REST_CONTROLLER);
+    }
+
+    /**
+     * Gets the type of an endpoint's response body, unwrapping types such
+     * as {@code ResponseEntity<Foo>}.
+     *
+     * @param returnType The endpoint's return type.
+     * @return The response body type, or {@code null} if there is none, or
+     *          it isn't known.
+     */
+    private static TypeMirror getResponseType(final TypeMirror returnType) {
+        if (returnType.getKind() == TypeKind.VOID) {
+            return null;
+        }
+        TypeElement element = ElementDescription.asTypeElement(returnType);
+        if (element != null && PayloadSizes.isResponseWrapper(element.getSimpleName().toString())) {
+            List<? extends TypeMirror> arguments = ((DeclaredType) returnType).getTypeArguments();
+            return arguments.isEmpty() ? null : getResponseType(arguments.get(0));
+        }
+        return VOID.equals(getQualifiedTypeName(returnType)) ? null : returnType;
+    }
+
+    /**
+     * Describes an endpoint's response body, if it has one, to estimate its
+     * size.
+     *
+     * @param endpoint The endpoint's rest call.
+     * @param method The endpoint.
+     */
+    private void setResponseBody(final RestApiDetails endpoint, final ExecutableElement method) {
+        TypeMirror type = getResponseType(method.getReturnType());
+        if (type == null) {
+            return;
+        }
+        DocletStats.Measurement measurement = stats.start(getQualifiedTypeName(type));
+        String typeDescription = description.describeType(type);
+        stats.recordTypeDescription(getQualifiedTypeName(type),
+                typeDescription == null ? 0 : typeDescription.length(), measurement);
+        endpoint.setResponseType(type.toString());
+        endpoint.setResponseSize(PayloadSizes.estimate(
+                typeDescription, description.getComponents(type), descriptionOptions));
+    }
+
+    /**
+     * Gets the context for an endpoint.
+     *
+     * This defined by the @RequestMapping value on the class
+     * and/or method. Where several paths are mapped, the first is used.
+     *
+     * @param classAnnotations The annotations on the controller.
+     * @param methodAnnotations The annotations on the endpoint.
+     * @return The context.
+     */
+    private static String getContextFor(
+            final AnnotationIndex classAnnotations, final AnnotationIndex methodAnnotations) {
+        String classContext;
+        if (classAnnotations.isAnnotatedWith(ANNOTATION_REQUEST_PARAM)) {
+            classContext = classAnnotations.getFirstValue(ANNOTATION_REQUEST_PARAM, "value");
+        } else {
+            classContext = classAnnotations.getFirstValue(ANNOTATION_CONTROLLER, "value");
+        }
+
+        String methodContext = methodAnnotations.getFirstValue(ANNOTATION_REQUEST_PARAM, "value");
+
+        return classContext + methodContext;
+    }
+
+    /**
+     * Determines whether or not a method is an endpoint.
+     * An endpoint is annotated with {@code {@literal @}RequestMapping}.
+     *
+     * @param methodAnnotations The annotations on the method.
+     * @return {@code true} if the method is an endpoint.
+     */
+    private static boolean isEndpoint(final AnnotationIndex methodAnnotations) {
+        return methodAnnotations.isAnnotatedWith(ANNOTATION_REQUEST_PARAM);
+    }
+
+    /**
+     * @param controller The controller's qualified name.
+     * @param method The endpoint.
+     * @param occurrences How many endpoints of each name have been seen so
+     *          far in the controller, updated with this one.
+     * @return The endpoint's anchor.
+     */
+    private static String getAnchor(
+            final String controller, final ExecutableElement method, final Map<String, Integer> occurrences) {
+        String name = method.getSimpleName().toString();
+        Integer seen = occurrences.get(name);
+        int occurrence = seen == null ? 1 : seen + 1;
+        occurrences.put(name, occurrence);
+        return LinkTargets.getAnchor(controller, name, occurrence);
+    }
+
+    /**
+     * Gets the source files that the rest calls of a controller were
+     * extracted from. That is the controller itself along with every type
+     * its request and response bodies reach.
+     *
+     * @param controller The controller, which has already been processed.
+     * @return The source files.
+     */
+    Set<File> getSourceFiles(final TypeElement controller) {
+        Set<File> sources = new LinkedHashSet<>();
+        addSourceFile(controller, sources);
+        AnnotationIndex classAnnotations = AnnotationIndex.of(controller.getAnnotationMirrors());
+        for (ExecutableElement method : getMethods(controller)) {
+            AnnotationIndex methodAnnotations = AnnotationIndex.of(method.getAnnotationMirrors());
+            if (isEndpoint(methodAnnotations)) {
+                for (VariableElement parameter : method.getParameters()) {
+                    if (AnnotationIndex.of(parameter.getAnnotationMirrors())
+                            .isAnnotatedWith(ANNOTATION_PARAM_REQUEST_BODY)) {
+                        for (String type : description.getReachableTypes(parameter.asType())) {
+                            addSourceFile(elements.getTypeElement(type), sources);
+                        }
+                    }
+                }
+                TypeMirror responseType = getResponseType(method.getReturnType());
+                if (responseType != null && isResponseBody(classAnnotations, methodAnnotations)) {
+                    for (String type : description.getReachableTypes(responseType)) {
+                        addSourceFile(elements.getTypeElement(type), sources);
+                    }
+                }
+            }
+        }
+        return sources;
+    }
+
+    /**
+     * Adds the source file of a class, if it has one. Classes read from
+     * the class path have no source file to fingerprint.
+     *
+     * @param type The class.
+     * @param sources The source files to add to.
+     */
+    private void addSourceFile(final TypeElement type, final Set<File> sources) {
+        TreePath path = type == null ? null : trees.getPath(type);
+        if (path == null) {
+            return;
+        }
+        URI uri = path.getCompilationUnit().getSourceFile().toUri();
+        if ("file".equals(uri.getScheme())) {
+            File file = new File(uri);
+            if (file.isFile()) {
+                sources.add(file);
+            }
+        }
+    }
+
+    /**
+     * @param type A class.
+     * @return The methods the class declares that javadoc documents by
+     *          default, the public and protected ones, in source order.
+     */
+    private static List<ExecutableElement> getMethods(final TypeElement type) {
+        List<ExecutableElement> methods = new ArrayList<>();
+        for (Element member : type.getEnclosedElements()) {
+            if (member.getKind() == ElementKind.METHOD
+                    && (member.getModifiers().contains(Modifier.PUBLIC)
+                    || member.getModifiers().contains(Modifier.PROTECTED))) {
+                methods.add((ExecutableElement) member);
+            }
+        }
+        return methods;
+    }
+
+    /**
+     * @param type A parameter type.
+     * @return The type's name as javadoc gives it for a parameter, the
+     *          class name alone unless the type is parameterized or an array.
+     */
+    private String getTypeName(final TypeMirror type) {
+        TypeElement element = ElementDescription.asTypeElement(type);
+        if (element != null && ((DeclaredType) type).getTypeArguments().isEmpty()) {
+            return description.getSimpleTypeName(element);
+        }
+        if (type.getKind() == TypeKind.TYPEVAR) {
+            return ((TypeVariable) type).asElement().getSimpleName().toString();
+        }
+        return type.toString();
+    }
+
+    /**
+     * @param type A type.
+     * @return The simple name of the type's class, as the javadoc model
+     *          gives it, without any type arguments.
+     */
+    private static String getSimpleTypeName(final TypeMirror type) {
+        TypeElement element = ElementDescription.asTypeElement(type);
+        return element == null ? type.toString() : element.getSimpleName().toString();
+    }
+
+    /**
+     * @param comment An endpoint's comment, or {@code null} if it has none.
+     * @return The text of the endpoint's performance block tags, such as
+     *          {@code @sla}, by tag name, the first of each.
+     */
+    private static Map<String, String> getPerformanceTags(final DocCommentTree comment) {
+        Map<String, String> tags = new HashMap<>();
+        if (comment == null) {
+            return tags;
+        }
+        for (DocTree tag : comment.getBlockTags()) {
+            if (tag.getKind() == DocTree.Kind.UNKNOWN_BLOCK_TAG) {
+                UnknownBlockTagTree unknown = (UnknownBlockTagTree) tag;
+                if (PerformanceContracts.TAGS.contains(unknown.getTagName())
+                        && !tags.containsKey(unknown.getTagName())) {
+                    tags.put(unknown.getTagName(), toText(unknown.getContent()));
+                }
+            }
+        }
+        return tags;
+    }
+
+    /**
+     * @param type A type.
+     * @return The qualified name of the type's class, without any type
+     *          arguments.
+     */
+    private static String getQualifiedTypeName(final TypeMirror type) {
+        TypeElement element = ElementDescription.asTypeElement(type);
+        return element == null ? type.toString() : element.getQualifiedName().toString();
+    }
+
+    /**
+     * @param element An element.
+     * @return The element's comment, or {@code null} if it has none or was
+     *          not read from source.
+     */
+    private DocCommentTree getComment(final Element element) {
+        TreePath path = trees.getPath(element);
+        return path == null ? null : trees.getDocCommentTree(path);
+    }
+
+    /**
+     * @param comment A comment, or {@code null} if there is none.
+     * @return The comment's main description, with inline tags as they
+     *          were written.
+     */
+    private static String getBody(final DocCommentTree comment) {
+        if (comment == null) {
+            return "";
+        }
+        String firstSentence = toText(comment.getFirstSentence());
+        String body = toText(comment.getBody());
+        return body.isEmpty() ? firstSentence : firstSentence + " " + body;
+    }
+
+    /**
+     * @param trees Part of a comment.
+     * @return The comment's text, with inline tags as they were written.
+     */
+    private static String toText(final List<? extends DocTree> trees) {
+        StringBuilder text = new StringBuilder();
+        for (DocTree tree : trees) {
+            text.append(tree);
+        }
+        return text.toString();
+    }
+}
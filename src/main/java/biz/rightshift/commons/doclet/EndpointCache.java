@@ -0,0 +1,221 @@
+package biz.rightshift.commons.doclet;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An on-disk cache of the rest calls extracted from each controller.
+ *
+ * Each entry records the source files the rest calls were extracted from,
+ * the controller itself and every type its request bodies reach, along with
+ * a fingerprint of each. An entry is only used while all of those files are
+ * unchanged, and while the endpoints that links in its comments may point
+ * to are the same, as those of other controllers are rendered into it.
+ */
+final class EndpointCache {
+
+    private static final int VERSION = 8;
+    private static final String FIELD_VERSION = "version";
+    private static final String FIELD_OPTIONS = "options";
+    private static final String FIELD_LINKS = "links";
+    private static final String FIELD_SOURCES = "sources";
+    private static final String FIELD_CALLS = "calls";
+    private static final String ENTRY_SUFFIX = ".json";
+    private static final String DIGEST_ALGORITHM = "SHA-1";
+    private static final int BUFFER_SIZE = 8192;
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final File directory;
+    private final String options;
+
+    /** Fingerprints of the source files read during this run, by path. */
+    private final Map<String, String> fingerprints = new ConcurrentHashMap<>();
+
+    /**
+     * @param directory The cache directory.
+     * @param options The doclet options that affect the extracted rest
+     *          calls. Entries stored with other options are not used.
+     */
+    EndpointCache(final File directory, final String options) {
+        this.directory = directory;
+        this.options = options;
+    }
+
+    /**
+     * Loads the rest calls for a controller.
+     *
+     * @param controller The qualified name of the controller.
+     * @param links The targets of links in comments.
+     * @return The rest calls, or {@code null} if there is no entry for the
+     *          controller, any of its source files have changed, or the
+     *          link targets differ from those it was stored with.
+     * @throws IOException If the entry cannot be read.
+     */
+    List<RestApiDetails> load(final String controller, final LinkTargets links) throws IOException {
+        File entry = getEntry(controller);
+        if (!entry.isFile()) {
+            return null;
+        }
+        try (JsonParser parser = jsonFactory.createParser(entry)) {
+            parser.nextToken();
+            RestApiModelCodec.expect(parser, JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if (FIELD_VERSION.equals(field)) {
+                    if (parser.getIntValue() != VERSION) {
+                        return null;
+                    }
+                } else if (FIELD_OPTIONS.equals(field)) {
+                    if (!options.equals(parser.getText())) {
+                        return null;
+                    }
+                } else if (FIELD_LINKS.equals(field)) {
+                    if (!links.getDigest().equals(parser.getText())) {
+                        return null;
+                    }
+                } else if (FIELD_SOURCES.equals(field)) {
+                    if (!isUnchanged(parser)) {
+                        return null;
+                    }
+                } else if (FIELD_CALLS.equals(field)) {
+                    return RestApiModelCodec.readRestCalls(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Stores the rest calls for a controller.
+     *
+     * @param controller The qualified name of the controller.
+     * @param sources The source files the rest calls were extracted from.
+     * @param links The targets of links in comments, that the rest calls
+     *          were rendered with.
+     * @param restCalls The rest calls.
+     * @throws IOException If the entry cannot be written.
+     */
+    void store(
+            final String controller,
+            final Collection<File> sources,
+            final LinkTargets links,
+            final List<RestApiDetails> restCalls) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create cache directory " + directory);
+        }
+        File entry = getEntry(controller);
+        File partial = new File(directory, entry.getName() + ".tmp");
+        try (JsonGenerator generator = jsonFactory.createGenerator(partial, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeNumberField(FIELD_VERSION, VERSION);
+            generator.writeStringField(FIELD_OPTIONS, options);
+            generator.writeStringField(FIELD_LINKS, links.getDigest());
+            generator.writeObjectFieldStart(FIELD_SOURCES);
+            for (File source : sources) {
+                generator.writeStringField(source.getPath(), fingerprint(source));
+            }
+            generator.writeEndObject();
+            generator.writeFieldName(FIELD_CALLS);
+            RestApiModelCodec.writeRestCalls(generator, restCalls);
+            generator.writeEndObject();
+        }
+        /* only replace the entry once it has been written in full */
+        if ((entry.exists() && !entry.delete()) || !partial.renameTo(entry)) {
+            throw new IOException("Failed to replace cache entry " + entry);
+        }
+    }
+
+    /**
+     * Checks the recorded source fingerprints against the files on disk.
+     *
+     * @param parser The parser, positioned on the start of the sources.
+     * @return {@code true} if none of the source files have changed.
+     * @throws IOException If the entry cannot be read.
+     */
+    private boolean isUnchanged(final JsonParser parser) throws IOException {
+        RestApiModelCodec.expect(parser, JsonToken.START_OBJECT);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            File source = new File(parser.getCurrentName());
+            String recorded = parser.nextTextValue();
+            if (!source.isFile() || !fingerprint(source).equals(recorded)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Fingerprints a source file. Each file is only read once per run.
+     *
+     * @param source The source file.
+     * @return A hex encoded digest of the file's contents.
+     * @throws IOException If the file cannot be read.
+     */
+    private String fingerprint(final File source) throws IOException {
+        String path = source.getPath();
+        String fingerprint = fingerprints.get(path);
+        if (fingerprint == null) {
+            fingerprint = digest(source);
+            fingerprints.put(path, fingerprint);
+        }
+        return fingerprint;
+    }
+
+    private static String digest(final File source) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream input = new FileInputStream(source)) {
+            int read;
+            while ((read = input.read(buffer)) >= 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * @param text Some text.
+     * @return A hex encoded digest of the text.
+     */
+    static String digest(final String text) {
+        try {
+            return toHex(MessageDigest.getInstance(DIGEST_ALGORITHM).digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(final byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private File getEntry(final String controller) {
+        return new File(directory, controller + ENTRY_SUFFIX);
+    }
+}
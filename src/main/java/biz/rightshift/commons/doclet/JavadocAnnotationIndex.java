@@ -0,0 +1,68 @@
+package biz.rightshift.commons.doclet;
+
+import com.sun.javadoc.AnnotationDesc;
+import com.sun.javadoc.AnnotationValue;
+import com.sun.javadoc.FieldDoc;
+import com.sun.javadoc.Type;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds an {@link AnnotationIndex} from the legacy javadoc model.
+ */
+final class JavadocAnnotationIndex {
+
+    private JavadocAnnotationIndex() {
+        // Prevent Instantiation.
+    }
+
+    /**
+     * Indexes annotations.
+     *
+     * @param annotations The annotations.
+     * @return The index.
+     */
+    static AnnotationIndex of(final AnnotationDesc[] annotations) {
+        Map<String, Map<String, List<String>>> index = new HashMap<>();
+        for (AnnotationDesc annotation : annotations) {
+            Map<String, List<String>> elements = new HashMap<>();
+            for (AnnotationDesc.ElementValuePair pair : annotation.elementValues()) {
+                List<String> values = new ArrayList<>();
+                addValues(pair.value(), values);
+                elements.put(pair.element().name(), values);
+            }
+            String name = annotation.annotationType().name();
+            if (!index.containsKey(name)) {
+                index.put(name, elements);
+            }
+        }
+        return new AnnotationIndex(index);
+    }
+
+    /**
+     * Parses an annotation value, flattening arrays.
+     *
+     * @param value The annotation value.
+     * @param values The list to add the parsed values to.
+     */
+    private static void addValues(final AnnotationValue value, final List<String> values) {
+        if (value == null) {
+            return;
+        }
+        Object raw = value.value();
+        if (raw instanceof AnnotationValue[]) {
+            for (AnnotationValue element : (AnnotationValue[]) raw) {
+                addValues(element, values);
+            }
+        } else if (raw instanceof FieldDoc) {
+            /* enum constants, such as RequestMethod.GET */
+            values.add(((FieldDoc) raw).name());
+        } else if (raw instanceof Type) {
+            values.add(((Type) raw).qualifiedTypeName());
+        } else {
+            values.add(String.valueOf(raw));
+        }
+    }
+}
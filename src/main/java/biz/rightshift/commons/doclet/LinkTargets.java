@@ -0,0 +1,202 @@
+package biz.rightshift.commons.doclet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The anchors that {@code {@link}} tags in comments may point to: the
+ * endpoints of each controller, and the types their request bodies take.
+ * A type links to its schema if it is described as a component, and
+ * otherwise to the first endpoint to take it.
+ *
+ * Targets are all added before any comment is rendered, after which the
+ * targets are only read and may be shared between threads.
+ */
+final class LinkTargets {
+
+    private static final char MEMBER_SEPARATOR = '#';
+    private static final char PACKAGE_SEPARATOR = '.';
+
+    private final Map<String, String> members = new HashMap<>();
+    private final Map<String, String> types = new HashMap<>();
+    private final Map<String, List<String>> simpleNames = new HashMap<>();
+    private volatile String digest;
+
+    /**
+     * Gets the anchor of an endpoint. Anchors are unique within a run, the
+     * second and later endpoints of the same name in a controller are
+     * numbered.
+     *
+     * @param controller The controller's qualified name.
+     * @param method The endpoint's method name.
+     * @param occurrence How many endpoints of this name the controller has
+     *          up to and including this one.
+     * @return The anchor.
+     */
+    static String getAnchor(final String controller, final String method, final int occurrence) {
+        String anchor = controller + PACKAGE_SEPARATOR + method;
+        return occurrence > 1 ? anchor + "-" + occurrence : anchor;
+    }
+
+    /**
+     * Adds an endpoint. The controller itself links to its first endpoint,
+     * as does an overloaded method name.
+     *
+     * @param controller The controller's qualified name.
+     * @param method The endpoint's method name.
+     * @param anchor The endpoint's anchor.
+     */
+    void addEndpoint(final String controller, final String method, final String anchor) {
+        String member = controller + MEMBER_SEPARATOR + method;
+        if (!members.containsKey(member)) {
+            members.put(member, anchor);
+        }
+        addType(controller, anchor, false);
+    }
+
+    /**
+     * Adds the endpoints of a controller, and the types their request bodies
+     * take, from rest calls already extracted, as if they had been added
+     * while extracting them.
+     *
+     * @param controller The controller's qualified name.
+     * @param restCalls The controller's rest calls.
+     */
+    void addEndpoints(final String controller, final List<RestApiDetails> restCalls) {
+        for (RestApiDetails restCall : restCalls) {
+            String anchor = restCall.getAnchor();
+            if (anchor == null || !anchor.startsWith(controller + PACKAGE_SEPARATOR)) {
+                continue;
+            }
+            String method = anchor.substring(controller.length() + 1);
+            int occurrence = method.indexOf('-');
+            addEndpoint(controller, occurrence < 0 ? method : method.substring(0, occurrence), anchor);
+            RestApiRequestBody body = restCall.getRequestBody();
+            if (body != null && body.getType() != null) {
+                String type = body.getType();
+                int end = type.length();
+                for (char terminator : new char[] {'<', '['}) {
+                    int index = type.indexOf(terminator);
+                    if (index >= 0 && index < end) {
+                        end = index;
+                    }
+                }
+                String name = type.substring(0, end);
+                addType(name, anchor, body.getComponents().containsKey(name));
+            }
+        }
+    }
+
+    /**
+     * Adds a type, linking to its component's anchor, which is its qualified
+     * name, or else to the first anchor it is added with.
+     *
+     * @param type The type's qualified name.
+     * @param anchor The anchor, typically of the first endpoint to take the
+     *          type as its request body.
+     * @param component Whether the type is described as a component.
+     */
+    void addType(final String type, final String anchor, final boolean component) {
+        if (types.containsKey(type)) {
+            return;
+        }
+        types.put(type, component ? type : anchor);
+        String simpleName = type.substring(type.lastIndexOf(PACKAGE_SEPARATOR) + 1);
+        List<String> named = simpleNames.get(simpleName);
+        if (named == null) {
+            named = new ArrayList<>();
+            simpleNames.put(simpleName, named);
+        }
+        named.add(type);
+    }
+
+    /**
+     * Resolves the reference of a {@code {@link}} tag.
+     *
+     * Class names may be qualified or not. An unqualified name is looked up
+     * in the package of the referring class first, then anywhere it is
+     * unambiguous.
+     *
+     * @param reference The reference, such as {@code Type}, {@code #method}
+     *          or {@code package.Type#method(Type)}.
+     * @param context The qualified name of the class whose comment holds the
+     *          reference.
+     * @return The anchor, or {@code null} if the reference is not to a
+     *          documented endpoint or type.
+     */
+    String resolve(final String reference, final String context) {
+        int end = reference.indexOf('(');
+        String target = end < 0 ? reference : reference.substring(0, end);
+        int separator = target.indexOf(MEMBER_SEPARATOR);
+        String className = separator < 0 ? target : target.substring(0, separator);
+        String type = className.isEmpty() ? context : resolveType(className, context);
+        if (type == null) {
+            return null;
+        }
+        if (separator < 0) {
+            return types.get(type);
+        }
+        return members.get(type + MEMBER_SEPARATOR + target.substring(separator + 1));
+    }
+
+    /**
+     * @param name A qualified, partly qualified or simple class name.
+     * @param context The qualified name of the referring class.
+     * @return The qualified name of the target type, or {@code null} if
+     *          there is no single match.
+     */
+    private String resolveType(final String name, final String context) {
+        if (types.containsKey(name)) {
+            return name;
+        }
+        List<String> named = simpleNames.get(name.substring(name.lastIndexOf(PACKAGE_SEPARATOR) + 1));
+        if (named == null) {
+            return null;
+        }
+        String contextPackage = context.substring(0, Math.max(0, context.lastIndexOf(PACKAGE_SEPARATOR)));
+        String match = null;
+        int matches = 0;
+        for (String type : named) {
+            if (type.endsWith(PACKAGE_SEPARATOR + name)) {
+                if (type.equals(contextPackage + PACKAGE_SEPARATOR + name)) {
+                    return type;
+                }
+                match = type;
+                matches++;
+            }
+        }
+        return matches == 1 ? match : null;
+    }
+
+    /**
+     * Gets a digest of every target, which differs once an endpoint is
+     * added, removed or renamed, or an overload is numbered differently, so
+     * that comments rendered with other targets are not reused. Only called
+     * once every target is added.
+     *
+     * @return A hex encoded digest of the targets.
+     */
+    String getDigest() {
+        if (digest == null) {
+            digest = EndpointCache.digest(new TreeMap<>(members).toString() + new TreeMap<>(types));
+        }
+        return digest;
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (!(other instanceof LinkTargets)) {
+            return false;
+        }
+        LinkTargets targets = (LinkTargets) other;
+        return members.equals(targets.members) && types.equals(targets.types);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * members.hashCode() + types.hashCode();
+    }
+}
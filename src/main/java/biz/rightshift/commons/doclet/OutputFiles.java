@@ -0,0 +1,329 @@
+package biz.rightshift.commons.doclet;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Opens the files of the output, in a directory.
+ *
+ * For serving from a CDN, each file is written with a gzip compressed copy
+ * next to it, compressed and digested as it is written rather than read
+ * back afterwards. Files that are only reached through links, such as the
+ * pages of a sharded output, are named after a digest of their content,
+ * so a page that is unchanged keeps its name between runs and may be
+ * cached for good. Each file is written under a temporary name and only
+ * takes its real name once written in full. A manifest then lists every
+ * file with an ETag, the digest of its content, and whether its name is
+ * hashed.
+ */
+final class OutputFiles {
+
+    /** The name of the manifest, in the output directory. */
+    static final String MANIFEST = "manifest.json";
+
+    /** The suffix of a file's compressed copy. */
+    static final String GZIP_SUFFIX = ".gz";
+
+    private static final String PARTIAL_SUFFIX = ".tmp";
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final int HASH_LENGTH = 16;
+    private static final int BUFFER_SIZE = 8192;
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final File directory;
+    private final boolean cdn;
+    private final Map<String, ManifestEntry> manifest = new TreeMap<>();
+
+    /**
+     * @param directory The directory to write the files to.
+     * @param cdn Whether to write the files for serving from a CDN.
+     */
+    OutputFiles(final File directory, final boolean cdn) {
+        this.directory = directory;
+        this.cdn = cdn;
+    }
+
+    /**
+     * Opens a file that keeps its name, such as the output file itself.
+     *
+     * @param name The file's name.
+     * @return The file's stream.
+     * @throws IOException If the file cannot be created.
+     */
+    OutputFile open(final String name) throws IOException {
+        return open(name, false);
+    }
+
+    /**
+     * Opens a file that is named after its content when written for a CDN,
+     * such as a page that is only reached through a link.
+     *
+     * @param name The file's name, to which the hash is added before its
+     *          extension.
+     * @return The file's stream, which gives the name it was written under
+     *          once closed.
+     * @throws IOException If the file cannot be created.
+     */
+    OutputFile openHashed(final String name) throws IOException {
+        return open(name, true);
+    }
+
+    private OutputFile open(final String name, final boolean hashed) throws IOException {
+        if (!cdn) {
+            return new OutputFile(name, new FileOutputStream(new File(directory, name)));
+        }
+        return new PublishedFile(name, hashed);
+    }
+
+    /**
+     * Writes the manifest of the files written, when writing for a CDN.
+     *
+     * @throws IOException If the manifest cannot be written.
+     */
+    void writeManifest() throws IOException {
+        if (!cdn) {
+            return;
+        }
+        File partial = new File(directory, MANIFEST + PARTIAL_SUFFIX);
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(partial, JsonEncoding.UTF8)) {
+            generator.useDefaultPrettyPrinter();
+            generator.writeStartObject();
+            synchronized (manifest) {
+                for (Map.Entry<String, ManifestEntry> file : manifest.entrySet()) {
+                    ManifestEntry entry = file.getValue();
+                    generator.writeObjectFieldStart(file.getKey());
+                    generator.writeStringField("etag", "\"" + entry.digest + "\"");
+                    generator.writeNumberField("length", entry.length);
+                    generator.writeStringField("gzip", file.getKey() + GZIP_SUFFIX);
+                    generator.writeNumberField("gzipLength", entry.gzipLength);
+                    generator.writeBooleanField("immutable", entry.hashed);
+                    generator.writeEndObject();
+                }
+            }
+            generator.writeEndObject();
+        }
+        replace(partial, new File(directory, MANIFEST));
+    }
+
+    /**
+     * Gives a file its real name, replacing any file already under it.
+     *
+     * @param partial The file, under its temporary name.
+     * @param file The file's real name.
+     * @throws IOException If the file cannot be renamed.
+     */
+    private static void replace(final File partial, final File file) throws IOException {
+        if ((file.exists() && !file.delete()) || !partial.renameTo(file)) {
+            throw new IOException("Failed to replace " + file);
+        }
+    }
+
+    /**
+     * @param name A file's name.
+     * @param digest A digest of the file's content.
+     * @return The name with the start of the digest before its extension.
+     */
+    static String getHashedName(final String name, final String digest) {
+        int extension = name.lastIndexOf('.');
+        String hash = digest.substring(0, HASH_LENGTH);
+        return extension <= 0
+                ? name + '.' + hash
+                : name.substring(0, extension) + '.' + hash + name.substring(extension);
+    }
+
+    private static MessageDigest createDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static String toHex(final byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * A file of the output, being written.
+     */
+    static class OutputFile extends OutputStream {
+
+        private final OutputStream output;
+        private String name;
+
+        /**
+         * @param name The file's name.
+         * @param output The stream to write the file with.
+         */
+        OutputFile(final String name, final OutputStream output) {
+            this.name = name;
+            this.output = output;
+        }
+
+        /**
+         * @return The name the file is written under, which is only known
+         *          once it is closed if its name is hashed.
+         */
+        String getName() {
+            return name;
+        }
+
+        /**
+         * @param name The name the file was written under.
+         */
+        void setName(final String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            output.write(b);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            output.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            output.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            output.close();
+        }
+    }
+
+    /**
+     * A file written for a CDN: each byte is written to the file, to a gzip
+     * stream of its compressed copy and to a digest, so that once the last
+     * byte is written both files are complete and the ETag is known.
+     */
+    private final class PublishedFile extends OutputFile {
+
+        private final String requestedName;
+        private final boolean hashed;
+        private final File partial;
+        private final File partialGzip;
+        private final OutputStream gzip;
+        private final MessageDigest digest;
+        private long length;
+        private boolean closed;
+
+        /**
+         * @param name The file's name.
+         * @param hashed Whether to add a digest of its content to its name.
+         * @throws IOException If the file cannot be created.
+         */
+        PublishedFile(final String name, final boolean hashed) throws IOException {
+            super(name, new BufferedOutputStream(
+                    new FileOutputStream(new File(directory, name + PARTIAL_SUFFIX)), BUFFER_SIZE));
+            this.requestedName = name;
+            this.hashed = hashed;
+            this.partial = new File(directory, name + PARTIAL_SUFFIX);
+            this.partialGzip = new File(directory, name + GZIP_SUFFIX + PARTIAL_SUFFIX);
+            try {
+                this.digest = createDigest();
+                this.gzip = new GZIPOutputStream(new FileOutputStream(partialGzip), BUFFER_SIZE);
+            } catch (IOException ex) {
+                super.close();
+                throw ex;
+            }
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            super.write(b);
+            gzip.write(b);
+            digest.update((byte) b);
+            length++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            super.write(b, off, len);
+            gzip.write(b, off, len);
+            digest.update(b, off, len);
+            length += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            super.flush();
+            gzip.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                super.close();
+            } finally {
+                gzip.close();
+            }
+
+            ManifestEntry entry = new ManifestEntry(
+                    toHex(digest.digest()), length, partialGzip.length(), hashed);
+            String name = hashed ? getHashedName(requestedName, entry.digest) : requestedName;
+            File file = new File(directory, name);
+            File gzipFile = new File(directory, name + GZIP_SUFFIX);
+            if (hashed && file.isFile() && gzipFile.isFile()) {
+                /* the same content was written by an earlier run, leave it as it was */
+                if (!partial.delete() || !partialGzip.delete()) {
+                    throw new IOException("Failed to remove " + partial);
+                }
+            } else {
+                replace(partialGzip, gzipFile);
+                replace(partial, file);
+            }
+            setName(name);
+            synchronized (manifest) {
+                manifest.put(name, entry);
+            }
+        }
+    }
+
+    /**
+     * What the manifest records of a file.
+     */
+    private static final class ManifestEntry {
+
+        private final String digest;
+        private final long length;
+        private final long gzipLength;
+        private final boolean hashed;
+
+        /**
+         * @param digest A digest of the file's content.
+         * @param length The file's length.
+         * @param gzipLength The length of its compressed copy.
+         * @param hashed Whether its name is hashed.
+         */
+        ManifestEntry(final String digest, final long length, final long gzipLength, final boolean hashed) {
+            this.digest = digest;
+            this.length = length;
+            this.gzipLength = gzipLength;
+            this.hashed = hashed;
+        }
+    }
+}
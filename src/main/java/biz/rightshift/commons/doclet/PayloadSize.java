@@ -0,0 +1,96 @@
+package biz.rightshift.commons.doclet;
+
+import java.util.Locale;
+
+/**
+ * The estimated size of a body serialized as compact JSON, in bytes: the
+ * smallest it can be, its typical size, and the largest it is expected to
+ * be, given the assumed number of elements in each collection.
+ */
+public class PayloadSize {
+
+    /** The size of a body with no bound, such as one that contains itself. */
+    public static final long UNBOUNDED = Long.MAX_VALUE;
+
+    private static final long KILOBYTE = 1024;
+    private static final long MEGABYTE = KILOBYTE * KILOBYTE;
+    private static final long GIGABYTE = MEGABYTE * KILOBYTE;
+
+    private final long min;
+    private final long typical;
+    private final long max;
+    private final boolean overBudget;
+
+    /**
+     * @param min The smallest size.
+     * @param typical The typical size.
+     * @param max The largest size, or {@link #UNBOUNDED}.
+     * @param overBudget Whether the typical size is over the size budget.
+     */
+    public PayloadSize(final long min, final long typical, final long max, final boolean overBudget) {
+        this.min = min;
+        this.typical = typical;
+        this.max = max;
+        this.overBudget = overBudget;
+    }
+
+    /**
+     * @return The smallest size, with every reference null and every
+     *          collection empty.
+     */
+    public long getMin() {
+        return min;
+    }
+
+    /**
+     * @return The typical size, with collections of the typical cardinality.
+     */
+    public long getTypical() {
+        return typical;
+    }
+
+    /**
+     * @return The largest size, with collections of the maximum
+     *          cardinality, or {@link #UNBOUNDED}.
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @return Whether the typical size is over the size budget.
+     */
+    public boolean isOverBudget() {
+        return overBudget;
+    }
+
+    /**
+     * @return The sizes, for reading, such as "12 B min, 1.5 KB typical,
+     *          120.3 KB max".
+     */
+    public String getSummary() {
+        return format(min) + " min, " + format(typical) + " typical, " + format(max) + " max";
+    }
+
+    /**
+     * @param size A size in bytes.
+     * @return The size in bytes, kilobytes, megabytes or gigabytes.
+     */
+    static String format(final long size) {
+        if (size == UNBOUNDED) {
+            return "unbounded";
+        } else if (size < KILOBYTE) {
+            return size + " B";
+        } else if (size < MEGABYTE) {
+            return String.format(Locale.ENGLISH, "%.1f KB", (double) size / KILOBYTE);
+        } else if (size < GIGABYTE) {
+            return String.format(Locale.ENGLISH, "%.1f MB", (double) size / MEGABYTE);
+        }
+        return String.format(Locale.ENGLISH, "%.1f GB", (double) size / GIGABYTE);
+    }
+
+    @Override
+    public final String toString() {
+        return getSummary();
+    }
+}
@@ -0,0 +1,399 @@
+package biz.rightshift.commons.doclet;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Estimates the serialized size of bodies from their descriptions, as
+ * produced by {@link Description} and {@link ElementDescription}, so that
+ * both doclets, and model files, give the same estimates.
+ *
+ * A body is sized as compact JSON with every field written. Scalars are
+ * sized by type, with strings of {@value #TYPICAL_STRING_LENGTH} characters
+ * typically and {@value #MAX_STRING_LENGTH} at most. Collections and maps
+ * hold the typical or maximum cardinality of elements, so nested collections
+ * multiply. At their smallest, references are null and collections empty.
+ * Types described only by name are sized as null, while a component that
+ * contains itself has no maximum size.
+ */
+final class PayloadSizes {
+
+    private static final int MIN = 0;
+    private static final int TYPICAL = 1;
+    private static final int MAX = 2;
+
+    private static final int TYPICAL_STRING_LENGTH = 16;
+    private static final int MAX_STRING_LENGTH = 255;
+    private static final long NULL_SIZE = 4;
+    private static final long QUOTES_SIZE = 2;
+    private static final long BRACKETS_SIZE = 2;
+    private static final long SEPARATOR_SIZE = 1;
+    private static final long OMITTED_FIELD_NAME_LENGTH = 8;
+    private static final String ENUM_SEPARATOR = "|";
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /** The simple names of types that wrap a response body, which is their first type argument. */
+    private static final Set<String> RESPONSE_WRAPPERS = new HashSet<>(Arrays.asList(
+            "ResponseEntity", "HttpEntity", "Callable", "DeferredResult", "WebAsyncTask",
+            "Future", "CompletableFuture", "CompletionStage", "ListenableFuture"));
+
+    /** The smallest, typical and largest size of each scalar type, by simple name. */
+    private static final Map<String, long[]> SCALAR_SIZES = new HashMap<>();
+
+    static {
+        addScalar(new long[] {4, 5, 5}, "boolean", "Boolean");
+        addScalar(new long[] {1, 2, 4}, "byte", "Byte");
+        addScalar(new long[] {1, 3, 6}, "short", "Short");
+        addScalar(new long[] {1, 4, 11}, "int", "Integer");
+        addScalar(new long[] {1, 8, 20}, "long", "Long");
+        addScalar(new long[] {1, 6, 15}, "float", "Float");
+        addScalar(new long[] {1, 8, 24}, "double", "Double");
+        addScalar(new long[] {1, 8, 40}, "BigInteger", "BigDecimal");
+        addScalar(new long[] {3, 3, 8}, "char", "Character");
+        addScalar(new long[] {QUOTES_SIZE, QUOTES_SIZE + TYPICAL_STRING_LENGTH, QUOTES_SIZE + MAX_STRING_LENGTH},
+                "String");
+        addScalar(new long[] {NULL_SIZE, 26, 31}, "Date", "Instant", "OffsetDateTime", "ZonedDateTime");
+        addScalar(new long[] {NULL_SIZE, 21, 25}, "LocalDateTime");
+        addScalar(new long[] {NULL_SIZE, 12, 12}, "LocalDate");
+        addScalar(new long[] {NULL_SIZE, 10, 14}, "LocalTime");
+        addScalar(new long[] {NULL_SIZE, 38, 38}, "UUID");
+    }
+
+    private PayloadSizes() {
+        // Prevent Instantiation.
+    }
+
+    private static void addScalar(final long[] sizes, final String... typeNames) {
+        for (String typeName : typeNames) {
+            SCALAR_SIZES.put(typeName, sizes);
+        }
+    }
+
+    /**
+     * Estimates the size of a body.
+     *
+     * @param structure The body's description, as JSON text.
+     * @param components The descriptions of the components the description
+     *          refers to, by qualified type name.
+     * @param options The assumed cardinalities, and the size budget.
+     * @return The estimate, or {@code null} if the body has no description.
+     */
+    static PayloadSize estimate(
+            final String structure,
+            final Map<String, String> components,
+            final DescriptionOptions options) {
+        if (structure == null) {
+            return null;
+        }
+        long[] sizes;
+        try {
+            sizes = new Estimate(components, options).size(structure, false);
+        } catch (IOException ex) {
+            return null;
+        }
+        return new PayloadSize(sizes[MIN], sizes[TYPICAL], sizes[MAX],
+                options.getSizeBudget() != DescriptionOptions.UNLIMITED
+                        && sizes[TYPICAL] > options.getSizeBudget());
+    }
+
+    /**
+     * @param simpleName The simple name of an endpoint's return type.
+     * @return Whether the type wraps the response body, such as
+     *          {@code ResponseEntity}, rather than being the body.
+     */
+    static boolean isResponseWrapper(final String simpleName) {
+        return RESPONSE_WRAPPERS.contains(simpleName);
+    }
+
+    /**
+     * Warns of each endpoint whose request or response body is over the
+     * size budget, as estimated when it was extracted.
+     *
+     * @param restCalls The rest calls.
+     * @param reporter Where to warn of each endpoint over budget.
+     */
+    static void warnOverBudget(final List<RestApiDetails> restCalls, final DocletReporter reporter) {
+        for (RestApiDetails restCall : restCalls) {
+            warnOverBudget(restCall, "Request", restCall.getRequestSize(), reporter);
+            warnOverBudget(restCall, "Response", restCall.getResponseSize(), reporter);
+        }
+    }
+
+    private static void warnOverBudget(
+            final RestApiDetails restCall,
+            final String body,
+            final PayloadSize size,
+            final DocletReporter reporter) {
+        if (size != null && size.isOverBudget()) {
+            reporter.printWarning(body + " body of " + restCall.getMethod() + " " + restCall.getUrl()
+                    + " is over the size budget: " + size.getSummary());
+        }
+    }
+
+    /**
+     * @param a A size.
+     * @param b Another size.
+     * @return The sum of the sizes, or {@link PayloadSize#UNBOUNDED} if either
+     *          is unbounded or the sum overflows.
+     */
+    private static long add(final long a, final long b) {
+        return a > PayloadSize.UNBOUNDED - b ? PayloadSize.UNBOUNDED : a + b;
+    }
+
+    /**
+     * @param size A size.
+     * @param count How many times the size is repeated.
+     * @return The product, or {@link PayloadSize#UNBOUNDED} if the size is
+     *          unbounded or the product overflows.
+     */
+    private static long multiply(final long size, final long count) {
+        return count != 0 && size > PayloadSize.UNBOUNDED / count ? PayloadSize.UNBOUNDED : size * count;
+    }
+
+    /**
+     * @param elementSizes The sizes of an element, with any separator.
+     * @param bracketsSize The size of what surrounds the elements.
+     * @param typicalCount The typical number of elements.
+     * @param maxCount The largest number of elements.
+     * @return The sizes of a collection of the elements, at its smallest
+     *          empty.
+     */
+    private static long[] repeat(
+            final long[] elementSizes, final long bracketsSize, final long typicalCount, final long maxCount) {
+        return new long[] {
+            bracketsSize,
+            add(bracketsSize, withoutLastSeparator(multiply(elementSizes[TYPICAL], typicalCount))),
+            add(bracketsSize, withoutLastSeparator(multiply(elementSizes[MAX], maxCount))),
+        };
+    }
+
+    /**
+     * @param size The size of elements, each followed by a separator.
+     * @return The size without the last element's separator.
+     */
+    private static long withoutLastSeparator(final long size) {
+        return size == PayloadSize.UNBOUNDED ? size : Math.max(0, size - SEPARATOR_SIZE);
+    }
+
+    /**
+     * The estimate of one body, which remembers the sizes of the components
+     * it has already sized.
+     */
+    private static final class Estimate {
+
+        private final Map<String, String> components;
+        private final DescriptionOptions options;
+        private final Set<String> sizing = new HashSet<>();
+        private final Map<String, long[]> componentSizes = new HashMap<>();
+        private boolean cycle;
+
+        /**
+         * @param components The descriptions of the components, by qualified
+         *          type name.
+         * @param options The assumed cardinalities.
+         */
+        Estimate(final Map<String, String> components, final DescriptionOptions options) {
+            this.components = components;
+            this.options = options;
+        }
+
+        /**
+         * @param structure A description, as JSON text.
+         * @param nullable Whether the value may be null.
+         * @return The smallest, typical and largest sizes.
+         * @throws IOException If the description cannot be read.
+         */
+        long[] size(final String structure, final boolean nullable) throws IOException {
+            try (JsonParser parser = JSON_FACTORY.createParser(structure)) {
+                parser.nextToken();
+                return size(parser, nullable);
+            }
+        }
+
+        /**
+         * Sizes a description as it is read.
+         *
+         * @param parser The parser, positioned on the description.
+         * @param nullable Whether the value may be null.
+         * @return The smallest, typical and largest sizes.
+         * @throws IOException If the description cannot be read.
+         */
+        private long[] size(final JsonParser parser, final boolean nullable) throws IOException {
+            JsonToken token = parser.getCurrentToken();
+            long[] sizes;
+            if (token == JsonToken.START_OBJECT) {
+                JsonToken field = parser.nextToken();
+                String name = parser.getCurrentName();
+                if (field == JsonToken.FIELD_NAME && RestApiRequestBody.REFERENCE.equals(name)) {
+                    parser.nextToken();
+                    String component = parser.getText();
+                    while (parser.nextToken() != JsonToken.END_OBJECT) {
+                        parser.skipChildren();
+                    }
+                    sizes = sizeComponent(component);
+                } else if (field == JsonToken.FIELD_NAME && name.startsWith("{") && name.endsWith("}")) {
+                    /* a map, its entries keyed by strings */
+                    parser.nextToken();
+                    long[] value = size(parser, true);
+                    while (parser.nextToken() != JsonToken.END_OBJECT) {
+                        parser.skipChildren();
+                    }
+                    long[] key = SCALAR_SIZES.get("String");
+                    sizes = repeat(new long[] {0,
+                        key[TYPICAL] + SEPARATOR_SIZE + value[TYPICAL] + SEPARATOR_SIZE,
+                        add(key[MAX] + SEPARATOR_SIZE + SEPARATOR_SIZE, value[MAX]),
+                    }, BRACKETS_SIZE, options.getTypicalCardinality(), options.getMaxCardinality());
+                } else {
+                    sizes = sizeFields(parser, field);
+                }
+            } else if (token == JsonToken.START_ARRAY) {
+                long[] element = {0, 0, 0};
+                if (parser.nextToken() != JsonToken.END_ARRAY) {
+                    element = size(parser, true);
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        parser.skipChildren();
+                    }
+                }
+                sizes = repeat(new long[] {0, element[TYPICAL] + SEPARATOR_SIZE, add(element[MAX], SEPARATOR_SIZE)},
+                        BRACKETS_SIZE, options.getTypicalCardinality(), options.getMaxCardinality());
+            } else {
+                return sizeScalar(parser.getText());
+            }
+            if (nullable) {
+                sizes[MIN] = Math.min(sizes[MIN], NULL_SIZE);
+            }
+            return sizes;
+        }
+
+        /**
+         * Sizes the fields of an object, from its first field on.
+         *
+         * @param parser The parser, positioned on the object's first field.
+         * @param first The first field's token, or the end of the object.
+         * @return The smallest, typical and largest sizes of the object.
+         * @throws IOException If the description cannot be read.
+         */
+        private long[] sizeFields(final JsonParser parser, final JsonToken first) throws IOException {
+            long[] sizes = {BRACKETS_SIZE, BRACKETS_SIZE, BRACKETS_SIZE};
+            long fields = 0;
+            for (JsonToken field = first; field == JsonToken.FIELD_NAME; field = parser.nextToken()) {
+                String property = parser.getCurrentName();
+                parser.nextToken();
+                if (RestApiRequestBody.MORE_FIELDS.equals(property)) {
+                    /* fields left out, sized as strings */
+                    long omitted = getOmittedFields(parser.getText());
+                    long[] string = SCALAR_SIZES.get("String");
+                    long name = QUOTES_SIZE + OMITTED_FIELD_NAME_LENGTH + SEPARATOR_SIZE;
+                    sizes[MIN] = add(sizes[MIN], multiply(name + NULL_SIZE, omitted));
+                    sizes[TYPICAL] = add(sizes[TYPICAL], multiply(name + string[TYPICAL], omitted));
+                    sizes[MAX] = add(sizes[MAX], multiply(name + string[MAX], omitted));
+                    fields += omitted;
+                    parser.skipChildren();
+                } else {
+                    long[] value = size(parser, true);
+                    long name = QUOTES_SIZE + property.length() + SEPARATOR_SIZE;
+                    for (int i = MIN; i <= MAX; i++) {
+                        sizes[i] = add(sizes[i], add(name, value[i]));
+                    }
+                    fields++;
+                }
+            }
+            if (fields > 1) {
+                for (int i = MIN; i <= MAX; i++) {
+                    sizes[i] = add(sizes[i], (fields - 1) * SEPARATOR_SIZE);
+                }
+            }
+            return sizes;
+        }
+
+        /**
+         * Sizes a component, once however often it is referred to. A
+         * component that refers back to itself, directly or not, is null
+         * where it does so, and has no largest size.
+         *
+         * @param component The component's qualified type name.
+         * @return The smallest, typical and largest sizes.
+         * @throws IOException If the description cannot be read.
+         */
+        private long[] sizeComponent(final String component) throws IOException {
+            long[] known = componentSizes.get(component);
+            if (known != null) {
+                return known.clone();
+            }
+            String description = components.get(component);
+            if (description == null) {
+                return new long[] {NULL_SIZE, NULL_SIZE, NULL_SIZE};
+            }
+            if (!sizing.add(component)) {
+                cycle = true;
+                return new long[] {NULL_SIZE, NULL_SIZE, PayloadSize.UNBOUNDED};
+            }
+            boolean outerCycle = cycle;
+            cycle = false;
+            long[] sizes;
+            try {
+                sizes = size(description, false);
+            } finally {
+                sizing.remove(component);
+            }
+            /* sizes that cut a cycle short depend on where the cycle was entered */
+            if (!cycle) {
+                componentSizes.put(component, sizes.clone());
+            }
+            cycle |= outerCycle;
+            return sizes;
+        }
+
+        /**
+         * @param typeName A type name, or an enum's options.
+         * @return The smallest, typical and largest sizes of a value of the
+         *          type.
+         */
+        private long[] sizeScalar(final String typeName) {
+            long[] sizes = SCALAR_SIZES.get(typeName);
+            if (sizes != null) {
+                return sizes.clone();
+            }
+            if (typeName.contains(ENUM_SEPARATOR)) {
+                String[] constants = typeName.split("\\" + ENUM_SEPARATOR);
+                long shortest = Long.MAX_VALUE;
+                long longest = 0;
+                long total = 0;
+                for (String constant : constants) {
+                    shortest = Math.min(shortest, constant.length());
+                    longest = Math.max(longest, constant.length());
+                    total += constant.length();
+                }
+                return new long[] {
+                    QUOTES_SIZE + shortest,
+                    QUOTES_SIZE + Math.round((double) total / constants.length),
+                    QUOTES_SIZE + longest,
+                };
+            }
+            /* described by name only, its content unknown */
+            return new long[] {NULL_SIZE, NULL_SIZE, NULL_SIZE};
+        }
+
+        /**
+         * @param moreFields The count of fields left out, such as "3 more
+         *          fields".
+         * @return The number of fields left out.
+         */
+        private static long getOmittedFields(final String moreFields) {
+            int end = 0;
+            while (end < moreFields.length() && Character.isDigit(moreFields.charAt(end))) {
+                end++;
+            }
+            return end == 0 ? 0 : Long.parseLong(moreFields.substring(0, end));
+        }
+    }
+}
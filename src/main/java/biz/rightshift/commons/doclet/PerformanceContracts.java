@@ -0,0 +1,127 @@
+package biz.rightshift.commons.doclet;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads the performance contract of an endpoint from its annotations, its
+ * return type and the block tags of its comment, the same way for both
+ * doclets.
+ *
+ * {@code @Cacheable}, {@code @Async} and {@code @Transactional} apply from
+ * the endpoint, or else its controller. Cache names not given by
+ * {@code @Cacheable} are taken from the controller's {@code @CacheConfig}.
+ */
+final class PerformanceContracts {
+
+    /** The block tag giving an endpoint's service level, such as {@code @sla p99=50ms}. */
+    static final String TAG_SLA = "sla";
+
+    /** The block tag giving an endpoint's rate limit, such as {@code @rateLimit 100/s}. */
+    static final String TAG_RATE_LIMIT = "rateLimit";
+
+    /** The block tag giving an endpoint's timeout, such as {@code @timeout 2s}. */
+    static final String TAG_TIMEOUT = "timeout";
+
+    /** The names of the block tags that make up a performance contract. */
+    static final List<String> TAGS = Collections.unmodifiableList(Arrays.asList(TAG_SLA, TAG_RATE_LIMIT, TAG_TIMEOUT));
+
+    private static final String ANNOTATION_CACHEABLE = "Cacheable";
+    private static final String ANNOTATION_CACHE_CONFIG = "CacheConfig";
+    private static final String ANNOTATION_ASYNC = "Async";
+    private static final String ANNOTATION_TRANSACTIONAL = "Transactional";
+
+    /** The simple names of return types that give the result later, freeing the request thread. */
+    private static final Set<String> ASYNC_RESULTS = new HashSet<>(Arrays.asList(
+            "DeferredResult", "Callable", "WebAsyncTask", "Future", "CompletableFuture", "CompletionStage",
+            "ListenableFuture"));
+
+    private PerformanceContracts() {
+        // Prevent Instantiation.
+    }
+
+    /**
+     * Reads an endpoint's performance contract.
+     *
+     * @param classAnnotations The annotations on the controller.
+     * @param methodAnnotations The annotations on the endpoint.
+     * @param returnType The simple name of the endpoint's return type.
+     * @param tags The text of the endpoint's performance block tags, by tag
+     *          name, with {@link #TAGS} the only ones read.
+     * @return The performance contract, or {@code null} if the endpoint has
+     *          none.
+     */
+    static RestApiPerformance of(
+            final AnnotationIndex classAnnotations,
+            final AnnotationIndex methodAnnotations,
+            final String returnType,
+            final Map<String, String> tags) {
+        String caches = null;
+        if (methodAnnotations.isAnnotatedWith(ANNOTATION_CACHEABLE)) {
+            caches = getCacheNames(methodAnnotations, ANNOTATION_CACHEABLE);
+        } else if (classAnnotations.isAnnotatedWith(ANNOTATION_CACHEABLE)) {
+            caches = getCacheNames(classAnnotations, ANNOTATION_CACHEABLE);
+        }
+        if (caches != null && caches.isEmpty()) {
+            caches = getCacheNames(classAnnotations, ANNOTATION_CACHE_CONFIG);
+        }
+        boolean async = methodAnnotations.isAnnotatedWith(ANNOTATION_ASYNC)
+                || classAnnotations.isAnnotatedWith(ANNOTATION_ASYNC);
+        String transaction = getTransaction(methodAnnotations);
+        if (transaction == null) {
+            transaction = getTransaction(classAnnotations);
+        }
+        String asyncResult = ASYNC_RESULTS.contains(returnType) ? returnType : null;
+        String sla = getTag(tags, TAG_SLA);
+        String rateLimit = getTag(tags, TAG_RATE_LIMIT);
+        String timeout = getTag(tags, TAG_TIMEOUT);
+        if (caches == null && !async && transaction == null && asyncResult == null
+                && sla == null && rateLimit == null && timeout == null) {
+            return null;
+        }
+        return new RestApiPerformance(caches, async, transaction, asyncResult, sla, rateLimit, timeout);
+    }
+
+    /**
+     * @param annotations Some annotations.
+     * @param annotationName The annotation naming caches.
+     * @return The names of the caches, comma separated, or an empty string
+     *          if there are none.
+     */
+    private static String getCacheNames(final AnnotationIndex annotations, final String annotationName) {
+        String caches = annotations.getValue(annotationName, "value");
+        return caches.isEmpty() ? annotations.getValue(annotationName, "cacheNames") : caches;
+    }
+
+    /**
+     * @param annotations Some annotations.
+     * @return The transaction they ask for, or {@code null} if they aren't
+     *          transactional.
+     */
+    private static String getTransaction(final AnnotationIndex annotations) {
+        if (!annotations.isAnnotatedWith(ANNOTATION_TRANSACTIONAL)) {
+            return null;
+        }
+        return Boolean.parseBoolean(annotations.getFirstValue(ANNOTATION_TRANSACTIONAL, "readOnly"))
+                ? RestApiPerformance.READ_ONLY : RestApiPerformance.READ_WRITE;
+    }
+
+    /**
+     * @param tags The text of block tags, by tag name.
+     * @param name A tag name.
+     * @return The tag's text, with its white space collapsed, or
+     *          {@code null} if there is no such tag or it has no text.
+     */
+    private static String getTag(final Map<String, String> tags, final String name) {
+        String text = tags.get(name);
+        if (text == null) {
+            return null;
+        }
+        text = text.replaceAll("\\s+", " ").trim();
+        return text.isEmpty() ? null : text;
+    }
+}
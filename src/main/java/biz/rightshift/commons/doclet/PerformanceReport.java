@@ -0,0 +1,206 @@
+package biz.rightshift.commons.doclet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A report of the performance contract of every endpoint, with the
+ * estimated size of its bodies, so that caching and service level coverage
+ * can be reviewed in one place.
+ *
+ * Endpoints are added a controller at a time, keeping only a row of text
+ * for each, so that a pipelined run doesn't have to hold its rest calls.
+ */
+final class PerformanceReport {
+
+    /** A report that is not kept, for when none is asked for. */
+    static final PerformanceReport DISABLED = new PerformanceReport(false);
+
+    private static final String NONE = "-";
+    private static final String ANY_METHOD = "*";
+    private static final String OVER_BUDGET = " (over budget)";
+    private static final String COLUMN_SEPARATOR = "  ";
+    private static final int PERCENT = 100;
+
+    private static final String[] HEADINGS = {
+        "Endpoint", "Cache", "Async", "Transaction", "SLA", "Rate limit", "Timeout", "Request size", "Response size",
+    };
+
+    private final boolean enabled;
+    private final List<String[]> rows = new ArrayList<>();
+    private int cached;
+    private int async;
+    private int transactional;
+    private int sla;
+    private int rateLimit;
+    private int timeout;
+    private int overBudget;
+
+    /**
+     * @param enabled Whether to keep the report.
+     */
+    PerformanceReport(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Adds the endpoints of a controller.
+     *
+     * @param restCalls The controller's rest calls.
+     */
+    void add(final List<RestApiDetails> restCalls) {
+        if (!enabled) {
+            return;
+        }
+        for (RestApiDetails restCall : restCalls) {
+            RestApiPerformance performance = restCall.getPerformance();
+            if (performance == null) {
+                performance = new RestApiPerformance(null, false, null, null, null, null, null);
+            }
+            String method = restCall.getMethod().isEmpty() ? ANY_METHOD : restCall.getMethod();
+            rows.add(new String[] {
+                method + " " + restCall.getUrl(),
+                getCache(performance),
+                getAsync(performance),
+                orNone(performance.getTransaction()),
+                orNone(performance.getSla()),
+                orNone(performance.getRateLimit()),
+                orNone(performance.getTimeout()),
+                getSize(restCall.getRequestSize()),
+                getSize(restCall.getResponseSize()),
+            });
+            cached += performance.isCached() ? 1 : 0;
+            async += performance.isAsync() || performance.getAsyncResult() != null ? 1 : 0;
+            transactional += performance.getTransaction() != null ? 1 : 0;
+            sla += performance.getSla() != null ? 1 : 0;
+            rateLimit += performance.getRateLimit() != null ? 1 : 0;
+            timeout += performance.getTimeout() != null ? 1 : 0;
+            overBudget += isOverBudget(restCall.getRequestSize()) || isOverBudget(restCall.getResponseSize()) ? 1 : 0;
+        }
+    }
+
+    /**
+     * @param heading The page heading, naming the API.
+     * @return The report, a line at a time: how many endpoints have each
+     *          part of a contract, then a table of the endpoints.
+     */
+    List<String> getLines(final String heading) {
+        List<String> lines = new ArrayList<>();
+        lines.add("Performance contracts: " + heading);
+        lines.add("");
+        lines.add(String.format(Locale.ENGLISH, "%-20s %6d", "Endpoints", rows.size()));
+        addCount(lines, "Cached", cached);
+        addCount(lines, "Async", async);
+        addCount(lines, "Transactional", transactional);
+        addCount(lines, "With an SLA", sla);
+        addCount(lines, "With a rate limit", rateLimit);
+        addCount(lines, "With a timeout", timeout);
+        addCount(lines, "Over the size budget", overBudget);
+        lines.add("");
+
+        int[] widths = new int[HEADINGS.length];
+        for (int i = 0; i < HEADINGS.length; i++) {
+            widths[i] = HEADINGS[i].length();
+            for (String[] row : rows) {
+                widths[i] = Math.max(widths[i], row[i].length());
+            }
+        }
+        lines.add(getLine(HEADINGS, widths));
+        for (String[] row : rows) {
+            lines.add(getLine(row, widths));
+        }
+        return lines;
+    }
+
+    /**
+     * Writes the report as text.
+     *
+     * @param outputFile The file to write.
+     * @param heading The page heading, naming the API.
+     * @throws IOException If the file cannot be written.
+     */
+    void write(final File outputFile, final String heading) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(outputFile), StandardCharsets.UTF_8)) {
+            for (String line : getLines(heading)) {
+                writer.write(line);
+                writer.write(System.lineSeparator());
+            }
+        }
+    }
+
+    private void addCount(final List<String> lines, final String label, final int count) {
+        int percent = rows.isEmpty() ? 0 : Math.round((float) count * PERCENT / rows.size());
+        lines.add(String.format(Locale.ENGLISH, "%-20s %6d (%d%%)", label, count, percent));
+    }
+
+    /**
+     * @param cells The cells of a row.
+     * @param widths The width of each column.
+     * @return The row, its cells padded to their column's width.
+     */
+    private static String getLine(final String[] cells, final int[] widths) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < cells.length; i++) {
+            line.append(cells[i]);
+            if (i < cells.length - 1) {
+                for (int pad = cells[i].length(); pad < widths[i]; pad++) {
+                    line.append(' ');
+                }
+                line.append(COLUMN_SEPARATOR);
+            }
+        }
+        return line.toString();
+    }
+
+    /**
+     * @param performance A performance contract.
+     * @return The caches the result is kept in, "cached" if they aren't
+     *          named, or none.
+     */
+    private static String getCache(final RestApiPerformance performance) {
+        if (!performance.isCached()) {
+            return NONE;
+        }
+        return performance.getCaches().isEmpty() ? "cached" : performance.getCaches();
+    }
+
+    /**
+     * @param performance A performance contract.
+     * @return How the endpoint runs asynchronously: "@Async", the type it
+     *          returns its result in later, both, or none.
+     */
+    private static String getAsync(final RestApiPerformance performance) {
+        if (performance.isAsync() && performance.getAsyncResult() != null) {
+            return "@Async, " + performance.getAsyncResult();
+        } else if (performance.isAsync()) {
+            return "@Async";
+        }
+        return orNone(performance.getAsyncResult());
+    }
+
+    /**
+     * @param size An estimated body size, or {@code null}.
+     * @return The typical size, marked if it is over budget, or none.
+     */
+    private static String getSize(final PayloadSize size) {
+        if (size == null) {
+            return NONE;
+        }
+        return PayloadSize.format(size.getTypical()) + (size.isOverBudget() ? OVER_BUDGET : "");
+    }
+
+    private static boolean isOverBudget(final PayloadSize size) {
+        return size != null && size.isOverBudget();
+    }
+
+    private static String orNone(final String value) {
+        return value == null ? NONE : value;
+    }
+}
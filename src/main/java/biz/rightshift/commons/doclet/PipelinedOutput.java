@@ -0,0 +1,368 @@
+package biz.rightshift.commons.doclet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Writes the output a controller at a time, while the next controllers
+ * are extracted, so that only the controllers waiting to be written are
+ * held rather than the rest calls of the whole API.
+ *
+ * Controllers are added, in order, to a bounded queue, which blocks
+ * extraction while it is full. A renderer thread takes them from the queue
+ * and writes each as soon as it is taken. HTML is rendered by the usual
+ * template, walking the rest calls as they arrive, so the output is the
+ * same as when every rest call is extracted first. Only unsharded HTML,
+ * JSON and model output are written this way, as the other formats group
+ * rest calls across controllers. Given several outputs, each has its own
+ * queue and renderer thread.
+ */
+final class PipelinedOutput implements RestApiModel.Output {
+
+    private static final Section END = new Section(null, Collections.<RestApiDetails>emptyList());
+
+    private final BlockingQueue<Section> queue;
+    private final Thread thread;
+    private volatile Exception failure;
+    private boolean ended;
+    private boolean closed;
+
+    /**
+     * Starts the renderer thread.
+     *
+     * @param settings The settings, asking for HTML, JSON or model output.
+     * @param files The files of the output's directory, whose manifest is
+     *          written once every output in it is.
+     * @param stats The statistics, to record rendering in.
+     */
+    private PipelinedOutput(final DocletSettings settings, final OutputFiles files, final DocletStats stats) {
+        this.queue = new ArrayBlockingQueue<>(settings.getPipeline());
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    render(settings, files, stats);
+                } catch (IOException | RuntimeException ex) {
+                    failure = ex;
+                } finally {
+                    /* take what is left, so that extraction doesn't wait for space that never comes */
+                    while (!ended) {
+                        take();
+                    }
+                }
+            }
+        }, "rest-api-renderer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Extracts the rest calls of each controller in turn while the output is
+     * written, then writes any statistics.
+     *
+     * @param settings The settings.
+     * @param controllers The qualified names of the controllers.
+     * @param extraction Extracts a controller's rest calls.
+     * @param stats The statistics.
+     * @param reporter Where to report failures.
+     * @return {@code true} if the output was written.
+     */
+    static boolean write(
+            final DocletSettings settings,
+            final List<String> controllers,
+            final Extraction extraction,
+            final DocletStats stats,
+            final DocletReporter reporter) {
+        PerformanceReport report = settings.createPerformanceReport();
+        try (RestApiModel.Output output = open(settings, stats)) {
+            DocletStats.Measurement measurement = stats.start(DocletStats.Phase.EXTRACTION.getLabel());
+            for (int i = 0; i < controllers.size(); i++) {
+                List<RestApiDetails> restCalls = extraction.extract(i);
+                stats.addControllerCounts(restCalls);
+                PayloadSizes.warnOverBudget(restCalls, reporter);
+                report.add(restCalls);
+                output.add(controllers.get(i), restCalls);
+            }
+            stats.recordPhase(DocletStats.Phase.EXTRACTION, measurement);
+            stats.recordDescribedTypeCount(extraction.getDescribedTypeCount());
+        } catch (IOException ex) {
+            reporter.printError("Failed to write " + settings.getOutputFileNames() + ": " + ex.getMessage());
+            return false;
+        }
+        RestApiOutput.writePerformanceReport(settings, report, reporter);
+        RestApiOutput.writeStats(settings, stats, reporter);
+        return true;
+    }
+
+    /**
+     * Starts writing each output, on a renderer thread of its own, so that
+     * several formats are rendered concurrently from one extraction.
+     *
+     * @param settings The settings, asking for HTML, JSON or model outputs.
+     * @param stats The statistics, to record rendering in.
+     * @return The outputs, to add each controller's rest calls to, which
+     *          writes the manifests once closed.
+     */
+    static RestApiModel.Output open(final DocletSettings settings, final DocletStats stats) {
+        return new Outputs(settings.getOutputs(), stats);
+    }
+
+    /**
+     * Queues a controller's rest calls to be written, waiting while the
+     * queue is full.
+     *
+     * @param controller The qualified name of the controller.
+     * @param restCalls The controller's rest calls.
+     * @throws IOException If the output could not be written.
+     */
+    @Override
+    public void add(final String controller, final List<RestApiDetails> restCalls) throws IOException {
+        checkFailure();
+        put(new Section(controller, restCalls));
+    }
+
+    /**
+     * Finishes the output once every queued controller is written.
+     *
+     * @throws IOException If the output could not be written.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        put(END);
+        try {
+            thread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing the output");
+        }
+        checkFailure();
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException(failure.getMessage(), failure);
+        }
+    }
+
+    private void put(final Section section) throws IOException {
+        try {
+            queue.put(section);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the output to be written");
+        }
+    }
+
+    /**
+     * @return The next controller, or the end, waiting until there is one.
+     */
+    private Section take() {
+        try {
+            Section section = queue.take();
+            ended = section == END;
+            return section;
+        } catch (InterruptedException ex) {
+            throw new IllegalStateException("Renderer interrupted", ex);
+        }
+    }
+
+    /**
+     * Writes the output on the renderer thread, until the end is taken.
+     *
+     * @param settings The settings.
+     * @param files The files of the output's directory.
+     * @param stats The statistics.
+     * @throws IOException If the output cannot be written.
+     */
+    private void render(
+            final DocletSettings settings, final OutputFiles files, final DocletStats stats) throws IOException {
+        File file = new File(settings.getOutputFile()).getAbsoluteFile();
+        String format = settings.getFormat();
+        TemplateRenderer renderer = new TemplateRenderer();
+        if (DocletSettings.FORMAT_HTML.equals(format)) {
+            DocletStats.Measurement templateInit = stats.start(DocletStats.Phase.TEMPLATE_INIT.getLabel());
+            renderer.prepare(settings.getTemplateName());
+            stats.recordPhase(DocletStats.Phase.TEMPLATE_INIT, templateInit);
+        }
+
+        DocletStats.Measurement render = stats.start(DocletStats.Phase.RENDER.getLabel());
+        try (OutputStream output = files.open(file.getName())) {
+            if (DocletSettings.FORMAT_HTML.equals(format)) {
+                Map<String, Object> values = new HashMap<>();
+                values.put(RestApiOutput.HEAD_TITLE, settings.getHeading());
+                values.put(RestApiOutput.REST_KEY, new QueuedCalls(values));
+                renderer.render(settings.getTemplateName(), values, output);
+            } else {
+                try (RestApiModel.Output writer = DocletSettings.FORMAT_MODEL.equals(format)
+                        ? new RestApiModel.Writer(output)
+                        : new RestApiJsonWriter.ListWriter(settings.getHeading(), output)) {
+                    for (Section section = take(); section != END; section = take()) {
+                        writer.add(section.controller, section.restCalls);
+                    }
+                }
+            }
+        }
+        stats.recordPhase(DocletStats.Phase.RENDER, render);
+    }
+
+    /**
+     * Extracts the rest calls of a controller.
+     */
+    interface Extraction {
+
+        /**
+         * @param controller The controller's position.
+         * @return The controller's rest calls.
+         */
+        List<RestApiDetails> extract(int controller);
+
+        /**
+         * @return The number of types described so far.
+         */
+        int getDescribedTypeCount();
+    }
+
+    /**
+     * Several pipelined outputs, each given every controller in turn.
+     */
+    private static final class Outputs implements RestApiModel.Output {
+
+        private final Map<File, OutputFiles> filesByDirectory = new LinkedHashMap<>();
+        private final List<PipelinedOutput> outputs = new ArrayList<>();
+
+        /**
+         * Starts the renderer thread of each output.
+         *
+         * @param settings The settings of each output.
+         * @param stats The statistics, to record rendering in.
+         */
+        Outputs(final List<DocletSettings> settings, final DocletStats stats) {
+            for (DocletSettings output : settings) {
+                outputs.add(new PipelinedOutput(
+                        output, RestApiOutput.getOutputFiles(filesByDirectory, output), stats));
+            }
+        }
+
+        @Override
+        public void add(final String controller, final List<RestApiDetails> restCalls) throws IOException {
+            for (PipelinedOutput output : outputs) {
+                output.add(controller, restCalls);
+            }
+        }
+
+        /**
+         * Finishes every output, then writes the manifest of each output
+         * directory.
+         *
+         * @throws IOException If an output could not be written.
+         */
+        @Override
+        public void close() throws IOException {
+            IOException failure = null;
+            for (PipelinedOutput output : outputs) {
+                try {
+                    output.close();
+                } catch (IOException ex) {
+                    failure = failure == null ? ex : failure;
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            for (OutputFiles files : filesByDirectory.values()) {
+                files.writeManifest();
+            }
+        }
+    }
+
+    /**
+     * A controller's rest calls, queued to be written.
+     */
+    private static final class Section {
+
+        private final String controller;
+        private final List<RestApiDetails> restCalls;
+
+        /**
+         * @param controller The qualified name of the controller.
+         * @param restCalls The controller's rest calls.
+         */
+        Section(final String controller, final List<RestApiDetails> restCalls) {
+            this.controller = controller;
+            this.restCalls = restCalls;
+        }
+    }
+
+    /**
+     * The rest calls for a template to walk, taken from the queue a
+     * controller at a time. Once the last is taken, the components the rest
+     * calls refer to are added to the template's values, for the rest of
+     * the template to list. Public, for the template to walk.
+     */
+    public final class QueuedCalls implements Iterable<RestApiDetails> {
+
+        private final Map<String, Object> values;
+
+        /**
+         * @param values The template's values.
+         */
+        QueuedCalls(final Map<String, Object> values) {
+            this.values = values;
+        }
+
+        @Override
+        public Iterator<RestApiDetails> iterator() {
+            return new Iterator<RestApiDetails>() {
+
+                private final Map<String, String> components = new TreeMap<>();
+                private Iterator<RestApiDetails> section = Collections.<RestApiDetails>emptyList().iterator();
+
+                @Override
+                public boolean hasNext() {
+                    while (!section.hasNext() && !ended) {
+                        Section next = take();
+                        if (next == END) {
+                            if (!components.isEmpty()) {
+                                values.put(RestApiOutput.COMPONENTS_KEY, components);
+                            }
+                        } else {
+                            RestApiJsonWriter.addComponents(components, next.restCalls);
+                            section = next.restCalls.iterator();
+                        }
+                    }
+                    return section.hasNext();
+                }
+
+                @Override
+                public RestApiDetails next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return section.next();
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+}
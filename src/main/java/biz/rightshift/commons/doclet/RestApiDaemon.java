@@ -0,0 +1,524 @@
+package biz.rightshift.commons.doclet;
+
+import com.sun.source.util.DocTrees;
+import com.sun.source.util.JavacTask;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Keeps the documentation of one or more source sets up to date while
+ * their sources are edited.
+ *
+ * Each source set is extracted once, with javac's front end rather than
+ * javadoc, then its source directories are watched. When files change only
+ * the controllers that were extracted from them, or whose request bodies
+ * reach them, are extracted again before the output is rendered. The JVM,
+ * and the Velocity engine, stay warm between refreshes.
+ *
+ * The source sets are separated by {@code --} on the command line. Each
+ * takes the doclet's options along with {@code -sourcepath}, the source
+ * directories to document and watch, and {@code -classpath}, what the
+ * sources compile against.
+ */
+public final class RestApiDaemon {
+
+    private static final String OPTION_SOURCEPATH = "-sourcepath";
+    private static final String OPTION_CLASSPATH = "-classpath";
+    private static final String SOURCE_SET_SEPARATOR = "--";
+    private static final String SOURCE_SUFFIX = ".java";
+
+    /** How long to wait for further changes after one, so that a save of several files is one refresh. */
+    private static final long QUIET_PERIOD_MILLIS = 100;
+
+    private final List<SourceSet> sourceSets;
+    private final DocletReporter reporter;
+    private final List<TemplateRenderer> renderers = new ArrayList<>();
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+
+    /**
+     * @param sourceSets The source sets.
+     * @param reporter Where to report progress and failures.
+     */
+    RestApiDaemon(final List<SourceSet> sourceSets, final DocletReporter reporter) {
+        this.sourceSets = sourceSets;
+        this.reporter = reporter;
+    }
+
+    /**
+     * Starting point.
+     *
+     * @param args The options of each source set, separated by {@code --}.
+     */
+    public static void main(final String[] args) {
+        DocletReporter reporter = new ConsoleReporter();
+        List<SourceSet> sourceSets = parse(args, reporter);
+        if (sourceSets == null) {
+            System.exit(1);
+        }
+        try {
+            new RestApiDaemon(sourceSets, reporter).run();
+        } catch (IOException ex) {
+            reporter.printError("Failed to watch sources: " + ex.getMessage());
+            System.exit(1);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reads the source sets.
+     *
+     * @param args The options of each source set, separated by {@code --}.
+     * @param reporter Where to report invalid options.
+     * @return The source sets, or {@code null} if an option is invalid.
+     */
+    static List<SourceSet> parse(final String[] args, final DocletReporter reporter) {
+        List<SourceSet> sourceSets = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i <= args.length; i++) {
+            if (i == args.length || SOURCE_SET_SEPARATOR.equals(args[i])) {
+                SourceSet sourceSet = SourceSet.parse(Arrays.copyOfRange(args, start, i), reporter);
+                if (sourceSet == null) {
+                    return null;
+                }
+                sourceSets.add(sourceSet);
+                start = i + 1;
+            }
+        }
+        return sourceSets;
+    }
+
+    /**
+     * Documents every source set, then refreshes them as their sources
+     * change, until interrupted.
+     *
+     * @throws IOException If the sources cannot be watched.
+     * @throws InterruptedException If interrupted while waiting for changes.
+     */
+    void run() throws IOException, InterruptedException {
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            for (SourceSet sourceSet : sourceSets) {
+                for (File root : sourceSet.roots) {
+                    register(watcher, root.toPath());
+                }
+                sourceSet.refresh(null, renderers, reporter);
+            }
+            while (true) {
+                Set<File> changed = new LinkedHashSet<>();
+                WatchKey key = watcher.take();
+                while (key != null) {
+                    collectChanges(watcher, key, changed);
+                    key = watcher.poll(QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                for (SourceSet sourceSet : sourceSets) {
+                    Set<File> changedSources = sourceSet.getSources(changed);
+                    if (!changedSources.isEmpty()) {
+                        sourceSet.refresh(changedSources, renderers, reporter);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects the source files changed in a watched directory, and starts
+     * watching any directories created in it.
+     *
+     * @param watcher The watch service.
+     * @param key The directory's key.
+     * @param changed The changed source files to add to.
+     * @throws IOException If a new directory cannot be watched.
+     */
+    private void collectChanges(
+            final WatchService watcher, final WatchKey key, final Set<File> changed) throws IOException {
+        Path directory = directories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (directory == null || event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                continue;
+            }
+            Path path = directory.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                register(watcher, path);
+                addSources(path.toFile(), changed);
+            } else if (path.toString().endsWith(SOURCE_SUFFIX)) {
+                changed.add(path.toFile().getAbsoluteFile());
+            }
+        }
+        if (!key.reset()) {
+            directories.remove(key);
+        }
+    }
+
+    /**
+     * Watches a directory and every directory within it.
+     *
+     * @param watcher The watch service.
+     * @param root The directory.
+     * @throws IOException If a directory cannot be watched.
+     */
+    private void register(final WatchService watcher, final Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(
+                    final Path directory, final BasicFileAttributes attributes) throws IOException {
+                WatchKey key = directory.register(watcher,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+                directories.put(key, directory);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Adds the source files in a directory and the directories within it.
+     *
+     * @param directory The directory.
+     * @param sources The source files to add to.
+     */
+    private static void addSources(final File directory, final Set<File> sources) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            if (file.isDirectory()) {
+                addSources(file, sources);
+            } else if (file.getName().endsWith(SOURCE_SUFFIX)) {
+                sources.add(file.getAbsoluteFile());
+            }
+        }
+    }
+
+    /**
+     * A set of source directories documented together, and the rest calls
+     * extracted from them so far.
+     */
+    static final class SourceSet {
+
+        private final DocletSettings settings;
+        private final List<File> roots;
+        private final String classpath;
+
+        /** The controllers, in the order they are documented, by qualified name. */
+        private final Map<String, ExtractedController> controllers = new LinkedHashMap<>();
+
+        /** The targets of links in the comments of the controllers. */
+        private LinkTargets links = new LinkTargets();
+
+        /**
+         * @param settings The doclet settings.
+         * @param roots The source directories.
+         * @param classpath What the sources compile against, or {@code null}.
+         */
+        private SourceSet(final DocletSettings settings, final List<File> roots, final String classpath) {
+            this.settings = settings;
+            this.roots = roots;
+            this.classpath = classpath;
+        }
+
+        /**
+         * @param args The source set's options.
+         * @param reporter Where to report invalid options.
+         * @return The source set, or {@code null} if an option is invalid.
+         */
+        static SourceSet parse(final String[] args, final DocletReporter reporter) {
+            List<String[]> options = new ArrayList<>();
+            String sourcepath = null;
+            String classpath = null;
+            int index = 0;
+            while (index < args.length) {
+                boolean hasValue = index + 1 < args.length;
+                if (OPTION_SOURCEPATH.equals(args[index]) && hasValue) {
+                    sourcepath = args[index + 1];
+                    index += 2;
+                } else if (OPTION_CLASSPATH.equals(args[index]) && hasValue) {
+                    classpath = args[index + 1];
+                    index += 2;
+                } else {
+                    int length = DocletSettings.optionLength(args[index]);
+                    if (length == 0 || index + length > args.length) {
+                        reporter.printError("Invalid option: " + args[index]);
+                        return null;
+                    }
+                    options.add(Arrays.copyOfRange(args, index, index + length));
+                    index += length;
+                }
+            }
+            if (sourcepath == null) {
+                reporter.printError("Each source set needs " + OPTION_SOURCEPATH);
+                return null;
+            }
+            DocletSettings settings = DocletSettings.parse(options.toArray(new String[options.size()][]), reporter);
+            if (settings == null) {
+                return null;
+            }
+            List<File> roots = new ArrayList<>();
+            for (String root : sourcepath.split(File.pathSeparator)) {
+                File directory = new File(root).getAbsoluteFile();
+                if (!directory.isDirectory()) {
+                    reporter.printError("Not a source directory: " + root);
+                    return null;
+                }
+                roots.add(directory);
+            }
+            return new SourceSet(settings, roots, classpath);
+        }
+
+        /**
+         * @param changed Changed source files.
+         * @return Those that are in this source set.
+         */
+        Set<File> getSources(final Set<File> changed) {
+            Set<File> sources = new LinkedHashSet<>();
+            for (File file : changed) {
+                for (File root : roots) {
+                    if (file.getPath().startsWith(root.getPath() + File.separator)) {
+                        sources.add(file);
+                    }
+                }
+            }
+            return sources;
+        }
+
+        /**
+         * Extracts the controllers affected by changed source files again,
+         * then renders the output.
+         *
+         * @param changed The changed source files, or {@code null} to extract
+         *          every controller.
+         * @param renderers A renderer for each output, kept between refreshes.
+         * @param reporter Where to report progress and failures.
+         */
+        void refresh(final Set<File> changed, final List<TemplateRenderer> renderers, final DocletReporter reporter) {
+            long start = System.nanoTime();
+            Set<File> affected = new LinkedHashSet<>();
+            if (changed == null) {
+                for (File root : roots) {
+                    addSources(root, affected);
+                }
+            } else {
+                for (ExtractedController controller : controllers.values()) {
+                    for (File source : changed) {
+                        if (controller.sources.contains(source)) {
+                            affected.add(controller.file);
+                        }
+                    }
+                }
+                affected.addAll(changed);
+            }
+            List<File> units = new ArrayList<>();
+            for (File file : affected) {
+                if (file.isFile()) {
+                    units.add(file);
+                }
+            }
+
+            DocletStats stats = settings.createStats();
+            JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+            try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null)) {
+                List<String> options = new ArrayList<>(Arrays.asList(
+                        OPTION_SOURCEPATH, join(roots), "-proc:none", "-Xlint:none"));
+                if (classpath != null) {
+                    options.add(OPTION_CLASSPATH);
+                    options.add(classpath);
+                }
+                Iterable<? extends JavaFileObject> files = fileManager.getJavaFileObjectsFromFiles(units);
+                DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+                JavacTask task = (JavacTask) compiler.getTask(null, fileManager, diagnostics, options, null, files);
+                List<TypeElement> found = new ArrayList<>();
+                if (!units.isEmpty()) {
+                    addControllers(getTopLevelTypes(task.analyze()), found);
+                }
+                for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+                    if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                        reporter.printWarning(diagnostic.toString());
+                    }
+                }
+
+                ElementRestApiScanner scanner = new ElementRestApiScanner(
+                        DocTrees.instance(task), task.getElements(), task.getTypes(),
+                        settings.getDescriptionOptions(), stats);
+                if (!update(affected, found, scanner) && changed != null) {
+                    /* comments in other controllers may link to what changed */
+                    reporter.printNotice("Endpoints added, removed or renamed, extracting every controller");
+                    refresh(null, renderers, reporter);
+                    return;
+                }
+                reporter.printNotice("Extracted " + found.size() + " of " + controllers.size()
+                        + " controllers in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+            } catch (IOException | RuntimeException ex) {
+                reporter.printError("Failed to extract rest calls: " + ex);
+                return;
+            }
+
+            List<String> names = new ArrayList<>(controllers.keySet());
+            List<List<RestApiDetails>> controllerCalls = new ArrayList<>();
+            List<RestApiDetails> restCalls = new ArrayList<>();
+            for (ExtractedController controller : controllers.values()) {
+                controllerCalls.add(controller.restCalls);
+                restCalls.addAll(controller.restCalls);
+            }
+            stats.recordCounts(names.size(), restCalls, 0);
+            if (RestApiOutput.write(settings, names, controllerCalls, restCalls, stats, reporter, renderers)) {
+                reporter.printNotice("Wrote " + settings.getOutputFileNames() + " in "
+                        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+            }
+        }
+
+        /**
+         * Replaces the controllers extracted from the affected files with
+         * those now found in them. A controller keeps its place in the
+         * output, new controllers are added at the end.
+         *
+         * @param affected The files being extracted again.
+         * @param found The controllers now in those files.
+         * @param scanner The scanner to extract them with.
+         * @return {@code false} if the link targets changed, so that links
+         *          in the comments of controllers that were not extracted
+         *          again may be out of date.
+         */
+        private boolean update(
+                final Set<File> affected, final List<TypeElement> found, final ElementRestApiScanner scanner) {
+            Map<String, TypeElement> fresh = new LinkedHashMap<>();
+            for (TypeElement controller : found) {
+                fresh.put(controller.getQualifiedName().toString(), controller);
+            }
+            Map<String, ExtractedController> updated = new LinkedHashMap<>();
+            for (Map.Entry<String, ExtractedController> controller : controllers.entrySet()) {
+                if (fresh.containsKey(controller.getKey())) {
+                    updated.put(controller.getKey(), null);
+                } else if (!affected.contains(controller.getValue().file)) {
+                    updated.put(controller.getKey(), controller.getValue());
+                }
+            }
+            for (String name : fresh.keySet()) {
+                if (!updated.containsKey(name)) {
+                    updated.put(name, null);
+                }
+            }
+
+            /* link targets in the order a full run would add them */
+            LinkTargets updatedLinks = new LinkTargets();
+            for (Map.Entry<String, ExtractedController> controller : updated.entrySet()) {
+                if (controller.getValue() == null) {
+                    scanner.addLinkTargets(fresh.get(controller.getKey()), updatedLinks);
+                } else {
+                    updatedLinks.addEndpoints(controller.getKey(), controller.getValue().restCalls);
+                }
+            }
+            for (Map.Entry<String, TypeElement> controller : fresh.entrySet()) {
+                List<RestApiDetails> restCalls = scanner.getRestCallsFor(controller.getValue(), updatedLinks);
+                Set<File> sources = new LinkedHashSet<>();
+                for (File source : scanner.getSourceFiles(controller.getValue())) {
+                    sources.add(source.getAbsoluteFile());
+                }
+                File file = sources.isEmpty() ? null : sources.iterator().next();
+                updated.put(controller.getKey(), new ExtractedController(file, sources, restCalls));
+            }
+            controllers.clear();
+            controllers.putAll(updated);
+            boolean unchanged = updatedLinks.equals(links);
+            links = updatedLinks;
+            return unchanged;
+        }
+
+        /**
+         * Adds the controllers among some classes and the classes nested in
+         * them.
+         *
+         * @param types The classes.
+         * @param found The controllers found so far.
+         */
+        private static void addControllers(final List<TypeElement> types, final List<TypeElement> found) {
+            for (TypeElement type : types) {
+                if (ElementRestApiScanner.isController(type)) {
+                    found.add(type);
+                }
+                addControllers(ElementFilter.typesIn(type.getEnclosedElements()), found);
+            }
+        }
+
+        /**
+         * @param elements The classes javac analyzed.
+         * @return The top level classes, nested classes are found through
+         *          them.
+         */
+        private static List<TypeElement> getTopLevelTypes(final Iterable<? extends Element> elements) {
+            List<TypeElement> types = new ArrayList<>();
+            for (Element element : elements) {
+                if (element instanceof TypeElement
+                        && element.getEnclosingElement().getKind() == ElementKind.PACKAGE
+                        && !types.contains(element)) {
+                    types.add((TypeElement) element);
+                }
+            }
+            return types;
+        }
+
+        private static String join(final List<File> files) {
+            StringBuilder path = new StringBuilder();
+            for (File file : files) {
+                if (path.length() > 0) {
+                    path.append(File.pathSeparator);
+                }
+                path.append(file.getPath());
+            }
+            return path.toString();
+        }
+    }
+
+    /**
+     * The rest calls extracted from a controller, and the source files they
+     * were extracted from.
+     */
+    private static final class ExtractedController {
+
+        private final File file;
+        private final Set<File> sources;
+        private final List<RestApiDetails> restCalls;
+
+        /**
+         * @param file The controller's own source file.
+         * @param sources The controller's source file, and those of the types
+         *          its request bodies reach.
+         * @param restCalls The rest calls.
+         */
+        ExtractedController(final File file, final Set<File> sources, final List<RestApiDetails> restCalls) {
+            this.file = file;
+            this.sources = sources;
+            this.restCalls = restCalls;
+        }
+    }
+}
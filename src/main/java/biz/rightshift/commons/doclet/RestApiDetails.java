@@ -16,6 +16,11 @@ public class RestApiDetails {
     private List<RestApiParameter> requestParams = new ArrayList<>();
     private RestApiRequestBody requestBody;
     private String description;
+    private String anchor;
+    private PayloadSize requestSize;
+    private String responseType;
+    private PayloadSize responseSize;
+    private RestApiPerformance performance;
 
     /**
      * @param url The URL.
@@ -36,6 +41,30 @@ public class RestApiDetails {
             final List<RestApiParameter> requestParams,
             final RestApiRequestBody requestBody,
             final String description) {
+        this(url, method, produces, consumes, pathVariables, requestParams, requestBody, description, null);
+    }
+
+    /**
+     * @param url The URL.
+     * @param method The method.
+     * @param produces The output format.
+     * @param consumes The input format.
+     * @param pathVariables The path variables (after the base URL and before the ?).
+     * @param requestParams The request parameters (after the ? part of the URL).
+     * @param requestBody The request body.
+     * @param description The request description.
+     * @param anchor The anchor that links to the call.
+     */
+    public RestApiDetails(
+            final String url,
+            final String method,
+            final String produces,
+            final String consumes,
+            final List<RestApiParameter> pathVariables,
+            final List<RestApiParameter> requestParams,
+            final RestApiRequestBody requestBody,
+            final String description,
+            final String anchor) {
         this.url = url;
         this.method = method;
         this.produces = produces;
@@ -44,6 +73,7 @@ public class RestApiDetails {
         this.requestParams = requestParams;
         this.requestBody = requestBody;
         this.description = description;
+        this.anchor = anchor;
     }
 
     /**
@@ -102,6 +132,72 @@ public class RestApiDetails {
         return description;
     }
 
+    /**
+     * @return The anchor that links to the call, or {@code null} if it has none.
+     */
+    public String getAnchor() {
+        return anchor;
+    }
+
+    /**
+     * @return The estimated size of the request body, or {@code null} if
+     *          there is no request body.
+     */
+    public PayloadSize getRequestSize() {
+        return requestSize;
+    }
+
+    /**
+     * @param requestSize The estimated size of the request body to set.
+     */
+    public void setRequestSize(final PayloadSize requestSize) {
+        this.requestSize = requestSize;
+    }
+
+    /**
+     * @return The type of the response body, or {@code null} if the call
+     *          doesn't return one.
+     */
+    public String getResponseType() {
+        return responseType;
+    }
+
+    /**
+     * @param responseType The type of the response body to set.
+     */
+    public void setResponseType(final String responseType) {
+        this.responseType = responseType;
+    }
+
+    /**
+     * @return The estimated size of the response body, or {@code null} if
+     *          the call doesn't return one.
+     */
+    public PayloadSize getResponseSize() {
+        return responseSize;
+    }
+
+    /**
+     * @param responseSize The estimated size of the response body to set.
+     */
+    public void setResponseSize(final PayloadSize responseSize) {
+        this.responseSize = responseSize;
+    }
+
+    /**
+     * @return The performance contract, or {@code null} if the call has none.
+     */
+    public RestApiPerformance getPerformance() {
+        return performance;
+    }
+
+    /**
+     * @param performance The performance contract to set.
+     */
+    public void setPerformance(final RestApiPerformance performance) {
+        this.performance = performance;
+    }
+
     @Override
     public final String toString() {
         return String.format(
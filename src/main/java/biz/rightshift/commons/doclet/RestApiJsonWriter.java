@@ -0,0 +1,439 @@
+package biz.rightshift.commons.doclet;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Writes rest calls as machine readable JSON, either as a plain list of
+ * rest calls or as an OpenAPI 3 document.
+ *
+ * Everything is written with Jackson's streaming generator. Request body
+ * structures are streamed token by token into the output, rather than being
+ * read into a tree first.
+ */
+final class RestApiJsonWriter {
+
+    private static final String OPENAPI_VERSION = "3.0.0";
+    private static final String API_VERSION = "1.0.0";
+    private static final String DEFAULT_MEDIA_TYPE = "application/json";
+    private static final String DEFAULT_HTTP_METHOD = "get";
+    private static final String LIST_SEPARATOR = ",";
+    private static final String ENUM_SEPARATOR = "|";
+    private static final String TYPE = "type";
+    private static final String COMPONENTS = "components";
+    private static final String SCHEMA_REFERENCE_PREFIX = "#/components/schemas/";
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /** JSON schema types of the scalar types a description may refer to, by simple name. */
+    private static final Map<String, String[]> SCALAR_TYPES = new HashMap<>();
+
+    static {
+        SCALAR_TYPES.put("boolean", new String[] {"boolean", null});
+        SCALAR_TYPES.put("Boolean", new String[] {"boolean", null});
+        SCALAR_TYPES.put("byte", new String[] {"integer", "int32"});
+        SCALAR_TYPES.put("Byte", new String[] {"integer", "int32"});
+        SCALAR_TYPES.put("short", new String[] {"integer", "int32"});
+        SCALAR_TYPES.put("Short", new String[] {"integer", "int32"});
+        SCALAR_TYPES.put("int", new String[] {"integer", "int32"});
+        SCALAR_TYPES.put("Integer", new String[] {"integer", "int32"});
+        SCALAR_TYPES.put("long", new String[] {"integer", "int64"});
+        SCALAR_TYPES.put("Long", new String[] {"integer", "int64"});
+        SCALAR_TYPES.put("BigInteger", new String[] {"integer", null});
+        SCALAR_TYPES.put("float", new String[] {"number", "float"});
+        SCALAR_TYPES.put("Float", new String[] {"number", "float"});
+        SCALAR_TYPES.put("double", new String[] {"number", "double"});
+        SCALAR_TYPES.put("Double", new String[] {"number", "double"});
+        SCALAR_TYPES.put("BigDecimal", new String[] {"number", null});
+        SCALAR_TYPES.put("char", new String[] {"string", null});
+        SCALAR_TYPES.put("Character", new String[] {"string", null});
+        SCALAR_TYPES.put("String", new String[] {"string", null});
+        SCALAR_TYPES.put("Date", new String[] {"string", "date-time"});
+    }
+
+    private RestApiJsonWriter() {
+        // Prevent Instantiation.
+    }
+
+    /**
+     * Writes the rest calls as a JSON list, with each request body's
+     * structure inlined as JSON.
+     *
+     * @param heading The heading.
+     * @param restCalls The rest calls.
+     * @param output The stream to write, which is left open.
+     * @throws IOException If the output cannot be written.
+     */
+    static void writeJson(
+            final String heading,
+            final List<RestApiDetails> restCalls,
+            final OutputStream output) throws IOException {
+        try (ListWriter writer = new ListWriter(heading, output)) {
+            writer.add(null, restCalls);
+        }
+    }
+
+    /**
+     * Writes the rest calls as an OpenAPI 3 document.
+     *
+     * @param heading The heading, used as the API's title.
+     * @param restCalls The rest calls.
+     * @param output The stream to write, which is left open.
+     * @throws IOException If the output cannot be written.
+     */
+    static void writeOpenApi(
+            final String heading,
+            final List<RestApiDetails> restCalls,
+            final OutputStream output) throws IOException {
+        Map<String, List<RestApiDetails>> paths = new LinkedHashMap<>();
+        for (RestApiDetails restCall : restCalls) {
+            List<RestApiDetails> pathCalls = paths.get(restCall.getUrl());
+            if (pathCalls == null) {
+                pathCalls = new ArrayList<>();
+                paths.put(restCall.getUrl(), pathCalls);
+            }
+            pathCalls.add(restCall);
+        }
+
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(output, JsonEncoding.UTF8)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartObject();
+            generator.writeStringField("openapi", OPENAPI_VERSION);
+            generator.writeObjectFieldStart("info");
+            generator.writeStringField("title", heading);
+            generator.writeStringField("version", API_VERSION);
+            generator.writeEndObject();
+            generator.writeObjectFieldStart("paths");
+            for (Map.Entry<String, List<RestApiDetails>> path : paths.entrySet()) {
+                generator.writeObjectFieldStart(path.getKey().isEmpty() ? "/" : path.getKey());
+                for (RestApiDetails restCall : path.getValue()) {
+                    List<String> methods = getHttpMethods(restCall);
+                    for (String method : methods) {
+                        generator.writeFieldName(method);
+                        String operationId = restCall.getAnchor();
+                        if (operationId != null && methods.size() > 1) {
+                            operationId += "-" + method;
+                        }
+                        writeOperation(generator, restCall, operationId);
+                    }
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndObject();
+
+            Map<String, String> components = new TreeMap<>();
+            addComponents(components, restCalls);
+            if (!components.isEmpty()) {
+                generator.writeObjectFieldStart(COMPONENTS);
+                generator.writeObjectFieldStart("schemas");
+                for (Map.Entry<String, String> component : components.entrySet()) {
+                    generator.writeFieldName(component.getKey());
+                    try (JsonParser parser = JSON_FACTORY.createParser(component.getValue())) {
+                        parser.nextToken();
+                        writeSchema(parser, generator);
+                    }
+                }
+                generator.writeEndObject();
+                generator.writeEndObject();
+            }
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * Adds the components that the request bodies of some rest calls refer
+     * to, so that each is written once however many refer to it.
+     *
+     * @param components The components so far, by qualified type name.
+     * @param restCalls The rest calls.
+     */
+    static void addComponents(final Map<String, String> components, final List<RestApiDetails> restCalls) {
+        for (RestApiDetails restCall : restCalls) {
+            if (restCall.getRequestBody() != null) {
+                components.putAll(restCall.getRequestBody().getComponents());
+            }
+        }
+    }
+
+    /**
+     * Copies a request body structure into the output as JSON.
+     *
+     * @param generator The generator to write to.
+     * @param structure The structure, as JSON text.
+     * @throws IOException If writing fails.
+     */
+    static void writeStructure(final JsonGenerator generator, final String structure) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(structure)) {
+            parser.nextToken();
+            generator.copyCurrentStructure(parser);
+        }
+    }
+
+    /**
+     * @param restCall The rest call.
+     * @return The lower case HTTP methods the call is mapped to.
+     */
+    static List<String> getHttpMethods(final RestApiDetails restCall) {
+        List<String> methods = new ArrayList<>();
+        for (String method : restCall.getMethod().split(LIST_SEPARATOR)) {
+            if (!method.trim().isEmpty()) {
+                methods.add(method.trim().toLowerCase(Locale.ENGLISH));
+            }
+        }
+        if (methods.isEmpty()) {
+            methods.add(DEFAULT_HTTP_METHOD);
+        }
+        return methods;
+    }
+
+    /**
+     * @param typeName The simple name of a type, as a description refers to
+     *          it.
+     * @return The JSON schema type and format of the type, or {@code null}
+     *          if it isn't a scalar type. The format may be {@code null}.
+     */
+    static String[] getScalarType(final String typeName) {
+        return typeName == null ? null : SCALAR_TYPES.get(typeName);
+    }
+
+    private static void writeOperation(
+            final JsonGenerator generator,
+            final RestApiDetails restCall,
+            final String operationId) throws IOException {
+        generator.writeStartObject();
+        if (operationId != null) {
+            generator.writeStringField("operationId", operationId);
+        }
+        if (restCall.getDescription() != null) {
+            generator.writeStringField("description", restCall.getDescription());
+        }
+        generator.writeArrayFieldStart("parameters");
+        for (RestApiParameter parameter : restCall.getPathVariables()) {
+            writeParameter(generator, parameter, "path");
+        }
+        for (RestApiParameter parameter : restCall.getRequestParams()) {
+            writeParameter(generator, parameter, "query");
+        }
+        generator.writeEndArray();
+
+        RestApiRequestBody requestBody = restCall.getRequestBody();
+        if (requestBody != null) {
+            generator.writeObjectFieldStart("requestBody");
+            if (requestBody.getDescription() != null) {
+                generator.writeStringField("description", requestBody.getDescription());
+            }
+            generator.writeBooleanField("required", true);
+            generator.writeObjectFieldStart("content");
+            String consumes = restCall.getConsumes();
+            for (String mediaType : (consumes.isEmpty() ? DEFAULT_MEDIA_TYPE : consumes).split(LIST_SEPARATOR)) {
+                generator.writeObjectFieldStart(mediaType.trim());
+                generator.writeFieldName("schema");
+                if (requestBody.getStructure() == null) {
+                    writeScalarSchema(generator, requestBody.getType());
+                } else {
+                    try (JsonParser parser = JSON_FACTORY.createParser(requestBody.getStructure())) {
+                        parser.nextToken();
+                        writeSchema(parser, generator);
+                    }
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }
+
+        generator.writeObjectFieldStart("responses");
+        generator.writeObjectFieldStart("200");
+        generator.writeStringField("description", "OK");
+        generator.writeEndObject();
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+
+    private static void writeParameter(
+            final JsonGenerator generator,
+            final RestApiParameter parameter,
+            final String location) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("name", parameter.getName());
+        generator.writeStringField("in", location);
+        generator.writeBooleanField("required", true);
+        if (parameter.getDescription() != null && !parameter.getDescription().isEmpty()) {
+            generator.writeStringField("description", parameter.getDescription());
+        }
+        generator.writeFieldName("schema");
+        writeScalarSchema(generator, parameter.getType());
+        generator.writeEndObject();
+    }
+
+    /**
+     * Converts a type description, as produced by {@link Description}, into
+     * a JSON schema as it is read.
+     *
+     * @param parser The parser, positioned on the description.
+     * @param generator The generator to write the schema to.
+     * @throws IOException If reading or writing fails.
+     */
+    private static void writeSchema(final JsonParser parser, final JsonGenerator generator) throws IOException {
+        JsonToken token = parser.getCurrentToken();
+        if (token == JsonToken.START_OBJECT) {
+            JsonToken field = parser.nextToken();
+            String name = parser.getCurrentName();
+            if (field == JsonToken.FIELD_NAME && RestApiRequestBody.REFERENCE.equals(name)) {
+                /* a component, written once under the document's components */
+                parser.nextToken();
+                generator.writeStartObject();
+                generator.writeStringField(RestApiRequestBody.REFERENCE, SCHEMA_REFERENCE_PREFIX + parser.getText());
+                generator.writeEndObject();
+                while (parser.nextToken() != JsonToken.END_OBJECT) {
+                    parser.skipChildren();
+                }
+                return;
+            }
+            generator.writeStartObject();
+            generator.writeStringField(TYPE, "object");
+            if (field == JsonToken.FIELD_NAME && name.startsWith("{") && name.endsWith("}")) {
+                /* a map, described by its key type in braces */
+                generator.writeFieldName("additionalProperties");
+                parser.nextToken();
+                writeSchema(parser, generator);
+                while (parser.nextToken() != JsonToken.END_OBJECT) {
+                    parser.skipChildren();
+                }
+            } else {
+                String moreFields = null;
+                generator.writeObjectFieldStart("properties");
+                for (; field == JsonToken.FIELD_NAME; field = parser.nextToken()) {
+                    String property = parser.getCurrentName();
+                    parser.nextToken();
+                    if (RestApiRequestBody.MORE_FIELDS.equals(property)) {
+                        /* the count of fields left out, which are not properties */
+                        moreFields = parser.getText();
+                        parser.skipChildren();
+                    } else {
+                        generator.writeFieldName(property);
+                        writeSchema(parser, generator);
+                    }
+                }
+                generator.writeEndObject();
+                if (moreFields != null) {
+                    generator.writeStringField("description", moreFields);
+                }
+            }
+            generator.writeEndObject();
+        } else if (token == JsonToken.START_ARRAY) {
+            generator.writeStartObject();
+            generator.writeStringField(TYPE, "array");
+            generator.writeFieldName("items");
+            if (parser.nextToken() == JsonToken.END_ARRAY) {
+                generator.writeStartObject();
+                generator.writeEndObject();
+            } else {
+                writeSchema(parser, generator);
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    parser.skipChildren();
+                }
+            }
+            generator.writeEndObject();
+        } else {
+            writeScalarSchema(generator, parser.getText());
+        }
+    }
+
+    /**
+     * Writes the schema of a type described by name, or of an enum
+     * described as its options.
+     *
+     * @param generator The generator to write to.
+     * @param typeName The type name, or options.
+     * @throws IOException If writing fails.
+     */
+    private static void writeScalarSchema(final JsonGenerator generator, final String typeName) throws IOException {
+        generator.writeStartObject();
+        String[] scalarType = getScalarType(typeName);
+        if (scalarType != null) {
+            generator.writeStringField(TYPE, scalarType[0]);
+            if (scalarType[1] != null) {
+                generator.writeStringField("format", scalarType[1]);
+            }
+        } else if (typeName != null && typeName.contains(ENUM_SEPARATOR)) {
+            generator.writeStringField(TYPE, "string");
+            generator.writeArrayFieldStart("enum");
+            for (String option : typeName.split("\\" + ENUM_SEPARATOR)) {
+                generator.writeString(option);
+            }
+            generator.writeEndArray();
+        } else if (typeName != null && !typeName.isEmpty()) {
+            generator.writeStringField(TYPE, "object");
+            generator.writeStringField("title", typeName);
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * Writes rest calls as a JSON list a controller at a time, so that more
+     * rest calls than can be kept, such as the merge of many models, can be
+     * written.
+     */
+    static final class ListWriter implements RestApiModel.Output {
+
+        private final JsonGenerator generator;
+        private final Map<String, String> components = new TreeMap<>();
+
+        /**
+         * Starts writing the list.
+         *
+         * @param heading The heading.
+         * @param output The stream to write to, which is left open.
+         * @throws IOException If writing fails.
+         */
+        ListWriter(final String heading, final OutputStream output) throws IOException {
+            generator = JSON_FACTORY.createGenerator(output, JsonEncoding.UTF8);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartObject();
+            generator.writeStringField("title", heading);
+            generator.writeArrayFieldStart("restCalls");
+        }
+
+        @Override
+        public void add(final String controller, final List<RestApiDetails> restCalls) throws IOException {
+            for (RestApiDetails restCall : restCalls) {
+                RestApiModelCodec.writeRestCall(generator, restCall, true);
+            }
+            addComponents(components, restCalls);
+        }
+
+        /**
+         * Finishes the list, followed by the components its rest calls refer
+         * to, if any.
+         *
+         * @throws IOException If writing fails.
+         */
+        @Override
+        public void close() throws IOException {
+            generator.writeEndArray();
+            if (!components.isEmpty()) {
+                generator.writeObjectFieldStart(COMPONENTS);
+                for (Map.Entry<String, String> component : components.entrySet()) {
+                    generator.writeFieldName(component.getKey());
+                    writeStructure(generator, component.getValue());
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndObject();
+            generator.close();
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package biz.rightshift.commons.doclet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import javax.tools.DocumentationTool;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+/**
+ * Runs javadoc with the doclet over only the sources that may hold
+ * controllers, rather than every source in the source tree.
+ *
+ * The source directories on {@code -sourcepath} are searched in parallel,
+ * a byte at a time, for files that mention a {@code Controller}
+ * annotation. Only those files are given to javadoc. The types their
+ * request bodies reach are still found on the source path, but javadoc
+ * only parses the ones the doclet asks for, rather than the whole tree.
+ *
+ * Takes javadoc's options, including the doclet's, which are passed on to
+ * javadoc as they are. The doclet for the running JDK is used.
+ */
+public final class RestApiLauncher {
+
+    private static final String OPTION_SOURCEPATH = "-sourcepath";
+    private static final String OPTION_THREADS = "-threads";
+    private static final String SOURCE_SUFFIX = ".java";
+
+    private static final String[] DOCLETS = {
+        "biz.rightshift.commons.doclet.SpringWebServicesRestApiJdk9Doclet",
+        "biz.rightshift.commons.doclet.SpringWebServicesRestApiDoclet",
+    };
+
+    /** What a controller annotation is named, in any form it may be written. */
+    private static final byte[] CONTROLLER = "Controller".getBytes();
+
+    private RestApiLauncher() {
+        // Prevent Instantiation.
+    }
+
+    /**
+     * Starting point.
+     *
+     * @param args javadoc's options.
+     */
+    public static void main(final String[] args) {
+        System.exit(launch(args, new ConsoleReporter()) ? 0 : 1);
+    }
+
+    /**
+     * Finds the controller sources and runs javadoc over them.
+     *
+     * @param args javadoc's options.
+     * @param reporter Where to report progress and failures.
+     * @return {@code true} if javadoc succeeded.
+     */
+    static boolean launch(final String[] args, final DocletReporter reporter) {
+        String sourcepath = getOptionValue(args, OPTION_SOURCEPATH);
+        if (sourcepath == null) {
+            reporter.printError("Missing option: " + OPTION_SOURCEPATH);
+            return false;
+        }
+        String threadsOption = getOptionValue(args, OPTION_THREADS);
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (threadsOption != null) {
+            try {
+                threads = Integer.parseInt(threadsOption);
+            } catch (NumberFormatException ex) {
+                threads = -1;
+            }
+            if (threads < 1 || threads > DocletSettings.MAX_THREADS) {
+                reporter.printError("Invalid number of threads, expected 1 to " + DocletSettings.MAX_THREADS + ": "
+                        + threadsOption);
+                return false;
+            }
+        }
+
+        List<File> sources;
+        long start = System.nanoTime();
+        try {
+            sources = findControllerSources(sourcepath, threads);
+        } catch (IOException ex) {
+            reporter.printError("Failed to search " + sourcepath + ": " + ex.getMessage());
+            return false;
+        }
+        if (sources.isEmpty()) {
+            reporter.printError("No controllers found on " + sourcepath);
+            return false;
+        }
+        reporter.printNotice("Found " + sources.size() + " possible controller sources in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+
+        Class<?> doclet = getDoclet();
+        if (doclet == null) {
+            reporter.printError("No doclet for this JDK on the class path");
+            return false;
+        }
+        DocumentationTool tool = ToolProvider.getSystemDocumentationTool();
+        if (tool == null) {
+            reporter.printError("javadoc is not available, run with a JDK rather than a JRE");
+            return false;
+        }
+        try (StandardJavaFileManager fileManager = tool.getStandardFileManager(null, null, null)) {
+            // Not every JDK's javadoc takes the source path from its options.
+            fileManager.setLocation(StandardLocation.SOURCE_PATH, getFiles(sourcepath));
+            Iterable<? extends JavaFileObject> files = fileManager.getJavaFileObjectsFromFiles(sources);
+            return tool.getTask(null, fileManager, null, doclet, Arrays.asList(args), files).call();
+        } catch (IOException ex) {
+            reporter.printError("Failed to run javadoc: " + ex.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * @param args javadoc's options.
+     * @param option An option's name.
+     * @return The option's last value, or {@code null} if it is not given.
+     */
+    private static String getOptionValue(final String[] args, final String option) {
+        String value = null;
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals(option)) {
+                value = args[i + 1];
+            }
+        }
+        return value;
+    }
+
+    /**
+     * @param path A path, such as the source path.
+     * @return The files on the path.
+     */
+    private static List<File> getFiles(final String path) {
+        List<File> files = new ArrayList<>();
+        for (String file : path.split(File.pathSeparator)) {
+            if (!file.isEmpty()) {
+                files.add(new File(file));
+            }
+        }
+        return files;
+    }
+
+    /**
+     * @return The first doclet that loads on this JDK, or {@code null} if
+     *          none does.
+     */
+    private static Class<?> getDoclet() {
+        for (String name : DOCLETS) {
+            try {
+                return Class.forName(name);
+            } catch (ClassNotFoundException | LinkageError ex) {
+                // Built for, or needing, another JDK.
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the sources that may hold controllers.
+     *
+     * @param sourcepath The source directories.
+     * @param threads The number of threads to search with.
+     * @return The sources, in path order.
+     * @throws IOException If a source cannot be read.
+     */
+    static List<File> findControllerSources(final String sourcepath, final int threads) throws IOException {
+        List<SourceSearch> searches = new ArrayList<>();
+        for (File root : getFiles(sourcepath)) {
+            searches.add(new SourceSearch(root));
+        }
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+        try {
+            List<File> sources = new ArrayList<>();
+            for (SourceSearch search : searches) {
+                pool.execute(search);
+            }
+            for (SourceSearch search : searches) {
+                sources.addAll(search.join());
+            }
+            return sources;
+        } catch (SourceSearchException ex) {
+            throw ex.getCause();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Looks for a controller annotation in a source, without parsing it:
+     * {@code Controller} after an {@code @}, or after a {@code .} as in a
+     * qualified annotation or its import, and not followed by more of a
+     * name. Comments and strings are not skipped, so some sources match
+     * that hold no controller, but none that do are missed.
+     *
+     * @param source The source, as bytes.
+     * @return {@code true} if the source may hold a controller.
+     */
+    static boolean mayHoldController(final byte[] source) {
+        int last = source.length - CONTROLLER.length;
+        for (int i = 1; i <= last; i++) {
+            if (source[i] != CONTROLLER[0] || !startsWith(source, i)) {
+                continue;
+            }
+            int before = i - 1;
+            while (before > 0 && isWhitespace(source[before])) {
+                before--;
+            }
+            int after = i + CONTROLLER.length;
+            if ((source[before] == '@' || source[before] == '.')
+                    && (after == source.length || !isNamePart(source[after]))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean startsWith(final byte[] source, final int offset) {
+        for (int i = 1; i < CONTROLLER.length; i++) {
+            if (source[offset + i] != CONTROLLER[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWhitespace(final byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f';
+    }
+
+    /**
+     * @param b A byte of a source.
+     * @return Whether the byte may be part of a name. Bytes of non ASCII
+     *          characters are taken to be.
+     */
+    private static boolean isNamePart(final byte b) {
+        return b < 0 || b == '_' || b == '$'
+                || (b >= '0' && b <= '9') || (b >= 'A' && b <= 'Z') || (b >= 'a' && b <= 'z');
+    }
+
+    /**
+     * Searches a directory, forking a search for each directory within it.
+     */
+    private static final class SourceSearch extends RecursiveTask<List<File>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final File directory;
+
+        /**
+         * @param directory The directory to search.
+         */
+        SourceSearch(final File directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        protected List<File> compute() {
+            File[] files = directory.listFiles();
+            if (files == null) {
+                return Collections.emptyList();
+            }
+            Arrays.sort(files);
+            List<SourceSearch> searches = new ArrayList<>();
+            List<File> sources = new ArrayList<>();
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    searches.add(new SourceSearch(file));
+                } else if (file.getName().endsWith(SOURCE_SUFFIX)) {
+                    try {
+                        if (mayHoldController(Files.readAllBytes(file.toPath()))) {
+                            sources.add(file);
+                        }
+                    } catch (IOException ex) {
+                        throw new SourceSearchException(ex);
+                    }
+                }
+            }
+            ForkJoinTask.invokeAll(searches);
+            for (SourceSearch search : searches) {
+                sources.addAll(search.join());
+            }
+            return sources;
+        }
+    }
+
+    /**
+     * Carries a failure to read a source out of a search.
+     */
+    private static final class SourceSearchException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * @param cause The failure.
+         */
+        SourceSearchException(final IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+}
@@ -0,0 +1,508 @@
+package biz.rightshift.commons.doclet;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a load test scenario, written with {@code -format loadtest},
+ * against a server.
+ *
+ * Each thread makes one request after another, picking each at random in
+ * proportion to its weight, for a warm up period and then for the duration
+ * of the test. Only requests started after the warm up are counted. The
+ * requests made, their responses by status class, and percentiles of their
+ * latency are then printed for each request and in total.
+ *
+ * Takes the options {@code -threads}, {@code -duration} and {@code -warmup},
+ * followed by the scenario file and the base URL of the server, such as
+ * {@code http://localhost:8080/api}. Needs nothing beyond the jar and
+ * Jackson, which the doclet already depends on.
+ */
+public final class RestApiLoadDriver {
+
+    private static final String OPTION_THREADS = "-threads";
+    private static final String OPTION_DURATION = "-duration";
+    private static final String OPTION_WARMUP = "-warmup";
+    private static final int DEFAULT_THREADS = 4;
+    private static final int DEFAULT_DURATION_SECONDS = 30;
+    private static final int DEFAULT_WARMUP_SECONDS = 5;
+    private static final int TIMEOUT_MILLIS = 10000;
+    private static final int BUFFER_SIZE = 8192;
+    private static final String PATCH = "PATCH";
+    private static final String REPORT_FORMAT = "%-60s %8s %8s %8s %8s %8s %9s %9s %9s %9s";
+    private static final String TOTAL = "total";
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private RestApiLoadDriver() {
+        // Prevent Instantiation.
+    }
+
+    /**
+     * Starting point.
+     *
+     * @param args The options, then the scenario file and base URL.
+     */
+    public static void main(final String[] args) {
+        System.exit(run(args, new ConsoleReporter()) ? 0 : 1);
+    }
+
+    /**
+     * Replays a scenario and reports the results.
+     *
+     * @param args The options, then the scenario file and base URL.
+     * @param reporter Where to report the results, and failures.
+     * @return {@code true} if the scenario was replayed.
+     */
+    static boolean run(final String[] args, final DocletReporter reporter) {
+        int threads = DEFAULT_THREADS;
+        int duration = DEFAULT_DURATION_SECONDS;
+        int warmup = DEFAULT_WARMUP_SECONDS;
+        List<String> arguments = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (i + 1 < args.length && OPTION_THREADS.equals(args[i])) {
+                threads = parseNumber(args[++i]);
+            } else if (i + 1 < args.length && OPTION_DURATION.equals(args[i])) {
+                duration = parseNumber(args[++i]);
+            } else if (i + 1 < args.length && OPTION_WARMUP.equals(args[i])) {
+                warmup = parseNumber(args[++i]);
+            } else if (args[i].startsWith("-")) {
+                reporter.printError("Invalid option: " + args[i]);
+                return false;
+            } else {
+                arguments.add(args[i]);
+            }
+        }
+        if (threads < 1 || duration < 1 || warmup < 0) {
+            reporter.printError("Invalid number of threads, duration or warm up");
+            return false;
+        }
+        if (arguments.size() != 2) {
+            reporter.printError("Expected a scenario file and a base URL, such as http://localhost:8080");
+            return false;
+        }
+
+        List<Request> requests;
+        try (InputStream input = new FileInputStream(arguments.get(0))) {
+            requests = read(input);
+        } catch (IOException ex) {
+            reporter.printError("Failed to read " + arguments.get(0) + ": " + ex.getMessage());
+            return false;
+        }
+        requests = skipUnsupported(requests, reporter);
+        if (requests.isEmpty()) {
+            reporter.printError("No requests in " + arguments.get(0));
+            return false;
+        }
+        String baseUrl = arguments.get(1);
+        if (baseUrl.endsWith("/")) {
+            baseUrl = baseUrl.substring(0, baseUrl.length() - 1);
+        }
+
+        reporter.printNotice("Replaying " + requests.size() + " requests against " + baseUrl + " on " + threads
+                + " threads, for " + warmup + "s of warm up and " + duration + "s");
+        Result[] results = replay(requests, baseUrl, threads, warmup, duration);
+        report(requests, results, duration, reporter);
+        return true;
+    }
+
+    /**
+     * @param value A number, as given.
+     * @return The number, or -1 if it isn't a number.
+     */
+    private static int parseNumber(final String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * Leaves out the requests HttpURLConnection can't send, which are PATCH
+     * requests, rather than sending them as another method.
+     *
+     * @param requests The requests of the scenario.
+     * @param reporter Where to warn of the requests left out.
+     * @return The requests that can be sent.
+     */
+    private static List<Request> skipUnsupported(final List<Request> requests, final DocletReporter reporter) {
+        List<Request> supported = new ArrayList<>();
+        for (Request request : requests) {
+            if (PATCH.equals(request.method)) {
+                reporter.printWarning("Skipping " + request.name + ", as HttpURLConnection can't send PATCH");
+            } else {
+                supported.add(request);
+            }
+        }
+        return supported;
+    }
+
+    /**
+     * Reads the requests of a scenario, with their bodies ready to send.
+     *
+     * @param input The scenario, as JSON.
+     * @return The requests, leaving out any without a positive weight.
+     * @throws IOException If the scenario cannot be read.
+     */
+    static List<Request> read(final InputStream input) throws IOException {
+        List<Request> requests = new ArrayList<>();
+        try (JsonParser parser = JSON_FACTORY.createParser(input)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected a scenario object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                if (parser.nextToken() == JsonToken.START_ARRAY && RestApiLoadScenario.REQUESTS.equals(field)) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        Request request = readRequest(parser);
+                        if (request.weight > 0) {
+                            requests.add(request);
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return requests;
+    }
+
+    private static Request readRequest(final JsonParser parser) throws IOException {
+        String name = null;
+        String method = null;
+        String path = null;
+        int weight = 1;
+        String contentType = null;
+        byte[] body = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if (RestApiLoadScenario.NAME.equals(field)) {
+                name = parser.getText();
+            } else if (RestApiLoadScenario.METHOD.equals(field)) {
+                method = parser.getText().toUpperCase(Locale.ENGLISH);
+            } else if (RestApiLoadScenario.PATH.equals(field)) {
+                path = parser.getText();
+            } else if (RestApiLoadScenario.WEIGHT.equals(field)) {
+                weight = parser.getIntValue();
+            } else if (RestApiLoadScenario.CONTENT_TYPE.equals(field)) {
+                contentType = parser.getText();
+            } else if (RestApiLoadScenario.BODY.equals(field)) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (JsonGenerator generator = JSON_FACTORY.createGenerator(bytes, JsonEncoding.UTF8)) {
+                    generator.copyCurrentStructure(parser);
+                }
+                body = bytes.toByteArray();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (method == null || path == null) {
+            throw new IOException("Expected a method and path for each request");
+        }
+        return new Request(method + " " + (name == null ? path : name), method, path, weight, contentType, body);
+    }
+
+    /**
+     * Makes requests on several threads for the warm up and duration.
+     *
+     * @param requests The requests.
+     * @param baseUrl The base URL, without a trailing slash.
+     * @param threads The number of threads.
+     * @param warmup The seconds to warm up for.
+     * @param duration The seconds to count requests for.
+     * @return The result of each request.
+     */
+    private static Result[] replay(
+            final List<Request> requests,
+            final String baseUrl,
+            final int threads,
+            final int warmup,
+            final int duration) {
+        int[] cumulativeWeights = new int[requests.size()];
+        int totalWeight = 0;
+        for (int i = 0; i < requests.size(); i++) {
+            totalWeight += requests.get(i).weight;
+            cumulativeWeights[i] = totalWeight;
+        }
+        long start = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmup);
+        long end = start + TimeUnit.SECONDS.toNanos(duration);
+
+        List<Worker> workers = new ArrayList<>();
+        List<Thread> workerThreads = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Worker worker = new Worker(requests, baseUrl, cumulativeWeights, start, end);
+            Thread thread = new Thread(worker, "rest-api-load-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            workers.add(worker);
+            workerThreads.add(thread);
+        }
+
+        Result[] results = new Result[requests.size()];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = new Result();
+        }
+        for (int i = 0; i < threads; i++) {
+            try {
+                workerThreads.get(i).join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            for (int j = 0; j < results.length; j++) {
+                results[j].add(workers.get(i).results[j]);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Reports the results of each request, then their total.
+     *
+     * @param requests The requests.
+     * @param results The result of each request.
+     * @param duration The seconds requests were counted for.
+     * @param reporter Where to report.
+     */
+    private static void report(
+            final List<Request> requests,
+            final Result[] results,
+            final int duration,
+            final DocletReporter reporter) {
+        reporter.printNotice(String.format(Locale.ENGLISH, REPORT_FORMAT,
+                "request", "count", "per sec", "2xx/3xx", "4xx", "5xx/fail", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+        Result total = new Result();
+        for (int i = 0; i < results.length; i++) {
+            reportLine(requests.get(i).name, results[i], duration, reporter);
+            total.add(results[i]);
+        }
+        reportLine(TOTAL, total, duration, reporter);
+    }
+
+    private static void reportLine(
+            final String name, final Result result, final int duration, final DocletReporter reporter) {
+        long[] latencies = Arrays.copyOf(result.latencies, result.count);
+        Arrays.sort(latencies);
+        reporter.printNotice(String.format(Locale.ENGLISH, REPORT_FORMAT,
+                name,
+                result.count,
+                String.format(Locale.ENGLISH, "%.1f", (double) result.count / duration),
+                result.succeeded,
+                result.clientErrors,
+                result.failed,
+                getPercentile(latencies, 50),
+                getPercentile(latencies, 90),
+                getPercentile(latencies, 99),
+                getPercentile(latencies, 100)));
+    }
+
+    /**
+     * @param latencies Latencies in nanoseconds, in order.
+     * @param percentile The percentile.
+     * @return The latency at the percentile in milliseconds, or "-" if there
+     *          are none.
+     */
+    private static String getPercentile(final long[] latencies, final int percentile) {
+        if (latencies.length == 0) {
+            return "-";
+        }
+        int index = Math.max(0, (int) Math.ceil(latencies.length * percentile / 100.0) - 1);
+        return String.format(Locale.ENGLISH, "%.2f", latencies[index] / 1000000.0);
+    }
+
+    /**
+     * A request of the scenario.
+     */
+    static final class Request {
+
+        private final String name;
+        private final String method;
+        private final String path;
+        private final int weight;
+        private final String contentType;
+        private final byte[] body;
+
+        /**
+         * @param name The name to report the request's results by, its
+         *          method and rest call.
+         * @param method The upper case HTTP method.
+         * @param path The path, with any query string.
+         * @param weight How often to make the request, relative to the
+         *          others.
+         * @param contentType The media type of the body, or {@code null}.
+         * @param body The body, or {@code null} if there is none.
+         */
+        Request(
+                final String name,
+                final String method,
+                final String path,
+                final int weight,
+                final String contentType,
+                final byte[] body) {
+            this.name = name;
+            this.method = method;
+            this.path = path;
+            this.weight = weight;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        /**
+         * Makes the request, reading the whole response so that the
+         * connection may be reused.
+         *
+         * @param baseUrl The base URL, without a trailing slash.
+         * @param buffer A buffer to read the response into.
+         * @return The response's status code.
+         * @throws IOException If the request fails.
+         */
+        int send(final String baseUrl, final byte[] buffer) throws IOException {
+            HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+            connection.setConnectTimeout(TIMEOUT_MILLIS);
+            connection.setReadTimeout(TIMEOUT_MILLIS);
+            connection.setRequestMethod(method);
+            if (body != null) {
+                connection.setDoOutput(true);
+                connection.setFixedLengthStreamingMode(body.length);
+                connection.setRequestProperty("Content-Type", contentType);
+                try (OutputStream output = connection.getOutputStream()) {
+                    output.write(body);
+                }
+            }
+            int status = connection.getResponseCode();
+            InputStream response = status >= HttpURLConnection.HTTP_BAD_REQUEST
+                    ? connection.getErrorStream() : connection.getInputStream();
+            if (response != null) {
+                try (InputStream input = response) {
+                    while (input.read(buffer) >= 0) {
+                        continue;
+                    }
+                }
+            }
+            return status;
+        }
+    }
+
+    /**
+     * Makes requests until the end of the test, counting those started
+     * after the warm up.
+     */
+    private static final class Worker implements Runnable {
+
+        private final List<Request> requests;
+        private final String baseUrl;
+        private final int[] cumulativeWeights;
+        private final long start;
+        private final long end;
+        private final Result[] results;
+
+        /**
+         * @param requests The requests.
+         * @param baseUrl The base URL, without a trailing slash.
+         * @param cumulativeWeights The sum of the weights of each request
+         *          and those before it.
+         * @param start When to start counting requests, in nanoseconds.
+         * @param end When to stop, in nanoseconds.
+         */
+        Worker(
+                final List<Request> requests,
+                final String baseUrl,
+                final int[] cumulativeWeights,
+                final long start,
+                final long end) {
+            this.requests = requests;
+            this.baseUrl = baseUrl;
+            this.cumulativeWeights = cumulativeWeights;
+            this.start = start;
+            this.end = end;
+            this.results = new Result[requests.size()];
+            for (int i = 0; i < results.length; i++) {
+                results[i] = new Result();
+            }
+        }
+
+        @Override
+        public void run() {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int totalWeight = cumulativeWeights[cumulativeWeights.length - 1];
+            for (long now = System.nanoTime(); now < end; now = System.nanoTime()) {
+                int pick = Arrays.binarySearch(cumulativeWeights, ThreadLocalRandom.current().nextInt(totalWeight) + 1);
+                int index = pick < 0 ? -pick - 1 : pick;
+                int status;
+                try {
+                    status = requests.get(index).send(baseUrl, buffer);
+                } catch (IOException ex) {
+                    status = 0;
+                }
+                if (now >= start) {
+                    results[index].record(status, System.nanoTime() - now);
+                }
+            }
+        }
+    }
+
+    /**
+     * The responses to a request, and their latencies.
+     */
+    private static final class Result {
+
+        private static final int INITIAL_CAPACITY = 1024;
+
+        private long[] latencies = new long[INITIAL_CAPACITY];
+        private int count;
+        private int succeeded;
+        private int clientErrors;
+        private int failed;
+
+        /**
+         * @param status The status code of the response, or 0 if the
+         *          request failed.
+         * @param latency The time taken, in nanoseconds.
+         */
+        void record(final int status, final long latency) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = latency;
+            if (status > 0 && status < HttpURLConnection.HTTP_BAD_REQUEST) {
+                succeeded++;
+            } else if (status >= HttpURLConnection.HTTP_BAD_REQUEST && status < HttpURLConnection.HTTP_INTERNAL_ERROR) {
+                clientErrors++;
+            } else {
+                failed++;
+            }
+        }
+
+        /**
+         * @param other Results to add to these.
+         */
+        void add(final Result other) {
+            if (count + other.count > latencies.length) {
+                latencies = Arrays.copyOf(latencies, count + other.count);
+            }
+            System.arraycopy(other.latencies, 0, latencies, count, other.count);
+            count += other.count;
+            succeeded += other.succeeded;
+            clientErrors += other.clientErrors;
+            failed += other.failed;
+        }
+    }
+}
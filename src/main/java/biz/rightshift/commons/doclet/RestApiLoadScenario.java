@@ -0,0 +1,410 @@
+package biz.rightshift.commons.doclet;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes a load test scenario for the rest calls, to be replayed against a
+ * server by {@link RestApiLoadDriver}.
+ *
+ * Each rest call becomes a request per HTTP method it is mapped to, with
+ * its path variables and request parameters filled in, and a sample request
+ * body built from the body's description, sent as a JSON media type the rest
+ * call consumes, or left out if it consumes none. Samples are shaped by type:
+ * numbers are 1, booleans true, enums their first option, dates a fixed
+ * date and strings the name of their field, with one element in each list
+ * and one entry in each map. Types described only by name, such as those
+ * cut off by {@code -maxdepth} or that lead back to themselves, are null.
+ * Each request is weighted by its method, so reads are made more often
+ * than writes.
+ */
+final class RestApiLoadScenario {
+
+    /** The field of the scenario holding the requests. */
+    static final String REQUESTS = "requests";
+
+    /** The field of a request holding its name, the anchor of its rest call. */
+    static final String NAME = "name";
+
+    /** The field of a request holding its upper case HTTP method. */
+    static final String METHOD = "method";
+
+    /** The field of a request holding the URL template of its rest call. */
+    static final String URL = "url";
+
+    /** The field of a request holding its path, with any query string. */
+    static final String PATH = "path";
+
+    /** The field of a request holding how often it is made, relative to the others. */
+    static final String WEIGHT = "weight";
+
+    /** The field of a request holding the media type of its body. */
+    static final String CONTENT_TYPE = "contentType";
+
+    /** The field of a request holding its body, as JSON. */
+    static final String BODY = "body";
+
+    private static final String DEFAULT_MEDIA_TYPE = "application/json";
+    private static final String LIST_SEPARATOR = ",";
+    private static final String ENUM_SEPARATOR = "|";
+    private static final String ENCODING = "UTF-8";
+    private static final String DEFAULT_STRING = "string";
+    private static final String MAP_KEY = "key";
+    private static final int DEFAULT_WEIGHT = 1;
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /** The weight of each HTTP method, others taking the default. */
+    private static final Map<String, Integer> WEIGHTS = new HashMap<>();
+
+    /** Samples of types that are written as strings, by simple name. */
+    private static final Map<String, String> STRING_SAMPLES = new HashMap<>();
+
+    static {
+        WEIGHTS.put("GET", 10);
+        WEIGHTS.put("HEAD", 2);
+        WEIGHTS.put("POST", 3);
+        WEIGHTS.put("PUT", 2);
+        WEIGHTS.put("PATCH", 2);
+        WEIGHTS.put("DELETE", 1);
+
+        STRING_SAMPLES.put("char", "a");
+        STRING_SAMPLES.put("Character", "a");
+        STRING_SAMPLES.put("Date", "2000-01-01T00:00:00Z");
+        STRING_SAMPLES.put("Instant", "2000-01-01T00:00:00Z");
+        STRING_SAMPLES.put("OffsetDateTime", "2000-01-01T00:00:00Z");
+        STRING_SAMPLES.put("ZonedDateTime", "2000-01-01T00:00:00Z");
+        STRING_SAMPLES.put("LocalDateTime", "2000-01-01T00:00:00");
+        STRING_SAMPLES.put("LocalDate", "2000-01-01");
+        STRING_SAMPLES.put("LocalTime", "00:00:00");
+        STRING_SAMPLES.put("UUID", "00000000-0000-0000-0000-000000000001");
+    }
+
+    private RestApiLoadScenario() {
+        // Prevent Instantiation.
+    }
+
+    /**
+     * Writes the scenario as JSON.
+     *
+     * @param heading The heading, used as the scenario's title.
+     * @param restCalls The rest calls.
+     * @param output The stream to write, which is left open.
+     * @throws IOException If the output cannot be written.
+     */
+    static void write(
+            final String heading,
+            final List<RestApiDetails> restCalls,
+            final OutputStream output) throws IOException {
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(output, JsonEncoding.UTF8)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.useDefaultPrettyPrinter();
+            generator.writeStartObject();
+            generator.writeStringField("title", heading);
+            generator.writeArrayFieldStart(REQUESTS);
+            for (RestApiDetails restCall : restCalls) {
+                String path = getPath(restCall);
+                for (String method : RestApiJsonWriter.getHttpMethods(restCall)) {
+                    writeRequest(generator, restCall, method.toUpperCase(Locale.ENGLISH), path);
+                }
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+
+    private static void writeRequest(
+            final JsonGenerator generator,
+            final RestApiDetails restCall,
+            final String method,
+            final String path) throws IOException {
+        generator.writeStartObject();
+        if (restCall.getAnchor() != null) {
+            generator.writeStringField(NAME, restCall.getAnchor());
+        }
+        generator.writeStringField(METHOD, method);
+        generator.writeStringField(URL, restCall.getUrl());
+        generator.writeStringField(PATH, path);
+        Integer weight = WEIGHTS.get(method);
+        generator.writeNumberField(WEIGHT, weight == null ? DEFAULT_WEIGHT : weight);
+        RestApiRequestBody requestBody = restCall.getRequestBody();
+        String contentType = getJsonMediaType(restCall.getConsumes());
+        if (requestBody != null && contentType != null) {
+            generator.writeStringField(CONTENT_TYPE, contentType);
+            generator.writeFieldName(BODY);
+            if (requestBody.getStructure() == null) {
+                writeScalarSample(generator, getSimpleName(requestBody.getType()), requestBody.getName());
+            } else {
+                writeSample(generator, requestBody.getStructure(), requestBody.getName(),
+                        requestBody.getComponents(), new HashSet<String>());
+            }
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * @param consumes The media types a rest call consumes, separated by
+     *          commas, or empty if it consumes any.
+     * @return The first JSON media type it consumes, the default if it
+     *          consumes any or a wildcard covering JSON, or {@code null} if
+     *          it consumes none, as the sample body is JSON.
+     */
+    private static String getJsonMediaType(final String consumes) {
+        if (consumes.trim().isEmpty()) {
+            return DEFAULT_MEDIA_TYPE;
+        }
+        String wildcard = null;
+        for (String mediaType : consumes.split(LIST_SEPARATOR)) {
+            String type = mediaType.split(";")[0].trim().toLowerCase(Locale.ENGLISH);
+            if (type.endsWith("/json") || type.endsWith("+json")) {
+                return mediaType.trim();
+            } else if ("*/*".equals(type) || "application/*".equals(type)) {
+                wildcard = DEFAULT_MEDIA_TYPE;
+            }
+        }
+        return wildcard;
+    }
+
+    /**
+     * Fills in the path variables of a rest call's URL template, and adds
+     * its request parameters as a query string.
+     *
+     * @param restCall The rest call.
+     * @return The path of a request to the rest call.
+     * @throws UnsupportedEncodingException Never, as UTF-8 is always
+     *          supported.
+     */
+    private static String getPath(final RestApiDetails restCall) throws UnsupportedEncodingException {
+        Map<String, String> variables = new HashMap<>();
+        for (RestApiParameter variable : restCall.getPathVariables()) {
+            variables.put(variable.getName(), getSampleText(variable));
+        }
+        String url = restCall.getUrl();
+        StringBuilder path = new StringBuilder();
+        if (!url.startsWith("/")) {
+            path.append('/');
+        }
+        int index = 0;
+        while (index < url.length()) {
+            char c = url.charAt(index);
+            if (c != '{') {
+                path.append(c);
+                index++;
+                continue;
+            }
+            /* a variable, which may have a pattern that itself has braces */
+            int end = index + 1;
+            for (int depth = 1; end < url.length() && depth > 0; end++) {
+                if (url.charAt(end) == '{') {
+                    depth++;
+                } else if (url.charAt(end) == '}') {
+                    depth--;
+                }
+            }
+            String variable = url.substring(index + 1, end - 1);
+            int colon = variable.indexOf(':');
+            String name = (colon < 0 ? variable : variable.substring(0, colon)).trim();
+            if (name.startsWith("*")) {
+                name = name.substring(1);
+            }
+            String value = variables.get(name);
+            path.append(URLEncoder.encode(value == null ? name : value, ENCODING).replace("+", "%20"));
+            index = end;
+        }
+        String separator = "?";
+        for (RestApiParameter parameter : restCall.getRequestParams()) {
+            path.append(separator)
+                    .append(URLEncoder.encode(parameter.getName(), ENCODING))
+                    .append('=')
+                    .append(URLEncoder.encode(getSampleText(parameter), ENCODING));
+            separator = "&";
+        }
+        return path.toString();
+    }
+
+    /**
+     * @param parameter A path variable or request parameter.
+     * @return A sample value of the parameter, as text.
+     */
+    private static String getSampleText(final RestApiParameter parameter) {
+        return getSampleText(getSimpleName(parameter.getType()), parameter.getName());
+    }
+
+    /**
+     * @param typeName The simple name of a type, or an enum's options.
+     * @param name The name of the value, used as the sample of a string.
+     * @return A sample value of the type, as text.
+     */
+    private static String getSampleText(final String typeName, final String name) {
+        String[] scalarType = RestApiJsonWriter.getScalarType(typeName);
+        String sample = STRING_SAMPLES.get(typeName);
+        if (sample != null) {
+            return sample;
+        } else if (scalarType != null && "boolean".equals(scalarType[0])) {
+            return "true";
+        } else if (scalarType != null && "integer".equals(scalarType[0])) {
+            return "1";
+        } else if (scalarType != null && "number".equals(scalarType[0])) {
+            return "1.5";
+        } else if (typeName != null && typeName.contains(ENUM_SEPARATOR)) {
+            return typeName.substring(0, typeName.indexOf(ENUM_SEPARATOR));
+        }
+        return name == null || name.isEmpty() ? DEFAULT_STRING : name;
+    }
+
+    /**
+     * @param type A type name, which may be qualified, generic or an array.
+     * @return The simple name of the type, or of the elements of an array.
+     */
+    private static String getSimpleName(final String type) {
+        if (type == null) {
+            return null;
+        }
+        String simpleName = type;
+        int generics = simpleName.indexOf('<');
+        if (generics >= 0) {
+            simpleName = simpleName.substring(0, generics);
+        }
+        while (simpleName.endsWith("[]")) {
+            simpleName = simpleName.substring(0, simpleName.length() - 2);
+        }
+        return simpleName.substring(simpleName.lastIndexOf('.') + 1).trim();
+    }
+
+    /**
+     * Writes a sample value of a description.
+     *
+     * @param generator The generator to write to.
+     * @param structure The description, as JSON text.
+     * @param name The name of the value.
+     * @param components The descriptions of the components the description
+     *          may refer to.
+     * @param expanding The components being sampled, which are null
+     *          rather than sampled again.
+     * @throws IOException If writing fails.
+     */
+    private static void writeSample(
+            final JsonGenerator generator,
+            final String structure,
+            final String name,
+            final Map<String, String> components,
+            final Set<String> expanding) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(structure)) {
+            parser.nextToken();
+            writeSample(parser, generator, name, components, expanding);
+        }
+    }
+
+    /**
+     * Writes a sample value of a description as it is read.
+     *
+     * @param parser The parser, positioned on the description.
+     * @param generator The generator to write the sample to.
+     * @param name The name of the value.
+     * @param components The descriptions of the components the description
+     *          may refer to.
+     * @param expanding The components being sampled.
+     * @throws IOException If reading or writing fails.
+     */
+    private static void writeSample(
+            final JsonParser parser,
+            final JsonGenerator generator,
+            final String name,
+            final Map<String, String> components,
+            final Set<String> expanding) throws IOException {
+        JsonToken token = parser.getCurrentToken();
+        if (token == JsonToken.START_OBJECT) {
+            JsonToken field = parser.nextToken();
+            String fieldName = parser.getCurrentName();
+            if (field == JsonToken.FIELD_NAME && RestApiRequestBody.REFERENCE.equals(fieldName)) {
+                /* a component, sampled from its own description */
+                parser.nextToken();
+                String component = parser.getText();
+                while (parser.nextToken() != JsonToken.END_OBJECT) {
+                    parser.skipChildren();
+                }
+                String description = components.get(component);
+                if (description == null || !expanding.add(component)) {
+                    generator.writeNull();
+                } else {
+                    writeSample(generator, description, name, components, expanding);
+                    expanding.remove(component);
+                }
+                return;
+            }
+            generator.writeStartObject();
+            if (field == JsonToken.FIELD_NAME && fieldName.startsWith("{") && fieldName.endsWith("}")) {
+                /* a map, with one entry keyed by a sample of its key type */
+                generator.writeFieldName(getSampleText(fieldName.substring(1, fieldName.length() - 1), MAP_KEY));
+                parser.nextToken();
+                writeSample(parser, generator, name, components, expanding);
+                while (parser.nextToken() != JsonToken.END_OBJECT) {
+                    parser.skipChildren();
+                }
+            } else {
+                for (; field == JsonToken.FIELD_NAME; field = parser.nextToken()) {
+                    String property = parser.getCurrentName();
+                    parser.nextToken();
+                    if (RestApiRequestBody.MORE_FIELDS.equals(property)) {
+                        /* the count of fields left out, which have no sample */
+                        parser.skipChildren();
+                    } else {
+                        generator.writeFieldName(property);
+                        writeSample(parser, generator, property, components, expanding);
+                    }
+                }
+            }
+            generator.writeEndObject();
+        } else if (token == JsonToken.START_ARRAY) {
+            generator.writeStartArray();
+            if (parser.nextToken() != JsonToken.END_ARRAY) {
+                writeSample(parser, generator, name, components, expanding);
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    parser.skipChildren();
+                }
+            }
+            generator.writeEndArray();
+        } else {
+            writeScalarSample(generator, parser.getText(), name);
+        }
+    }
+
+    /**
+     * Writes a sample of a type described by name, or of an enum described
+     * as its options. Types that aren't scalars are null, as only their
+     * name is known.
+     *
+     * @param generator The generator to write to.
+     * @param typeName The type name, or options.
+     * @param name The name of the value.
+     * @throws IOException If writing fails.
+     */
+    private static void writeScalarSample(
+            final JsonGenerator generator, final String typeName, final String name) throws IOException {
+        String[] scalarType = RestApiJsonWriter.getScalarType(typeName);
+        if (STRING_SAMPLES.containsKey(typeName)
+                || (scalarType != null && "string".equals(scalarType[0]))
+                || (typeName != null && typeName.contains(ENUM_SEPARATOR))) {
+            generator.writeString(getSampleText(typeName, name));
+        } else if (scalarType != null && "boolean".equals(scalarType[0])) {
+            generator.writeBoolean(true);
+        } else if (scalarType != null) {
+            generator.writeNumber(getSampleText(typeName, name));
+        } else {
+            generator.writeNull();
+        }
+    }
+}
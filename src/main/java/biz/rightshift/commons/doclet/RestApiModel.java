@@ -0,0 +1,235 @@
+package biz.rightshift.commons.doclet;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The rest calls extracted from a set of controllers, grouped by
+ * controller, as written to and read from a model file.
+ *
+ * The model file is how the rest calls extracted at compile time, by
+ * {@link RestApiProcessor}, or per module, with {@code -format model},
+ * reach {@link RestApiModelRenderer}.
+ */
+final class RestApiModel {
+
+    /** Where {@link RestApiProcessor} writes the model, on the class output path. */
+    static final String DEFAULT_RESOURCE = "META-INF/rest-api/model.json";
+
+    private static final int VERSION = 1;
+    private static final String FIELD_VERSION = "version";
+    private static final String FIELD_CONTROLLERS = "controllers";
+    private static final String FIELD_NAME = "name";
+    private static final String FIELD_CALLS = "calls";
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final List<String> controllers = new ArrayList<>();
+    private final List<List<RestApiDetails>> controllerCalls = new ArrayList<>();
+
+    /**
+     * Adds the rest calls of a controller.
+     *
+     * @param controller The qualified name of the controller.
+     * @param restCalls The controller's rest calls.
+     */
+    void add(final String controller, final List<RestApiDetails> restCalls) {
+        controllers.add(controller);
+        controllerCalls.add(restCalls);
+    }
+
+    /**
+     * Adds the rest calls of every controller in another model.
+     *
+     * @param model The other model.
+     */
+    void addAll(final RestApiModel model) {
+        controllers.addAll(model.controllers);
+        controllerCalls.addAll(model.controllerCalls);
+    }
+
+    /**
+     * @return The qualified names of the controllers.
+     */
+    List<String> getControllers() {
+        return Collections.unmodifiableList(controllers);
+    }
+
+    /**
+     * @return The rest calls of each controller.
+     */
+    List<List<RestApiDetails>> getControllerCalls() {
+        return Collections.unmodifiableList(controllerCalls);
+    }
+
+    /**
+     * @return All the rest calls, in order.
+     */
+    List<RestApiDetails> getRestCalls() {
+        List<RestApiDetails> restCalls = new ArrayList<>();
+        for (List<RestApiDetails> calls : controllerCalls) {
+            restCalls.addAll(calls);
+        }
+        return restCalls;
+    }
+
+    /**
+     * Writes the model.
+     *
+     * @param output The stream to write to, which is left open.
+     * @throws IOException If writing fails.
+     */
+    void write(final OutputStream output) throws IOException {
+        try (Writer writer = new Writer(output)) {
+            for (int i = 0; i < controllers.size(); i++) {
+                writer.add(controllers.get(i), controllerCalls.get(i));
+            }
+        }
+    }
+
+    /**
+     * Reads a model.
+     *
+     * @param input The stream to read from, which is left open.
+     * @return The model.
+     * @throws IOException If reading fails, or the model was written by an
+     *          incompatible version.
+     */
+    static RestApiModel read(final InputStream input) throws IOException {
+        final RestApiModel model = new RestApiModel();
+        read(input, new Handler() {
+            @Override
+            public void add(final String controller, final List<RestApiDetails> restCalls) {
+                model.add(controller, restCalls);
+            }
+        });
+        return model;
+    }
+
+    /**
+     * Reads a model a controller at a time, without keeping the controllers
+     * already read.
+     *
+     * @param input The stream to read from, which is left open.
+     * @param handler What to pass each controller to, as it is read.
+     * @throws IOException If reading fails, the handler fails, or the model
+     *          was written by an incompatible version.
+     */
+    static void read(final InputStream input, final Handler handler) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(input)) {
+            parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            parser.nextToken();
+            RestApiModelCodec.expect(parser, JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if (FIELD_VERSION.equals(field)) {
+                    if (parser.getIntValue() != VERSION) {
+                        throw new IOException("Unsupported model version " + parser.getIntValue());
+                    }
+                } else if (FIELD_CONTROLLERS.equals(field)) {
+                    readControllers(parser, handler);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    private static void readControllers(final JsonParser parser, final Handler handler) throws IOException {
+        RestApiModelCodec.expect(parser, JsonToken.START_ARRAY);
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            String name = null;
+            List<RestApiDetails> restCalls = Collections.emptyList();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if (FIELD_NAME.equals(field)) {
+                    name = parser.getText();
+                } else if (FIELD_CALLS.equals(field)) {
+                    restCalls = RestApiModelCodec.readRestCalls(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            handler.add(name, restCalls);
+        }
+        RestApiModelCodec.expect(parser, JsonToken.END_ARRAY);
+    }
+
+    /**
+     * Receives the controllers of a model as it is read.
+     */
+    interface Handler {
+
+        /**
+         * Receives the rest calls of a controller.
+         *
+         * @param controller The qualified name of the controller.
+         * @param restCalls The controller's rest calls.
+         * @throws IOException If handling the controller fails.
+         */
+        void add(String controller, List<RestApiDetails> restCalls) throws IOException;
+    }
+
+    /**
+     * Writes controllers as they are read, and finishes writing when
+     * closed.
+     */
+    interface Output extends Handler, Closeable {
+    }
+
+    /**
+     * Writes a model a controller at a time, so that models too large to
+     * keep, such as the merge of many others, can be written.
+     */
+    static final class Writer implements Output {
+
+        private final JsonGenerator generator;
+
+        /**
+         * Starts writing a model.
+         *
+         * @param output The stream to write to, which is left open.
+         * @throws IOException If writing fails.
+         */
+        Writer(final OutputStream output) throws IOException {
+            generator = JSON_FACTORY.createGenerator(output, JsonEncoding.UTF8);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartObject();
+            generator.writeNumberField(FIELD_VERSION, VERSION);
+            generator.writeArrayFieldStart(FIELD_CONTROLLERS);
+        }
+
+        @Override
+        public void add(final String controller, final List<RestApiDetails> restCalls) throws IOException {
+            generator.writeStartObject();
+            generator.writeStringField(FIELD_NAME, controller);
+            generator.writeFieldName(FIELD_CALLS);
+            RestApiModelCodec.writeRestCalls(generator, restCalls);
+            generator.writeEndObject();
+        }
+
+        /**
+         * Finishes the model.
+         *
+         * @throws IOException If writing fails.
+         */
+        @Override
+        public void close() throws IOException {
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.close();
+        }
+    }
+}
@@ -0,0 +1,422 @@
+package biz.rightshift.commons.doclet;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Reads and writes the REST API model as JSON, using Jackson's streaming
+ * API so that no intermediate tree is built.
+ */
+final class RestApiModelCodec {
+
+    private static final String URL = "url";
+    private static final String METHOD = "method";
+    private static final String PRODUCES = "produces";
+    private static final String CONSUMES = "consumes";
+    private static final String PATH_VARIABLES = "pathVariables";
+    private static final String REQUEST_PARAMS = "requestParams";
+    private static final String REQUEST_BODY = "requestBody";
+    private static final String DESCRIPTION = "description";
+    private static final String ANCHOR = "anchor";
+    private static final String NAME = "name";
+    private static final String TYPE = "type";
+    private static final String STRUCTURE = "structure";
+    private static final String SCHEMA = "schema";
+    private static final String COMPONENTS = "components";
+    private static final String REQUEST_SIZE = "requestSize";
+    private static final String RESPONSE_TYPE = "responseType";
+    private static final String RESPONSE_SIZE = "responseSize";
+    private static final String MIN = "min";
+    private static final String TYPICAL = "typical";
+    private static final String MAX = "max";
+    private static final String OVER_BUDGET = "overBudget";
+    private static final String PERFORMANCE = "performance";
+    private static final String CACHES = "caches";
+    private static final String ASYNC = "async";
+    private static final String TRANSACTION = "transaction";
+    private static final String ASYNC_RESULT = "asyncResult";
+    private static final String SLA = "sla";
+    private static final String RATE_LIMIT = "rateLimit";
+    private static final String TIMEOUT = "timeout";
+
+    private RestApiModelCodec() {
+        // Prevent Instantiation.
+    }
+
+    /**
+     * Writes a list of rest calls as a JSON array.
+     *
+     * @param generator The generator to write to.
+     * @param restCalls The rest calls.
+     * @throws IOException If writing fails.
+     */
+    static void writeRestCalls(
+            final JsonGenerator generator, final List<RestApiDetails> restCalls) throws IOException {
+        generator.writeStartArray();
+        for (RestApiDetails restCall : restCalls) {
+            writeRestCall(generator, restCall, false);
+        }
+        generator.writeEndArray();
+    }
+
+    /**
+     * Writes a rest call as a JSON object.
+     *
+     * @param generator The generator to write to.
+     * @param restCall The rest call.
+     * @param inlineStructure Whether to write the request body's structure
+     *          inline as JSON, rather than as a string along with its
+     *          components. Only a string can be read back.
+     * @throws IOException If writing fails.
+     */
+    static void writeRestCall(
+            final JsonGenerator generator,
+            final RestApiDetails restCall,
+            final boolean inlineStructure) throws IOException {
+        generator.writeStartObject();
+        writeField(generator, URL, restCall.getUrl());
+        writeField(generator, METHOD, restCall.getMethod());
+        writeField(generator, PRODUCES, restCall.getProduces());
+        writeField(generator, CONSUMES, restCall.getConsumes());
+        writeParameters(generator, PATH_VARIABLES, restCall.getPathVariables());
+        writeParameters(generator, REQUEST_PARAMS, restCall.getRequestParams());
+        RestApiRequestBody requestBody = restCall.getRequestBody();
+        if (requestBody != null) {
+            generator.writeFieldName(REQUEST_BODY);
+            generator.writeStartObject();
+            writeField(generator, NAME, requestBody.getName());
+            writeField(generator, TYPE, requestBody.getType());
+            writeField(generator, DESCRIPTION, requestBody.getDescription());
+            if (inlineStructure && requestBody.getStructure() != null) {
+                generator.writeFieldName(SCHEMA);
+                RestApiJsonWriter.writeStructure(generator, requestBody.getStructure());
+            } else {
+                writeField(generator, STRUCTURE, requestBody.getStructure());
+                if (!requestBody.getComponents().isEmpty()) {
+                    generator.writeObjectFieldStart(COMPONENTS);
+                    for (Map.Entry<String, String> component : requestBody.getComponents().entrySet()) {
+                        writeField(generator, component.getKey(), component.getValue());
+                    }
+                    generator.writeEndObject();
+                }
+            }
+            generator.writeEndObject();
+        }
+        writeSize(generator, REQUEST_SIZE, restCall.getRequestSize());
+        writeField(generator, RESPONSE_TYPE, restCall.getResponseType());
+        writeSize(generator, RESPONSE_SIZE, restCall.getResponseSize());
+        writePerformance(generator, restCall.getPerformance());
+        writeField(generator, DESCRIPTION, restCall.getDescription());
+        writeField(generator, ANCHOR, restCall.getAnchor());
+        generator.writeEndObject();
+    }
+
+    /**
+     * Reads a JSON array of rest calls.
+     *
+     * @param parser The parser, positioned on the start of the array.
+     * @return The rest calls.
+     * @throws IOException If reading fails.
+     */
+    static List<RestApiDetails> readRestCalls(final JsonParser parser) throws IOException {
+        expect(parser, JsonToken.START_ARRAY);
+        List<RestApiDetails> restCalls = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            restCalls.add(readRestCall(parser));
+        }
+        expect(parser, JsonToken.END_ARRAY);
+        return restCalls;
+    }
+
+    /**
+     * Reads a JSON object describing a rest call.
+     *
+     * @param parser The parser, positioned on the start of the object.
+     * @return The rest call.
+     * @throws IOException If reading fails.
+     */
+    static RestApiDetails readRestCall(final JsonParser parser) throws IOException {
+        expect(parser, JsonToken.START_OBJECT);
+        String url = "";
+        String method = "";
+        String produces = "";
+        String consumes = "";
+        List<RestApiParameter> pathVariables = new ArrayList<>();
+        List<RestApiParameter> requestParams = new ArrayList<>();
+        RestApiRequestBody requestBody = null;
+        PayloadSize requestSize = null;
+        String responseType = null;
+        PayloadSize responseSize = null;
+        RestApiPerformance performance = null;
+        String description = null;
+        String anchor = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if (URL.equals(field)) {
+                url = parser.getText();
+            } else if (METHOD.equals(field)) {
+                method = parser.getText();
+            } else if (PRODUCES.equals(field)) {
+                produces = parser.getText();
+            } else if (CONSUMES.equals(field)) {
+                consumes = parser.getText();
+            } else if (PATH_VARIABLES.equals(field)) {
+                pathVariables = readParameters(parser);
+            } else if (REQUEST_PARAMS.equals(field)) {
+                requestParams = readParameters(parser);
+            } else if (REQUEST_BODY.equals(field)) {
+                requestBody = readRequestBody(parser);
+            } else if (REQUEST_SIZE.equals(field)) {
+                requestSize = readSize(parser);
+            } else if (RESPONSE_TYPE.equals(field)) {
+                responseType = parser.getText();
+            } else if (RESPONSE_SIZE.equals(field)) {
+                responseSize = readSize(parser);
+            } else if (PERFORMANCE.equals(field)) {
+                performance = readPerformance(parser);
+            } else if (DESCRIPTION.equals(field)) {
+                description = parser.getText();
+            } else if (ANCHOR.equals(field)) {
+                anchor = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        expect(parser, JsonToken.END_OBJECT);
+        RestApiDetails restCall = new RestApiDetails(
+                url, method, produces, consumes, pathVariables, requestParams, requestBody, description, anchor);
+        restCall.setRequestSize(requestSize);
+        restCall.setResponseType(responseType);
+        restCall.setResponseSize(responseSize);
+        restCall.setPerformance(performance);
+        return restCall;
+    }
+
+    /**
+     * Writes an estimated body size as a JSON object, omitting it if there is
+     * no estimate. An unbounded largest size is omitted too.
+     *
+     * @param generator The generator to write to.
+     * @param field The field name.
+     * @param size The estimated size.
+     * @throws IOException If writing fails.
+     */
+    private static void writeSize(
+            final JsonGenerator generator, final String field, final PayloadSize size) throws IOException {
+        if (size == null) {
+            return;
+        }
+        generator.writeObjectFieldStart(field);
+        generator.writeNumberField(MIN, size.getMin());
+        generator.writeNumberField(TYPICAL, size.getTypical());
+        if (size.getMax() != PayloadSize.UNBOUNDED) {
+            generator.writeNumberField(MAX, size.getMax());
+        }
+        generator.writeBooleanField(OVER_BUDGET, size.isOverBudget());
+        generator.writeEndObject();
+    }
+
+    /**
+     * Writes a performance contract as a JSON object, omitting it if there
+     * is none. Only the parts of the contract the rest call has are written.
+     *
+     * @param generator The generator to write to.
+     * @param performance The performance contract.
+     * @throws IOException If writing fails.
+     */
+    private static void writePerformance(
+            final JsonGenerator generator, final RestApiPerformance performance) throws IOException {
+        if (performance == null) {
+            return;
+        }
+        generator.writeObjectFieldStart(PERFORMANCE);
+        writeField(generator, CACHES, performance.getCaches());
+        if (performance.isAsync()) {
+            generator.writeBooleanField(ASYNC, true);
+        }
+        writeField(generator, TRANSACTION, performance.getTransaction());
+        writeField(generator, ASYNC_RESULT, performance.getAsyncResult());
+        writeField(generator, SLA, performance.getSla());
+        writeField(generator, RATE_LIMIT, performance.getRateLimit());
+        writeField(generator, TIMEOUT, performance.getTimeout());
+        generator.writeEndObject();
+    }
+
+    private static RestApiPerformance readPerformance(final JsonParser parser) throws IOException {
+        expect(parser, JsonToken.START_OBJECT);
+        String caches = null;
+        boolean async = false;
+        String transaction = null;
+        String asyncResult = null;
+        String sla = null;
+        String rateLimit = null;
+        String timeout = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if (CACHES.equals(field)) {
+                caches = parser.getText();
+            } else if (ASYNC.equals(field)) {
+                async = parser.getBooleanValue();
+            } else if (TRANSACTION.equals(field)) {
+                transaction = parser.getText();
+            } else if (ASYNC_RESULT.equals(field)) {
+                asyncResult = parser.getText();
+            } else if (SLA.equals(field)) {
+                sla = parser.getText();
+            } else if (RATE_LIMIT.equals(field)) {
+                rateLimit = parser.getText();
+            } else if (TIMEOUT.equals(field)) {
+                timeout = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new RestApiPerformance(caches, async, transaction, asyncResult, sla, rateLimit, timeout);
+    }
+
+    private static PayloadSize readSize(final JsonParser parser) throws IOException {
+        expect(parser, JsonToken.START_OBJECT);
+        long min = 0;
+        long typical = 0;
+        long max = PayloadSize.UNBOUNDED;
+        boolean overBudget = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if (MIN.equals(field)) {
+                min = parser.getLongValue();
+            } else if (TYPICAL.equals(field)) {
+                typical = parser.getLongValue();
+            } else if (MAX.equals(field)) {
+                max = parser.getLongValue();
+            } else if (OVER_BUDGET.equals(field)) {
+                overBudget = parser.getBooleanValue();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new PayloadSize(min, typical, max, overBudget);
+    }
+
+    private static void writeParameters(
+            final JsonGenerator generator,
+            final String field,
+            final List<RestApiParameter> parameters) throws IOException {
+        generator.writeFieldName(field);
+        generator.writeStartArray();
+        for (RestApiParameter parameter : parameters) {
+            generator.writeStartObject();
+            writeField(generator, NAME, parameter.getName());
+            writeField(generator, TYPE, parameter.getType());
+            writeField(generator, DESCRIPTION, parameter.getDescription());
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+    }
+
+    private static List<RestApiParameter> readParameters(final JsonParser parser) throws IOException {
+        expect(parser, JsonToken.START_ARRAY);
+        List<RestApiParameter> parameters = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            String name = null;
+            String type = null;
+            String description = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if (NAME.equals(field)) {
+                    name = parser.getText();
+                } else if (TYPE.equals(field)) {
+                    type = parser.getText();
+                } else if (DESCRIPTION.equals(field)) {
+                    description = parser.getText();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            parameters.add(new RestApiParameter(name, type, description));
+        }
+        expect(parser, JsonToken.END_ARRAY);
+        return parameters;
+    }
+
+    private static RestApiRequestBody readRequestBody(final JsonParser parser) throws IOException {
+        expect(parser, JsonToken.START_OBJECT);
+        String name = null;
+        String type = null;
+        String description = null;
+        String structure = null;
+        Map<String, String> components = Collections.emptyMap();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if (NAME.equals(field)) {
+                name = parser.getText();
+            } else if (TYPE.equals(field)) {
+                type = parser.getText();
+            } else if (DESCRIPTION.equals(field)) {
+                description = parser.getText();
+            } else if (STRUCTURE.equals(field)) {
+                structure = parser.getText();
+            } else if (COMPONENTS.equals(field)) {
+                components = readComponents(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        RestApiRequestBody requestBody = new RestApiRequestBody(name, type, description, structure);
+        requestBody.setComponents(components);
+        return requestBody;
+    }
+
+    private static Map<String, String> readComponents(final JsonParser parser) throws IOException {
+        expect(parser, JsonToken.START_OBJECT);
+        Map<String, String> components = new TreeMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            components.put(name, parser.getText());
+        }
+        return components;
+    }
+
+    /**
+     * Writes a string field, omitting it if the value is {@code null}.
+     *
+     * @param generator The generator to write to.
+     * @param field The field name.
+     * @param value The value.
+     * @throws IOException If writing fails.
+     */
+    private static void writeField(
+            final JsonGenerator generator, final String field, final String value) throws IOException {
+        if (value != null) {
+            generator.writeStringField(field, value);
+        }
+    }
+
+    /**
+     * Checks the parser is positioned on the given token.
+     *
+     * @param parser The parser.
+     * @param token The expected token.
+     * @throws JsonParseException If the parser is positioned elsewhere.
+     */
+    static void expect(final JsonParser parser, final JsonToken token) throws JsonParseException {
+        if (parser.getCurrentToken() != token) {
+            throw new JsonParseException(
+                    "Expected " + token + " but found " + parser.getCurrentToken(),
+                    parser.getCurrentLocation());
+        }
+    }
+}
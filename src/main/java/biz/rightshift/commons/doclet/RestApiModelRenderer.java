@@ -0,0 +1,198 @@
+package biz.rightshift.commons.doclet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+
+/**
+ * Renders model files written by {@link RestApiProcessor}, as the doclets
+ * render the rest calls they extract.
+ *
+ * Takes the doclets' options, followed by the model files to render. With
+ * no model files, every model file on the class path is rendered, so that
+ * the models of several modules can be rendered together. Model and JSON
+ * output is merged a controller at a time, holding only one controller's
+ * rest calls however many models there are, as is HTML output with
+ * {@code -pipeline}.
+ */
+public final class RestApiModelRenderer {
+
+    private RestApiModelRenderer() {
+        // Prevent Instantiation.
+    }
+
+    /**
+     * Starting point.
+     *
+     * @param args The options, then the model files.
+     */
+    public static void main(final String[] args) {
+        System.exit(render(args, new ConsoleReporter()) ? 0 : 1);
+    }
+
+    /**
+     * Renders model files.
+     *
+     * @param args The options, then the model files.
+     * @param reporter Where to report failures.
+     * @return {@code true} if the output was written.
+     */
+    static boolean render(final String[] args, final DocletReporter reporter) {
+        List<String[]> options = new ArrayList<>();
+        List<String> files = new ArrayList<>();
+        int index = 0;
+        while (index < args.length) {
+            int length = DocletSettings.optionLength(args[index]);
+            if (length > 0 && index + length <= args.length) {
+                options.add(Arrays.copyOfRange(args, index, index + length));
+                index += length;
+            } else if (args[index].startsWith("-")) {
+                reporter.printError("Invalid option: " + args[index]);
+                return false;
+            } else {
+                files.add(args[index++]);
+            }
+        }
+        DocletSettings settings = DocletSettings.parse(options.toArray(new String[options.size()][]), reporter);
+        if (settings == null) {
+            return false;
+        }
+
+        if (settings.getOutputs().size() == 1 && (DocletSettings.FORMAT_MODEL.equals(settings.getFormat())
+                || DocletSettings.FORMAT_JSON.equals(settings.getFormat()))) {
+            return merge(settings, files, reporter);
+        }
+        if (settings.getPipeline() > 0) {
+            return pipeline(settings, files, reporter);
+        }
+
+        final RestApiModel model = new RestApiModel();
+        try {
+            readModels(files, new RestApiModel.Handler() {
+                @Override
+                public void add(final String controller, final List<RestApiDetails> restCalls) {
+                    model.add(controller, restCalls);
+                }
+            });
+        } catch (IOException ex) {
+            reporter.printError("Failed to read model: " + ex.getMessage());
+            return false;
+        }
+
+        DocletStats stats = settings.createStats();
+        stats.recordCounts(model.getControllers().size(), model.getRestCalls(), 0);
+        return RestApiOutput.write(
+                settings, model.getControllers(), model.getControllerCalls(), model.getRestCalls(), stats, reporter);
+    }
+
+    /**
+     * Merges model files into a model file or JSON list, reading and
+     * writing a controller at a time, so that only one controller's rest
+     * calls are held however many models are merged.
+     *
+     * @param settings The settings, asking for model or JSON output.
+     * @param files The model files, or none for those on the class path.
+     * @param reporter Where to report failures.
+     * @return {@code true} if the output was written.
+     */
+    private static boolean merge(
+            final DocletSettings settings, final List<String> files, final DocletReporter reporter) {
+        final DocletStats stats = settings.createStats();
+        final PerformanceReport report = settings.createPerformanceReport();
+        DocletStats.Measurement render = stats.start(DocletStats.Phase.RENDER.getLabel());
+        File outputFile = new File(settings.getOutputFile());
+        File file = outputFile.getAbsoluteFile();
+        OutputFiles outputFiles = new OutputFiles(file.getParentFile(), settings.isCdn());
+        try {
+            try (OutputStream output = outputFiles.open(file.getName());
+                    final RestApiModel.Output writer = DocletSettings.FORMAT_MODEL.equals(settings.getFormat())
+                            ? new RestApiModel.Writer(output)
+                            : new RestApiJsonWriter.ListWriter(settings.getHeading(), output)) {
+                readModels(files, new RestApiModel.Handler() {
+                    @Override
+                    public void add(
+                            final String controller, final List<RestApiDetails> restCalls) throws IOException {
+                        stats.addControllerCounts(restCalls);
+                        report.add(restCalls);
+                        writer.add(controller, restCalls);
+                    }
+                });
+            }
+            outputFiles.writeManifest();
+        } catch (IOException ex) {
+            reporter.printError("Failed to merge models into " + outputFile + ": " + ex.getMessage());
+            return false;
+        }
+        stats.recordPhase(DocletStats.Phase.RENDER, render);
+        RestApiOutput.writePerformanceReport(settings, report, reporter);
+        RestApiOutput.writeStats(settings, stats, reporter);
+        return true;
+    }
+
+    /**
+     * Renders model files as HTML while they are read, a controller at a
+     * time, so that only the controllers waiting to be rendered are held.
+     *
+     * @param settings The settings, asking for unsharded HTML output, or
+     *          several pipelined outputs.
+     * @param files The model files, or none for those on the class path.
+     * @param reporter Where to report failures.
+     * @return {@code true} if the output was written.
+     */
+    private static boolean pipeline(
+            final DocletSettings settings, final List<String> files, final DocletReporter reporter) {
+        final DocletStats stats = settings.createStats();
+        final PerformanceReport report = settings.createPerformanceReport();
+        try (RestApiModel.Output output = PipelinedOutput.open(settings, stats)) {
+            final RestApiModel.Output writer = output;
+            readModels(files, new RestApiModel.Handler() {
+                @Override
+                public void add(final String controller, final List<RestApiDetails> restCalls) throws IOException {
+                    stats.addControllerCounts(restCalls);
+                    report.add(restCalls);
+                    writer.add(controller, restCalls);
+                }
+            });
+        } catch (IOException ex) {
+            reporter.printError(
+                    "Failed to render models into " + settings.getOutputFileNames() + ": " + ex.getMessage());
+            return false;
+        }
+        RestApiOutput.writePerformanceReport(settings, report, reporter);
+        RestApiOutput.writeStats(settings, stats, reporter);
+        return true;
+    }
+
+    /**
+     * Reads model files in order, a controller at a time.
+     *
+     * @param files The model files, or none to read every model file on the
+     *          class path, in class path order.
+     * @param handler What to pass each controller to.
+     * @throws IOException If a model file cannot be read.
+     */
+    private static void readModels(final List<String> files, final RestApiModel.Handler handler) throws IOException {
+        if (files.isEmpty()) {
+            Enumeration<URL> resources = RestApiModelRenderer.class.getClassLoader()
+                    .getResources(RestApiModel.DEFAULT_RESOURCE);
+            while (resources.hasMoreElements()) {
+                try (InputStream input = resources.nextElement().openStream()) {
+                    RestApiModel.read(input, handler);
+                }
+            }
+        } else {
+            for (String file : files) {
+                try (InputStream input = new FileInputStream(file)) {
+                    RestApiModel.read(input, handler);
+                }
+            }
+        }
+    }
+}
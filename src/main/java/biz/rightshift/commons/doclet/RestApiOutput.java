@@ -0,0 +1,653 @@
+package biz.rightshift.commons.doclet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.regex.Pattern;
+
+/**
+ * Writes the rest calls extracted by a doclet in the requested format.
+ */
+final class RestApiOutput {
+
+    /** The template of the index of a sharded output. */
+    static final String INDEX_TEMPLATE_NAME = "rest_api_index_template.vm";
+
+    /** The template value holding the rest calls. */
+    static final String REST_KEY = "restCalls";
+
+    /** The template value holding the components, if there are any. */
+    static final String COMPONENTS_KEY = "components";
+
+    /** The template value holding the heading. */
+    static final String HEAD_TITLE = "headTitle";
+
+    /** The template value holding the pages of a sharded output. */
+    static final String SHARDS_KEY = "shards";
+
+    /**
+     * The template value holding the page each anchor of a sharded output
+     * is on, for the index to forward links to when the pages are named
+     * after their content.
+     */
+    static final String PAGES_KEY = "pages";
+
+    private static final String SHARD_FILE_SUFFIX = ".html";
+    private static final String SHARD_FILE_ROOT = "root";
+    private static final String SHARD_NUMBER_SEPARATOR = "-";
+    private static final Pattern SHARD_FILE_PATTERN = Pattern.compile("[^A-Za-z0-9._-]");
+
+    private RestApiOutput() {
+        // Prevent Instantiation.
+    }
+
+    /**
+     * Writes the output, then any statistics.
+     *
+     * @param settings The settings.
+     * @param controllers The qualified names of the controllers.
+     * @param controllerCalls The rest calls of each controller.
+     * @param restCalls All the rest calls, in order.
+     * @param stats The statistics.
+     * @param reporter Where to report failures.
+     * @return {@code true} if the output was written.
+     */
+    static boolean write(
+            final DocletSettings settings,
+            final List<String> controllers,
+            final List<List<RestApiDetails>> controllerCalls,
+            final List<RestApiDetails> restCalls,
+            final DocletStats stats,
+            final DocletReporter reporter) {
+        return write(settings, controllers, controllerCalls, restCalls, stats, reporter,
+                new ArrayList<TemplateRenderer>());
+    }
+
+    /**
+     * Warns of bodies over the size budget, then writes each output, then
+     * any performance report and statistics. Several outputs are written
+     * concurrently, each with its own renderer.
+     *
+     * @param settings The settings.
+     * @param controllers The qualified names of the controllers.
+     * @param controllerCalls The rest calls of each controller.
+     * @param restCalls All the rest calls, in order.
+     * @param stats The statistics.
+     * @param reporter Where to report failures.
+     * @param renderers A renderer for each output, which may already have
+     *          rendered before. Renderers are added for outputs that have
+     *          none.
+     * @return {@code true} if every output was written.
+     */
+    static boolean write(
+            final DocletSettings settings,
+            final List<String> controllers,
+            final List<List<RestApiDetails>> controllerCalls,
+            final List<RestApiDetails> restCalls,
+            final DocletStats stats,
+            final DocletReporter reporter,
+            final List<TemplateRenderer> renderers) {
+        PayloadSizes.warnOverBudget(restCalls, reporter);
+        List<DocletSettings> outputs = settings.getOutputs();
+        while (renderers.size() < outputs.size()) {
+            renderers.add(new TemplateRenderer());
+        }
+        Map<File, OutputFiles> filesByDirectory = new LinkedHashMap<>();
+        Set<String> outputNames = new HashSet<>();
+        for (DocletSettings output : outputs) {
+            getOutputFiles(filesByDirectory, output);
+            outputNames.add(new File(output.getOutputFile()).getName());
+        }
+
+        boolean written;
+        if (outputs.size() == 1) {
+            written = writeOutput(outputs.get(0), controllers, controllerCalls, restCalls,
+                    filesByDirectory, outputNames, stats, reporter, renderers.get(0));
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(outputs.size());
+            try {
+                List<ForkJoinTask<Boolean>> writes = new ArrayList<>();
+                for (int i = 0; i < outputs.size(); i++) {
+                    writes.add(pool.submit(new OutputWrite(outputs.get(i), controllers, controllerCalls, restCalls,
+                            filesByDirectory, outputNames, stats, reporter, renderers.get(i))));
+                }
+                written = true;
+                for (ForkJoinTask<Boolean> write : writes) {
+                    written &= write.join();
+                }
+            } finally {
+                pool.shutdown();
+            }
+        }
+        if (!written || !writeManifests(filesByDirectory, reporter)) {
+            return false;
+        }
+        PerformanceReport report = settings.createPerformanceReport();
+        report.add(restCalls);
+        writePerformanceReport(settings, report, reporter);
+        writeStats(settings, stats, reporter);
+        return true;
+    }
+
+    /**
+     * Writes a single output.
+     *
+     * @param settings The settings of the output.
+     * @param controllers The qualified names of the controllers.
+     * @param controllerCalls The rest calls of each controller.
+     * @param restCalls All the rest calls, in order.
+     * @param filesByDirectory The files of each output directory.
+     * @param outputNames The names of every output's file, which pages
+     *          must not take.
+     * @param stats The statistics.
+     * @param reporter Where to report failures.
+     * @param renderer The renderer.
+     * @return {@code true} if the output was written.
+     */
+    private static boolean writeOutput(
+            final DocletSettings settings,
+            final List<String> controllers,
+            final List<List<RestApiDetails>> controllerCalls,
+            final List<RestApiDetails> restCalls,
+            final Map<File, OutputFiles> filesByDirectory,
+            final Set<String> outputNames,
+            final DocletStats stats,
+            final DocletReporter reporter,
+            final TemplateRenderer renderer) {
+        String format = settings.getFormat();
+        String heading = settings.getHeading();
+        String templateName = settings.getTemplateName();
+        String outputFile = settings.getOutputFile();
+        File file = new File(outputFile).getAbsoluteFile();
+        OutputFiles files = getOutputFiles(filesByDirectory, settings);
+        try {
+            if (DocletSettings.FORMAT_HTML.equals(format)) {
+                DocletStats.Measurement templateInit = stats.start(DocletStats.Phase.TEMPLATE_INIT.getLabel());
+                renderer.prepare(templateName);
+                stats.recordPhase(DocletStats.Phase.TEMPLATE_INIT, templateInit);
+            }
+
+            DocletStats.Measurement render = stats.start(DocletStats.Phase.RENDER.getLabel());
+            if (settings.getShard() != null) {
+                List<RestApiShard> shards;
+                if (DocletSettings.SHARD_BY_CONTROLLER.equals(settings.getShard())) {
+                    shards = getControllerShards(controllers, controllerCalls, outputNames);
+                } else {
+                    shards = getPrefixShards(controllerCalls, outputNames);
+                }
+                /* named after their content, pages link to each other through the index */
+                String via = settings.isCdn() ? file.getName() : null;
+                renderShards(renderer, templateName, heading, shards, getShardPages(shards), via, files,
+                        settings.getThreads());
+
+                Map<String, Object> values = new HashMap<>();
+                values.put(SHARDS_KEY, shards);
+                values.put(HEAD_TITLE, heading);
+                if (via != null) {
+                    values.put(PAGES_KEY, getShardPages(shards));
+                }
+                try (OutputStream output = files.open(file.getName())) {
+                    renderer.render(INDEX_TEMPLATE_NAME, values, output);
+                }
+            } else if (DocletSettings.FORMAT_SEARCH.equals(format)) {
+                RestApiSearchWriter.write(heading, controllers, controllerCalls, files, file.getName(), renderer);
+            } else {
+                try (OutputStream output = files.open(file.getName())) {
+                    if (DocletSettings.FORMAT_JSON.equals(format)) {
+                        RestApiJsonWriter.writeJson(heading, restCalls, output);
+                    } else if (DocletSettings.FORMAT_OPENAPI.equals(format)) {
+                        RestApiJsonWriter.writeOpenApi(heading, restCalls, output);
+                    } else if (DocletSettings.FORMAT_MODEL.equals(format)) {
+                        writeModel(controllers, controllerCalls, output);
+                    } else if (DocletSettings.FORMAT_ROUTES.equals(format)) {
+                        RestApiRoutes.build(restCalls, reporter).write(output);
+                    } else if (DocletSettings.FORMAT_LOADTEST.equals(format)) {
+                        RestApiLoadScenario.write(heading, restCalls, output);
+                    } else {
+                        renderer.render(templateName, getTemplateValues(heading, restCalls), output);
+                    }
+                }
+            }
+            stats.recordPhase(DocletStats.Phase.RENDER, render);
+        } catch (Exception ex) {
+            reporter.printError("Failed to write " + outputFile + ": " + ex.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Gets the files of an output's directory, shared by every output
+     * written to it, so that the directory has a single manifest.
+     *
+     * @param filesByDirectory The files of each output directory so far.
+     * @param settings The settings of the output.
+     * @return The files of the output's directory.
+     */
+    static OutputFiles getOutputFiles(final Map<File, OutputFiles> filesByDirectory, final DocletSettings settings) {
+        File directory = new File(settings.getOutputFile()).getAbsoluteFile().getParentFile();
+        OutputFiles files = filesByDirectory.get(directory);
+        if (files == null) {
+            files = new OutputFiles(directory, settings.isCdn());
+            filesByDirectory.put(directory, files);
+        }
+        return files;
+    }
+
+    /**
+     * Writes the manifest of each output directory, once all its files are
+     * written.
+     *
+     * @param filesByDirectory The files of each output directory.
+     * @param reporter Where to report failures.
+     * @return {@code true} if the manifests were written.
+     */
+    static boolean writeManifests(final Map<File, OutputFiles> filesByDirectory, final DocletReporter reporter) {
+        for (Map.Entry<File, OutputFiles> files : filesByDirectory.entrySet()) {
+            try {
+                files.getValue().writeManifest();
+            } catch (IOException ex) {
+                reporter.printError("Failed to write " + new File(files.getKey(), OutputFiles.MANIFEST)
+                        + ": " + ex.getMessage());
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Prints the statistics, and writes them as JSON, as the settings ask.
+     *
+     * @param settings The settings.
+     * @param stats The statistics.
+     * @param reporter Where to print them, and report failures.
+     */
+    static void writeStats(final DocletSettings settings, final DocletStats stats, final DocletReporter reporter) {
+        if (settings.isPrintStats()) {
+            for (String line : stats.getReport()) {
+                reporter.printNotice(line);
+            }
+        }
+        if (settings.getStatsJsonFile() != null) {
+            try {
+                stats.writeJson(new File(settings.getStatsJsonFile()));
+            } catch (IOException ex) {
+                reporter.printWarning("Failed to write " + settings.getStatsJsonFile() + ": " + ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Writes the performance report, if the settings ask for one.
+     *
+     * @param settings The settings.
+     * @param report The performance report.
+     * @param reporter Where to report failures.
+     */
+    static void writePerformanceReport(
+            final DocletSettings settings, final PerformanceReport report, final DocletReporter reporter) {
+        String reportFile = settings.getPerformanceReportFile();
+        if (reportFile != null) {
+            try {
+                report.write(new File(reportFile), settings.getHeading());
+            } catch (IOException ex) {
+                reporter.printWarning("Failed to write " + reportFile + ": " + ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Writes the rest calls as a model file, to be merged with others and
+     * rendered by {@link RestApiModelRenderer}.
+     *
+     * @param controllers The qualified names of the controllers.
+     * @param controllerCalls The rest calls of each controller.
+     * @param output The stream to write, which is left open.
+     * @throws IOException If the output cannot be written.
+     */
+    private static void writeModel(
+            final List<String> controllers,
+            final List<List<RestApiDetails>> controllerCalls,
+            final OutputStream output) throws IOException {
+        try (RestApiModel.Writer writer = new RestApiModel.Writer(output)) {
+            for (int i = 0; i < controllers.size(); i++) {
+                writer.add(controllers.get(i), controllerCalls.get(i));
+            }
+        }
+    }
+
+    /**
+     * @param heading The page heading.
+     * @param restCalls The rest calls on the page.
+     * @return The values to render a page of rest calls with.
+     */
+    static Map<String, Object> getTemplateValues(
+            final String heading, final List<RestApiDetails> restCalls) {
+        Map<String, Object> values = new HashMap<>();
+        values.put(REST_KEY, restCalls);
+        values.put(HEAD_TITLE, heading);
+        Map<String, String> components = new TreeMap<>();
+        RestApiJsonWriter.addComponents(components, restCalls);
+        if (!components.isEmpty()) {
+            values.put(COMPONENTS_KEY, components);
+        }
+        return values;
+    }
+
+    /**
+     * Splits the rest calls into a page per controller.
+     *
+     * @param controllers The qualified names of the controllers.
+     * @param controllerCalls The rest calls of each controller.
+     * @param outputNames The names of the output files, which pages must
+     *          not take.
+     * @return The pages, skipping controllers without rest calls.
+     */
+    static List<RestApiShard> getControllerShards(
+            final List<String> controllers,
+            final List<List<RestApiDetails>> controllerCalls,
+            final Set<String> outputNames) {
+        Set<String> taken = getTakenNames(outputNames);
+        List<RestApiShard> shards = new ArrayList<>();
+        for (int i = 0; i < controllers.size(); i++) {
+            if (!controllerCalls.get(i).isEmpty()) {
+                String name = controllers.get(i);
+                shards.add(new RestApiShard(name, getShardFile(name, taken), controllerCalls.get(i)));
+            }
+        }
+        return shards;
+    }
+
+    /**
+     * Splits the rest calls into a page per URL prefix, the first segment
+     * of the URL.
+     *
+     * @param controllerCalls The rest calls of each controller.
+     * @param outputNames The names of the output files, which pages must
+     *          not take.
+     * @return The pages, in the order each prefix is first seen.
+     */
+    static List<RestApiShard> getPrefixShards(
+            final List<List<RestApiDetails>> controllerCalls, final Set<String> outputNames) {
+        Map<String, List<RestApiDetails>> prefixes = new LinkedHashMap<>();
+        for (List<RestApiDetails> calls : controllerCalls) {
+            for (RestApiDetails call : calls) {
+                String prefix = getUrlPrefix(call.getUrl());
+                List<RestApiDetails> prefixCalls = prefixes.get(prefix);
+                if (prefixCalls == null) {
+                    prefixCalls = new ArrayList<>();
+                    prefixes.put(prefix, prefixCalls);
+                }
+                prefixCalls.add(call);
+            }
+        }
+        Set<String> taken = getTakenNames(outputNames);
+        List<RestApiShard> shards = new ArrayList<>();
+        for (Map.Entry<String, List<RestApiDetails>> prefix : prefixes.entrySet()) {
+            String file = getShardFile(prefix.getKey().substring(1), taken);
+            shards.add(new RestApiShard(prefix.getKey(), file, prefix.getValue()));
+        }
+        return shards;
+    }
+
+    /**
+     * Finds the page each anchor is on: the page of each rest call, and the
+     * first page to describe each component.
+     *
+     * @param shards The shards.
+     * @return The file of the page each anchor is on, by anchor.
+     */
+    static Map<String, String> getShardPages(final List<RestApiShard> shards) {
+        Map<String, String> pages = new TreeMap<>();
+        for (RestApiShard shard : shards) {
+            Map<String, String> components = new TreeMap<>();
+            RestApiJsonWriter.addComponents(components, shard.getRestCalls());
+            for (String component : components.keySet()) {
+                if (!pages.containsKey(component)) {
+                    pages.put(component, shard.getFile());
+                }
+            }
+            for (RestApiDetails restCall : shard.getRestCalls()) {
+                if (restCall.getAnchor() != null) {
+                    pages.put(restCall.getAnchor(), shard.getFile());
+                }
+            }
+        }
+        return pages;
+    }
+
+    /**
+     * @param url The URL.
+     * @return The first segment of the URL, including the leading slash.
+     */
+    private static String getUrlPrefix(final String url) {
+        int start = url.startsWith("/") ? 1 : 0;
+        int end = url.indexOf('/', start);
+        return "/" + (end < 0 ? url.substring(start) : url.substring(start, end));
+    }
+
+    /**
+     * @param outputNames The names of the output files.
+     * @return The names, in lower case, as pages must not take them.
+     */
+    private static Set<String> getTakenNames(final Set<String> outputNames) {
+        Set<String> taken = new HashSet<>();
+        for (String outputName : outputNames) {
+            taken.add(outputName.toLowerCase(Locale.ENGLISH));
+        }
+        return taken;
+    }
+
+    /**
+     * Names the page of a shard after it, numbering the name if another page
+     * or output file already has it, ignoring case, as characters that can't
+     * be in a file name are replaced and some file systems ignore case.
+     *
+     * @param name The shard's name.
+     * @param taken The names already taken, in lower case, to which the new
+     *          name is added.
+     * @return A file name for the shard's page.
+     */
+    private static String getShardFile(final String name, final Set<String> taken) {
+        String base = SHARD_FILE_PATTERN.matcher(name).replaceAll("_");
+        base = base.isEmpty() ? SHARD_FILE_ROOT : base;
+        String file = base + SHARD_FILE_SUFFIX;
+        for (int number = 2; !taken.add(file.toLowerCase(Locale.ENGLISH)); number++) {
+            file = base + SHARD_NUMBER_SEPARATOR + number + SHARD_FILE_SUFFIX;
+        }
+        return file;
+    }
+
+    /**
+     * Renders a page for each shard. When more than one thread is requested
+     * the pages are rendered on a fork-join pool.
+     *
+     * @param renderer The renderer.
+     * @param templateName The template to render each page with.
+     * @param heading The heading.
+     * @param shards The shards.
+     * @param pages The page each anchor is on.
+     * @param via The page that forwards links to other pages, or
+     *          {@code null} to link to them directly.
+     * @param files The files to write the pages to.
+     * @param threads The number of threads to use.
+     * @throws IOException If a page cannot be written.
+     */
+    private static void renderShards(
+            final TemplateRenderer renderer,
+            final String templateName,
+            final String heading,
+            final List<RestApiShard> shards,
+            final Map<String, String> pages,
+            final String via,
+            final OutputFiles files,
+            final int threads) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+        try {
+            List<ForkJoinTask<Void>> renders = new ArrayList<>();
+            for (RestApiShard shard : shards) {
+                renders.add(pool.submit(new ShardRender(
+                        renderer, templateName, heading, shard, pages, via, files)));
+            }
+            for (ForkJoinTask<Void> render : renders) {
+                render.quietlyJoin();
+                if (render.getException() != null) {
+                    throw new IOException(render.getException().getMessage(), render.getException());
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Writes one of several outputs on a fork-join pool.
+     */
+    private static final class OutputWrite extends RecursiveTask<Boolean> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient DocletSettings settings;
+        private final transient List<String> controllers;
+        private final transient List<List<RestApiDetails>> controllerCalls;
+        private final transient List<RestApiDetails> restCalls;
+        private final transient Map<File, OutputFiles> filesByDirectory;
+        private final transient Set<String> outputNames;
+        private final transient DocletStats stats;
+        private final transient DocletReporter reporter;
+        private final transient TemplateRenderer renderer;
+
+        /**
+         * @param settings The settings of the output.
+         * @param controllers The qualified names of the controllers.
+         * @param controllerCalls The rest calls of each controller.
+         * @param restCalls All the rest calls, in order.
+         * @param filesByDirectory The files of each output directory.
+         * @param outputNames The names of every output's file.
+         * @param stats The statistics.
+         * @param reporter Where to report failures.
+         * @param renderer The output's own renderer.
+         */
+        OutputWrite(
+                final DocletSettings settings,
+                final List<String> controllers,
+                final List<List<RestApiDetails>> controllerCalls,
+                final List<RestApiDetails> restCalls,
+                final Map<File, OutputFiles> filesByDirectory,
+                final Set<String> outputNames,
+                final DocletStats stats,
+                final DocletReporter reporter,
+                final TemplateRenderer renderer) {
+            this.settings = settings;
+            this.controllers = controllers;
+            this.controllerCalls = controllerCalls;
+            this.restCalls = restCalls;
+            this.filesByDirectory = filesByDirectory;
+            this.outputNames = outputNames;
+            this.stats = stats;
+            this.reporter = reporter;
+            this.renderer = renderer;
+        }
+
+        @Override
+        protected Boolean compute() {
+            return writeOutput(settings, controllers, controllerCalls, restCalls, filesByDirectory, outputNames,
+                    stats, reporter, renderer);
+        }
+    }
+
+    /**
+     * Renders the page of a single shard on a fork-join pool, linking to
+     * anchors on other pages. If the page's file is named after its
+     * content, the shard takes the name it was written under, for the index
+     * to link to.
+     */
+    private static final class ShardRender extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient TemplateRenderer renderer;
+        private final String templateName;
+        private final String heading;
+        private final transient RestApiShard shard;
+        private final transient Map<String, String> pages;
+        private final String via;
+        private final transient OutputFiles files;
+
+        /**
+         * @param renderer The renderer.
+         * @param templateName The template to render the page with.
+         * @param heading The heading.
+         * @param shard The shard.
+         * @param pages The page each anchor is on.
+         * @param via The page that forwards links to other pages, or
+         *          {@code null} to link to them directly.
+         * @param files The files to write the page to.
+         */
+        ShardRender(
+                final TemplateRenderer renderer,
+                final String templateName,
+                final String heading,
+                final RestApiShard shard,
+                final Map<String, String> pages,
+                final String via,
+                final OutputFiles files) {
+            this.renderer = renderer;
+            this.templateName = templateName;
+            this.heading = heading;
+            this.shard = shard;
+            this.pages = pages;
+            this.via = via;
+            this.files = files;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                Map<String, Object> values = getTemplateValues(heading, shard.getRestCalls());
+                StringWriter html = new StringWriter();
+                renderer.render(templateName, values, html);
+
+                Set<String> anchors = new HashSet<>();
+                for (RestApiDetails restCall : shard.getRestCalls()) {
+                    anchors.add(restCall.getAnchor());
+                }
+                Map<?, ?> components = (Map<?, ?>) values.get(COMPONENTS_KEY);
+                if (components != null) {
+                    for (Object component : components.keySet()) {
+                        anchors.add((String) component);
+                    }
+                }
+
+                OutputFiles.OutputFile output = files.openHashed(shard.getFile());
+                try {
+                    Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+                    writer.write(CommentRenderer.linkToPages(html.toString(), pages, anchors, via));
+                    writer.flush();
+                } finally {
+                    output.close();
+                }
+                shard.setFile(output.getName());
+            } catch (IOException ex) {
+                completeExceptionally(ex);
+            }
+        }
+    }
+}
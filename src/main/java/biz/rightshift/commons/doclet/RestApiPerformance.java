@@ -0,0 +1,117 @@
+package biz.rightshift.commons.doclet;
+
+/**
+ * The performance contract of a rest call: whether it is cached, run
+ * asynchronously or in a transaction, and the service levels its comment
+ * promises.
+ */
+public class RestApiPerformance {
+
+    /** The transaction of an endpoint that only reads. */
+    public static final String READ_ONLY = "read-only";
+
+    /** The transaction of an endpoint that may write. */
+    public static final String READ_WRITE = "read-write";
+
+    private final String caches;
+    private final boolean async;
+    private final String transaction;
+    private final String asyncResult;
+    private final String sla;
+    private final String rateLimit;
+    private final String timeout;
+
+    /**
+     * Constructor injecting fields.
+     * @param caches The caches the result is kept in, comma separated, an
+     *          empty string if they aren't named, or {@code null} if the
+     *          result isn't cached.
+     * @param async Whether the endpoint is run asynchronously.
+     * @param transaction {@link #READ_ONLY} or {@link #READ_WRITE}, or
+     *          {@code null} if the endpoint isn't transactional.
+     * @param asyncResult The simple name of the type the endpoint returns
+     *          its result in later, such as {@code DeferredResult}, or
+     *          {@code null}.
+     * @param sla The service level, as given by {@code @sla}, or {@code null}.
+     * @param rateLimit The rate limit, as given by {@code @rateLimit}, or
+     *          {@code null}.
+     * @param timeout The timeout, as given by {@code @timeout}, or
+     *          {@code null}.
+     */
+    public RestApiPerformance(
+            final String caches,
+            final boolean async,
+            final String transaction,
+            final String asyncResult,
+            final String sla,
+            final String rateLimit,
+            final String timeout) {
+        this.caches = caches;
+        this.async = async;
+        this.transaction = transaction;
+        this.asyncResult = asyncResult;
+        this.sla = sla;
+        this.rateLimit = rateLimit;
+        this.timeout = timeout;
+    }
+
+    /**
+     * @return Whether the result is cached.
+     */
+    public boolean isCached() {
+        return caches != null;
+    }
+
+    /**
+     * @return The caches the result is kept in, comma separated, an empty
+     *          string if they aren't named, or {@code null} if the result
+     *          isn't cached.
+     */
+    public String getCaches() {
+        return caches;
+    }
+
+    /**
+     * @return Whether the endpoint is run asynchronously.
+     */
+    public boolean isAsync() {
+        return async;
+    }
+
+    /**
+     * @return {@link #READ_ONLY} or {@link #READ_WRITE}, or {@code null} if
+     *          the endpoint isn't transactional.
+     */
+    public String getTransaction() {
+        return transaction;
+    }
+
+    /**
+     * @return The simple name of the type the endpoint returns its result
+     *          in later, such as {@code DeferredResult}, or {@code null}.
+     */
+    public String getAsyncResult() {
+        return asyncResult;
+    }
+
+    /**
+     * @return The service level, such as "p99=50ms", or {@code null}.
+     */
+    public String getSla() {
+        return sla;
+    }
+
+    /**
+     * @return The rate limit, such as "100/s", or {@code null}.
+     */
+    public String getRateLimit() {
+        return rateLimit;
+    }
+
+    /**
+     * @return The timeout, or {@code null}.
+     */
+    public String getTimeout() {
+        return timeout;
+    }
+}
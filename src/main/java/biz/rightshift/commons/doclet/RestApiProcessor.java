@@ -0,0 +1,223 @@
+package biz.rightshift.commons.doclet;
+
+import com.sun.source.util.DocTrees;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Extracts the rest calls of Spring MVC controllers while they are
+ * compiled, and writes them to a model file on the class output path for
+ * {@link RestApiModelRenderer} to render, without a javadoc run.
+ *
+ * Controllers are recognised as they are by the doclets, so the processor
+ * looks at every class rather than claiming any annotation. The model
+ * file is only written if there are controllers.
+ */
+@SupportedAnnotationTypes("*")
+@SupportedOptions({
+    RestApiProcessor.OPTION_TYPES,
+    RestApiProcessor.OPTION_COMPONENTS,
+    RestApiProcessor.OPTION_MAX_DEPTH,
+    RestApiProcessor.OPTION_MAX_FIELDS,
+    RestApiProcessor.OPTION_CARDINALITY,
+    RestApiProcessor.OPTION_SIZE_BUDGET,
+    RestApiProcessor.OPTION_RESOURCE,
+})
+public final class RestApiProcessor extends AbstractProcessor {
+
+    /** Comma separated package prefixes of the types to describe, as -types. */
+    static final String OPTION_TYPES = "restapi.types";
+
+    /** Whether to describe each type once, as -components. */
+    static final String OPTION_COMPONENTS = "restapi.components";
+
+    /** How many types deep to describe request bodies, as -maxdepth. */
+    static final String OPTION_MAX_DEPTH = "restapi.maxdepth";
+
+    /** The most fields of a type to describe, as -maxfields. */
+    static final String OPTION_MAX_FIELDS = "restapi.maxfields";
+
+    /** How many elements collections are assumed to have, as -cardinality. */
+    static final String OPTION_CARDINALITY = "restapi.cardinality";
+
+    /** The typical body size to warn beyond, as -sizebudget. */
+    static final String OPTION_SIZE_BUDGET = "restapi.sizebudget";
+
+    /** Where to write the model file, relative to the class output path. */
+    static final String OPTION_RESOURCE = "restapi.resource";
+
+    private final RestApiModel model = new RestApiModel();
+
+    private ElementRestApiScanner scanner;
+    private DocletReporter reporter;
+
+    @Override
+    public synchronized void init(final ProcessingEnvironment environment) {
+        super.init(environment);
+        reporter = new MessagerReporter(environment.getMessager());
+        Map<String, String> options = environment.getOptions();
+        String types = options.get(OPTION_TYPES);
+        List<String> describeTypes = types == null
+                ? Collections.<String>emptyList() : Arrays.asList(types.split(","));
+        int[] cardinality = getCardinality(options);
+        DescriptionOptions descriptionOptions = new DescriptionOptions(
+                describeTypes,
+                options.containsKey(OPTION_COMPONENTS) && !"false".equals(options.get(OPTION_COMPONENTS)),
+                getLimit(options, OPTION_MAX_DEPTH),
+                getLimit(options, OPTION_MAX_FIELDS),
+                cardinality[0],
+                cardinality[1],
+                getLimit(options, OPTION_SIZE_BUDGET));
+        scanner = new ElementRestApiScanner(
+                DocTrees.instance(environment),
+                environment.getElementUtils(),
+                environment.getTypeUtils(),
+                descriptionOptions,
+                DocletStats.DISABLED);
+    }
+
+    /**
+     * @param options The processor's options.
+     * @param option The name of an option that limits the descriptions.
+     * @return The limit, or no limit if the option is not given or invalid.
+     */
+    private int getLimit(final Map<String, String> options, final String option) {
+        String value = options.get(option);
+        if (value == null) {
+            return DescriptionOptions.UNLIMITED;
+        }
+        try {
+            int limit = Integer.parseInt(value);
+            if (limit > 0) {
+                return limit;
+            }
+        } catch (NumberFormatException ex) {
+            // Reported below.
+        }
+        reporter.printError("Invalid " + option + ": " + value);
+        return DescriptionOptions.UNLIMITED;
+    }
+
+    /**
+     * @param options The processor's options.
+     * @return The typical and maximum number of elements collections are
+     *          assumed to have, the defaults if the option is not given or
+     *          invalid.
+     */
+    private int[] getCardinality(final Map<String, String> options) {
+        String value = options.get(OPTION_CARDINALITY);
+        int[] cardinality = value == null ? null : DescriptionOptions.parseCardinality(value);
+        if (cardinality != null) {
+            return cardinality;
+        }
+        if (value != null) {
+            reporter.printError("Invalid " + OPTION_CARDINALITY + ": " + value);
+        }
+        return new int[] {DescriptionOptions.DEFAULT_TYPICAL_CARDINALITY, DescriptionOptions.DEFAULT_MAX_CARDINALITY};
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment round) {
+        List<TypeElement> controllers = new ArrayList<>();
+        addControllers(ElementFilter.typesIn(round.getRootElements()), controllers);
+        if (!controllers.isEmpty()) {
+            List<List<RestApiDetails>> controllerCalls = scanner.getRestCallsFor(controllers, null, reporter);
+            for (int i = 0; i < controllers.size(); i++) {
+                model.add(controllers.get(i).getQualifiedName().toString(), controllerCalls.get(i));
+                PayloadSizes.warnOverBudget(controllerCalls.get(i), reporter);
+            }
+        }
+        if (round.processingOver() && !model.getControllers().isEmpty()) {
+            writeModel();
+        }
+        return false;
+    }
+
+    /**
+     * Adds the controllers among some classes and the classes nested in
+     * them.
+     *
+     * @param types The classes.
+     * @param controllers The controllers found so far.
+     */
+    private static void addControllers(final Collection<TypeElement> types, final List<TypeElement> controllers) {
+        for (TypeElement type : types) {
+            if (ElementRestApiScanner.isController(type)) {
+                controllers.add(type);
+            }
+            addControllers(ElementFilter.typesIn(type.getEnclosedElements()), controllers);
+        }
+    }
+
+    /**
+     * Writes the model file, once every round has been processed.
+     */
+    private void writeModel() {
+        String resource = processingEnv.getOptions().get(OPTION_RESOURCE);
+        if (resource == null) {
+            resource = RestApiModel.DEFAULT_RESOURCE;
+        }
+        try {
+            FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", resource);
+            try (OutputStream output = file.openOutputStream()) {
+                model.write(output);
+            }
+        } catch (IOException ex) {
+            reporter.printError("Failed to write " + resource + ": " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Reports messages through the compiler's <code>Messager</code>.
+     */
+    private static final class MessagerReporter implements DocletReporter {
+
+        private final Messager messager;
+
+        /**
+         * @param messager The compiler's messager.
+         */
+        MessagerReporter(final Messager messager) {
+            this.messager = messager;
+        }
+
+        @Override
+        public void printError(final String message) {
+            messager.printMessage(Diagnostic.Kind.ERROR, message);
+        }
+
+        @Override
+        public void printWarning(final String message) {
+            messager.printMessage(Diagnostic.Kind.WARNING, message);
+        }
+
+        @Override
+        public void printNotice(final String message) {
+            messager.printMessage(Diagnostic.Kind.NOTE, message);
+        }
+    }
+}
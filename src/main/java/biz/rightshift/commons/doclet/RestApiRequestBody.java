@@ -1,11 +1,21 @@
 package biz.rightshift.commons.doclet;
 
+import java.util.Collections;
+import java.util.Map;
+
 /**
  * Rest Api Request Body.
  */
 public class RestApiRequestBody extends RestApiParameter {
 
+    /** The field of an object in a structure that refers to a component by name. */
+    static final String REFERENCE = "$ref";
+
+    /** The field of an object in a structure that counts the fields left out. */
+    static final String MORE_FIELDS = "...";
+
     private String structure;
+    private Map<String, String> components = Collections.emptyMap();
 
     /**
      * Constructor injecting fields.
@@ -33,4 +43,20 @@ public class RestApiRequestBody extends RestApiParameter {
     public void setStructure(final String structure) {
         this.structure = structure;
     }
+
+    /**
+     * @return The data structures of the components the structure refers
+     *          to, directly or through other components, by qualified type
+     *          name.
+     */
+    public Map<String, String> getComponents() {
+        return components;
+    }
+
+    /**
+     * @param components The data structures of the components to set.
+     */
+    public void setComponents(final Map<String, String> components) {
+        this.components = components;
+    }
 }
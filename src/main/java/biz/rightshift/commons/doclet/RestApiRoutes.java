@@ -0,0 +1,685 @@
+package biz.rightshift.commons.doclet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * A route table over the URL templates and HTTP methods of the rest calls,
+ * to match requests to the endpoints that handle them.
+ *
+ * The templates are first built into a trie of path segments, in which a
+ * {@code {variable}} or {@code *} segment is a slot matching any one
+ * segment, and a final {@code **} or {@code {*variable}} matches the rest
+ * of the path. The trie is then compiled so that each state holds every
+ * pattern node a path may have reached, with literal segments taking
+ * precedence over variables from the first segment on. Matching a request
+ * then takes one map lookup per segment of its path and never backtracks.
+ * An endpoint that matches the whole path takes precedence over one ending
+ * in {@code **}, the longest of which is used otherwise, and a mapping of
+ * the request's method over one mapping every method.
+ *
+ * Given this precedence, an endpoint is only never matched when an earlier
+ * one has the same segments and method, which is what is reported. One
+ * that an earlier endpoint only hides for some paths, such as
+ * {@code /{a}/b} behind {@code /a/{b}}, still matches others and is not
+ * reported. As variable patterns aren't kept, templates that only differ in
+ * them are reported as shadowed.
+ *
+ * The compiled table is written in a compact binary form, with
+ * {@code -format routes}, and read back with {@link #read(InputStream)}.
+ * Variable patterns, such as {@code {id:\d+}}, are not kept.
+ */
+public final class RestApiRoutes {
+
+    private static final int MAGIC = 0x52415254;
+    private static final int VERSION = 1;
+    private static final String ANY_METHOD = "";
+    private static final String METHOD_SEPARATOR = ",";
+    private static final String CATCH_ALL = "**";
+    private static final String WILDCARD = "*";
+    private static final String MALFORMED = "Malformed route table";
+    private static final int BUFFER_SIZE = 8192;
+
+    /* the fewest bytes a string, route and state take in the binary form */
+    private static final int MIN_STRING_BYTES = 2;
+    private static final int MIN_ROUTE_BYTES = 5;
+    private static final int MIN_STATE_BYTES = 4;
+
+    private final State root;
+
+    private RestApiRoutes(final State root) {
+        this.root = root;
+    }
+
+    /**
+     * Builds a route table, reporting the endpoints it cannot tell apart
+     * from an earlier one and so never matches.
+     *
+     * @param restCalls The rest calls, in order of precedence.
+     * @param reporter Where to report ambiguous, shadowed and unsupported
+     *          mappings.
+     * @return The route table.
+     */
+    static RestApiRoutes build(final List<RestApiDetails> restCalls, final DocletReporter reporter) {
+        PatternNode patterns = new PatternNode();
+        for (RestApiDetails restCall : restCalls) {
+            Route route = parse(restCall);
+            if (route == null) {
+                reporter.printWarning("Not in the route table, unsupported URL pattern: " + restCall.getUrl());
+                continue;
+            }
+            PatternNode node = patterns;
+            int segments = route.variables.length - (route.catchAll ? 1 : 0);
+            for (int i = 0; i < segments; i++) {
+                node = node.getChild(route.literals[i]);
+            }
+            Map<String, Route> routes = route.catchAll ? node.catchAlls : node.routes;
+            for (String method : route.method.split(METHOD_SEPARATOR)) {
+                String key = method.trim().toUpperCase(Locale.ROOT);
+                Route existing = routes.get(key);
+                if (existing == null) {
+                    routes.put(key, route);
+                } else if (existing.url.equals(route.url)) {
+                    reporter.printWarning("Ambiguous mapping " + describe(key, route.url) + " of "
+                            + route.anchor + " and " + existing.anchor + ", only the first is routed");
+                } else {
+                    reporter.printWarning("Mapping " + describe(key, route.url) + " of " + route.anchor
+                            + " is shadowed by " + existing.url + " of " + existing.anchor);
+                }
+            }
+        }
+        return new RestApiRoutes(compile(
+                Collections.singletonList(patterns), new HashMap<List<PatternNode>, State>()));
+    }
+
+    private static String describe(final String method, final String url) {
+        return (method.isEmpty() ? "" : method + " ") + url;
+    }
+
+    /**
+     * @param restCall A rest call.
+     * @return The rest call's route, or {@code null} if its URL template
+     *          has a pattern the table cannot match.
+     */
+    private static Route parse(final RestApiDetails restCall) {
+        List<String> segments = split(restCall.getUrl());
+        String[] literals = new String[segments.size()];
+        String[] variables = new String[segments.size()];
+        boolean catchAll = false;
+        for (int i = 0; i < segments.size(); i++) {
+            String segment = segments.get(i);
+            boolean last = i == segments.size() - 1;
+            if (segment.equals(CATCH_ALL) || (segment.startsWith("{*") && segment.endsWith("}"))) {
+                if (!last) {
+                    return null;
+                }
+                catchAll = true;
+                variables[i] = segment.equals(CATCH_ALL) ? "" : segment.substring(2, segment.length() - 1);
+            } else if (segment.equals(WILDCARD)) {
+                variables[i] = "";
+            } else if (segment.startsWith("{") && segment.indexOf('}') == segment.length() - 1) {
+                int pattern = segment.indexOf(':');
+                variables[i] = segment.substring(1, pattern < 0 ? segment.length() - 1 : pattern);
+            } else if (segment.indexOf('{') >= 0 || segment.indexOf('*') >= 0 || segment.indexOf('?') >= 0) {
+                return null;
+            } else {
+                literals[i] = segment;
+            }
+        }
+        return new Route(
+                restCall.getMethod() == null ? ANY_METHOD : restCall.getMethod(),
+                restCall.getUrl(),
+                restCall.getAnchor(),
+                literals,
+                variables,
+                catchAll);
+    }
+
+    /**
+     * @param path A path, or URL template.
+     * @return The path's segments, without empty segments.
+     */
+    private static List<String> split(final String path) {
+        List<String> segments = new ArrayList<>();
+        int start = 0;
+        int end = path.indexOf('?');
+        end = end < 0 ? path.length() : end;
+        while (start < end) {
+            int slash = path.indexOf('/', start);
+            int segmentEnd = slash < 0 || slash > end ? end : slash;
+            if (segmentEnd > start) {
+                segments.add(path.substring(start, segmentEnd));
+            }
+            start = segmentEnd + 1;
+        }
+        return segments;
+    }
+
+    /**
+     * Compiles the state for a set of pattern nodes a path may have reached.
+     *
+     * @param nodes The pattern nodes, in order of precedence.
+     * @param states The states compiled so far, by their pattern nodes.
+     * @return The state.
+     */
+    private static State compile(final List<PatternNode> nodes, final Map<List<PatternNode>, State> states) {
+        State state = states.get(nodes);
+        if (state != null) {
+            return state;
+        }
+        state = new State();
+        states.put(nodes, state);
+
+        TreeSet<String> methods = new TreeSet<>();
+        TreeSet<String> catchAllMethods = new TreeSet<>();
+        TreeSet<String> literals = new TreeSet<>();
+        List<PatternNode> variables = new ArrayList<>();
+        for (PatternNode node : nodes) {
+            methods.addAll(node.routes.keySet());
+            catchAllMethods.addAll(node.catchAlls.keySet());
+            literals.addAll(node.literals.keySet());
+            if (node.variable != null) {
+                variables.add(node.variable);
+            }
+        }
+        for (String method : methods) {
+            state.routes.put(method, findRoute(nodes, method, false));
+        }
+        for (String method : catchAllMethods) {
+            state.catchAlls.put(method, findRoute(nodes, method, true));
+        }
+        for (String literal : literals) {
+            List<PatternNode> next = new ArrayList<>();
+            for (PatternNode node : nodes) {
+                PatternNode child = node.literals.get(literal);
+                if (child != null) {
+                    next.add(child);
+                }
+                if (node.variable != null) {
+                    next.add(node.variable);
+                }
+            }
+            state.literals.put(literal, compile(next, states));
+        }
+        if (!variables.isEmpty()) {
+            state.variable = compile(variables, states);
+        }
+        return state;
+    }
+
+    /**
+     * @param nodes Pattern nodes, in order of precedence.
+     * @param method A method, or the empty string for any method.
+     * @param catchAll Whether to find a route ending in {@code **}.
+     * @return The route of the first node mapping the method, or every
+     *          method.
+     */
+    private static Route findRoute(final List<PatternNode> nodes, final String method, final boolean catchAll) {
+        for (PatternNode node : nodes) {
+            Map<String, Route> routes = catchAll ? node.catchAlls : node.routes;
+            Route route = routes.get(method);
+            if (route == null) {
+                route = routes.get(ANY_METHOD);
+            }
+            if (route != null) {
+                return route;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Matches a request to the endpoint that handles it.
+     *
+     * @param method The request's HTTP method.
+     * @param path The request's path, which may have a query string.
+     * @return The match, or {@code null} if no endpoint handles the request.
+     */
+    public Match match(final String method, final String path) {
+        String key = method.toUpperCase(Locale.ROOT);
+        List<String> segments = split(path);
+        State state = root;
+        Route catchAll = state.getRoute(key, true);
+        for (int i = 0; i < segments.size() && state != null; i++) {
+            State next = state.literals.get(segments.get(i));
+            state = next == null ? state.variable : next;
+            if (state != null) {
+                Route route = state.getRoute(key, true);
+                catchAll = route == null ? catchAll : route;
+            }
+        }
+        Route route = state == null ? null : state.getRoute(key, false);
+        if (route == null) {
+            route = catchAll;
+        }
+        return route == null ? null : new Match(route, segments);
+    }
+
+    /**
+     * Writes the route table in its binary form.
+     *
+     * @param output The stream to write, which is left open.
+     * @throws IOException If the output cannot be written.
+     */
+    void write(final OutputStream output) throws IOException {
+        List<State> states = new ArrayList<>();
+        Map<State, Integer> stateIndexes = new IdentityHashMap<>();
+        List<Route> routes = new ArrayList<>();
+        Map<Route, Integer> routeIndexes = new IdentityHashMap<>();
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        index(root, states, stateIndexes, routes, routeIndexes, strings);
+
+        DataOutputStream data = new DataOutputStream(output);
+        data.writeInt(MAGIC);
+        writeNumber(data, VERSION);
+        writeNumber(data, strings.size());
+        for (String string : strings.keySet()) {
+            data.writeUTF(string);
+        }
+        writeNumber(data, routes.size());
+        for (Route route : routes) {
+            writeNumber(data, strings.get(route.method));
+            writeNumber(data, strings.get(route.url));
+            writeOptional(data, route.anchor == null ? null : strings.get(route.anchor));
+            writeNumber(data, route.variables.length);
+            for (String variable : route.variables) {
+                writeOptional(data, variable == null ? null : strings.get(variable));
+            }
+            data.writeBoolean(route.catchAll);
+        }
+        writeNumber(data, states.size());
+        for (State state : states) {
+            writeNumber(data, state.literals.size());
+            for (Map.Entry<String, State> literal : state.literals.entrySet()) {
+                writeNumber(data, strings.get(literal.getKey()));
+                writeNumber(data, stateIndexes.get(literal.getValue()));
+            }
+            writeOptional(data, state.variable == null ? null : stateIndexes.get(state.variable));
+            writeRoutes(data, state.routes, strings, routeIndexes);
+            writeRoutes(data, state.catchAlls, strings, routeIndexes);
+        }
+        data.flush();
+    }
+
+    /**
+     * Numbers the states, routes and strings reachable from a state, in the
+     * order they are reached.
+     */
+    private static void index(
+            final State state,
+            final List<State> states,
+            final Map<State, Integer> stateIndexes,
+            final List<Route> routes,
+            final Map<Route, Integer> routeIndexes,
+            final Map<String, Integer> strings) {
+        if (stateIndexes.containsKey(state)) {
+            return;
+        }
+        stateIndexes.put(state, states.size());
+        states.add(state);
+        List<Route> stateRoutes = new ArrayList<>(state.routes.values());
+        stateRoutes.addAll(state.catchAlls.values());
+        for (Route route : stateRoutes) {
+            if (!routeIndexes.containsKey(route)) {
+                routeIndexes.put(route, routes.size());
+                routes.add(route);
+                addString(strings, route.method);
+                addString(strings, route.url);
+                addString(strings, route.anchor);
+                for (String variable : route.variables) {
+                    addString(strings, variable);
+                }
+            }
+        }
+        for (String method : state.routes.keySet()) {
+            addString(strings, method);
+        }
+        for (String method : state.catchAlls.keySet()) {
+            addString(strings, method);
+        }
+        for (Map.Entry<String, State> literal : state.literals.entrySet()) {
+            addString(strings, literal.getKey());
+            index(literal.getValue(), states, stateIndexes, routes, routeIndexes, strings);
+        }
+        if (state.variable != null) {
+            index(state.variable, states, stateIndexes, routes, routeIndexes, strings);
+        }
+    }
+
+    private static void addString(final Map<String, Integer> strings, final String string) {
+        if (string != null && !strings.containsKey(string)) {
+            strings.put(string, strings.size());
+        }
+    }
+
+    private static void writeRoutes(
+            final DataOutputStream data,
+            final Map<String, Route> routes,
+            final Map<String, Integer> strings,
+            final Map<Route, Integer> routeIndexes) throws IOException {
+        writeNumber(data, routes.size());
+        for (Map.Entry<String, Route> route : routes.entrySet()) {
+            writeNumber(data, strings.get(route.getKey()));
+            writeNumber(data, routeIndexes.get(route.getValue()));
+        }
+    }
+
+    /**
+     * Writes a number of seven bits a byte, the low bits first, with the top
+     * bit set on every byte but the last.
+     */
+    private static void writeNumber(final DataOutputStream data, final int number) throws IOException {
+        int rest = number;
+        while ((rest & ~0x7F) != 0) {
+            data.writeByte((rest & 0x7F) | 0x80);
+            rest >>>= 7;
+        }
+        data.writeByte(rest);
+    }
+
+    /**
+     * Writes a number that may be missing, as one more than the number, or
+     * zero if it is missing.
+     */
+    private static void writeOptional(final DataOutputStream data, final Integer number) throws IOException {
+        writeNumber(data, number == null ? 0 : number + 1);
+    }
+
+    private static int readNumber(final DataInputStream data) throws IOException {
+        int number = 0;
+        for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+            int b = data.readUnsignedByte();
+            number |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return number;
+            }
+        }
+        throw new IOException(MALFORMED);
+    }
+
+    /**
+     * Reads how many records follow, checking there are bytes left for
+     * them, so that a corrupt count fails rather than allocating for it.
+     *
+     * @param data The table's bytes.
+     * @param recordBytes The fewest bytes each record takes.
+     * @return The number of records.
+     * @throws IOException If the count is out of range.
+     */
+    private static int readCount(final DataInputStream data, final int recordBytes) throws IOException {
+        int count = readNumber(data);
+        if (count < 0 || count > data.available() / recordBytes) {
+            throw new IOException(MALFORMED);
+        }
+        return count;
+    }
+
+    /**
+     * @param data The table's bytes.
+     * @param length The length of the array indexed.
+     * @return An index into the array.
+     * @throws IOException If the index is out of range.
+     */
+    private static int readIndex(final DataInputStream data, final int length) throws IOException {
+        int index = readNumber(data);
+        if (index < 0 || index >= length) {
+            throw new IOException(MALFORMED);
+        }
+        return index;
+    }
+
+    /**
+     * @param data The table's bytes.
+     * @param length The length of the array indexed.
+     * @return An index into the array, or -1 if it is missing.
+     * @throws IOException If the index is out of range.
+     */
+    private static int readOptional(final DataInputStream data, final int length) throws IOException {
+        int index = readNumber(data) - 1;
+        if (index < -1 || index >= length) {
+            throw new IOException(MALFORMED);
+        }
+        return index;
+    }
+
+    /**
+     * Reads a route table written with {@code -format routes}. The table is
+     * read in full first, and every count and index in it checked, so that
+     * a truncated or corrupt table fails with an {@link IOException}.
+     *
+     * @param input The stream to read, which is left open.
+     * @return The route table.
+     * @throws IOException If the route table cannot be read, or is
+     *          malformed.
+     */
+    public static RestApiRoutes read(final InputStream input) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        for (int read = input.read(buffer); read >= 0; read = input.read(buffer)) {
+            bytes.write(buffer, 0, read);
+        }
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        if (bytes.size() < Integer.SIZE / Byte.SIZE || data.readInt() != MAGIC) {
+            throw new IOException("Not a route table");
+        }
+        int version = readNumber(data);
+        if (version != VERSION) {
+            throw new IOException("Unsupported route table version " + version);
+        }
+        String[] strings = new String[readCount(data, MIN_STRING_BYTES)];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = data.readUTF();
+        }
+        Route[] routes = new Route[readCount(data, MIN_ROUTE_BYTES)];
+        for (int i = 0; i < routes.length; i++) {
+            String method = strings[readIndex(data, strings.length)];
+            String url = strings[readIndex(data, strings.length)];
+            int anchor = readOptional(data, strings.length);
+            String[] variables = new String[readCount(data, 1)];
+            for (int j = 0; j < variables.length; j++) {
+                int variable = readOptional(data, strings.length);
+                variables[j] = variable < 0 ? null : strings[variable];
+            }
+            boolean catchAll = data.readBoolean();
+            routes[i] = new Route(method, url, anchor < 0 ? null : strings[anchor], null, variables, catchAll);
+        }
+        State[] states = new State[readCount(data, MIN_STATE_BYTES)];
+        if (states.length == 0) {
+            throw new IOException(MALFORMED);
+        }
+        for (int i = 0; i < states.length; i++) {
+            states[i] = new State();
+        }
+        for (State state : states) {
+            int literals = readCount(data, 2);
+            for (int i = 0; i < literals; i++) {
+                state.literals.put(strings[readIndex(data, strings.length)], states[readIndex(data, states.length)]);
+            }
+            int variable = readOptional(data, states.length);
+            state.variable = variable < 0 ? null : states[variable];
+            readRoutes(data, state.routes, strings, routes);
+            readRoutes(data, state.catchAlls, strings, routes);
+        }
+        return new RestApiRoutes(states[0]);
+    }
+
+    private static void readRoutes(
+            final DataInputStream data,
+            final Map<String, Route> stateRoutes,
+            final String[] strings,
+            final Route[] routes) throws IOException {
+        int count = readCount(data, 2);
+        for (int i = 0; i < count; i++) {
+            stateRoutes.put(strings[readIndex(data, strings.length)], routes[readIndex(data, routes.length)]);
+        }
+    }
+
+    /**
+     * An endpoint matched to a request.
+     */
+    public static final class Match {
+
+        private final Route route;
+        private final Map<String, String> variables = new LinkedHashMap<>();
+
+        /**
+         * @param route The endpoint's route.
+         * @param segments The segments of the request's path.
+         */
+        Match(final Route route, final List<String> segments) {
+            this.route = route;
+            int last = route.variables.length - 1;
+            for (int i = 0; i <= last && i < segments.size(); i++) {
+                String variable = route.variables[i];
+                if (variable == null || variable.isEmpty()) {
+                    continue;
+                }
+                if (route.catchAll && i == last) {
+                    StringBuilder rest = new StringBuilder();
+                    for (int j = i; j < segments.size(); j++) {
+                        rest.append(j > i ? "/" : "").append(segments.get(j));
+                    }
+                    variables.put(variable, rest.toString());
+                } else {
+                    variables.put(variable, segments.get(i));
+                }
+            }
+        }
+
+        /**
+         * @return The methods the endpoint is mapped to, comma separated, or
+         *          an empty string if it is mapped to every method.
+         */
+        public String getMethod() {
+            return route.method;
+        }
+
+        /**
+         * @return The endpoint's URL template.
+         */
+        public String getUrl() {
+            return route.url;
+        }
+
+        /**
+         * @return The endpoint's anchor, its controller's qualified name and
+         *          method name, or {@code null}.
+         */
+        public String getAnchor() {
+            return route.anchor;
+        }
+
+        /**
+         * @return The values of the path variables, by name.
+         */
+        public Map<String, String> getVariables() {
+            return Collections.unmodifiableMap(variables);
+        }
+    }
+
+    /**
+     * An endpoint's URL template, split into segments.
+     */
+    private static final class Route {
+
+        private final String method;
+        private final String url;
+        private final String anchor;
+        private final String[] literals;
+        private final String[] variables;
+        private final boolean catchAll;
+
+        /**
+         * @param method The methods the endpoint is mapped to.
+         * @param url The URL template.
+         * @param anchor The endpoint's anchor, or {@code null}.
+         * @param literals Each segment's text, or {@code null} for a
+         *          variable. Only needed to build the trie.
+         * @param variables Each segment's variable name, empty for an
+         *          unnamed wildcard, or {@code null} for a literal.
+         * @param catchAll Whether the last segment matches the rest of the
+         *          path.
+         */
+        Route(
+                final String method,
+                final String url,
+                final String anchor,
+                final String[] literals,
+                final String[] variables,
+                final boolean catchAll) {
+            this.method = method;
+            this.url = url;
+            this.anchor = anchor;
+            this.literals = literals;
+            this.variables = variables;
+            this.catchAll = catchAll;
+        }
+    }
+
+    /**
+     * A node of the trie of URL templates.
+     */
+    private static final class PatternNode {
+
+        private final Map<String, PatternNode> literals = new TreeMap<>();
+        private PatternNode variable;
+        private final Map<String, Route> routes = new LinkedHashMap<>();
+        private final Map<String, Route> catchAlls = new LinkedHashMap<>();
+
+        /**
+         * @param literal A segment's text, or {@code null} for a variable.
+         * @return The child for the segment, added if there is none.
+         */
+        PatternNode getChild(final String literal) {
+            if (literal == null) {
+                if (variable == null) {
+                    variable = new PatternNode();
+                }
+                return variable;
+            }
+            PatternNode child = literals.get(literal);
+            if (child == null) {
+                child = new PatternNode();
+                literals.put(literal, child);
+            }
+            return child;
+        }
+    }
+
+    /**
+     * A state of the compiled route table.
+     */
+    private static final class State {
+
+        private final Map<String, State> literals = new LinkedHashMap<>();
+        private State variable;
+        private final Map<String, Route> routes = new TreeMap<>();
+        private final Map<String, Route> catchAlls = new TreeMap<>();
+
+        /**
+         * @param method A method, in upper case.
+         * @param catchAll Whether to find a route ending in {@code **}.
+         * @return The route for the method, or every method, or {@code null}.
+         */
+        Route getRoute(final String method, final boolean catchAll) {
+            Map<String, Route> stateRoutes = catchAll ? catchAlls : routes;
+            Route route = stateRoutes.get(method);
+            return route == null ? stateRoutes.get(ANY_METHOD) : route;
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package biz.rightshift.commons.doclet;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Writes a search page over the rest calls, which loads only a compact
+ * index at first and fetches the details of an endpoint when it is shown.
+ *
+ * The details are written as a JSON list of rest calls per controller, as
+ * {@code -format json} writes them, with the components their request
+ * bodies refer to. The index holds the method and URL of each endpoint and
+ * a sorted list of the terms found in its URL, method, parameter names,
+ * request body and descriptions, each with the endpoints it is found in.
+ * The page finds the terms that start with each word of a query by binary
+ * search, so the index needs neither a trie nor n-grams to be searched by
+ * prefix. Endpoint numbers in each list are written as the gaps between
+ * them, to keep the index small. The index also holds the first endpoint
+ * to take each component, which links to the component show.
+ *
+ * With {@code -cdn} the index and details are named after their content,
+ * and only the page keeps its name.
+ */
+final class RestApiSearchWriter {
+
+    /** The template of the search page. */
+    static final String TEMPLATE_NAME = "rest_api_search_template.vm";
+
+    /** The template value holding the name of the search index. */
+    static final String INDEX_FILE_KEY = "indexFile";
+
+    private static final String HEAD_TITLE = "headTitle";
+    private static final String INDEX_FILE_SUFFIX = "-index.json";
+    private static final String DETAILS_FILE_SUFFIX = ".json";
+    private static final int MIN_TERM_LENGTH = 2;
+
+    /** Markup in descriptions, which are HTML, that isn't text to search. */
+    private static final Pattern MARKUP = Pattern.compile("<[^>]*>|&#?[A-Za-z0-9]+;");
+    private static final Pattern WORD_SEPARATOR = Pattern.compile("[^A-Za-z0-9]+");
+    private static final Pattern CAMEL_CASE = Pattern.compile("(?<=[a-z0-9])(?=[A-Z])");
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private RestApiSearchWriter() {
+        // Prevent Instantiation.
+    }
+
+    /**
+     * Writes the details of each controller, then the index, then the page.
+     *
+     * @param heading The heading.
+     * @param controllers The qualified names of the controllers.
+     * @param controllerCalls The rest calls of each controller.
+     * @param files The files to write to.
+     * @param pageFile The name of the page's file.
+     * @param renderer The renderer to render the page with.
+     * @throws IOException If a file cannot be written.
+     */
+    static void write(
+            final String heading,
+            final List<String> controllers,
+            final List<List<RestApiDetails>> controllerCalls,
+            final OutputFiles files,
+            final String pageFile,
+            final TemplateRenderer renderer) throws IOException {
+        List<String> detailsFiles = new ArrayList<>();
+        for (int i = 0; i < controllers.size(); i++) {
+            String controller = controllers.get(i);
+            OutputFiles.OutputFile output = files.openHashed(controller + DETAILS_FILE_SUFFIX);
+            try {
+                try (RestApiJsonWriter.ListWriter writer = new RestApiJsonWriter.ListWriter(controller, output)) {
+                    writer.add(controller, controllerCalls.get(i));
+                }
+            } finally {
+                output.close();
+            }
+            detailsFiles.add(output.getName());
+        }
+
+        int extension = pageFile.lastIndexOf('.');
+        OutputFiles.OutputFile index = files.openHashed(
+                (extension > 0 ? pageFile.substring(0, extension) : pageFile) + INDEX_FILE_SUFFIX);
+        try {
+            writeIndex(heading, controllers, controllerCalls, detailsFiles, index);
+        } finally {
+            index.close();
+        }
+
+        Map<String, Object> values = new HashMap<>();
+        values.put(HEAD_TITLE, heading);
+        values.put(INDEX_FILE_KEY, index.getName());
+        try (OutputStream output = files.open(pageFile)) {
+            renderer.render(TEMPLATE_NAME, values, output);
+        }
+    }
+
+    /**
+     * Writes the index.
+     *
+     * @param heading The heading.
+     * @param controllers The qualified names of the controllers.
+     * @param controllerCalls The rest calls of each controller.
+     * @param detailsFiles The names of the files holding each controller's
+     *          details.
+     * @param output The stream to write, which is left open.
+     * @throws IOException If the index cannot be written.
+     */
+    private static void writeIndex(
+            final String heading,
+            final List<String> controllers,
+            final List<List<RestApiDetails>> controllerCalls,
+            final List<String> detailsFiles,
+            final OutputStream output) throws IOException {
+        Map<String, List<Integer>> terms = new TreeMap<>();
+        Map<String, Integer> components = new TreeMap<>();
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(output, JsonEncoding.UTF8)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartObject();
+            generator.writeStringField("title", heading);
+            writeStrings(generator, "controllers", controllers);
+            writeStrings(generator, "files", detailsFiles);
+
+            generator.writeArrayFieldStart("endpoints");
+            int endpoint = 0;
+            for (int i = 0; i < controllerCalls.size(); i++) {
+                for (RestApiDetails restCall : controllerCalls.get(i)) {
+                    generator.writeStartArray();
+                    generator.writeNumber(i);
+                    generator.writeString(restCall.getMethod());
+                    generator.writeString(restCall.getUrl());
+                    generator.writeEndArray();
+                    addTerms(terms, endpoint, restCall);
+                    addComponents(components, endpoint, restCall);
+                    endpoint++;
+                }
+            }
+            generator.writeEndArray();
+
+            if (!components.isEmpty()) {
+                generator.writeObjectFieldStart("components");
+                for (Map.Entry<String, Integer> component : components.entrySet()) {
+                    generator.writeNumberField(component.getKey(), component.getValue());
+                }
+                generator.writeEndObject();
+            }
+
+            writeStrings(generator, "terms", terms.keySet());
+            generator.writeArrayFieldStart("postings");
+            for (List<Integer> postings : terms.values()) {
+                generator.writeStartArray();
+                int previous = 0;
+                for (int posting : postings) {
+                    generator.writeNumber(posting - previous);
+                    previous = posting;
+                }
+                generator.writeEndArray();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+
+    private static void writeStrings(
+            final JsonGenerator generator, final String field, final Iterable<String> values) throws IOException {
+        generator.writeArrayFieldStart(field);
+        for (String value : values) {
+            generator.writeString(value);
+        }
+        generator.writeEndArray();
+    }
+
+    /**
+     * Adds the components a rest call's request body refers to, unless an
+     * earlier endpoint already refers to them.
+     *
+     * @param components The first endpoint to refer to each component.
+     * @param endpoint The rest call's number.
+     * @param restCall The rest call.
+     */
+    private static void addComponents(
+            final Map<String, Integer> components, final int endpoint, final RestApiDetails restCall) {
+        if (restCall.getRequestBody() == null) {
+            return;
+        }
+        for (String component : restCall.getRequestBody().getComponents().keySet()) {
+            if (!components.containsKey(component)) {
+                components.put(component, endpoint);
+            }
+        }
+    }
+
+    /**
+     * Adds the terms of a rest call to the index.
+     *
+     * @param terms The endpoints of each term, in order.
+     * @param endpoint The rest call's number.
+     * @param restCall The rest call.
+     */
+    private static void addTerms(
+            final Map<String, List<Integer>> terms, final int endpoint, final RestApiDetails restCall) {
+        addTerms(terms, endpoint, restCall.getUrl());
+        addTerms(terms, endpoint, restCall.getMethod());
+        addTerms(terms, endpoint, restCall.getDescription());
+        for (RestApiParameter parameter : restCall.getPathVariables()) {
+            addTerms(terms, endpoint, parameter.getName());
+            addTerms(terms, endpoint, parameter.getDescription());
+        }
+        for (RestApiParameter parameter : restCall.getRequestParams()) {
+            addTerms(terms, endpoint, parameter.getName());
+            addTerms(terms, endpoint, parameter.getDescription());
+        }
+        RestApiRequestBody requestBody = restCall.getRequestBody();
+        if (requestBody != null) {
+            addTerms(terms, endpoint, requestBody.getName());
+            addTerms(terms, endpoint, requestBody.getType());
+            addTerms(terms, endpoint, requestBody.getDescription());
+        }
+    }
+
+    /**
+     * Adds the words of some text to the index, in lower case, along with
+     * each part of the words written in camel case.
+     *
+     * @param terms The endpoints of each term, in order.
+     * @param endpoint The number of the rest call the text is from.
+     * @param text The text, which may be HTML, or {@code null}.
+     */
+    private static void addTerms(final Map<String, List<Integer>> terms, final int endpoint, final String text) {
+        if (text == null) {
+            return;
+        }
+        for (String word : WORD_SEPARATOR.split(MARKUP.matcher(text).replaceAll(" "))) {
+            addTerm(terms, endpoint, word);
+            String[] parts = CAMEL_CASE.split(word);
+            if (parts.length > 1) {
+                for (String part : parts) {
+                    addTerm(terms, endpoint, part);
+                }
+            }
+        }
+    }
+
+    private static void addTerm(final Map<String, List<Integer>> terms, final int endpoint, final String word) {
+        if (word.length() < MIN_TERM_LENGTH) {
+            return;
+        }
+        String term = word.toLowerCase(Locale.ROOT);
+        List<Integer> postings = terms.get(term);
+        if (postings == null) {
+            postings = new ArrayList<>();
+            terms.put(term, postings);
+        }
+        if (postings.isEmpty() || postings.get(postings.size() - 1) != endpoint) {
+            postings.add(endpoint);
+        }
+    }
+}
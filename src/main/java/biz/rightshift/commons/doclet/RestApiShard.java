@@ -0,0 +1,53 @@
+package biz.rightshift.commons.doclet;
+
+import java.util.List;
+
+/**
+ * A page of Rest Api Calls, when the output is split over several pages.
+ */
+public class RestApiShard {
+
+    private String name;
+    private String file;
+    private List<RestApiDetails> restCalls;
+
+    /**
+     * Constructor injecting fields.
+     * @param name The shard's name, a controller or a URL prefix.
+     * @param file The name of the page's file.
+     * @param restCalls The rest calls on the page.
+     */
+    public RestApiShard(final String name, final String file, final List<RestApiDetails> restCalls) {
+        this.name = name;
+        this.file = file;
+        this.restCalls = restCalls;
+    }
+
+    /**
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the name of the page's file
+     */
+    public String getFile() {
+        return file;
+    }
+
+    /**
+     * @param file The name of the page's file to set.
+     */
+    public void setFile(final String file) {
+        this.file = file;
+    }
+
+    /**
+     * @return the rest calls
+     */
+    public List<RestApiDetails> getRestCalls() {
+        return restCalls;
+    }
+}
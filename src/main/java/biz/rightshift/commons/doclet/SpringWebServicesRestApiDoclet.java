@@ -1,49 +1,43 @@
 package biz.rightshift.commons.doclet;
 
-import com.sun.javadoc.AnnotationDesc;
-import com.sun.javadoc.AnnotationValue;
 import com.sun.javadoc.ClassDoc;
 import com.sun.javadoc.LanguageVersion;
 import com.sun.javadoc.MethodDoc;
 import com.sun.javadoc.ParamTag;
 import com.sun.javadoc.Parameter;
-import com.sun.javadoc.ProgramElementDoc;
+import com.sun.javadoc.ParameterizedType;
 import com.sun.javadoc.RootDoc;
-import java.io.FileOutputStream;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
+import com.sun.javadoc.SourcePosition;
+import com.sun.javadoc.Tag;
+import com.sun.javadoc.Type;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import org.apache.velocity.Template;
-import org.apache.velocity.VelocityContext;
-import org.apache.velocity.app.Velocity;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Custom REST API Doclet.
  */
 public final class SpringWebServicesRestApiDoclet {
 
-    private static final String DEFAULT_OUTPUT_FILE = "index.html";
-    private static final String DEFAULT_TEMPLATE_NAME = "rest_api_template.vm";
-    private static final String REST_KEY = "restCalls";
     private static final String ANNOTATION_CONTROLLER = "Controller";
     private static final String ANNOTATION_REQUEST_PARAM = "RequestMapping";
     private static final String ANNOTATION_PARAM_PATH_VARIABLE = "PathVariable";
     private static final String ANNOTATION_PARAM_REQUEST_PARAM = "RequestParam";
     private static final String ANNOTATION_PARAM_REQUEST_BODY = "RequestBody";
-    private static final String ENCODING = "UTF-8";
-    private static final String HEAD_TITLE = "headTitle";
-    private static final String DEFAULT_HEADING = "JavaDoc API";
+    private static final String ANNOTATION_RESPONSE_BODY = "ResponseBody";
+    private static final String ANNOTATION_REST_CONTROLLER = "RestController";
+    private static final String VOID = "java.lang.Void";
 
-    private static final Pattern JAVADOC_TAG_PATTERN = Pattern.compile("\\{@\\w+\\b(.*?)\\}");
-
-    private static final String OPTION_PARAM_HEADING = "-heading";
-    private static final String OPTION_PARAM_TYPES = "-types";
-    private static final String OPTION_PARAM_OUTPUT = "-output";
-    private static final String OPTION_PARAM_TEMPLATE = "-template";
+    private static volatile DocletStats stats = DocletStats.DISABLED;
 
     /**
      * Starting point.
@@ -52,56 +46,50 @@ public final class SpringWebServicesRestApiDoclet {
      * @return <code>true</code> if the doclet succeeded.
      */
     public static boolean start(final RootDoc root) {
+        DocletReporter reporter = new RootDocReporter(root);
+        DocletSettings settings = DocletSettings.parse(root.options(), reporter);
+        if (settings == null) {
+            return false;
+        }
+        stats = settings.createStats();
 
-        String headingOption = getOptionValue(root.options(), OPTION_PARAM_HEADING);
-        String heading = headingOption == null ? DEFAULT_HEADING : headingOption;
-
-        String templateOption = getOptionValue(root.options(), OPTION_PARAM_TEMPLATE);
-        String templateName = templateOption == null ? DEFAULT_TEMPLATE_NAME : templateOption;
-
-        String outputFileOption = getOptionValue(root.options(), OPTION_PARAM_OUTPUT);
-        String outputFile = outputFileOption == null ? DEFAULT_OUTPUT_FILE : outputFileOption;
+        Description.reset();
+        Description.setOptions(settings.getDescriptionOptions());
 
-        String optionsTypes = getOptionValue(root.options(), OPTION_PARAM_TYPES);
-        if (optionsTypes != null) {
-            Description.setDescribeTypes(Arrays.asList(optionsTypes.split(",")));
+        EndpointCache cache = null;
+        if (settings.getCacheDirectory() != null) {
+            cache = new EndpointCache(settings.getCacheDirectory(), settings.getExtractionOptions());
         }
 
-        List<RestApiDetails> restCalls = new ArrayList<>();
+        DocletStats.Measurement discovery = stats.start(DocletStats.Phase.DISCOVERY.getLabel());
+        List<ClassDoc> controllers = new ArrayList<>();
+        List<String> controllerNames = new ArrayList<>();
         for (ClassDoc classDoc : root.classes()) {
             if (isController(classDoc)) {
-                restCalls.addAll(getRestCallsFor(classDoc));
+                controllers.add(classDoc);
+                controllerNames.add(classDoc.qualifiedName());
             }
         }
+        stats.recordPhase(DocletStats.Phase.DISCOVERY, discovery);
 
-        Velocity.setProperty("resource.loader", "class");
-        Velocity.setProperty(
-                "class.resource.loader.class",
-                "org.apache.velocity.runtime.resource.loader.ClasspathResourceLoader");
-        Velocity.init();
-
-        VelocityContext context = new VelocityContext();
-        context.put(REST_KEY, restCalls);
-        context.put(HEAD_TITLE, heading);
-        try (Writer output = new OutputStreamWriter(new FileOutputStream(outputFile), ENCODING)) {
-            Template template = Velocity.getTemplate(templateName, ENCODING);
-            template.merge(context, output);
-        } catch (Exception ex) {
-            root.printError("Failed to write HTML: " + ex.getMessage());
-            return false;
+        if (settings.getPipeline() > 0) {
+            return PipelinedOutput.write(
+                    settings, controllerNames, new PipelinedExtraction(root, controllers, cache), stats, reporter);
         }
 
-        return true;
-    }
+        DocletStats.Measurement extraction = stats.start(DocletStats.Phase.EXTRACTION.getLabel());
+        LinkTargets links = getLinkTargets(controllers);
+        List<List<RestApiDetails>> controllerCalls =
+                getRestCallsFor(root, controllers, settings.getThreads(), cache, links);
 
-    private static String getOptionValue(final String[][] options, final String option) {
-        String optionValue = null;
-        for (String[] opt : options) {
-            if (opt[0].equals(option)) {
-                optionValue = opt[1];
-            }
+        List<RestApiDetails> restCalls = new ArrayList<>();
+        for (List<RestApiDetails> calls : controllerCalls) {
+            restCalls.addAll(calls);
         }
-        return optionValue;
+        stats.recordPhase(DocletStats.Phase.EXTRACTION, extraction);
+        stats.recordCounts(controllers.size(), restCalls, Description.getDescribedTypeCount());
+
+        return RestApiOutput.write(settings, controllerNames, controllerCalls, restCalls, stats, reporter);
     }
 
     /**
@@ -112,55 +100,338 @@ public final class SpringWebServicesRestApiDoclet {
      * @return the number of tokens in the option.
      */
     public static int optionLength(final String option) {
-        if (option.equals(OPTION_PARAM_HEADING)
-                || option.equals(OPTION_PARAM_TYPES)
-                || option.equals(OPTION_PARAM_OUTPUT)
-                || option.equals(OPTION_PARAM_TEMPLATE)) {
-            return 2;
+        return DocletSettings.optionLength(option);
+    }
+
+    /**
+     * Process controllers for rest end points, reusing the cached rest calls
+     * of any controller whose sources have not changed.
+     *
+     * @param root The <code>RootDoc</code>.
+     * @param controllers The controllers.
+     * @param threads The number of threads to use.
+     * @param cache The cache, or {@code null} if not caching.
+     * @param links The targets of links in comments.
+     * @return the <code>RestApiDetails</code> of each controller.
+     */
+    private static List<List<RestApiDetails>> getRestCallsFor(
+            final RootDoc root,
+            final List<ClassDoc> controllers,
+            final int threads,
+            final EndpointCache cache,
+            final LinkTargets links) {
+        if (cache == null) {
+            return getRestCallsFor(controllers, threads, links);
+        }
+
+        List<List<RestApiDetails>> restCalls = new ArrayList<>();
+        List<ClassDoc> changed = new ArrayList<>();
+        for (ClassDoc controller : controllers) {
+            List<RestApiDetails> cached = null;
+            try {
+                cached = cache.load(controller.qualifiedName(), links);
+            } catch (IOException ex) {
+                root.printWarning("Failed to read cached rest calls for "
+                        + controller.qualifiedName() + ": " + ex.getMessage());
+            }
+            if (cached == null) {
+                changed.add(controller);
+            } else {
+                stats.recordCacheHit();
+            }
+            restCalls.add(cached);
+        }
+
+        Iterator<ClassDoc> changedControllers = changed.iterator();
+        Iterator<List<RestApiDetails>> changedCalls = getRestCallsFor(changed, threads, links).iterator();
+        for (int i = 0; i < restCalls.size(); i++) {
+            if (restCalls.get(i) == null) {
+                ClassDoc controller = changedControllers.next();
+                List<RestApiDetails> controllerCalls = changedCalls.next();
+                try {
+                    cache.store(controller.qualifiedName(), getSourceFiles(root, controller), links, controllerCalls);
+                } catch (IOException ex) {
+                    root.printWarning("Failed to cache rest calls for "
+                            + controller.qualifiedName() + ": " + ex.getMessage());
+                }
+                restCalls.set(i, controllerCalls);
+            }
+        }
+        return restCalls;
+    }
+
+    /**
+     * Process a controller for rest end points, reusing its cached rest
+     * calls if its sources have not changed.
+     *
+     * @param root The <code>RootDoc</code>.
+     * @param controller The controller.
+     * @param cache The cache, or {@code null} if not caching.
+     * @param links The targets of links in comments.
+     * @return the <code>RestApiDetails</code> of the controller.
+     */
+    private static List<RestApiDetails> getRestCallsFor(
+            final RootDoc root,
+            final ClassDoc controller,
+            final EndpointCache cache,
+            final LinkTargets links) {
+        if (cache == null) {
+            return extract(controller, links);
+        }
+        try {
+            List<RestApiDetails> cached = cache.load(controller.qualifiedName(), links);
+            if (cached != null) {
+                stats.recordCacheHit();
+                return cached;
+            }
+        } catch (IOException ex) {
+            root.printWarning("Failed to read cached rest calls for "
+                    + controller.qualifiedName() + ": " + ex.getMessage());
+        }
+        List<RestApiDetails> controllerCalls = extract(controller, links);
+        try {
+            cache.store(controller.qualifiedName(), getSourceFiles(root, controller), links, controllerCalls);
+        } catch (IOException ex) {
+            root.printWarning("Failed to cache rest calls for "
+                    + controller.qualifiedName() + ": " + ex.getMessage());
+        }
+        return controllerCalls;
+    }
+
+    /**
+     * Process controllers for rest end points.
+     *
+     * When more than one thread is requested the controllers are resolved
+     * one at a time, as the javadoc model is not thread safe while it
+     * resolves types, and are then processed on a fork-join pool. The end
+     * points are still returned in the same order as they would be when
+     * processed one at a time.
+     *
+     * @param controllers The controllers.
+     * @param threads The number of threads to use.
+     * @param links The targets of links in comments.
+     * @return the <code>RestApiDetails</code> of each controller.
+     */
+    private static List<List<RestApiDetails>> getRestCallsFor(
+            final List<ClassDoc> controllers, final int threads, final LinkTargets links) {
+        List<List<RestApiDetails>> restCalls = new ArrayList<>();
+        if (threads <= 1 || controllers.size() <= 1) {
+            for (ClassDoc controller : controllers) {
+                restCalls.add(extract(controller, links));
+            }
+            return restCalls;
+        }
+
+        for (ClassDoc controller : controllers) {
+            resolve(controller);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<ForkJoinTask<List<RestApiDetails>>> scans = new ArrayList<>();
+            for (ClassDoc controller : controllers) {
+                scans.add(pool.submit(new ControllerScan(controller, links)));
+            }
+            for (ForkJoinTask<List<RestApiDetails>> scan : scans) {
+                restCalls.add(scan.join());
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return restCalls;
+    }
+
+    /**
+     * Collects the anchors of every endpoint, and of the request body types
+     * they take, for links in comments to point to.
+     *
+     * @param controllers The controllers.
+     * @return The link targets.
+     */
+    static LinkTargets getLinkTargets(final List<ClassDoc> controllers) {
+        LinkTargets links = new LinkTargets();
+        for (ClassDoc controller : controllers) {
+            Map<String, Integer> occurrences = new HashMap<>();
+            for (MethodDoc method : controller.methods()) {
+                if (isEndpoint(JavadocAnnotationIndex.of(method.annotations()))) {
+                    String anchor = getAnchor(controller, method, occurrences);
+                    links.addEndpoint(controller.qualifiedName(), method.name(), anchor);
+                    for (Parameter parameter : method.parameters()) {
+                        if (JavadocAnnotationIndex.of(parameter.annotations()).isAnnotatedWith(ANNOTATION_PARAM_REQUEST_BODY)) {
+                            links.addType(parameter.type().qualifiedTypeName(), anchor,
+                                    Description.isComponent(parameter.type()));
+                        }
+                    }
+                }
+            }
+        }
+        return links;
+    }
+
+    /**
+     * @param controller The controller.
+     * @param method The endpoint.
+     * @param occurrences How many endpoints of each name have been seen so
+     *          far in the controller, updated with this one.
+     * @return The endpoint's anchor.
+     */
+    private static String getAnchor(
+            final ClassDoc controller, final MethodDoc method, final Map<String, Integer> occurrences) {
+        Integer seen = occurrences.get(method.name());
+        int occurrence = seen == null ? 1 : seen + 1;
+        occurrences.put(method.name(), occurrence);
+        return LinkTargets.getAnchor(controller.qualifiedName(), method.name(), occurrence);
+    }
+
+    /**
+     * Gets the source files that the rest calls of a controller were
+     * extracted from. That is the controller itself along with every type
+     * its request and response bodies reach.
+     *
+     * @param root The <code>RootDoc</code>.
+     * @param controller The controller, which has already been processed.
+     * @return The source files.
+     */
+    private static Set<File> getSourceFiles(final RootDoc root, final ClassDoc controller) {
+        Set<File> sources = new LinkedHashSet<>();
+        addSourceFile(controller, sources);
+        AnnotationIndex classAnnotations = JavadocAnnotationIndex.of(controller.annotations());
+        for (MethodDoc method : controller.methods()) {
+            AnnotationIndex methodAnnotations = JavadocAnnotationIndex.of(method.annotations());
+            if (isEndpoint(methodAnnotations)) {
+                for (Parameter parameter : method.parameters()) {
+                    if (JavadocAnnotationIndex.of(parameter.annotations()).isAnnotatedWith(ANNOTATION_PARAM_REQUEST_BODY)) {
+                        for (String type : Description.getReachableTypes(parameter.type())) {
+                            addSourceFile(root.classNamed(type), sources);
+                        }
+                    }
+                }
+                Type responseType = getResponseType(method.returnType());
+                if (responseType != null && isResponseBody(classAnnotations, methodAnnotations)) {
+                    for (String type : Description.getReachableTypes(responseType)) {
+                        addSourceFile(root.classNamed(type), sources);
+                    }
+                }
+            }
+        }
+        return sources;
+    }
+
+    /**
+     * Adds the source file of a class, if it has one. Classes read from
+     * the class path have no source file to fingerprint.
+     *
+     * @param classDoc The class.
+     * @param sources The source files to add to.
+     */
+    private static void addSourceFile(final ClassDoc classDoc, final Set<File> sources) {
+        SourcePosition position = classDoc == null ? null : classDoc.position();
+        if (position != null && position.file() != null && position.file().isFile()) {
+            sources.add(position.file());
+        }
+    }
+
+    /**
+     * Walks everything that processing a controller reads from the javadoc
+     * model, so that javadoc resolves it up front.
+     *
+     * @param classDoc The controller.
+     */
+    static void resolve(final ClassDoc classDoc) {
+        AnnotationIndex classAnnotations = JavadocAnnotationIndex.of(classDoc.annotations());
+        for (MethodDoc method : classDoc.methods()) {
+            AnnotationIndex methodAnnotations = JavadocAnnotationIndex.of(method.annotations());
+            if (isResponseBody(classAnnotations, methodAnnotations)) {
+                Type responseType = getResponseType(method.returnType());
+                if (responseType != null) {
+                    responseType.toString();
+                    Description.resolve(responseType);
+                }
+            }
+            method.commentText();
+            getPerformanceTags(method);
+            for (ParamTag tag : method.paramTags()) {
+                tag.parameterName();
+                tag.parameterComment();
+            }
+            for (Parameter parameter : method.parameters()) {
+                JavadocAnnotationIndex.of(parameter.annotations());
+                parameter.name();
+                parameter.typeName();
+                parameter.type().toString();
+                Description.resolve(parameter.type());
+            }
         }
-        return 0;
+    }
+
+    /**
+     * Process class for rest end points, recording how long it took.
+     *
+     * @param classDoc The <code>ClassDoc</code>.
+     * @param links The targets of links in comments.
+     * @return the list of <code>RestApiDetails</code>
+     */
+    private static List<RestApiDetails> extract(final ClassDoc classDoc, final LinkTargets links) {
+        DocletStats.Measurement measurement = stats.start(classDoc.qualifiedName());
+        List<RestApiDetails> restCalls = getRestCallsFor(classDoc, links);
+        stats.recordController(classDoc.qualifiedName(), measurement);
+        return restCalls;
     }
 
     /**
      * Process class for rest end points.
      * @param classDoc The <code>ClassDoc</code>.
+     * @param links The targets of links in comments.
      * @return the list of <code>RestApiDetails</code>
      */
-    private static List<RestApiDetails> getRestCallsFor(final ClassDoc classDoc) {
+    static List<RestApiDetails> getRestCallsFor(final ClassDoc classDoc, final LinkTargets links) {
         List<RestApiDetails> restCalls = new ArrayList<>();
+        AnnotationIndex classAnnotations = JavadocAnnotationIndex.of(classDoc.annotations());
+        String context = classDoc.qualifiedName();
+        Map<String, Integer> occurrences = new HashMap<>();
 
         for (MethodDoc method : classDoc.methods()) {
-            if (isEndpoint(method)) {
-                List<RestApiParameter> pathVariables =
-                    getVariables(method, ANNOTATION_PARAM_PATH_VARIABLE);
-
-                List<RestApiParameter> requestParams =
-                    getVariables(method, ANNOTATION_PARAM_REQUEST_PARAM);
+            AnnotationIndex methodAnnotations = JavadocAnnotationIndex.of(method.annotations());
+            if (isEndpoint(methodAnnotations)) {
+                Parameter[] parameters = method.parameters();
+                AnnotationIndex[] parameterAnnotations = new AnnotationIndex[parameters.length];
+                for (int i = 0; i < parameters.length; i++) {
+                    parameterAnnotations[i] = JavadocAnnotationIndex.of(parameters[i].annotations());
+                }
 
-                RestApiRequestBody body = getRequestBody(method);
+                List<RestApiParameter> pathVariables = getVariables(
+                        method, parameters, parameterAnnotations, ANNOTATION_PARAM_PATH_VARIABLE, links, context);
 
-                String url = getContextFor(method);
+                List<RestApiParameter> requestParams = getVariables(
+                        method, parameters, parameterAnnotations, ANNOTATION_PARAM_REQUEST_PARAM, links, context);
 
-                AnnotationDesc requestParam = getAnnotation(method, ANNOTATION_REQUEST_PARAM);
+                RestApiRequestBody body = getRequestBody(method, parameters, parameterAnnotations, links, context);
 
-                String httpVerb = getAnnotationValue(requestParam, "method");
-                int lastIndex = httpVerb.lastIndexOf('.');
-                if (lastIndex >= 0 && lastIndex < httpVerb.length()) {
-                    httpVerb = httpVerb.substring(lastIndex + 1);
-                }
+                String url = getContextFor(classAnnotations, methodAnnotations);
 
-                String consumes = getAnnotationValue(requestParam, "consumes");
-                String produces = getAnnotationValue(requestParam, "produces");
+                String httpVerb = methodAnnotations.getValue(ANNOTATION_REQUEST_PARAM, "method");
+                String consumes = methodAnnotations.getValue(ANNOTATION_REQUEST_PARAM, "consumes");
+                String produces = methodAnnotations.getValue(ANNOTATION_REQUEST_PARAM, "produces");
 
                 RestApiDetails endpoint = new RestApiDetails(
                         url,
                         httpVerb,
-                        consumes,
                         produces,
+                        consumes,
                         pathVariables,
                         requestParams,
                         body,
-                        sanitizeComment(method.commentText()));
+                        sanitizeComment(method.commentText(), links, context),
+                        getAnchor(classDoc, method, occurrences));
+                if (body != null) {
+                    endpoint.setRequestSize(PayloadSizes.estimate(
+                            body.getStructure(), body.getComponents(), Description.getOptions()));
+                }
+                if (isResponseBody(classAnnotations, methodAnnotations)) {
+                    setResponseBody(endpoint, method);
+                }
+                endpoint.setPerformance(PerformanceContracts.of(classAnnotations, methodAnnotations,
+                        method.returnType().simpleTypeName(), getPerformanceTags(method)));
 
                 restCalls.add(endpoint);
             }
@@ -172,21 +443,30 @@ public final class SpringWebServicesRestApiDoclet {
      * Gets the variables for an endpoint.
      *
      * @param method The method.
+     * @param parameters The method's parameters.
+     * @param parameterAnnotations The annotations of each parameter.
      * @param annotationType The annotation type denoting the type of variable.
+     * @param links The targets of links in comments.
+     * @param context The qualified name of the controller.
      * @return The path variables.
      */
     private static List<RestApiParameter> getVariables(
-            final MethodDoc method, final String annotationType) {
+            final MethodDoc method,
+            final Parameter[] parameters,
+            final AnnotationIndex[] parameterAnnotations,
+            final String annotationType,
+            final LinkTargets links,
+            final String context) {
         List<RestApiParameter> variables = new ArrayList<>();
-        for (Parameter parameter : method.parameters()) {
-            AnnotationDesc annotation = getAnnotation(parameter, annotationType);
-            if (annotation != null) {
-                String annotationValue = getAnnotationValue(annotation, "value");
+        for (int i = 0; i < parameters.length; i++) {
+            if (parameterAnnotations[i].isAnnotatedWith(annotationType)) {
+                Parameter parameter = parameters[i];
+                String annotationValue = parameterAnnotations[i].getFirstValue(annotationType, "value");
                 String parameterName = annotationValue.isEmpty() ? parameter.name() : annotationValue;
                 RestApiParameter apiParameter = new RestApiParameter(
                         parameterName,
                         parameter.typeName(),
-                        getParamTag(method, parameter.name()));
+                        getParamTag(method, parameter.name(), links, context));
                 variables.add(apiParameter);
             }
         }
@@ -198,14 +478,17 @@ public final class SpringWebServicesRestApiDoclet {
      *
      * @param method The method.
      * @param name The parameter name.
+     * @param links The targets of links in comments.
+     * @param context The qualified name of the controller.
      * @return The parameter description, or {@code null} if
      *          there is no tag.
      */
-    private static String getParamTag(final MethodDoc method, final String name) {
+    private static String getParamTag(
+            final MethodDoc method, final String name, final LinkTargets links, final String context) {
         String description = "";
         for (ParamTag tag : method.paramTags()) {
             if (name.equals(tag.parameterName())) {
-                description = sanitizeComment(tag.parameterComment());
+                description = sanitizeComment(tag.parameterComment(), links, context);
                 break;
             }
         }
@@ -213,46 +496,37 @@ public final class SpringWebServicesRestApiDoclet {
     }
 
     /**
-     * Sanitizes a javadoc comment by removing all javadoc markup.
+     * Sanitizes a javadoc comment by rendering its inline tags as HTML.
      *
      * @param comment The javadoc comment.
+     * @param links The targets of links in comments.
+     * @param context The qualified name of the controller.
      * @return The sanitized string.
      */
-    private static String sanitizeComment(final String comment) {
-        Matcher matcher = JAVADOC_TAG_PATTERN.matcher(comment);
-        String sanitized = comment;
-        while (matcher.find() && matcher.groupCount() > 0) {
-            sanitized = sanitized.replace(matcher.group(0), matcher.group(1).trim());
-        }
-        return sanitized;
+    static String sanitizeComment(final String comment, final LinkTargets links, final String context) {
+        return CommentRenderer.render(comment, links, context);
     }
 
     /**
      * Gets the context for an endpoint.
      *
      * This defined by the @RequestMapping value on the class
-     * and/or method.
+     * and/or method. Where several paths are mapped, the first is used.
      *
-     * @param method The endpoint.
+     * @param classAnnotations The annotations on the controller.
+     * @param methodAnnotations The annotations on the endpoint.
      * @return The context.
      */
-    private static String getContextFor(final MethodDoc method) {
-        String classContext = "";
-        String methodContext = "";
-
-        AnnotationDesc classRequestMapping = getAnnotation(
-                method.containingClass(), ANNOTATION_REQUEST_PARAM);
-        if (classRequestMapping == null) {
-            classRequestMapping = getAnnotation(method.containingClass(), ANNOTATION_CONTROLLER);
-        }
-        if (classRequestMapping != null) {
-            classContext = getAnnotationValue(classRequestMapping, "value");
+    private static String getContextFor(
+            final AnnotationIndex classAnnotations, final AnnotationIndex methodAnnotations) {
+        String classContext;
+        if (classAnnotations.isAnnotatedWith(ANNOTATION_REQUEST_PARAM)) {
+            classContext = classAnnotations.getFirstValue(ANNOTATION_REQUEST_PARAM, "value");
+        } else {
+            classContext = classAnnotations.getFirstValue(ANNOTATION_CONTROLLER, "value");
         }
 
-        AnnotationDesc methodRequestMapping = getAnnotation(method, ANNOTATION_REQUEST_PARAM);
-        if (methodRequestMapping != null) {
-            methodContext = getAnnotationValue(methodRequestMapping, "value");
-        }
+        String methodContext = methodAnnotations.getFirstValue(ANNOTATION_REQUEST_PARAM, "value");
 
         return classContext + methodContext;
     }
@@ -263,128 +537,130 @@ public final class SpringWebServicesRestApiDoclet {
      * @param classDoc The class.
      * @return {@code true} if the class is a Controller.
      */
-    private static boolean isController(final ClassDoc classDoc) {
-        return isAnnotatedWith(classDoc, ANNOTATION_CONTROLLER);
+    static boolean isController(final ClassDoc classDoc) {
+        return JavadocAnnotationIndex.of(classDoc.annotations()).isAnnotatedWith(ANNOTATION_CONTROLLER);
     }
 
     /**
      * Determines whether or not a method is an endpoint.
      * An endpoint is annotated with {@code {@literal @}RequestMapping}.
      *
-     * @param methodDoc The method
-     * @return {@code true} if the class is an endpoint.
-     */
-    private static boolean isEndpoint(final MethodDoc methodDoc) {
-        return isAnnotatedWith(methodDoc, ANNOTATION_REQUEST_PARAM);
-    }
-
-    /**
-     * Generic function to look through the annotations for a
-     * {@code ProgramElementDoc} to indicate if a particular
-     * annotation exists.
-     *
-     * @param programElement The element to inspect.
-     * @param annotationName The annotation name.
-     * @return {@code true} if the annotation exists.
+     * @param methodAnnotations The annotations on the method.
+     * @return {@code true} if the method is an endpoint.
      */
-    private static boolean isAnnotatedWith(
-            final ProgramElementDoc programElement, final String annotationName) {
-        return getAnnotation(programElement, annotationName) != null;
+    private static boolean isEndpoint(final AnnotationIndex methodAnnotations) {
+        return methodAnnotations.isAnnotatedWith(ANNOTATION_REQUEST_PARAM);
     }
 
     /**
-     * Generic function to look through the annotations for a
-     * {@code Parameter} to indicate if a particular
-     * annotation exists.
+     * Determines whether an endpoint returns a response body, rather than a
+     * view, as it does when it or its controller is annotated with
+     * {@code {@literal @}ResponseBody}, or its controller is a
+     * {@code {@literal @}RestController}.
      *
-     * @param parameter The element to inspect.
-     * @param annotationName The annotation name.
-     * @return {@code true} if the annotation exists.
+     * @param classAnnotations The annotations on the controller.
+     * @param methodAnnotations The annotations on the endpoint.
+     * @return {@code true} if the endpoint returns a response body.
      */
-    private static boolean isAnnotatedWith(
-            final Parameter parameter, final String annotationName) {
-        return getAnnotation(parameter, annotationName) != null;
+    private static boolean isResponseBody(
+            final AnnotationIndex classAnnotations, final AnnotationIndex methodAnnotations) {
+        return methodAnnotations.isAnnotatedWith(ANNOTATION_RESPONSE_BODY)
+                || classAnnotations.isAnnotatedWith(ANNOTATION_RESPONSE_BODY)
+                || classAnnotations.isAnnotatedWith(ANNOTATION_REST_CONTROLLER);
     }
 
     /**
-     * Generic function to look through the annotations for a
-     * {@code ProgramElementDoc} for a particular annotation.
+     * Gets the type of an endpoint's response body, unwrapping types such
+     * as {@code ResponseEntity<Foo>}.
      *
-     * @param programElement The element to inspect.
-     * @param annotationName The annotation name.
-     * @return {@code AnnotationDesc} if the annotation exists,
-     *          or {@code null} if it doesn't.
+     * @param returnType The endpoint's return type.
+     * @return The response body type, or {@code null} if there is none, or
+     *          it isn't known.
      */
-    private static AnnotationDesc getAnnotation(
-            final ProgramElementDoc programElement, final String annotationName) {
-        for (AnnotationDesc annotation : programElement.annotations()) {
-            if (annotation.annotationType().name().equals(annotationName)) {
-                return annotation;
-            }
+    private static Type getResponseType(final Type returnType) {
+        if (returnType.isPrimitive() && returnType.dimension().isEmpty() && "void".equals(returnType.typeName())) {
+            return null;
+        }
+        if (returnType.dimension().isEmpty() && PayloadSizes.isResponseWrapper(returnType.simpleTypeName())) {
+            ParameterizedType parameterized = returnType.asParameterizedType();
+            Type[] arguments = parameterized == null ? new Type[0] : parameterized.typeArguments();
+            return arguments.length == 0 ? null : getResponseType(arguments[0]);
         }
-        return null;
+        return VOID.equals(returnType.qualifiedTypeName()) ? null : returnType;
     }
 
     /**
-     * Generic function to look through the annotations for a
-     * {@code Parameter} for a particular annotation.
+     * Describes an endpoint's response body, if it has one, to estimate its
+     * size.
      *
-     * @param parameter The element to inspect.
-     * @param annotationName The annotation name.
-     * @return {@code AnnotationDesc} if the annotation exists,
-     *          or {@code null} if it doesn't.
+     * @param endpoint The endpoint's rest call.
+     * @param method The endpoint.
      */
-    private static AnnotationDesc getAnnotation(
-            final Parameter parameter, final String annotationName) {
-        for (AnnotationDesc annotation : parameter.annotations()) {
-            if (annotation.annotationType().name().equals(annotationName)) {
-                return annotation;
-            }
+    private static void setResponseBody(final RestApiDetails endpoint, final MethodDoc method) {
+        Type type = getResponseType(method.returnType());
+        if (type == null) {
+            return;
         }
-        return null;
+        DocletStats.Measurement measurement = stats.start(type.qualifiedTypeName());
+        String typeDescription = Description.describeType(type);
+        stats.recordTypeDescription(type.qualifiedTypeName(),
+                typeDescription == null ? 0 : typeDescription.length(), measurement);
+        endpoint.setResponseType(type.toString());
+        endpoint.setResponseSize(PayloadSizes.estimate(
+                typeDescription, Description.getComponents(type), Description.getOptions()));
     }
 
     /**
-     * Gets the String value for a annotation parameter.
-     *
-     * @param annotation The annotation.
-     * @param param The parameter name.
-     * @return The associated value, or an empty string if not found.
+     * @param method An endpoint.
+     * @return The text of the endpoint's performance block tags, such as
+     *          {@code @sla}, by tag name, the first of each.
      */
-    private static String getAnnotationValue(
-            final AnnotationDesc annotation, final String param) {
-        for (AnnotationDesc.ElementValuePair pair : annotation.elementValues()) {
-            if (param.equals(pair.element().name())) {
-                AnnotationValue value = pair.value();
-                if (value != null) {
-                    return pair.value().toString().replaceAll("\"", "");
-                }
+    private static Map<String, String> getPerformanceTags(final MethodDoc method) {
+        Map<String, String> tags = new HashMap<>();
+        for (String name : PerformanceContracts.TAGS) {
+            Tag[] found = method.tags(name);
+            if (found.length > 0) {
+                tags.put(name, found[0].text());
             }
         }
-        return "";
+        return tags;
     }
 
     /**
      * Gets the request body description, if available, for a method.
      *
      * @param method The method.
+     * @param parameters The method's parameters.
+     * @param parameterAnnotations The annotations of each parameter.
+     * @param links The targets of links in comments.
+     * @param context The qualified name of the controller.
      * @return The method body description, or {@code null} if this
      *          endpoint does not require a body.
      */
-    private static RestApiRequestBody getRequestBody(final MethodDoc method) {
+    private static RestApiRequestBody getRequestBody(
+            final MethodDoc method,
+            final Parameter[] parameters,
+            final AnnotationIndex[] parameterAnnotations,
+            final LinkTargets links,
+            final String context) {
         RestApiRequestBody bodyDescription = null;
 
-        for (Parameter parameter : method.parameters()) {
-            if (isAnnotatedWith(parameter, ANNOTATION_PARAM_REQUEST_BODY)) {
+        for (int i = 0; i < parameters.length; i++) {
+            Parameter parameter = parameters[i];
+            if (parameterAnnotations[i].isAnnotatedWith(ANNOTATION_PARAM_REQUEST_BODY)) {
                 /* this parameter is a @RequestBody */
+                DocletStats.Measurement measurement = stats.start(parameter.type().qualifiedTypeName());
                 String typeDescription = Description.describeType(
                         parameter.type()
                 );
+                stats.recordTypeDescription(parameter.type().qualifiedTypeName(),
+                        typeDescription == null ? 0 : typeDescription.length(), measurement);
                 bodyDescription = new RestApiRequestBody(
                         parameter.name(),
                         parameter.type().toString(),
-                        getParamTag(method, parameter.name()),
+                        getParamTag(method, parameter.name(), links, context),
                         typeDescription);
+                bodyDescription.setComponents(Description.getComponents(parameter.type()));
             }
         }
         return bodyDescription;
@@ -403,4 +679,95 @@ public final class SpringWebServicesRestApiDoclet {
      */
     private SpringWebServicesRestApiDoclet() {
     }
+
+    /**
+     * Processes a single controller on a fork-join pool.
+     */
+    private static final class ControllerScan extends RecursiveTask<List<RestApiDetails>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient ClassDoc controller;
+        private final transient LinkTargets links;
+
+        /**
+         * @param controller The controller to process.
+         * @param links The targets of links in comments.
+         */
+        ControllerScan(final ClassDoc controller, final LinkTargets links) {
+            this.controller = controller;
+            this.links = links;
+        }
+
+        @Override
+        protected List<RestApiDetails> compute() {
+            return extract(controller, links);
+        }
+    }
+
+    /**
+     * Processes controllers one at a time, as they are asked for, while
+     * those before them are written.
+     */
+    private static final class PipelinedExtraction implements PipelinedOutput.Extraction {
+
+        private final RootDoc root;
+        private final List<ClassDoc> controllers;
+        private final EndpointCache cache;
+        private LinkTargets links;
+
+        /**
+         * @param root The <code>RootDoc</code>.
+         * @param controllers The controllers.
+         * @param cache The cache, or {@code null} if not caching.
+         */
+        PipelinedExtraction(final RootDoc root, final List<ClassDoc> controllers, final EndpointCache cache) {
+            this.root = root;
+            this.controllers = controllers;
+            this.cache = cache;
+        }
+
+        @Override
+        public List<RestApiDetails> extract(final int controller) {
+            if (links == null) {
+                links = getLinkTargets(controllers);
+            }
+            return getRestCallsFor(root, controllers.get(controller), cache, links);
+        }
+
+        @Override
+        public int getDescribedTypeCount() {
+            return Description.getDescribedTypeCount();
+        }
+    }
+
+    /**
+     * Reports messages through the <code>RootDoc</code>.
+     */
+    private static final class RootDocReporter implements DocletReporter {
+
+        private final RootDoc root;
+
+        /**
+         * @param root The <code>RootDoc</code>.
+         */
+        RootDocReporter(final RootDoc root) {
+            this.root = root;
+        }
+
+        @Override
+        public void printError(final String message) {
+            root.printError(message);
+        }
+
+        @Override
+        public void printWarning(final String message) {
+            root.printWarning(message);
+        }
+
+        @Override
+        public void printNotice(final String message) {
+            root.printNotice(message);
+        }
+    }
 }
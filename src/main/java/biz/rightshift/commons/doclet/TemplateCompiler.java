@@ -0,0 +1,1108 @@
+package biz.rightshift.commons.doclet;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.reflect.Array;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import org.apache.velocity.Template;
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.context.InternalContextAdapter;
+import org.apache.velocity.context.InternalContextAdapterImpl;
+import org.apache.velocity.exception.VelocityException;
+import org.apache.velocity.runtime.parser.node.ASTAndNode;
+import org.apache.velocity.runtime.parser.node.ASTComment;
+import org.apache.velocity.runtime.parser.node.ASTDirective;
+import org.apache.velocity.runtime.parser.node.ASTEQNode;
+import org.apache.velocity.runtime.parser.node.ASTElseIfStatement;
+import org.apache.velocity.runtime.parser.node.ASTElseStatement;
+import org.apache.velocity.runtime.parser.node.ASTEscape;
+import org.apache.velocity.runtime.parser.node.ASTEscapedDirective;
+import org.apache.velocity.runtime.parser.node.ASTExpression;
+import org.apache.velocity.runtime.parser.node.ASTFalse;
+import org.apache.velocity.runtime.parser.node.ASTGENode;
+import org.apache.velocity.runtime.parser.node.ASTGTNode;
+import org.apache.velocity.runtime.parser.node.ASTIdentifier;
+import org.apache.velocity.runtime.parser.node.ASTIfStatement;
+import org.apache.velocity.runtime.parser.node.ASTIntegerLiteral;
+import org.apache.velocity.runtime.parser.node.ASTLENode;
+import org.apache.velocity.runtime.parser.node.ASTLTNode;
+import org.apache.velocity.runtime.parser.node.ASTMethod;
+import org.apache.velocity.runtime.parser.node.ASTNENode;
+import org.apache.velocity.runtime.parser.node.ASTNotNode;
+import org.apache.velocity.runtime.parser.node.ASTOrNode;
+import org.apache.velocity.runtime.parser.node.ASTReference;
+import org.apache.velocity.runtime.parser.node.ASTSetDirective;
+import org.apache.velocity.runtime.parser.node.ASTStringLiteral;
+import org.apache.velocity.runtime.parser.node.ASTText;
+import org.apache.velocity.runtime.parser.node.ASTTextblock;
+import org.apache.velocity.runtime.parser.node.ASTTrue;
+import org.apache.velocity.runtime.parser.node.Node;
+
+/**
+ * Compiles Velocity templates into Java classes as a build step, so that
+ * they render without being parsed, and without each reference being
+ * looked up by reflection as Velocity merges them.
+ *
+ * Takes the directory to write the classes to after {@code -d}, the
+ * directory to write their sources to after {@code -s}, optionally the
+ * Java version to compile them for after {@code -source} and their
+ * package after {@code -package}, then the names of the templates on the
+ * class path, as {@code -template} takes them. Each template is parsed by
+ * Velocity and its tree translated into Java, which calls the getters of
+ * {@link RestApiDetails} and the other values the doclet gives templates
+ * directly, as their types are known. Text is written as Velocity would
+ * write it, and references as Velocity renders them, including the text of
+ * a reference that is null. A template that uses anything else, such as
+ * macros, other directives, arithmetic or methods of values the doclet
+ * doesn't give,
+ * is left to Velocity with a warning. The classes are listed in
+ * {@code META-INF/services}, for {@link TemplateRenderer} to find.
+ */
+public final class TemplateCompiler {
+
+    /** The package of compiled templates, unless another is given. */
+    static final String DEFAULT_PACKAGE = "biz.rightshift.commons.doclet.templates";
+
+    private static final String SERVICES = "META-INF/services/" + CompiledTemplate.class.getName();
+    private static final String ENCODING = "UTF-8";
+    private static final String FOREACH = "foreach";
+    private static final int MAX_CONSTANT_LENGTH = 8192;
+
+    /** The values Velocity gives templates itself, in loops and scopes. */
+    private static final Set<String> VELOCITY_VALUES = new HashSet<>(Arrays.asList(
+            "velocityCount", "velocityHasNext", "foreach", "template", "macro", "define", "evaluate"));
+
+    private TemplateCompiler() {
+        // Prevent Instantiation.
+    }
+
+    /**
+     * Starting point.
+     *
+     * @param args The options, then the templates.
+     */
+    public static void main(final String[] args) {
+        System.exit(compile(args, new ConsoleReporter()) ? 0 : 1);
+    }
+
+    /**
+     * Compiles templates.
+     *
+     * @param args The options, then the templates.
+     * @param reporter Where to report failures, and templates left to
+     *          Velocity.
+     * @return {@code true} if every template that could be compiled was.
+     */
+    static boolean compile(final String[] args, final DocletReporter reporter) {
+        File classes = null;
+        File sources = null;
+        String source = null;
+        String packageName = DEFAULT_PACKAGE;
+        List<String> templates = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("-")) {
+                templates.add(args[i]);
+            } else if (i + 1 < args.length && "-d".equals(args[i])) {
+                classes = new File(args[++i]);
+            } else if (i + 1 < args.length && "-s".equals(args[i])) {
+                sources = new File(args[++i]);
+            } else if (i + 1 < args.length && "-source".equals(args[i])) {
+                source = args[++i];
+            } else if (i + 1 < args.length && "-package".equals(args[i])) {
+                packageName = args[++i];
+            } else {
+                reporter.printError("Invalid option: " + args[i]);
+                return false;
+            }
+        }
+        if (classes == null || sources == null || templates.isEmpty()) {
+            reporter.printError("Usage: TemplateCompiler -d <classes> -s <sources> [-source <version>]"
+                    + " [-package <package>] <template>...");
+            return false;
+        }
+
+        File packageDirectory = new File(sources, packageName.replace('.', File.separatorChar));
+        if (!packageDirectory.isDirectory() && !packageDirectory.mkdirs()) {
+            reporter.printError("Failed to create " + packageDirectory);
+            return false;
+        }
+        VelocityEngine engine = TemplateRenderer.createEngine();
+        engine.init();
+        List<File> sourceFiles = new ArrayList<>();
+        List<String> classNames = new ArrayList<>();
+        for (String templateName : templates) {
+            String digest = TemplateRenderer.getDigest(templateName);
+            if (digest == null) {
+                reporter.printError("Template not found: " + templateName);
+                return false;
+            }
+            String className = getClassName(templateName);
+            String java;
+            try {
+                Template template = engine.getTemplate(templateName, ENCODING);
+                java = new Generator(packageName, className, templateName, digest).generate((Node) template.getData());
+            } catch (UnsupportedTemplateException ex) {
+                reporter.printWarning("Leaving " + templateName + " to Velocity, as " + ex.getMessage());
+                continue;
+            } catch (VelocityException ex) {
+                reporter.printError("Failed to parse " + templateName + ": " + ex.getMessage());
+                return false;
+            }
+            File sourceFile = new File(packageDirectory, className + ".java");
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(sourceFile), ENCODING)) {
+                writer.write(java);
+            } catch (IOException ex) {
+                reporter.printError("Failed to write " + sourceFile + ": " + ex.getMessage());
+                return false;
+            }
+            sourceFiles.add(sourceFile);
+            classNames.add(packageName + "." + className);
+        }
+        if (sourceFiles.isEmpty()) {
+            return true;
+        }
+
+        try {
+            if (!compileSources(classes, source, sourceFiles)) {
+                reporter.printError("Failed to compile templates");
+                return false;
+            }
+            writeServices(classes, classNames);
+        } catch (IOException ex) {
+            reporter.printError("Failed to compile templates: " + ex.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param templateName The name of a template on the class path.
+     * @return The name of its compiled class: the name without its
+     *          extension, in camel case.
+     */
+    static String getClassName(final String templateName) {
+        int extension = templateName.lastIndexOf('.');
+        String name = extension > templateName.lastIndexOf('/') ? templateName.substring(0, extension) : templateName;
+        StringBuilder className = new StringBuilder();
+        for (String part : name.split("[^A-Za-z0-9]+")) {
+            if (!part.isEmpty()) {
+                className.append(Character.toUpperCase(part.charAt(0))).append(part.substring(1));
+            }
+        }
+        if (className.length() == 0 || !Character.isJavaIdentifierStart(className.charAt(0))) {
+            className.insert(0, "Template");
+        }
+        return className.toString();
+    }
+
+    /**
+     * Compiles the sources of the templates against the class path the
+     * compiler runs with.
+     *
+     * @param classes The directory to write the classes to.
+     * @param source The Java version to compile for, or {@code null} for
+     *          that of the compiler.
+     * @param sourceFiles The sources.
+     * @return {@code true} if the sources compiled.
+     * @throws IOException If there is no compiler.
+     */
+    private static boolean compileSources(
+            final File classes, final String source, final List<File> sourceFiles) throws IOException {
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        if (javac == null) {
+            throw new IOException("no Java compiler, run on a JDK");
+        }
+        List<String> options = new ArrayList<>(Arrays.asList(
+                "-d", classes.getPath(),
+                "-classpath", System.getProperty("java.class.path"),
+                "-encoding", ENCODING,
+                "-Xlint:all,-options"));
+        if (source != null) {
+            options.addAll(Arrays.asList("-source", source, "-target", source));
+        }
+        try (StandardJavaFileManager files = javac.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+            return javac.getTask(null, files, null, options, null, files.getJavaFileObjectsFromFiles(sourceFiles))
+                    .call();
+        }
+    }
+
+    /**
+     * Adds the compiled templates to those already listed as services.
+     *
+     * @param classes The directory of the classes.
+     * @param classNames The qualified names of the compiled templates.
+     * @throws IOException If the list cannot be written.
+     */
+    private static void writeServices(final File classes, final List<String> classNames) throws IOException {
+        File services = new File(classes, SERVICES);
+        Set<String> providers = new LinkedHashSet<>();
+        if (services.isFile()) {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(services), ENCODING))) {
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    if (!line.trim().isEmpty()) {
+                        providers.add(line.trim());
+                    }
+                }
+            }
+        } else if (!services.getParentFile().isDirectory() && !services.getParentFile().mkdirs()) {
+            throw new IOException("Failed to create " + services.getParentFile());
+        }
+        providers.addAll(classNames);
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(services), ENCODING)) {
+            for (String provider : providers) {
+                writer.write(provider + "\n");
+            }
+        }
+    }
+
+    /**
+     * The values the doclet gives templates, each as a method of its name,
+     * for their types.
+     */
+    private interface TemplateValues {
+
+        /**
+         * @return The heading.
+         */
+        String headTitle();
+
+        /**
+         * @return The rest calls.
+         */
+        Iterable<RestApiDetails> restCalls();
+
+        /**
+         * @return The description of each component, if there are any.
+         */
+        Map<String, String> components();
+
+        /**
+         * @return The pages of a sharded output.
+         */
+        List<RestApiShard> shards();
+
+        /**
+         * @return The page each anchor of a sharded output is on, if its
+         *          pages are named after their content.
+         */
+        Map<String, String> pages();
+
+        /**
+         * @return The index of a search page.
+         */
+        String indexFile();
+    }
+
+    /**
+     * A template that uses what can't be compiled.
+     */
+    private static final class UnsupportedTemplateException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * @param message What can't be compiled.
+         * @param node Where it is used.
+         */
+        UnsupportedTemplateException(final String message, final Node node) {
+            super("it uses " + message + " at line " + node.getLine());
+        }
+    }
+
+    /**
+     * A Java expression, with its static type.
+     */
+    private static final class Value {
+
+        private final String expression;
+        private final StaticType type;
+        private final boolean nullable;
+
+        /**
+         * @param expression The expression.
+         * @param type Its type, which is never primitive.
+         * @param nullable Whether it may be {@code null}.
+         */
+        Value(final String expression, final StaticType type, final boolean nullable) {
+            this.expression = expression;
+            this.type = type;
+            this.nullable = nullable;
+        }
+    }
+
+    /**
+     * A type, with its type arguments resolved as far as they are known.
+     */
+    private static final class StaticType {
+
+        private static final StaticType OBJECT = new StaticType(Object.class);
+        private static final StaticType STRING = new StaticType(String.class);
+        private static final StaticType BOOLEAN = new StaticType(Boolean.class);
+
+        private final Class<?> raw;
+        private final List<StaticType> arguments;
+        private final boolean wildcard;
+
+        /**
+         * @param raw A class, which isn't generic or is used raw.
+         */
+        StaticType(final Class<?> raw) {
+            this(raw, Collections.<StaticType>emptyList(), false);
+        }
+
+        /**
+         * @param raw The class.
+         * @param arguments Its type arguments, or none if raw.
+         * @param wildcard Whether this is the bound of a wildcard.
+         */
+        StaticType(final Class<?> raw, final List<StaticType> arguments, final boolean wildcard) {
+            this.raw = raw;
+            this.arguments = arguments;
+            this.wildcard = wildcard;
+        }
+
+        /**
+         * @param type A type, as reflection gives it.
+         * @param bindings The types of the type variables it may use.
+         * @return The type.
+         */
+        static StaticType of(final Type type, final Map<TypeVariable<?>, StaticType> bindings) {
+            if (type instanceof Class) {
+                return new StaticType((Class<?>) type);
+            }
+            if (type instanceof ParameterizedType) {
+                List<StaticType> arguments = new ArrayList<>();
+                for (Type argument : ((ParameterizedType) type).getActualTypeArguments()) {
+                    arguments.add(of(argument, bindings));
+                }
+                return new StaticType((Class<?>) ((ParameterizedType) type).getRawType(), arguments, false);
+            }
+            if (type instanceof TypeVariable) {
+                StaticType bound = bindings.get(type);
+                return bound != null ? bound : erasure((TypeVariable<?>) type);
+            }
+            if (type instanceof WildcardType) {
+                WildcardType wildcardType = (WildcardType) type;
+                if (wildcardType.getLowerBounds().length > 0) {
+                    return new StaticType(Object.class, Collections.<StaticType>emptyList(), true);
+                }
+                StaticType bound = of(wildcardType.getUpperBounds()[0], bindings);
+                return new StaticType(bound.raw, bound.arguments, true);
+            }
+            if (type instanceof GenericArrayType) {
+                Class<?> component = of(((GenericArrayType) type).getGenericComponentType(), bindings).raw;
+                return new StaticType(Array.newInstance(component, 0).getClass());
+            }
+            return OBJECT;
+        }
+
+        private static StaticType erasure(final TypeVariable<?> variable) {
+            Type bound = variable.getBounds()[0];
+            while (bound instanceof ParameterizedType || bound instanceof TypeVariable) {
+                bound = bound instanceof ParameterizedType
+                        ? ((ParameterizedType) bound).getRawType()
+                        : ((TypeVariable<?>) bound).getBounds()[0];
+            }
+            return bound instanceof Class ? new StaticType((Class<?>) bound) : OBJECT;
+        }
+
+        /**
+         * @param declaring This class or one of its supertypes.
+         * @return The types of the type variables of the supertype.
+         */
+        Map<TypeVariable<?>, StaticType> getBindings(final Class<?> declaring) {
+            Map<TypeVariable<?>, StaticType> bindings = new HashMap<>();
+            TypeVariable<?>[] parameters = raw.getTypeParameters();
+            for (int i = 0; i < parameters.length; i++) {
+                bindings.put(parameters[i], i < arguments.size() ? arguments.get(i) : erasure(parameters[i]));
+            }
+            if (raw == declaring || !declaring.isAssignableFrom(raw)) {
+                return bindings;
+            }
+            List<Type> supertypes = new ArrayList<>(Arrays.asList(raw.getGenericInterfaces()));
+            if (raw.getGenericSuperclass() != null) {
+                supertypes.add(raw.getGenericSuperclass());
+            }
+            for (Type supertype : supertypes) {
+                StaticType resolved = of(supertype, bindings);
+                if (declaring.isAssignableFrom(resolved.raw)) {
+                    return resolved.getBindings(declaring);
+                }
+            }
+            return bindings;
+        }
+
+        /**
+         * @param declaring This class or one of its supertypes.
+         * @param index The position of one of the supertype's type parameters.
+         * @return The type of the type parameter, for a variable to hold.
+         */
+        StaticType getArgument(final Class<?> declaring, final int index) {
+            return getBindings(declaring).get(declaring.getTypeParameters()[index]).bound();
+        }
+
+        /**
+         * @return This type, rather than the wildcard it bounds, and boxed if
+         *          primitive.
+         */
+        StaticType bound() {
+            if (raw.isPrimitive()) {
+                return new StaticType(box(raw));
+            }
+            return wildcard ? new StaticType(raw, arguments, false) : this;
+        }
+
+        /**
+         * @return Whether the type can be named in the compiled template.
+         */
+        boolean isPublic() {
+            for (Class<?> type = raw; type != null; type = type.getEnclosingClass()) {
+                Class<?> named = type;
+                while (named.isArray()) {
+                    named = named.getComponentType();
+                }
+                if (!named.isPrimitive() && (!Modifier.isPublic(named.getModifiers()) || named.isAnonymousClass())) {
+                    return false;
+                }
+            }
+            for (StaticType argument : arguments) {
+                if (!argument.isPublic()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            if (wildcard) {
+                return raw == Object.class && arguments.isEmpty() ? "?" : "? extends " + bound();
+            }
+            StringBuilder name = new StringBuilder(raw.getCanonicalName());
+            if (!arguments.isEmpty()) {
+                name.append('<');
+                for (int i = 0; i < arguments.size(); i++) {
+                    name.append(i == 0 ? "" : ", ").append(arguments.get(i));
+                }
+                name.append('>');
+            }
+            return name.toString();
+        }
+
+        private static Class<?> box(final Class<?> type) {
+            if (type == boolean.class) {
+                return Boolean.class;
+            } else if (type == char.class) {
+                return Character.class;
+            } else if (type == byte.class) {
+                return Byte.class;
+            } else if (type == short.class) {
+                return Short.class;
+            } else if (type == int.class) {
+                return Integer.class;
+            } else if (type == long.class) {
+                return Long.class;
+            } else if (type == float.class) {
+                return Float.class;
+            } else if (type == double.class) {
+                return Double.class;
+            }
+            return type;
+        }
+    }
+
+    /**
+     * Translates the tree of a template into the source of a class that
+     * renders it.
+     */
+    private static final class Generator {
+
+        private static final String INDENT = "    ";
+
+        private final String packageName;
+        private final String className;
+        private final String templateName;
+        private final String digest;
+        private final InternalContextAdapter emptyContext = new InternalContextAdapterImpl(new VelocityContext());
+        private final Map<String, StaticType> templateValues = new HashMap<>();
+        private final Set<String> setNames = new HashSet<>();
+        private final Map<String, Value> setValues = new HashMap<>();
+        private final Deque<Map<String, Value>> loopValues = new ArrayDeque<>();
+        private final Map<String, String> constants = new HashMap<>();
+        private final StringBuilder constantDeclarations = new StringBuilder();
+        private final StringBuilder declarations = new StringBuilder();
+        private final StringBuilder body = new StringBuilder();
+        private final StringBuilder text = new StringBuilder();
+        private int indent = 2;
+        private int locals;
+
+        /**
+         * @param packageName The package of the class.
+         * @param className The name of the class.
+         * @param templateName The name of the template.
+         * @param digest A digest of the template.
+         */
+        Generator(final String packageName, final String className, final String templateName, final String digest) {
+            this.packageName = packageName;
+            this.className = className;
+            this.templateName = templateName;
+            this.digest = digest;
+            Map<TypeVariable<?>, StaticType> noBindings = Collections.emptyMap();
+            for (Method value : TemplateValues.class.getDeclaredMethods()) {
+                templateValues.put(value.getName(), StaticType.of(value.getGenericReturnType(), noBindings));
+            }
+        }
+
+        /**
+         * @param root The root of the template's tree.
+         * @return The source of the class.
+         * @throws UnsupportedTemplateException If the template can't be
+         *          compiled.
+         */
+        String generate(final Node root) throws UnsupportedTemplateException {
+            addSetNames(root);
+            block(root);
+            flushText();
+
+            StringBuilder java = new StringBuilder();
+            java.append("package ").append(packageName).append(";\n\n");
+            java.append("/**\n * Renders ").append(templateName).append(", compiled by ")
+                    .append(TemplateCompiler.class.getName()).append(".\n *\n * Generated, do not edit.\n */\n");
+            java.append("public final class ").append(className)
+                    .append(" implements ").append(CompiledTemplate.class.getName()).append(" {\n\n");
+            java.append(constantDeclarations).append('\n');
+            java.append("    @Override\n    public String getTemplateName() {\n        return ")
+                    .append(quote(templateName)).append(";\n    }\n\n");
+            java.append("    @Override\n    public String getTemplateDigest() {\n        return ")
+                    .append(quote(digest)).append(";\n    }\n\n");
+            java.append("    @Override\n    @SuppressWarnings({\"unchecked\", \"rawtypes\"})\n")
+                    .append("    public void render(final java.util.Map<String, Object> values,")
+                    .append(" final java.io.Writer output)\n            throws java.io.IOException {\n");
+            java.append(declarations).append(body).append("    }\n\n");
+            java.append(HELPERS).append("}\n");
+            return java.toString();
+        }
+
+        private void addSetNames(final Node node) {
+            if (node instanceof ASTSetDirective && node.jjtGetChild(0) instanceof ASTReference) {
+                setNames.add(((ASTReference) node.jjtGetChild(0)).getRootString());
+            }
+            for (int i = 0; i < node.jjtGetNumChildren(); i++) {
+                addSetNames(node.jjtGetChild(i));
+            }
+        }
+
+        private void block(final Node node) throws UnsupportedTemplateException {
+            for (int i = 0; i < node.jjtGetNumChildren(); i++) {
+                Node child = node.jjtGetChild(i);
+                if (child instanceof ASTText || child instanceof ASTTextblock || child instanceof ASTComment
+                        || child instanceof ASTEscape || child instanceof ASTEscapedDirective) {
+                    text.append(renderText(child));
+                } else if (child instanceof ASTReference) {
+                    writeReference((ASTReference) child);
+                } else if (child instanceof ASTIfStatement) {
+                    ifStatement(child);
+                } else if (child instanceof ASTSetDirective) {
+                    set(child);
+                } else if (child instanceof ASTDirective
+                        && FOREACH.equals(((ASTDirective) child).getDirectiveName())) {
+                    foreach(child);
+                } else if (child instanceof ASTDirective) {
+                    throw new UnsupportedTemplateException("#" + ((ASTDirective) child).getDirectiveName(), child);
+                } else {
+                    throw new UnsupportedTemplateException(child.literal(), child);
+                }
+            }
+        }
+
+        /**
+         * @param node A node whose output doesn't depend on any value.
+         * @return What Velocity renders for it.
+         */
+        private String renderText(final Node node) {
+            StringWriter writer = new StringWriter();
+            try {
+                node.render(emptyContext, writer);
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+            return writer.toString();
+        }
+
+        private void writeReference(final ASTReference node) throws UnsupportedTemplateException {
+            if (!node.getFirstToken().image.startsWith("$")) {
+                throw new UnsupportedTemplateException("the escaped reference " + node.literal(), node);
+            }
+            /* a reference to nothing renders as it would when null */
+            String nullText = renderText(node);
+            Value value = reference(node);
+            flushText();
+            emit("write(output, " + value.expression + ", " + constant(nullText) + ");");
+        }
+
+        private void ifStatement(final Node node) throws UnsupportedTemplateException {
+            flushText();
+            emit("if (" + condition(node.jjtGetChild(0)) + ") {");
+            branch(node.jjtGetChild(1));
+            int nesting = 0;
+            for (int i = 2; i < node.jjtGetNumChildren(); i++) {
+                Node branch = node.jjtGetChild(i);
+                emit("} else {");
+                if (branch instanceof ASTElseIfStatement) {
+                    /* later conditions are only evaluated once the earlier ones are false */
+                    indent++;
+                    nesting++;
+                    emit("if (" + condition(branch.jjtGetChild(0)) + ") {");
+                    branch(branch.jjtGetChild(1));
+                } else if (branch instanceof ASTElseStatement) {
+                    branch(branch.jjtGetChild(0));
+                }
+            }
+            emit("}");
+            for (; nesting > 0; nesting--) {
+                indent--;
+                emit("}");
+            }
+        }
+
+        private void branch(final Node node) throws UnsupportedTemplateException {
+            indent++;
+            block(node);
+            flushText();
+            indent--;
+        }
+
+        private void set(final Node node) throws UnsupportedTemplateException {
+            flushText();
+            Node left = node.jjtGetChild(0);
+            if (!(left instanceof ASTReference) || left.jjtGetNumChildren() > 0) {
+                throw new UnsupportedTemplateException("#set of " + left.literal(), node);
+            }
+            String name = ((ASTReference) left).getRootString();
+            if (templateValues.containsKey(name) || findLoopValue(name) != null) {
+                throw new UnsupportedTemplateException("#set of $" + name + ", which isn't only set", node);
+            }
+            Value value = value(node.jjtGetChild(1));
+            Value variable = setValues.get(name);
+            if (variable == null) {
+                variable = new Value(newLocal(name), value.type, true);
+                declarations.append(INDENT).append(INDENT).append(variable.type).append(' ')
+                        .append(variable.expression).append(" = null;\n");
+                setValues.put(name, variable);
+            } else if (!variable.type.raw.isAssignableFrom(value.type.raw)) {
+                throw new UnsupportedTemplateException("#set of $" + name + " to another type", node);
+            }
+            if (value.nullable) {
+                /* Velocity leaves a value as it was when set to null */
+                emit("if (" + value.expression + " != null) {");
+                emit(INDENT + variable.expression + " = " + value.expression + ";");
+                emit("}");
+            } else {
+                emit(variable.expression + " = " + value.expression + ";");
+            }
+        }
+
+        private void foreach(final Node node) throws UnsupportedTemplateException {
+            flushText();
+            Node variable = node.jjtGetChild(0);
+            if (!(variable instanceof ASTReference) || variable.jjtGetNumChildren() > 0) {
+                throw new UnsupportedTemplateException("#foreach over " + variable.literal(), node);
+            }
+            String name = ((ASTReference) variable).getRootString();
+            if (setValues.containsKey(name) || findLoopValue(name) != null) {
+                throw new UnsupportedTemplateException("#foreach with $" + name + " already in use", node);
+            }
+            Value items = value(node.jjtGetChild(2));
+            Class<?> raw = items.type.raw;
+            StaticType element;
+            String iterable = items.expression;
+            if (raw.isArray()) {
+                element = new StaticType(raw.getComponentType()).bound();
+            } else if (Map.class.isAssignableFrom(raw)) {
+                element = items.type.getArgument(Map.class, 1);
+                iterable = items.expression + ".values()";
+            } else if (Iterable.class.isAssignableFrom(raw)) {
+                element = items.type.getArgument(Iterable.class, 0);
+            } else {
+                throw new UnsupportedTemplateException("#foreach over " + items.type, node);
+            }
+            if (!element.isPublic()) {
+                throw new UnsupportedTemplateException("#foreach over " + items.type, node);
+            }
+            Value loop = new Value(newLocal(name), element, true);
+            emit("if (" + items.expression + " != null) {");
+            indent++;
+            emit("for (" + element + " " + loop.expression + " : " + iterable + ") {");
+            loopValues.push(Collections.singletonMap(name, loop));
+            branch(node.jjtGetChild(3));
+            loopValues.pop();
+            emit("}");
+            indent--;
+            emit("}");
+        }
+
+        /**
+         * @param node A condition.
+         * @return A Java condition, using locals emitted before it.
+         * @throws UnsupportedTemplateException If the condition can't be
+         *          compiled.
+         */
+        private String condition(final Node node) throws UnsupportedTemplateException {
+            if (node instanceof ASTExpression) {
+                return condition(node.jjtGetChild(0));
+            } else if (node instanceof ASTReference) {
+                return "isTrue(" + reference((ASTReference) node).expression + ")";
+            } else if (node instanceof ASTTrue) {
+                return "true";
+            } else if (node instanceof ASTFalse) {
+                return "false";
+            } else if (node instanceof ASTNotNode) {
+                return "!(" + condition(node.jjtGetChild(0)) + ")";
+            } else if (node instanceof ASTAndNode || node instanceof ASTOrNode) {
+                /* the right is only evaluated if the left doesn't decide */
+                String result = newLocal("condition");
+                emit("boolean " + result + " = " + condition(node.jjtGetChild(0)) + ";");
+                emit(node instanceof ASTAndNode ? "if (" + result + ") {" : "if (!" + result + ") {");
+                indent++;
+                emit(result + " = " + condition(node.jjtGetChild(1)) + ";");
+                indent--;
+                emit("}");
+                return result;
+            } else if (node instanceof ASTEQNode || node instanceof ASTNENode) {
+                String equal = "isEqual(" + value(node.jjtGetChild(0)).expression + ", "
+                        + value(node.jjtGetChild(1)).expression + ")";
+                return node instanceof ASTEQNode ? equal : "!" + equal;
+            } else if (node instanceof ASTGTNode || node instanceof ASTGENode
+                    || node instanceof ASTLTNode || node instanceof ASTLENode) {
+                String comparison = newLocal("comparison");
+                emit("Integer " + comparison + " = compare(" + value(node.jjtGetChild(0)).expression + ", "
+                        + value(node.jjtGetChild(1)).expression + ");");
+                String operator = node instanceof ASTGTNode ? " > 0"
+                        : node instanceof ASTGENode ? " >= 0"
+                        : node instanceof ASTLTNode ? " < 0"
+                        : " <= 0";
+                return comparison + " != null && " + comparison + operator;
+            }
+            throw new UnsupportedTemplateException(node.literal(), node);
+        }
+
+        /**
+         * @param node A value.
+         * @return A Java expression for it, using locals emitted before it.
+         * @throws UnsupportedTemplateException If the value can't be
+         *          compiled.
+         */
+        private Value value(final Node node) throws UnsupportedTemplateException {
+            if (node instanceof ASTExpression) {
+                return value(node.jjtGetChild(0));
+            } else if (node instanceof ASTReference) {
+                return reference((ASTReference) node);
+            } else if (node instanceof ASTStringLiteral) {
+                String image = node.getFirstToken().image;
+                if (image.startsWith("\"") && (image.indexOf('$') >= 0 || image.indexOf('#') >= 0)) {
+                    throw new UnsupportedTemplateException("the interpolated string " + image, node);
+                }
+                return new Value(quote((String) node.value(emptyContext)), StaticType.STRING, false);
+            } else if (node instanceof ASTIntegerLiteral) {
+                Object number = node.value(emptyContext);
+                return number instanceof Integer
+                        ? new Value("Integer.valueOf(" + number + ")", new StaticType(Integer.class), false)
+                        : new Value("Long.valueOf(" + number + "L)", new StaticType(Long.class), false);
+            } else if (node instanceof ASTTrue) {
+                return new Value("Boolean.TRUE", StaticType.BOOLEAN, false);
+            } else if (node instanceof ASTFalse) {
+                return new Value("Boolean.FALSE", StaticType.BOOLEAN, false);
+            } else if (node instanceof ASTNotNode || node instanceof ASTAndNode || node instanceof ASTOrNode
+                    || node instanceof ASTEQNode || node instanceof ASTNENode
+                    || node instanceof ASTGTNode || node instanceof ASTGENode
+                    || node instanceof ASTLTNode || node instanceof ASTLENode) {
+                return new Value("Boolean.valueOf(" + condition(node) + ")", StaticType.BOOLEAN, false);
+            }
+            throw new UnsupportedTemplateException(node.literal(), node);
+        }
+
+        /**
+         * Emits locals for each step of a reference, each {@code null} if
+         * the one before is.
+         *
+         * @param node The reference.
+         * @return The local holding its value.
+         * @throws UnsupportedTemplateException If the reference can't be
+         *          compiled.
+         */
+        private Value reference(final ASTReference node) throws UnsupportedTemplateException {
+            String name = node.getRootString();
+            Value current = findLoopValue(name);
+            if (current == null) {
+                current = setValues.get(name);
+            }
+            if (current == null) {
+                if (setNames.contains(name)) {
+                    throw new UnsupportedTemplateException("$" + name + " before it is set", node);
+                }
+                if (VELOCITY_VALUES.contains(name)) {
+                    throw new UnsupportedTemplateException("$" + name + ", which Velocity gives", node);
+                }
+                StaticType type = templateValues.get(name);
+                current = new Value(newLocal(name), type == null ? StaticType.OBJECT : type, true);
+                /* looked up where it is used, as it may be added while rendering */
+                emit(current.type + " " + current.expression + " = "
+                        + (type == null ? "" : "(" + type + ") ") + "values.get(" + quote(name) + ");");
+            }
+
+            for (int i = 0; i < node.jjtGetNumChildren(); i++) {
+                Node child = node.jjtGetChild(i);
+                List<Value> arguments = new ArrayList<>();
+                Method method;
+                if (child instanceof ASTMethod) {
+                    for (int j = 1; j < child.jjtGetNumChildren(); j++) {
+                        arguments.add(value(child.jjtGetChild(j)));
+                    }
+                    method = findMethod(current.type, ((ASTMethod) child).getMethodName(), arguments);
+                } else if (child instanceof ASTIdentifier) {
+                    method = findProperty(current.type, child.getFirstToken().image, arguments);
+                } else {
+                    throw new UnsupportedTemplateException(node.literal(), node);
+                }
+                if (method == null || method.getReturnType() == void.class) {
+                    throw new UnsupportedTemplateException(node.literal() + ", which " + current.type
+                            + " has no method for", node);
+                }
+                StaticType type = StaticType.of(method.getGenericReturnType(),
+                        current.type.getBindings(method.getDeclaringClass())).bound();
+                if (!type.isPublic()) {
+                    throw new UnsupportedTemplateException(node.literal() + ", which returns " + type, node);
+                }
+                StringBuilder call = new StringBuilder(current.expression).append('.').append(method.getName())
+                        .append('(');
+                for (int j = 0; j < arguments.size(); j++) {
+                    call.append(j == 0 ? "" : ", ").append(arguments.get(j).expression);
+                }
+                call.append(')');
+                Value next = new Value(newLocal("value"), type, true);
+                emit(type + " " + next.expression + " = " + (current.nullable
+                        ? current.expression + " == null ? null : " + call
+                        : call) + ";");
+                current = next;
+            }
+            return current;
+        }
+
+        /**
+         * Finds the method Velocity would call for a property: its getter,
+         * or for a map, its value.
+         */
+        private static Method findProperty(final StaticType type, final String property, final List<Value> arguments) {
+            String capitalized = Character.toUpperCase(property.charAt(0)) + property.substring(1);
+            for (String getter : Arrays.asList("get" + property, "get" + capitalized, "is" + capitalized)) {
+                Method method = findMethod(type, getter, arguments);
+                if (method != null && (!getter.startsWith("is") || method.getReturnType() == boolean.class)) {
+                    return method;
+                }
+            }
+            if (Map.class.isAssignableFrom(type.raw)) {
+                arguments.add(new Value(quote(property), StaticType.STRING, false));
+                return findMethod(type, "get", arguments);
+            }
+            return null;
+        }
+
+        /**
+         * @return The most specific public method that takes the arguments,
+         *          or {@code null} if there isn't one.
+         */
+        private static Method findMethod(final StaticType type, final String name, final List<Value> arguments) {
+            List<Method> methods = new ArrayList<>(Arrays.asList(type.raw.getMethods()));
+            if (type.raw.isInterface()) {
+                methods.addAll(Arrays.asList(Object.class.getMethods()));
+            }
+            Method found = null;
+            for (Method method : methods) {
+                if (method.getName().equals(name) && !method.isBridge()
+                        && !Modifier.isStatic(method.getModifiers())
+                        && Modifier.isPublic(method.getDeclaringClass().getModifiers())
+                        && takes(method.getParameterTypes(), arguments)
+                        && (found == null || isMoreSpecific(method, found))) {
+                    found = method;
+                }
+            }
+            return found;
+        }
+
+        private static boolean takes(final Class<?>[] parameters, final List<Value> arguments) {
+            if (parameters.length != arguments.size()) {
+                return false;
+            }
+            for (int i = 0; i < parameters.length; i++) {
+                Class<?> parameter = parameters[i].isPrimitive()
+                        ? new StaticType(parameters[i]).bound().raw
+                        : parameters[i];
+                if (!parameter.isAssignableFrom(arguments.get(i).type.raw)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean isMoreSpecific(final Method method, final Method than) {
+            Class<?>[] parameters = method.getParameterTypes();
+            Class<?>[] thanParameters = than.getParameterTypes();
+            for (int i = 0; i < parameters.length; i++) {
+                if (!thanParameters[i].isAssignableFrom(parameters[i])) {
+                    return false;
+                }
+            }
+            return !Arrays.equals(parameters, thanParameters)
+                    || than.getReturnType().isAssignableFrom(method.getReturnType());
+        }
+
+        private Value findLoopValue(final String name) {
+            for (Iterator<Map<String, Value>> loops = loopValues.iterator(); loops.hasNext();) {
+                Value value = loops.next().get(name);
+                if (value != null) {
+                    return value;
+                }
+            }
+            return null;
+        }
+
+        private String newLocal(final String name) {
+            return name.replaceAll("[^A-Za-z0-9_]", "_") + ++locals;
+        }
+
+        /**
+         * @param value Some text.
+         * @return The name of a constant holding it.
+         */
+        private String constant(final String value) {
+            String constant = constants.get(value);
+            if (constant == null) {
+                constant = "TEXT_" + constants.size();
+                constants.put(value, constant);
+                constantDeclarations.append(INDENT).append("private static final String ").append(constant)
+                        .append(" = ").append(quote(value)).append(";\n");
+            }
+            return constant;
+        }
+
+        /**
+         * Emits the text written since the last statement, in constants
+         * small enough for a class file.
+         */
+        private void flushText() {
+            for (int start = 0; start < text.length(); start += MAX_CONSTANT_LENGTH) {
+                String part = text.substring(start, Math.min(text.length(), start + MAX_CONSTANT_LENGTH));
+                emit("output.write(" + constant(part) + ");");
+            }
+            text.setLength(0);
+        }
+
+        private void emit(final String statement) {
+            for (int i = 0; i < indent; i++) {
+                body.append(INDENT);
+            }
+            body.append(statement).append('\n');
+        }
+
+        /**
+         * @param value Some text.
+         * @return A Java string literal of it.
+         */
+        private static String quote(final String value) {
+            StringBuilder literal = new StringBuilder("\"");
+            for (char c : value.toCharArray()) {
+                if (c == '"' || c == '\\') {
+                    literal.append('\\').append(c);
+                } else if (c == '\n') {
+                    literal.append("\\n");
+                } else if (c == '\r') {
+                    literal.append("\\r");
+                } else if (c == '\t') {
+                    literal.append("\\t");
+                } else if (c < ' ' || c > '~') {
+                    literal.append(String.format("\\u%04x", (int) c));
+                } else {
+                    literal.append(c);
+                }
+            }
+            return literal.append('"').toString();
+        }
+    }
+
+    /**
+     * The methods compiled templates render with, which follow Velocity's
+     * rules for rendering references and evaluating conditions.
+     */
+    private static final String HELPERS = ""
+            + "    private static void write(final java.io.Writer output, final Object value, final String nullText)\n"
+            + "            throws java.io.IOException {\n"
+            + "        String text = value == null ? null : value.toString();\n"
+            + "        output.write(text == null ? nullText : text);\n"
+            + "    }\n"
+            + "\n"
+            + "    private static boolean isTrue(final Object value) {\n"
+            + "        if (value instanceof Boolean) {\n"
+            + "            return (Boolean) value;\n"
+            + "        }\n"
+            + "        return value != null && value.toString() != null;\n"
+            + "    }\n"
+            + "\n"
+            + "    private static boolean isEqual(final Object left, final Object right) {\n"
+            + "        if (left instanceof Number && right instanceof Number) {\n"
+            + "            return compare(left, right) == 0;\n"
+            + "        }\n"
+            + "        if (left != null && right != null && (left.getClass().isAssignableFrom(right.getClass())\n"
+            + "                || right.getClass().isAssignableFrom(left.getClass()))) {\n"
+            + "            return left.equals(right);\n"
+            + "        }\n"
+            + "        String leftText = left == null ? null : left.toString();\n"
+            + "        String rightText = right == null ? null : right.toString();\n"
+            + "        return leftText == null ? rightText == null : leftText.equals(rightText);\n"
+            + "    }\n"
+            + "\n"
+            + "    private static Integer compare(final Object left, final Object right) {\n"
+            + "        if (!(left instanceof Number) || !(right instanceof Number)) {\n"
+            + "            return null;\n"
+            + "        }\n"
+            + "        if (isIntegral(left) && isIntegral(right)) {\n"
+            + "            return Long.compare(((Number) left).longValue(), ((Number) right).longValue());\n"
+            + "        }\n"
+            + "        return Double.compare(((Number) left).doubleValue(), ((Number) right).doubleValue());\n"
+            + "    }\n"
+            + "\n"
+            + "    private static boolean isIntegral(final Object value) {\n"
+            + "        return value instanceof Integer || value instanceof Long\n"
+            + "                || value instanceof Short || value instanceof Byte;\n"
+            + "    }\n";
+}
@@ -0,0 +1,225 @@
+package biz.rightshift.commons.doclet;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.velocity.Template;
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.app.VelocityEngine;
+
+/**
+ * Renders Velocity templates from the class path.
+ *
+ * A template compiled by {@link TemplateCompiler} is rendered by its
+ * compiled class, as long as the template is unchanged since it was
+ * compiled. Any other template is merged by Velocity. Velocity engines are
+ * not shared between threads, each thread that renders gets an engine of
+ * its own, so several templates may be rendered concurrently. Each engine
+ * parses a template once and reuses it for every later render on that
+ * thread.
+ */
+final class TemplateRenderer {
+
+    private static final String ENCODING = "UTF-8";
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final int BUFFER_SIZE = 8192;
+
+    private final ThreadLocal<VelocityEngine> engines = new ThreadLocal<VelocityEngine>() {
+        @Override
+        protected VelocityEngine initialValue() {
+            VelocityEngine engine = createEngine();
+            engine.init();
+            return engine;
+        }
+    };
+
+    private final boolean useCompiled;
+    private final ConcurrentMap<String, CompiledTemplate> compiled = new ConcurrentHashMap<>();
+    private final Set<String> interpreted = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * Renders compiled templates where there are any.
+     */
+    TemplateRenderer() {
+        this(true);
+    }
+
+    /**
+     * @param useCompiled Whether to render compiled templates, or merge
+     *          every template with Velocity.
+     */
+    TemplateRenderer(final boolean useCompiled) {
+        this.useCompiled = useCompiled;
+    }
+
+    /**
+     * @return An engine that loads templates from the class path, not yet
+     *          initialised.
+     */
+    static VelocityEngine createEngine() {
+        VelocityEngine engine = new VelocityEngine();
+        engine.setProperty("resource.loader", "class");
+        engine.setProperty(
+                "class.resource.loader.class",
+                "org.apache.velocity.runtime.resource.loader.ClasspathResourceLoader");
+        engine.setProperty("class.resource.loader.cache", "true");
+        return engine;
+    }
+
+    /**
+     * Initialises the current thread's engine and parses a template, so
+     * that rendering it later only merges. Nothing needs preparing for a
+     * compiled template.
+     *
+     * @param templateName The name of the template on the class path.
+     */
+    void prepare(final String templateName) {
+        if (getCompiled(templateName) == null) {
+            engines.get().getTemplate(templateName, ENCODING);
+        }
+    }
+
+    /**
+     * Renders a template to a file.
+     *
+     * @param templateName The name of the template on the class path.
+     * @param values The values to make available to the template.
+     * @param outputFile The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    void render(
+            final String templateName,
+            final Map<String, Object> values,
+            final File outputFile) throws IOException {
+        try (OutputStream output = new FileOutputStream(outputFile)) {
+            render(templateName, values, output);
+        }
+    }
+
+    /**
+     * Renders a template to a stream, which is left open.
+     *
+     * @param templateName The name of the template on the class path.
+     * @param values The values to make available to the template.
+     * @param output The stream to write.
+     * @throws IOException If the output cannot be written.
+     */
+    void render(
+            final String templateName,
+            final Map<String, Object> values,
+            final OutputStream output) throws IOException {
+        Writer writer = new OutputStreamWriter(output, ENCODING);
+        render(templateName, values, writer);
+        writer.flush();
+    }
+
+    /**
+     * Renders a template.
+     *
+     * The values are the template's context, rather than copied into it,
+     * so a value added while the template renders, for example by an
+     * iterator it walks, is seen by the rest of the template.
+     *
+     * @param templateName The name of the template on the class path.
+     * @param values The values to make available to the template, which
+     *          the template may add to.
+     * @param output The writer to render to.
+     * @throws IOException If the output cannot be written.
+     */
+    void render(
+            final String templateName,
+            final Map<String, Object> values,
+            final Writer output) throws IOException {
+        CompiledTemplate compiledTemplate = getCompiled(templateName);
+        if (compiledTemplate != null) {
+            Writer writer = new BufferedWriter(output, BUFFER_SIZE);
+            compiledTemplate.render(values, writer);
+            writer.flush();
+            return;
+        }
+        VelocityContext context = new VelocityContext(values);
+        Template template = engines.get().getTemplate(templateName, ENCODING);
+        template.merge(context, output);
+    }
+
+    /**
+     * @param templateName The name of a template on the class path.
+     * @return The template's compiled class, or {@code null} if it wasn't
+     *          compiled, or has changed since.
+     */
+    private CompiledTemplate getCompiled(final String templateName) {
+        if (!useCompiled) {
+            return null;
+        }
+        CompiledTemplate template = compiled.get(templateName);
+        if (template != null || interpreted.contains(templateName)) {
+            return template;
+        }
+        template = findCompiled(templateName);
+        if (template == null) {
+            interpreted.add(templateName);
+        } else {
+            compiled.put(templateName, template);
+        }
+        return template;
+    }
+
+    private static CompiledTemplate findCompiled(final String templateName) {
+        String digest = null;
+        for (CompiledTemplate template
+                : ServiceLoader.load(CompiledTemplate.class, TemplateRenderer.class.getClassLoader())) {
+            if (template.getTemplateName().equals(templateName)) {
+                if (digest == null) {
+                    digest = getDigest(templateName);
+                }
+                if (template.getTemplateDigest().equals(digest)) {
+                    return template;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param templateName The name of a template on the class path.
+     * @return A digest of the template, as Velocity would load it, or
+     *          {@code null} if it can't be read.
+     */
+    static String getDigest(final String templateName) {
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        InputStream input = loader == null ? null : loader.getResourceAsStream(templateName);
+        if (input == null) {
+            input = TemplateRenderer.class.getClassLoader().getResourceAsStream(templateName);
+        }
+        if (input == null) {
+            return null;
+        }
+        try (InputStream template = input) {
+            MessageDigest digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            for (int read = template.read(buffer); read >= 0; read = template.read(buffer)) {
+                digest.update(buffer, 0, read);
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (IOException | NoSuchAlgorithmException ex) {
+            return null;
+        }
+    }
+}
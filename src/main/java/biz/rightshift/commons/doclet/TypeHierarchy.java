@@ -0,0 +1,226 @@
+package biz.rightshift.commons.doclet;
+
+import com.sun.javadoc.ClassDoc;
+import com.sun.javadoc.ParameterizedType;
+import com.sun.javadoc.Type;
+import com.sun.javadoc.TypeVariable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An index of the type hierarchy, built up during a run, that says whether
+ * a type is a container and what it contains.
+ *
+ * The supertypes of each class, and the container of each type, are worked
+ * out once and then looked up. Like the rest of the javadoc model, they
+ * should be worked out on one thread before being looked up on several,
+ * see {@link Description#resolve(Type)}.
+ */
+final class TypeHierarchy {
+
+    private static final String COLLECTION = Collection.class.getName();
+    private static final String MAP = Map.class.getName();
+    private static final String OPTIONAL = "java.util.Optional";
+
+    private static final Container NOT_A_CONTAINER = new Container(ContainerKind.NONE, new Type[0]);
+
+    /** The qualified names of each class's supertypes, including itself. */
+    private static final Map<String, Set<String>> SUPERTYPES = new ConcurrentHashMap<>();
+
+    /** The container of each type, keyed by the type's full name. */
+    private static final Map<String, Container> CONTAINERS = new ConcurrentHashMap<>();
+
+    private TypeHierarchy() {
+        // Prevent Instantiation.
+    }
+
+    /**
+     * Discards the index built so far. Should be called at the start of
+     * each run.
+     */
+    static void reset() {
+        SUPERTYPES.clear();
+        CONTAINERS.clear();
+    }
+
+    /**
+     * Gets what a type contains.
+     *
+     * The contained types are found through the hierarchy, so a type such as
+     * {@code ArrayList<Foo>}, or a class extending {@code HashMap<String, Foo>},
+     * is known to contain {@code Foo}. A contained type that cannot be
+     * determined, as in a raw {@code List}, is {@code null}.
+     *
+     * @param type The type.
+     * @return The container.
+     */
+    static Container getContainer(final Type type) {
+        String key = type.toString();
+        Container container = CONTAINERS.get(key);
+        if (container == null) {
+            container = findContainer(type);
+            CONTAINERS.put(key, container);
+        }
+        return container;
+    }
+
+    /**
+     * @param type A class.
+     * @return The qualified names of the class, its superclasses and every
+     *          interface they implement.
+     */
+    static Set<String> getSupertypes(final ClassDoc type) {
+        String key = type.qualifiedTypeName();
+        Set<String> supertypes = SUPERTYPES.get(key);
+        if (supertypes == null) {
+            Set<String> closure = new HashSet<>();
+            closure.add(key);
+            if (type.superclassType() != null) {
+                closure.addAll(getSupertypes(type.superclassType().asClassDoc()));
+            }
+            for (Type interfaceType : type.interfaceTypes()) {
+                closure.addAll(getSupertypes(interfaceType.asClassDoc()));
+            }
+            supertypes = Collections.unmodifiableSet(closure);
+            SUPERTYPES.put(key, supertypes);
+        }
+        return supertypes;
+    }
+
+    private static Container findContainer(final Type type) {
+        if (!type.dimension().isEmpty()) {
+            return new Container(ContainerKind.ARRAY, new Type[] {getArrayElement(type)});
+        }
+        ClassDoc classDoc = type.asClassDoc();
+        if (type.isPrimitive() || classDoc == null || type.asTypeVariable() != null) {
+            return NOT_A_CONTAINER;
+        }
+        Set<String> supertypes = getSupertypes(classDoc);
+        if (supertypes.contains(COLLECTION)) {
+            return new Container(ContainerKind.COLLECTION, findTypeArguments(type, COLLECTION, 1));
+        } else if (supertypes.contains(MAP)) {
+            return new Container(ContainerKind.MAP, findTypeArguments(type, MAP, 2));
+        } else if (supertypes.contains(OPTIONAL)) {
+            return new Container(ContainerKind.OPTIONAL, findTypeArguments(type, OPTIONAL, 1));
+        }
+        return NOT_A_CONTAINER;
+    }
+
+    /**
+     * Gets the innermost element of an array, which an array type answers
+     * for, as the API before JDK 8 has no element type.
+     *
+     * @param type An array type.
+     * @return The element type, or {@code null} if it is primitive.
+     */
+    private static Type getArrayElement(final Type type) {
+        if (type.asParameterizedType() != null) {
+            return type.asParameterizedType();
+        } else if (type.asTypeVariable() != null) {
+            return type.asTypeVariable();
+        }
+        return type.asClassDoc();
+    }
+
+    /**
+     * Finds the type arguments that a type passes to one of its supertypes.
+     *
+     * @param type The type.
+     * @param target The qualified name of the supertype.
+     * @param count The number of type parameters the supertype has.
+     * @return The type arguments, any of which may be {@code null} if not
+     *          known.
+     */
+    private static Type[] findTypeArguments(final Type type, final String target, final int count) {
+        Type[] arguments = findTypeArguments(type, target, Collections.<String, Type>emptyMap());
+        Type[] found = new Type[count];
+        if (arguments != null) {
+            System.arraycopy(arguments, 0, found, 0, Math.min(count, arguments.length));
+        }
+        return found;
+    }
+
+    /**
+     * Walks up the hierarchy to a supertype, binding each class's type
+     * parameters to the arguments passed to it on the way.
+     *
+     * @param type The type.
+     * @param target The qualified name of the supertype.
+     * @param bindings The type variables bound by the subtype that refers to
+     *          this type, by name.
+     * @return The type arguments, or {@code null} if the supertype is not
+     *          reached.
+     */
+    private static Type[] findTypeArguments(
+            final Type type, final String target, final Map<String, Type> bindings) {
+        ClassDoc classDoc = type == null ? null : type.asClassDoc();
+        if (classDoc == null || !getSupertypes(classDoc).contains(target)) {
+            return null;
+        }
+        ParameterizedType parameterized = type.asParameterizedType();
+        Type[] arguments = parameterized == null ? new Type[0] : parameterized.typeArguments().clone();
+        for (int i = 0; i < arguments.length; i++) {
+            TypeVariable variable = arguments[i].asTypeVariable();
+            if (variable != null && bindings.containsKey(variable.typeName())) {
+                arguments[i] = bindings.get(variable.typeName());
+            }
+        }
+        if (classDoc.qualifiedTypeName().equals(target)) {
+            return arguments;
+        }
+
+        Map<String, Type> ownBindings = new HashMap<>();
+        TypeVariable[] parameters = classDoc.typeParameters();
+        for (int i = 0; i < Math.min(parameters.length, arguments.length); i++) {
+            ownBindings.put(parameters[i].typeName(), arguments[i]);
+        }
+        Type[] found = findTypeArguments(classDoc.superclassType(), target, ownBindings);
+        for (Type interfaceType : classDoc.interfaceTypes()) {
+            if (found != null) {
+                break;
+            }
+            found = findTypeArguments(interfaceType, target, ownBindings);
+        }
+        return found;
+    }
+
+    /**
+     * What a type contains.
+     */
+    static final class Container {
+
+        private final ContainerKind kind;
+        private final Type[] contents;
+
+        /**
+         * @param kind The kind of container.
+         * @param contents The contained types.
+         */
+        Container(final ContainerKind kind, final Type[] contents) {
+            this.kind = kind;
+            this.contents = contents;
+        }
+
+        /**
+         * @return The kind of container.
+         */
+        ContainerKind getKind() {
+            return kind;
+        }
+
+        /**
+         * @param index The index of the contained type, 1 for a map's value.
+         * @return The contained type, or {@code null} if not known or an
+         *          array's primitive element. An array contains its innermost
+         *          element, whatever its dimensions.
+         */
+        Type getContent(final int index) {
+            return contents[index];
+        }
+    }
+}
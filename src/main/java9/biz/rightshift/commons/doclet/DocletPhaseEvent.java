@@ -0,0 +1,78 @@
+package biz.rightshift.commons.doclet;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Flight Recorder event for a phase of the doclet, or for a controller or
+ * type within one.
+ *
+ * Only built with the jdk.javadoc doclet, as jdk.jfr is missing before JDK 11,
+ * and only loaded once {@link DocletStats} has checked that the JVM has Flight
+ * Recorder.
+ */
+@Name("biz.rightshift.doclet.Phase")
+@Label("REST API Doclet Phase")
+@Category("REST API Doclet")
+final class DocletPhaseEvent extends Event {
+
+    @Label("Phase")
+    private String phase;
+
+    @Label("Subject")
+    private String subject;
+
+    @Label("Allocated")
+    @DataAmount
+    private long allocated;
+
+    /**
+     * Starts an event.
+     *
+     * @param subject What is being measured.
+     * @return The event.
+     */
+    static Object begin(final String subject) {
+        DocletPhaseEvent event = new DocletPhaseEvent();
+        event.subject = subject;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends and commits an event.
+     *
+     * @param started The event, as returned by {@link #begin(String)}.
+     * @param phase The phase.
+     * @param allocated The bytes allocated.
+     */
+    static void commit(final Object started, final String phase, final long allocated) {
+        DocletPhaseEvent event = (DocletPhaseEvent) started;
+        event.end();
+        if (event.shouldCommit()) {
+            event.phase = phase;
+            event.allocated = allocated;
+            event.commit();
+        }
+    }
+
+    /**
+     * Records events for {@link DocletStats}, which can't refer to this class
+     * as it is built without it for the legacy doclet.
+     */
+    static final class Recorder implements DocletStats.EventRecorder {
+
+        @Override
+        public Object begin(final String subject) {
+            return DocletPhaseEvent.begin(subject);
+        }
+
+        @Override
+        public void commit(final Object started, final String phase, final long allocated) {
+            DocletPhaseEvent.commit(started, phase, allocated);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package biz.rightshift.commons.doclet;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import jdk.javadoc.doclet.Doclet;
+import jdk.javadoc.doclet.DocletEnvironment;
+import jdk.javadoc.doclet.Reporter;
+
+/**
+ * Custom REST API Doclet, on the {@code jdk.javadoc.doclet} API of
+ * JDK 9 and later.
+ *
+ * Takes the same options, and writes the same output, as
+ * {@link SpringWebServicesRestApiDoclet}, which needs the legacy
+ * {@code com.sun.javadoc} API.
+ */
+public final class SpringWebServicesRestApiJdk9Doclet implements Doclet {
+
+    /** The options given, each its name followed by its argument, if any. */
+    private final List<String[]> options = new ArrayList<>();
+
+    private Reporter reporter;
+
+    @Override
+    public void init(final Locale locale, final Reporter docletReporter) {
+        this.reporter = docletReporter;
+    }
+
+    @Override
+    public String getName() {
+        return getClass().getSimpleName();
+    }
+
+    @Override
+    public Set<? extends Option> getSupportedOptions() {
+        Set<Option> supported = new LinkedHashSet<>();
+        for (String name : DocletSettings.getOptionNames()) {
+            supported.add(new DocletOption(name));
+        }
+        return supported;
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latest();
+    }
+
+    @Override
+    public boolean run(final DocletEnvironment environment) {
+        DocletReporter docletReporter = new EnvironmentReporter(reporter);
+        DocletSettings settings = DocletSettings.parse(options.toArray(new String[options.size()][]), docletReporter);
+        if (settings == null) {
+            return false;
+        }
+        DocletStats stats = settings.createStats();
+
+        EndpointCache cache = null;
+        if (settings.getCacheDirectory() != null) {
+            cache = new EndpointCache(settings.getCacheDirectory(), settings.getExtractionOptions());
+        }
+
+        DocletStats.Measurement discovery = stats.start(DocletStats.Phase.DISCOVERY.getLabel());
+        List<TypeElement> controllers = new ArrayList<>();
+        List<String> controllerNames = new ArrayList<>();
+        for (TypeElement type : ElementFilter.typesIn(environment.getIncludedElements())) {
+            if (ElementRestApiScanner.isController(type)) {
+                controllers.add(type);
+                controllerNames.add(type.getQualifiedName().toString());
+            }
+        }
+        stats.recordPhase(DocletStats.Phase.DISCOVERY, discovery);
+
+        ElementRestApiScanner scanner = new ElementRestApiScanner(
+                environment.getDocTrees(),
+                environment.getElementUtils(),
+                environment.getTypeUtils(),
+                settings.getDescriptionOptions(),
+                stats);
+        if (settings.getPipeline() > 0) {
+            return PipelinedOutput.write(settings, controllerNames,
+                    new PipelinedExtraction(scanner, controllers, cache, docletReporter), stats, docletReporter);
+        }
+
+        DocletStats.Measurement extraction = stats.start(DocletStats.Phase.EXTRACTION.getLabel());
+        List<List<RestApiDetails>> controllerCalls = scanner.getRestCallsFor(controllers, cache, docletReporter);
+
+        List<RestApiDetails> restCalls = new ArrayList<>();
+        for (List<RestApiDetails> calls : controllerCalls) {
+            restCalls.addAll(calls);
+        }
+        stats.recordPhase(DocletStats.Phase.EXTRACTION, extraction);
+        stats.recordCounts(controllers.size(), restCalls, scanner.getDescribedTypeCount());
+
+        return RestApiOutput.write(settings, controllerNames, controllerCalls, restCalls, stats, docletReporter);
+    }
+
+    /**
+     * One of the doclet's options, collected as it is processed.
+     */
+    private final class DocletOption implements Option {
+
+        private final String name;
+
+        /**
+         * @param name The option name.
+         */
+        DocletOption(final String name) {
+            this.name = name;
+        }
+
+        @Override
+        public int getArgumentCount() {
+            return DocletSettings.optionLength(name) - 1;
+        }
+
+        @Override
+        public String getDescription() {
+            return DocletSettings.getOptionDescription(name);
+        }
+
+        @Override
+        public Kind getKind() {
+            return Kind.STANDARD;
+        }
+
+        @Override
+        public List<String> getNames() {
+            List<String> names = new ArrayList<>();
+            names.add(name);
+            return names;
+        }
+
+        @Override
+        public String getParameters() {
+            String parameter = DocletSettings.getOptionParameter(name);
+            return parameter == null ? "" : parameter;
+        }
+
+        @Override
+        public boolean process(final String option, final List<String> arguments) {
+            String[] tokens = new String[arguments.size() + 1];
+            tokens[0] = name;
+            for (int i = 0; i < arguments.size(); i++) {
+                tokens[i + 1] = arguments.get(i);
+            }
+            options.add(tokens);
+            return true;
+        }
+    }
+
+    /**
+     * Processes controllers one at a time, as they are asked for, while
+     * those before them are written.
+     */
+    private static final class PipelinedExtraction implements PipelinedOutput.Extraction {
+
+        private final ElementRestApiScanner scanner;
+        private final List<TypeElement> controllers;
+        private final EndpointCache cache;
+        private final DocletReporter reporter;
+        private LinkTargets links;
+
+        /**
+         * @param scanner The scanner to process the controllers with.
+         * @param controllers The controllers.
+         * @param cache The cache, or {@code null} if not caching.
+         * @param reporter Where to report cache failures.
+         */
+        PipelinedExtraction(
+                final ElementRestApiScanner scanner,
+                final List<TypeElement> controllers,
+                final EndpointCache cache,
+                final DocletReporter reporter) {
+            this.scanner = scanner;
+            this.controllers = controllers;
+            this.cache = cache;
+            this.reporter = reporter;
+        }
+
+        @Override
+        public List<RestApiDetails> extract(final int controller) {
+            if (links == null) {
+                links = scanner.getLinkTargets(controllers);
+            }
+            return scanner.getRestCallsFor(controllers.get(controller), links, cache, reporter);
+        }
+
+        @Override
+        public int getDescribedTypeCount() {
+            return scanner.getDescribedTypeCount();
+        }
+    }
+
+    /**
+     * Reports messages through the javadoc tool's <code>Reporter</code>.
+     */
+    private static final class EnvironmentReporter implements DocletReporter {
+
+        private final Reporter reporter;
+
+        /**
+         * @param reporter The javadoc tool's reporter.
+         */
+        EnvironmentReporter(final Reporter reporter) {
+            this.reporter = reporter;
+        }
+
+        @Override
+        public void printError(final String message) {
+            reporter.print(Diagnostic.Kind.ERROR, message);
+        }
+
+        @Override
+        public void printWarning(final String message) {
+            reporter.print(Diagnostic.Kind.WARNING, message);
+        }
+
+        @Override
+        public void printNotice(final String message) {
+            reporter.print(Diagnostic.Kind.NOTE, message);
+        }
+    }
+}
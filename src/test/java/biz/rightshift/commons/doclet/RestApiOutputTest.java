@@ -0,0 +1,156 @@
+package biz.rightshift.commons.doclet;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import org.junit.Test;
+
+/**
+ * Tests the naming of the pages of a sharded output, and the links between
+ * them.
+ */
+public class RestApiOutputTest {
+
+    private static final Set<String> OUTPUT_NAMES = Collections.singleton("index.html");
+
+    /**
+     * A prefix named after the output file, in any case, takes another name,
+     * rather than being overwritten by the index.
+     */
+    @Test
+    public void prefixShardDoesNotTakeOutputFileName() {
+        List<RestApiShard> shards = RestApiOutput.getPrefixShards(
+                calls("/index/items", "/INDEX", "/orders"), OUTPUT_NAMES);
+
+        assertEquals(Arrays.asList("index-2.html", "INDEX-3.html", "orders.html"), getFiles(shards));
+    }
+
+    /**
+     * Prefixes that only differ by characters replaced in file names are
+     * numbered, rather than replacing each other.
+     */
+    @Test
+    public void prefixShardsWithTheSameFileNameAreNumbered() {
+        List<RestApiShard> shards = RestApiOutput.getPrefixShards(
+                calls("/a-b", "/a_b", "/a b", "/été", "/àtà"), OUTPUT_NAMES);
+
+        assertEquals(Arrays.asList("a-b.html", "a_b.html", "a_b-2.html", "_t_.html", "_t_-2.html"), getFiles(shards));
+    }
+
+    /**
+     * A number added to one name doesn't give a name another shard already
+     * has.
+     */
+    @Test
+    public void numberedShardFileNamesAreUnique() {
+        List<RestApiShard> shards = RestApiOutput.getPrefixShards(
+                calls("/a_b", "/a_b-2.html", "/a b", "/a~b"), OUTPUT_NAMES);
+
+        assertEquals(
+                Arrays.asList("a_b.html", "a_b-2.html.html", "a_b-2.html", "a_b-3.html"), getFiles(shards));
+    }
+
+    /**
+     * Controllers are named by their qualified name, and numbered in the
+     * same way.
+     */
+    @Test
+    public void controllerShardsWithTheSameFileNameAreNumbered() {
+        List<List<RestApiDetails>> controllerCalls = new ArrayList<>();
+        controllerCalls.add(calls("/a").get(0));
+        controllerCalls.add(calls("/b").get(0));
+        controllerCalls.add(Collections.<RestApiDetails>emptyList());
+
+        List<RestApiShard> shards = RestApiOutput.getControllerShards(
+                Arrays.asList("com.acme.Outer$Inner", "com.acme.Outer_Inner", "com.acme.Empty"),
+                controllerCalls,
+                OUTPUT_NAMES);
+
+        assertEquals(Arrays.asList("com.acme.Outer_Inner.html", "com.acme.Outer_Inner-2.html"), getFiles(shards));
+    }
+
+    /**
+     * Each rest call is on its own page, and a component on the first page
+     * to describe it.
+     */
+    @Test
+    public void anchorsAreOnTheirShardsPage() {
+        List<RestApiShard> shards = Arrays.asList(
+                new RestApiShard("A", "a.html", Collections.singletonList(call("com.acme.A.create", "com.acme.Item"))),
+                new RestApiShard("B", "b.html", Arrays.asList(
+                        call("com.acme.B.update", "com.acme.Item"), call("com.acme.B.list", null))));
+
+        Map<String, String> expected = new TreeMap<>();
+        expected.put("com.acme.A.create", "a.html");
+        expected.put("com.acme.B.list", "b.html");
+        expected.put("com.acme.B.update", "b.html");
+        expected.put("com.acme.Item", "a.html");
+        assertEquals(expected, RestApiOutput.getShardPages(shards));
+    }
+
+    /**
+     * Links to anchors on other pages name the page, or the page that
+     * forwards to it, while links to anchors on the same page, or to anything
+     * else, are left as they are.
+     */
+    @Test
+    public void linksToOtherPagesNameThePage() {
+        Map<String, String> pages = new TreeMap<>();
+        pages.put("com.acme.A.create", "a.html");
+        pages.put("com.acme.B.list", "b.html");
+        pages.put("com.acme.Item", "a.html");
+        Set<String> anchors = new HashSet<>(Arrays.asList("com.acme.B.list", "com.acme.Item"));
+        String html = "<a href=\"#com.acme.A.create\">create</a> <a href=\"#com.acme.B.list\">list</a>"
+                + " <a href=\"#com.acme.Item\">Item</a> <a href=\"#top\">top</a> <a href=\"#com.acme.A.create";
+
+        assertEquals("<a href=\"a.html#com.acme.A.create\">create</a> <a href=\"#com.acme.B.list\">list</a>"
+                + " <a href=\"#com.acme.Item\">Item</a> <a href=\"#top\">top</a> <a href=\"#com.acme.A.create",
+                CommentRenderer.linkToPages(html, pages, anchors, null));
+        assertEquals("<a href=\"index.html#com.acme.A.create\">create</a> <a href=\"#com.acme.B.list\">list</a>"
+                + " <a href=\"#com.acme.Item\">Item</a> <a href=\"#top\">top</a> <a href=\"#com.acme.A.create",
+                CommentRenderer.linkToPages(html, pages, anchors, "index.html"));
+    }
+
+    /**
+     * @param urls The URLs of the rest calls.
+     * @return A controller for each URL, with a rest call to it.
+     */
+    private static List<List<RestApiDetails>> calls(final String... urls) {
+        List<List<RestApiDetails>> controllerCalls = new ArrayList<>();
+        for (String url : urls) {
+            controllerCalls.add(Collections.singletonList(new RestApiDetails(url, "GET", "", "",
+                    Collections.<RestApiParameter>emptyList(), Collections.<RestApiParameter>emptyList(), null, "")));
+        }
+        return controllerCalls;
+    }
+
+    /**
+     * @param anchor The anchor of the rest call.
+     * @param component The component its request body refers to, if any.
+     * @return A rest call.
+     */
+    private static RestApiDetails call(final String anchor, final String component) {
+        RestApiRequestBody body = null;
+        if (component != null) {
+            body = new RestApiRequestBody("body", component, "", "{\"$ref\":\"" + component + "\"}");
+            body.setComponents(Collections.singletonMap(component, "{}"));
+        }
+        return new RestApiDetails("/", "POST", "", "", Collections.<RestApiParameter>emptyList(),
+                Collections.<RestApiParameter>emptyList(), body, "", anchor);
+    }
+
+    private static List<String> getFiles(final List<RestApiShard> shards) {
+        List<String> files = new ArrayList<>();
+        for (RestApiShard shard : shards) {
+            files.add(shard.getFile());
+        }
+        return files;
+    }
+}
@@ -0,0 +1,215 @@
+package biz.rightshift.commons.doclet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Tests building, matching, writing and reading a route table.
+ */
+public class RestApiRoutesTest {
+
+    private final List<String> warnings = new ArrayList<>();
+
+    private final DocletReporter reporter = new DocletReporter() {
+        @Override
+        public void printError(final String message) {
+            fail(message);
+        }
+
+        @Override
+        public void printWarning(final String message) {
+            warnings.add(message);
+        }
+
+        @Override
+        public void printNotice(final String message) {
+            // Ignored.
+        }
+    };
+
+    /**
+     * A table read back matches requests as the one written does.
+     *
+     * @throws IOException If the table cannot be written or read.
+     */
+    @Test
+    public void readTableMatchesAsWritten() throws IOException {
+        RestApiRoutes routes = build(
+                call("GET", "/users/{id}", "users.get"),
+                call("GET", "/users/me", "users.me"),
+                call("", "/files/{*path}", "files.any"),
+                call("POST", "/users", "users.create"));
+
+        RestApiRoutes read = RestApiRoutes.read(new ByteArrayInputStream(write(routes)));
+
+        for (String[] request : new String[][] {
+            {"GET", "/users/42"}, {"GET", "/users/me"}, {"DELETE", "/files/a/b.txt"}, {"POST", "/users"},
+            {"GET", "/users"}, {"GET", "/missing"},
+        }) {
+            RestApiRoutes.Match expected = routes.match(request[0], request[1]);
+            RestApiRoutes.Match actual = read.match(request[0], request[1]);
+            if (expected == null) {
+                assertNull(actual);
+            } else {
+                assertEquals(expected.getMethod(), actual.getMethod());
+                assertEquals(expected.getUrl(), actual.getUrl());
+                assertEquals(expected.getAnchor(), actual.getAnchor());
+                assertEquals(expected.getVariables(), actual.getVariables());
+            }
+        }
+        assertNull(read.match("GET", "/users"));
+        assertEquals("files.any", read.match("DELETE", "/files/a/b.txt").getAnchor());
+    }
+
+    /**
+     * A literal segment takes precedence over a variable, whichever endpoint
+     * comes first.
+     */
+    @Test
+    public void literalTakesPrecedenceOverVariable() {
+        RestApiRoutes routes = build(
+                call("GET", "/users/{id}/orders", "orders"),
+                call("GET", "/users/{id}", "user"),
+                call("GET", "/users/me", "me"));
+
+        assertEquals("me", routes.match("GET", "/users/me").getAnchor());
+        RestApiRoutes.Match user = routes.match("GET", "/users/42?expand=true");
+        assertEquals("user", user.getAnchor());
+        assertEquals(Collections.singletonMap("id", "42"), user.getVariables());
+        assertEquals("orders", routes.match("GET", "/users/me/orders").getAnchor());
+        assertTrue(warnings.isEmpty());
+    }
+
+    /**
+     * A final {@code **} or {@code {*var}} matches the rest of the path, the
+     * longest applying, after any endpoint matching the whole path.
+     */
+    @Test
+    public void catchAllsMatchTheRestOfThePath() {
+        RestApiRoutes routes = build(
+                call("GET", "/**", "fallback"),
+                call("GET", "/static/**", "static"),
+                call("GET", "/static/index", "index"),
+                call("GET", "/docs/{*path}", "docs"));
+
+        assertEquals("index", routes.match("GET", "/static/index").getAnchor());
+        assertEquals("static", routes.match("GET", "/static/css/site.css").getAnchor());
+        assertEquals("static", routes.match("GET", "/static").getAnchor());
+        assertEquals("fallback", routes.match("GET", "/other/page").getAnchor());
+        RestApiRoutes.Match docs = routes.match("GET", "/docs/guide/intro.html");
+        assertEquals("docs", docs.getAnchor());
+        assertEquals(Collections.singletonMap("path", "guide/intro.html"), docs.getVariables());
+        assertTrue(routes.match("GET", "/static/index").getVariables().isEmpty());
+    }
+
+    /**
+     * A mapping of the request's method takes precedence over one of any
+     * method, which matches the other methods.
+     */
+    @Test
+    public void specificMethodTakesPrecedenceOverAnyMethod() {
+        RestApiRoutes routes = build(
+                call("", "/items", "any"),
+                call("GET", "/items", "get"),
+                call("PUT, PATCH", "/items/{id}", "update"));
+
+        assertEquals("get", routes.match("get", "/items").getAnchor());
+        assertEquals("any", routes.match("POST", "/items").getAnchor());
+        assertEquals("update", routes.match("PATCH", "/items/1").getAnchor());
+        assertEquals("PUT, PATCH", routes.match("PUT", "/items/1").getMethod());
+        assertNull(routes.match("DELETE", "/items/1"));
+        assertTrue(warnings.isEmpty());
+    }
+
+    /**
+     * Endpoints the table can't tell from an earlier one are reported, and
+     * those only hidden for some paths are not.
+     */
+    @Test
+    public void ambiguousAndShadowedRoutesAreReported() {
+        RestApiRoutes routes = build(
+                call("GET", "/a", "first"),
+                call("GET", "/a", "second"),
+                call("GET", "/b/{id}", "byId"),
+                call("GET", "/b/{name:[a-z]+}", "byName"),
+                call("GET", "/c/{x}/d", "cxd"),
+                call("GET", "/c/e/{y}", "cey"),
+                call("GET", "/files/{name}.json", "json"));
+
+        assertEquals(Arrays.asList(
+                "Ambiguous mapping GET /a of second and first, only the first is routed",
+                "Mapping GET /b/{name:[a-z]+} of byName is shadowed by /b/{id} of byId",
+                "Not in the route table, unsupported URL pattern: /files/{name}.json"), warnings);
+        assertEquals("first", routes.match("GET", "/a").getAnchor());
+        assertEquals("cey", routes.match("GET", "/c/e/d").getAnchor());
+        assertEquals("cxd", routes.match("GET", "/c/f/d").getAnchor());
+    }
+
+    /**
+     * A table cut short anywhere fails to read with an {@link IOException}.
+     *
+     * @throws IOException If the table cannot be written.
+     */
+    @Test
+    public void truncatedTableFailsToRead() throws IOException {
+        byte[] table = write(build(call("GET", "/users/{id}", "user"), call("", "/files/**", "files")));
+
+        for (int length = 0; length < table.length; length++) {
+            try {
+                RestApiRoutes.read(new ByteArrayInputStream(Arrays.copyOf(table, length)));
+                fail("Read a table truncated to " + length + " of " + table.length + " bytes");
+            } catch (IOException ex) {
+                // Expected.
+            }
+        }
+    }
+
+    /**
+     * A table with any byte corrupted is either read, or fails with an
+     * {@link IOException}, rather than any other exception.
+     *
+     * @throws IOException If the table cannot be written.
+     */
+    @Test
+    public void corruptTableFailsWithIOException() throws IOException {
+        byte[] table = write(build(call("GET", "/users/{id}", "user"), call("", "/files/**", "files")));
+
+        for (int position = 0; position < table.length; position++) {
+            for (int value : new int[] {0x00, 0x7F, 0xFF}) {
+                byte[] corrupt = table.clone();
+                corrupt[position] = (byte) value;
+                try {
+                    RestApiRoutes.read(new ByteArrayInputStream(corrupt)).match("GET", "/users/1/2");
+                } catch (IOException ex) {
+                    // Expected.
+                }
+            }
+        }
+    }
+
+    private RestApiRoutes build(final RestApiDetails... restCalls) {
+        return RestApiRoutes.build(Arrays.asList(restCalls), reporter);
+    }
+
+    private static byte[] write(final RestApiRoutes routes) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        routes.write(output);
+        return output.toByteArray();
+    }
+
+    private static RestApiDetails call(final String method, final String url, final String anchor) {
+        return new RestApiDetails(url, method, "", "", Collections.<RestApiParameter>emptyList(),
+                Collections.<RestApiParameter>emptyList(), null, "", anchor);
+    }
+}
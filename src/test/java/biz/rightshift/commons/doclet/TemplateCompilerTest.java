@@ -0,0 +1,224 @@
+package biz.rightshift.commons.doclet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests that compiled templates render exactly what Velocity renders.
+ */
+public class TemplateCompilerTest {
+
+    /** A temporary folder for the compiled templates and their sources. */
+    @ClassRule
+    public static final TemporaryFolder FOLDER = new TemporaryFolder();
+
+    private static final String FIXTURES = "biz/rightshift/commons/doclet/";
+    private static final String EQUALITY_TEMPLATE = FIXTURES + "equality_template.vm";
+    private static final String HEADING = "Test <API> & \"more\"";
+
+    private static final List<String> TEMPLATES = Arrays.asList(
+            "rest_api_template.vm", RestApiOutput.INDEX_TEMPLATE_NAME, RestApiSearchWriter.TEMPLATE_NAME,
+            EQUALITY_TEMPLATE);
+
+    private static URLClassLoader classes;
+
+    private final TemplateRenderer velocity = new TemplateRenderer(false);
+
+    /**
+     * Compiles the bundled templates, and one that compares values.
+     *
+     * @throws IOException If the folders cannot be created.
+     */
+    @BeforeClass
+    public static void compileTemplates() throws IOException {
+        File classesFolder = FOLDER.newFolder("classes");
+        List<String> args = new ArrayList<>(Arrays.asList(
+                "-d", classesFolder.getPath(), "-s", FOLDER.newFolder("sources").getPath()));
+        args.addAll(TEMPLATES);
+        final List<String> warnings = new ArrayList<>();
+        boolean compiled = TemplateCompiler.compile(args.toArray(new String[args.size()]), new DocletReporter() {
+            @Override
+            public void printError(final String message) {
+                fail(message);
+            }
+
+            @Override
+            public void printWarning(final String message) {
+                warnings.add(message);
+            }
+
+            @Override
+            public void printNotice(final String message) {
+                // Ignored.
+            }
+        });
+        assertTrue(compiled);
+        assertEquals("Templates left to Velocity", new ArrayList<String>(), warnings);
+        classes = new URLClassLoader(
+                new URL[] {classesFolder.toURI().toURL()}, TemplateCompilerTest.class.getClassLoader());
+    }
+
+    /**
+     * Releases the compiled templates.
+     *
+     * @throws IOException If the class loader cannot be closed.
+     */
+    @AfterClass
+    public static void closeClasses() throws IOException {
+        classes.close();
+    }
+
+    /**
+     * The page of rest calls renders the same, with every kind of rest call
+     * in the fixture, described in place or as components.
+     *
+     * @throws Exception If a template cannot be rendered.
+     */
+    @Test
+    public void restCallsRenderAsVelocityDoes() throws Exception {
+        for (String fixture : Arrays.asList("model.json", "model-components.json")) {
+            RestApiModel model = readModel(fixture);
+            assertRendersAsVelocity("rest_api_template.vm", RestApiOutput.getTemplateValues(
+                    HEADING, model.getRestCalls()));
+            for (List<RestApiDetails> controllerCalls : model.getControllerCalls()) {
+                assertRendersAsVelocity("rest_api_template.vm", RestApiOutput.getTemplateValues(
+                        HEADING, controllerCalls));
+            }
+        }
+        assertRendersAsVelocity("rest_api_template.vm", RestApiOutput.getTemplateValues(
+                HEADING, new ArrayList<RestApiDetails>()));
+    }
+
+    /**
+     * The index of a sharded output renders the same, with and without the
+     * pages that links are forwarded to.
+     *
+     * @throws Exception If a template cannot be rendered.
+     */
+    @Test
+    public void indexRendersAsVelocityDoes() throws Exception {
+        RestApiModel model = readModel("model.json");
+        List<RestApiShard> shards = new ArrayList<>();
+        for (int i = 0; i < model.getControllers().size(); i++) {
+            String controller = model.getControllers().get(i);
+            shards.add(new RestApiShard(controller, controller + ".html", model.getControllerCalls().get(i)));
+        }
+        Map<String, Object> values = new HashMap<>();
+        values.put(RestApiOutput.HEAD_TITLE, HEADING);
+        values.put(RestApiOutput.SHARDS_KEY, shards);
+        assertRendersAsVelocity(RestApiOutput.INDEX_TEMPLATE_NAME, values);
+        values.put(RestApiOutput.PAGES_KEY, RestApiOutput.getShardPages(shards));
+        assertRendersAsVelocity(RestApiOutput.INDEX_TEMPLATE_NAME, values);
+    }
+
+    /**
+     * The search page renders the same.
+     *
+     * @throws Exception If a template cannot be rendered.
+     */
+    @Test
+    public void searchPageRendersAsVelocityDoes() throws Exception {
+        Map<String, Object> values = new HashMap<>();
+        values.put(RestApiOutput.HEAD_TITLE, HEADING);
+        values.put(RestApiSearchWriter.INDEX_FILE_KEY, "search-index.json");
+        assertRendersAsVelocity(RestApiSearchWriter.TEMPLATE_NAME, values);
+    }
+
+    /**
+     * {@code ==} and {@code !=} treat null and numbers as Velocity 1.7 does:
+     * null only equals null, numbers of any type equal by value, and values
+     * of unrelated types are compared as text.
+     *
+     * @throws Exception If a template cannot be rendered.
+     */
+    @Test
+    public void equalityMatchesVelocity() throws Exception {
+        Object[][] pairs = {
+            {null, null},
+            {null, "x"},
+            {"x", null},
+            {null, 1},
+            {1, null},
+            {new NullText(), null},
+            {null, new NullText()},
+            {new NullText(), new NullText()},
+            {new NullText(), ""},
+            {1, 1L},
+            {1, 1.0},
+            {1, 2},
+            {1, "1"},
+            {"1", 1},
+            {1.0, "1"},
+            {2.5f, 2.5},
+            {0.1f, 0.1},
+            {Long.MAX_VALUE, Long.MAX_VALUE - 1},
+            {new BigDecimal("1.0"), 1},
+            {new BigDecimal("1.0"), new BigDecimal("1.00")},
+            {"a", "a"},
+            {"a", "b"},
+            {true, "true"},
+            {true, Boolean.TRUE},
+            {new StringBuilder("a"), "a"},
+        };
+        for (Object[] pair : pairs) {
+            Map<String, Object> values = new HashMap<>();
+            if (pair[0] != null) {
+                values.put("left", pair[0]);
+            }
+            if (pair[1] != null) {
+                values.put("right", pair[1]);
+            }
+            assertRendersAsVelocity(EQUALITY_TEMPLATE, values);
+        }
+    }
+
+    private void assertRendersAsVelocity(
+            final String templateName, final Map<String, Object> values) throws Exception {
+        StringWriter expected = new StringWriter();
+        velocity.render(templateName, new HashMap<>(values), expected);
+
+        CompiledTemplate template = classes.loadClass(TemplateCompiler.DEFAULT_PACKAGE + "."
+                + TemplateCompiler.getClassName(templateName)).asSubclass(CompiledTemplate.class)
+                .getConstructor().newInstance();
+        StringWriter actual = new StringWriter();
+        template.render(new HashMap<>(values), actual);
+
+        assertEquals(templateName + " with " + values, expected.toString(), actual.toString());
+    }
+
+    private static RestApiModel readModel(final String fixture) throws IOException {
+        try (InputStream input = TemplateCompilerTest.class.getClassLoader().getResourceAsStream(FIXTURES + fixture)) {
+            return RestApiModel.read(input);
+        }
+    }
+
+    /**
+     * A value whose text is null, which Velocity renders as the reference.
+     */
+    public static final class NullText {
+
+        @Override
+        public String toString() {
+            return null;
+        }
+    }
+}